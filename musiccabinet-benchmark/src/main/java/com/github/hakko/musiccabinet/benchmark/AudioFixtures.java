@@ -0,0 +1,262 @@
+package com.github.hakko.musiccabinet.benchmark;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static java.nio.charset.StandardCharsets.UTF_16;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.github.hakko.musiccabinet.benchmark.SyntheticLibrary.SyntheticTrack;
+
+/*
+ * Writes small but well-formed audio files, tagged the way common taggers
+ * do it, for benchmarks to scan and read.
+ *
+ * MP3: ID3v2.3 tag, followed by silent 128 kbps MPEG-1 Layer III frames.
+ * FLAC: STREAMINFO, VORBIS_COMMENT and PADDING blocks. No audio frames, as
+ * neither JAudioTagger nor HeaderTagReader decode those.
+ * OGG: Vorbis identification, comment and setup headers, and an end page
+ * whose granule position gives the track length. Pages carry valid CRCs.
+ *
+ * Audio content is silence (or absent), so files stay a few KB each, but
+ * tag layout and header parsing cost is that of real files.
+ */
+public class AudioFixtures {
+
+	private static final int SAMPLE_RATE = 44100;
+	private static final int MP3_FRAME_LENGTH = 417; // 144 * 128000 / 44100
+	private static final int MP3_FRAMES_PER_SECOND = 38; // 44100 / 1152
+	private static final int FLAC_PADDING = 1024;
+	private static final String VENDOR = "musiccabinet-benchmark";
+
+	private static final int[] OGG_CRC_TABLE = new int[256];
+
+	static {
+		for (int i = 0; i < 256; i++) {
+			int r = i << 24;
+			for (int j = 0; j < 8; j++) {
+				r = (r & 0x80000000) != 0 ? (r << 1) ^ 0x04c11db7 : r << 1;
+			}
+			OGG_CRC_TABLE[i] = r;
+		}
+	}
+
+	/*
+	 * Writes track to file, in format given by track, with audio frames for
+	 * the first seconds of track only (to keep files small).
+	 */
+	public static void write(Path file, SyntheticTrack track, int audioSeconds) throws IOException {
+		byte[] bytes;
+		switch (track.format) {
+		case MP3: bytes = mp3(track, audioSeconds); break;
+		case FLAC: bytes = flac(track); break;
+		case OGG: bytes = ogg(track); break;
+		default: throw new IllegalArgumentException("Unsupported format " + track.format);
+		}
+		Files.write(file, bytes);
+	}
+
+	private static byte[] mp3(SyntheticTrack track, int audioSeconds) throws IOException {
+		ByteArrayOutputStream frames = new ByteArrayOutputStream();
+		id3Frame(frames, "TPE1", track.artist);
+		id3Frame(frames, "TPE2", track.albumArtist);
+		id3Frame(frames, "TALB", track.album);
+		id3Frame(frames, "TIT2", track.title);
+		id3Frame(frames, "TRCK", track.trackNr + "/" + track.trackNrs);
+		id3Frame(frames, "TPOS", track.discNr + "/" + track.discNrs);
+		id3Frame(frames, "TYER", Integer.toString(track.year));
+		id3Frame(frames, "TCON", track.genre);
+		id3Frame(frames, "TCOM", track.composer);
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		int tagSize = frames.size();
+		out.write(new byte[]{'I', 'D', '3', 3, 0, 0});
+		out.write(new byte[]{(byte) (tagSize >> 21 & 0x7f), (byte) (tagSize >> 14 & 0x7f),
+				(byte) (tagSize >> 7 & 0x7f), (byte) (tagSize & 0x7f)});
+		frames.writeTo(out);
+
+		byte[] frame = new byte[MP3_FRAME_LENGTH];
+		frame[0] = (byte) 0xff; // sync, MPEG-1, Layer III, no CRC
+		frame[1] = (byte) 0xfb;
+		frame[2] = (byte) 0x90; // 128 kbps, 44.1 kHz, no padding
+		frame[3] = (byte) 0x64; // joint stereo
+		for (int i = Math.max(1, audioSeconds * MP3_FRAMES_PER_SECOND); i > 0; i--) {
+			out.write(frame);
+		}
+		return out.toByteArray();
+	}
+
+	private static void id3Frame(OutputStream out, String id, String value) throws IOException {
+		if (value == null) {
+			return;
+		}
+		byte[] text;
+		byte encoding;
+		if (ISO_8859_1.newEncoder().canEncode(value)) {
+			encoding = 0;
+			text = value.getBytes(ISO_8859_1);
+		} else {
+			encoding = 1; // UTF-16 with byte order mark
+			text = value.getBytes(UTF_16);
+		}
+		int size = text.length + 1;
+		out.write(id.getBytes(US_ASCII));
+		out.write(new byte[]{(byte) (size >> 24), (byte) (size >> 16), (byte) (size >> 8),
+				(byte) size, 0, 0, encoding});
+		out.write(text);
+	}
+
+	private static byte[] flac(SyntheticTrack track) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.write(new byte[]{'f', 'L', 'a', 'C'});
+
+		long samples = (long) track.duration * SAMPLE_RATE;
+		byte[] streamInfo = new byte[34];
+		streamInfo[0] = 0x10; // min/max block size 4096
+		streamInfo[2] = 0x10;
+		// sample rate (20 bits), channels - 1 (3 bits), bits per sample - 1 (5 bits),
+		// total samples (36 bits)
+		long packed = (long) SAMPLE_RATE << 44 | 1L << 41 | 15L << 36 | samples & 0xfffffffffL;
+		for (int i = 0; i < 8; i++) {
+			streamInfo[10 + i] = (byte) (packed >> (56 - 8 * i));
+		}
+		flacBlock(out, 0, false, streamInfo);
+		flacBlock(out, 4, false, vorbisComment(track, false));
+		flacBlock(out, 1, true, new byte[FLAC_PADDING]);
+		return out.toByteArray();
+	}
+
+	private static void flacBlock(OutputStream out, int type, boolean isLast, byte[] block)
+			throws IOException {
+		out.write((isLast ? 0x80 : 0) | type);
+		out.write(new byte[]{(byte) (block.length >> 16), (byte) (block.length >> 8),
+				(byte) block.length});
+		out.write(block);
+	}
+
+	private static byte[] vorbisComment(SyntheticTrack track, boolean framingBit) throws IOException {
+		List<String> comments = new ArrayList<>();
+		addComment(comments, "ARTIST", track.artist);
+		addComment(comments, "ALBUMARTIST", track.albumArtist);
+		addComment(comments, "ALBUM", track.album);
+		addComment(comments, "TITLE", track.title);
+		addComment(comments, "TRACKNUMBER", Integer.toString(track.trackNr));
+		addComment(comments, "TRACKTOTAL", Integer.toString(track.trackNrs));
+		addComment(comments, "DISCNUMBER", Integer.toString(track.discNr));
+		addComment(comments, "DISCTOTAL", Integer.toString(track.discNrs));
+		addComment(comments, "DATE", Integer.toString(track.year));
+		addComment(comments, "GENRE", track.genre);
+		addComment(comments, "COMPOSER", track.composer);
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] vendor = VENDOR.getBytes(UTF_8);
+		writeIntLE(out, vendor.length);
+		out.write(vendor);
+		writeIntLE(out, comments.size());
+		for (String comment : comments) {
+			byte[] bytes = comment.getBytes(UTF_8);
+			writeIntLE(out, bytes.length);
+			out.write(bytes);
+		}
+		if (framingBit) {
+			out.write(1);
+		}
+		return out.toByteArray();
+	}
+
+	private static void addComment(List<String> comments, String key, String value) {
+		if (value != null) {
+			comments.add(key + "=" + value);
+		}
+	}
+
+	private static byte[] ogg(SyntheticTrack track) throws IOException {
+		ByteArrayOutputStream identification = new ByteArrayOutputStream();
+		identification.write(vorbisPacketHeader(1));
+		writeIntLE(identification, 0); // vorbis version
+		identification.write(2); // channels
+		writeIntLE(identification, SAMPLE_RATE);
+		writeIntLE(identification, 0); // maximum bitrate
+		writeIntLE(identification, 128000); // nominal bitrate
+		writeIntLE(identification, 0); // minimum bitrate
+		identification.write(0xb8); // block sizes 256 and 2048
+		identification.write(1); // framing bit
+
+		ByteArrayOutputStream comment = new ByteArrayOutputStream();
+		comment.write(vorbisPacketHeader(3));
+		comment.write(vorbisComment(track, true));
+
+		ByteArrayOutputStream setup = new ByteArrayOutputStream();
+		setup.write(vorbisPacketHeader(5));
+		setup.write(new byte[32]);
+
+		int serial = track.title == null ? 0 : track.title.hashCode();
+		long samples = (long) track.duration * SAMPLE_RATE;
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		oggPage(out, 0x02, 0, serial, 0, identification.toByteArray());
+		oggPage(out, 0x00, 0, serial, 1, comment.toByteArray(), setup.toByteArray());
+		oggPage(out, 0x04, samples, serial, 2, new byte[64]);
+		return out.toByteArray();
+	}
+
+	private static byte[] vorbisPacketHeader(int type) {
+		return new byte[]{(byte) type, 'v', 'o', 'r', 'b', 'i', 's'};
+	}
+
+	private static void oggPage(ByteArrayOutputStream out, int headerType, long granule,
+			int serial, int sequence, byte[]... packets) throws IOException {
+		ByteArrayOutputStream lacing = new ByteArrayOutputStream();
+		ByteArrayOutputStream data = new ByteArrayOutputStream();
+		for (byte[] packet : packets) {
+			for (int left = packet.length; left >= 0; left -= 255) {
+				lacing.write(Math.min(left, 255));
+				if (left < 255) {
+					break;
+				}
+			}
+			data.write(packet);
+		}
+		if (lacing.size() > 255) {
+			throw new IllegalArgumentException("Packets don't fit in one page");
+		}
+
+		ByteArrayOutputStream page = new ByteArrayOutputStream();
+		page.write(new byte[]{'O', 'g', 'g', 'S', 0, (byte) headerType});
+		writeLongLE(page, granule);
+		writeIntLE(page, serial);
+		writeIntLE(page, sequence);
+		writeIntLE(page, 0); // crc, set below
+		page.write(lacing.size());
+		lacing.writeTo(page);
+		data.writeTo(page);
+
+		byte[] bytes = page.toByteArray();
+		int crc = 0;
+		for (byte b : bytes) {
+			crc = (crc << 8) ^ OGG_CRC_TABLE[((crc >>> 24) ^ b) & 0xff];
+		}
+		bytes[22] = (byte) crc;
+		bytes[23] = (byte) (crc >> 8);
+		bytes[24] = (byte) (crc >> 16);
+		bytes[25] = (byte) (crc >> 24);
+		out.write(bytes);
+	}
+
+	private static void writeIntLE(OutputStream out, int value) throws IOException {
+		out.write(new byte[]{(byte) value, (byte) (value >> 8), (byte) (value >> 16),
+				(byte) (value >> 24)});
+	}
+
+	private static void writeLongLE(OutputStream out, long value) throws IOException {
+		writeIntLE(out, (int) value);
+		writeIntLE(out, (int) (value >> 32));
+	}
+
+}
@@ -0,0 +1,57 @@
+package com.github.hakko.musiccabinet.benchmark;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.integration.Message;
+import org.springframework.integration.core.PollableChannel;
+
+import com.github.hakko.musiccabinet.domain.model.aggr.DirectoryContent;
+
+/*
+ * Channel that counts and drops sent messages, so that benchmarks of a
+ * pipeline stage don't measure queueing of its output.
+ */
+public class CountingChannel implements PollableChannel {
+
+	private final AtomicInteger messages = new AtomicInteger();
+	private final AtomicInteger files = new AtomicInteger();
+
+	@Override
+	public boolean send(Message<?> message) {
+		messages.incrementAndGet();
+		Object payload = message.getPayload();
+		if (payload instanceof DirectoryContent) {
+			files.addAndGet(((DirectoryContent) payload).getFiles().size());
+		}
+		return true;
+	}
+
+	@Override
+	public boolean send(Message<?> message, long timeout) {
+		return send(message);
+	}
+
+	@Override
+	public Message<?> receive() {
+		return null;
+	}
+
+	@Override
+	public Message<?> receive(long timeout) {
+		return null;
+	}
+
+	public int getMessages() {
+		return messages.get();
+	}
+
+	public int getFiles() {
+		return files.get();
+	}
+
+	public void reset() {
+		messages.set(0);
+		files.set(0);
+	}
+
+}
@@ -0,0 +1,106 @@
+package com.github.hakko.musiccabinet.benchmark;
+
+import static com.github.hakko.musiccabinet.dao.jdbc.JdbcLibraryAdditionDao.HEADER_TAG_IMPORT;
+import static com.github.hakko.musiccabinet.dao.jdbc.JdbcLibraryAdditionDao.HEADER_TAG_IMPORT_COLUMNS;
+import static com.github.hakko.musiccabinet.dao.jdbc.JdbcLibraryAdditionDao.HEADER_TAG_IMPORT_TYPES;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.joda.time.DateTime;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.hakko.musiccabinet.benchmark.SyntheticLibrary.SyntheticTrack;
+import com.github.hakko.musiccabinet.dao.jdbc.JdbcLibraryAdditionDao;
+import com.github.hakko.musiccabinet.dao.util.BulkInsertBuffer;
+import com.github.hakko.musiccabinet.domain.model.library.File;
+import com.github.hakko.musiccabinet.domain.model.library.MetaData;
+
+/*
+ * Builds the rows written to import tables for a batch of new files, without
+ * a database: buffering rows the way JdbcLibraryAdditionDao.addFiles() does,
+ * and formatting buffered rows as COPY text, as done when they're flushed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class IngestBatchBenchmark {
+
+	@Param("500")
+	public int artists;
+
+	private Map<String, Set<File>> directories;
+	private CopyTextBuffer headerTagImport;
+
+	/*
+	 * Same layout as header tag rows buffered by JdbcLibraryAdditionDao.
+	 */
+	private static class CopyTextBuffer extends BulkInsertBuffer {
+
+		private CopyTextBuffer() {
+			super(HEADER_TAG_IMPORT, HEADER_TAG_IMPORT_COLUMNS, HEADER_TAG_IMPORT_TYPES);
+		}
+
+		private String copyText() {
+			return toCopyText();
+		}
+
+	}
+
+	@Setup(Level.Trial)
+	public void generateFiles() {
+		long modified = new DateTime(2012, 1, 1, 0, 0).getMillis();
+		directories = new HashMap<>();
+		headerTagImport = new CopyTextBuffer();
+		for (SyntheticTrack track : new SyntheticLibrary().setArtists(artists).generate()) {
+			File file = SyntheticLibrary.toFile("/music", track, modified);
+			Set<File> files = directories.get(file.getDirectory());
+			if (files == null) {
+				directories.put(file.getDirectory(), files = new HashSet<>());
+			}
+			files.add(file);
+
+			MetaData md = file.getMetadata();
+			headerTagImport.add(file.getDirectory(), file.getFilename(),
+					md.getMediaType().getFilesuffix(), md.getBitrate(), md.isVbr(),
+					md.getDuration(), md.getArtist(), md.getAlbumArtist(),
+					md.getComposer(), md.getAlbum(), md.getTitle(), md.getTrackNr(),
+					md.getTrackNrs(), md.getDiscNr(), md.getDiscNrs(), md.getYear(),
+					md.getGenre(), md.getLyrics(), md.isCoverArtEmbedded(),
+					md.getArtistSort(), md.getAlbumArtistSort());
+		}
+	}
+
+	@Benchmark
+	public Object bufferRows() {
+		JdbcLibraryAdditionDao additionDao = new JdbcLibraryAdditionDao();
+		additionDao.setFlushSize(Integer.MAX_VALUE); // never flush, there's no database
+		for (Map.Entry<String, Set<File>> directory : directories.entrySet()) {
+			additionDao.addFiles(directory.getKey(), directory.getValue());
+		}
+		return additionDao;
+	}
+
+	@Benchmark
+	public int copyText() {
+		return headerTagImport.copyText().length();
+	}
+
+}
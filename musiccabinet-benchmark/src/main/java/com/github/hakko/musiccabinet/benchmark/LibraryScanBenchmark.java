@@ -0,0 +1,235 @@
+package com.github.hakko.musiccabinet.benchmark;
+
+import static java.util.Collections.singleton;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.github.hakko.musiccabinet.benchmark.SyntheticLibrary.SyntheticTrack;
+import com.github.hakko.musiccabinet.dao.jdbc.JdbcLibraryAdditionDao;
+import com.github.hakko.musiccabinet.domain.model.library.File;
+import com.github.hakko.musiccabinet.domain.model.music.Artist;
+import com.github.hakko.musiccabinet.service.DatabaseAdministrationService;
+import com.github.hakko.musiccabinet.service.LibraryBrowserService;
+import com.github.hakko.musiccabinet.service.LibraryUpdateService;
+import com.github.hakko.musiccabinet.service.PlaylistGeneratorService;
+import com.github.hakko.musiccabinet.service.library.LibraryScannerService;
+import com.github.hakko.musiccabinet.service.library.PipelineStage;
+
+/*
+ * End-to-end benchmark of adding a large library, against a local PostgreSQL.
+ *
+ * A synthetic library is generated, and added either
+ *  - as files: written to disk, and added through the full offline library
+ *    update (LibraryUpdateService.createSearchIndex), or
+ *  - as import rows: written straight to the import tables, and added to
+ *    library by JdbcLibraryAdditionDao.updateLibrary() (stage_library_import(),
+ *    add_files_to_library() per chunk, and finish_library_import()), skipping
+ *    scanning and tag reading.
+ * Then update_librarytoptracks() and a set of browse queries are run.
+ * Time per phase is reported, to catch queries that don't scale.
+ *
+ * The library in the database is emptied before each run. To not empty a
+ * real library by mistake, the database name must end with -test (the
+ * default, see local.jdbc.properties) unless -Dmusiccabinet.benchmark.force=true.
+ *
+ * java -Dmusiccabinet.jdbc.password=... -cp target/benchmarks.jar \
+ *   com.github.hakko.musiccabinet.benchmark.LibraryScanBenchmark \
+ *   [artists] [tracks] [files|import] [directory]
+ */
+public class LibraryScanBenchmark {
+
+	private final ApplicationContext context;
+	private final JdbcTemplate jdbcTemplate;
+	private final Map<String, Long> phases = new LinkedHashMap<>();
+
+	public LibraryScanBenchmark(ApplicationContext context) {
+		this.context = context;
+		this.jdbcTemplate = context.getBean(JdbcLibraryAdditionDao.class).getJdbcTemplate();
+	}
+
+	public static void main(String[] args) throws Exception {
+		int artists = args.length > 0 ? Integer.parseInt(args[0]) : 50000;
+		int tracks = args.length > 1 ? Integer.parseInt(args[1]) : 500000;
+		boolean asFiles = args.length > 2 && "files".equals(args[2]);
+		Path directory = args.length > 3 ? Paths.get(args[3]) : null;
+
+		ApplicationContext context = new ClassPathXmlApplicationContext("applicationContext.xml");
+		LibraryScanBenchmark benchmark = new LibraryScanBenchmark(context);
+		benchmark.prepareDatabase();
+		benchmark.run(new SyntheticLibrary().setArtists(artists).setTracks(tracks), asFiles, directory);
+		benchmark.report();
+		System.exit(0);
+	}
+
+	public void prepareDatabase() throws Exception {
+		String url = jdbcTemplate.queryForObject("select current_database()", String.class);
+		if (!url.endsWith("-test") && !Boolean.getBoolean("musiccabinet.benchmark.force")) {
+			throw new IllegalStateException("Database " + url + " would be emptied. "
+					+ "Use a -test database, or set -Dmusiccabinet.benchmark.force=true.");
+		}
+		DatabaseAdministrationService dbAdmin = context.getBean(DatabaseAdministrationService.class);
+		if (!dbAdmin.isRDBMSRunning()) {
+			throw new IllegalStateException("PostgreSQL doesn't seem to be running.");
+		}
+		if (!dbAdmin.isDatabaseCreated() || !dbAdmin.isDatabaseUpdated()) {
+			dbAdmin.loadNewDatabaseUpdates();
+		}
+		jdbcTemplate.execute("truncate library.directory cascade");
+		jdbcTemplate.execute("truncate music.artist cascade");
+	}
+
+	public void run(SyntheticLibrary library, boolean asFiles, Path directory) throws Exception {
+		long ms = -System.currentTimeMillis();
+		List<SyntheticTrack> tracks = library.generate();
+		phase("generate " + tracks.size() + " tracks", ms);
+
+		if (asFiles) {
+			Path root = directory != null ? directory : Files.createTempDirectory("musiccabinet-scan");
+			try {
+				ms = -System.currentTimeMillis();
+				library.write(root, 0);
+				phase("write files", ms);
+
+				ms = -System.currentTimeMillis();
+				context.getBean(LibraryUpdateService.class).createSearchIndex(
+						singleton(root.toString()), true, true, false);
+				phase("scan and add to library", ms);
+				for (PipelineStage stage : context.getBean(LibraryScannerService.class).getPipelineStages()) {
+					System.out.println("  " + stage);
+				}
+			} finally {
+				if (directory == null) {
+					SyntheticLibrary.delete(root);
+				}
+			}
+		} else {
+			importRows(tracks, "/benchmark");
+		}
+
+		ms = -System.currentTimeMillis();
+		context.getBean(PlaylistGeneratorService.class).updateSearchIndex();
+		phase("update_librarytoptracks()", ms);
+
+		browse();
+	}
+
+	/*
+	 * Writes tracks to import tables, as a scan would have, and adds them.
+	 */
+	private void importRows(List<SyntheticTrack> tracks, String root) {
+		JdbcLibraryAdditionDao additionDao = context.getBean(JdbcLibraryAdditionDao.class);
+		long modified = System.currentTimeMillis();
+		Map<String, Set<File>> files = new HashMap<>();
+		Map<String, Set<String>> subDirectories = new HashMap<>();
+		for (SyntheticTrack track : tracks) {
+			File file = SyntheticLibrary.toFile(root, track, modified);
+			add(files, file.getDirectory(), file);
+			for (String dir = file.getDirectory(); !dir.equals(root); ) {
+				String parent = new java.io.File(dir).getParent();
+				if (!add(subDirectories, parent, dir)) {
+					break;
+				}
+				dir = parent;
+			}
+		}
+
+		long ms = -System.currentTimeMillis();
+		additionDao.clearImport();
+		additionDao.addSubdirectories(null, singleton(root));
+		for (String directory : subDirectories.keySet()) {
+			additionDao.addSubdirectories(directory, subDirectories.get(directory));
+		}
+		for (String directory : files.keySet()) {
+			additionDao.addFiles(directory, files.get(directory));
+		}
+		phase("write import tables", ms);
+
+		ms = -System.currentTimeMillis();
+		additionDao.updateLibrary();
+		phase("stage_library_import() + add_files_to_library() + finish_library_import()", ms);
+	}
+
+	private <T> boolean add(Map<String, Set<T>> map, String key, T value) {
+		Set<T> set = map.get(key);
+		if (set == null) {
+			map.put(key, set = new HashSet<>());
+		}
+		return set.add(value);
+	}
+
+	/*
+	 * Runs typical queries of browsing a library.
+	 */
+	private void browse() throws Exception {
+		LibraryBrowserService browserService = context.getBean(LibraryBrowserService.class);
+
+		long ms = -System.currentTimeMillis();
+		List<Artist> artists = browserService.getArtists();
+		phase("browse: all artists (" + artists.size() + ")", ms);
+
+		ms = -System.currentTimeMillis();
+		List<Integer> indexes = browserService.getArtistIndexes();
+		for (Integer index : indexes) {
+			browserService.getArtists(index);
+		}
+		phase("browse: artists per index (" + indexes.size() + ")", ms);
+
+		List<Integer> artistIds = new ArrayList<>();
+		for (int i = 0; i < artists.size() && artistIds.size() < 100; i += 1 + artists.size() / 100) {
+			artistIds.add(artists.get(i).getId());
+		}
+		ms = -System.currentTimeMillis();
+		for (Integer artistId : artistIds) {
+			browserService.getAlbums(artistId, true);
+		}
+		phase("browse: albums of " + artistIds.size() + " artists", ms);
+
+		ms = -System.currentTimeMillis();
+		browserService.getVariousArtistsAlbums();
+		phase("browse: various artists albums", ms);
+
+		ms = -System.currentTimeMillis();
+		browserService.getRecentlyAddedAlbums(0, 100, null);
+		phase("browse: recently added albums", ms);
+
+		ms = -System.currentTimeMillis();
+		browserService.getTracks(browserService.getRandomTrackIds(100));
+		phase("browse: 100 random tracks", ms);
+
+		ms = -System.currentTimeMillis();
+		browserService.getStatistics();
+		phase("browse: statistics", ms);
+	}
+
+	private void phase(String name, long ms) {
+		ms += System.currentTimeMillis();
+		phases.put(name, ms);
+		System.out.println(name + ": " + ms + " ms");
+	}
+
+	public void report() {
+		System.out.println();
+		System.out.println(String.format("%-75s %10s", "Phase", "ms"));
+		for (String phase : phases.keySet()) {
+			System.out.println(String.format("%-75s %10d", phase, phases.get(phase)));
+		}
+	}
+
+	public Map<String, Long> getPhases() {
+		return phases;
+	}
+
+}
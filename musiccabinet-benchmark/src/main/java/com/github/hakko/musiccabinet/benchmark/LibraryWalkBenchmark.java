@@ -0,0 +1,75 @@
+package com.github.hakko.musiccabinet.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.hakko.musiccabinet.io.LibraryScanner;
+import com.github.hakko.musiccabinet.io.ParallelLibraryScanner;
+
+/*
+ * Walks a generated library on disk, the way a library scan starts out.
+ *
+ * Measures directory traversal and file attribute reads only, as found
+ * directories are counted and dropped rather than passed on. After the first
+ * iteration, file system metadata is cached by the OS, so this measures the
+ * scanner rather than the disk.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class LibraryWalkBenchmark {
+
+	@Param("500")
+	public int artists;
+
+	@Param("4")
+	public int threads;
+
+	private Path root;
+	private CountingChannel channel = new CountingChannel();
+
+	@Setup(Level.Trial)
+	public void writeLibrary() throws IOException {
+		root = Files.createTempDirectory("musiccabinet-walk");
+		new SyntheticLibrary().setArtists(artists).write(root, 0);
+	}
+
+	@TearDown(Level.Trial)
+	public void deleteLibrary() throws IOException {
+		SyntheticLibrary.delete(root);
+	}
+
+	@Benchmark
+	public int sequentialWalk() throws IOException {
+		channel.reset();
+		Files.walkFileTree(root, new LibraryScanner(channel));
+		return channel.getFiles();
+	}
+
+	@Benchmark
+	public int parallelWalk() throws IOException {
+		channel.reset();
+		new ParallelLibraryScanner(channel, threads).scan(root);
+		return channel.getFiles();
+	}
+
+}
@@ -0,0 +1,86 @@
+package com.github.hakko.musiccabinet.benchmark;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.joda.time.DateTime;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.hakko.musiccabinet.benchmark.SyntheticLibrary.SyntheticTrack;
+import com.github.hakko.musiccabinet.domain.model.library.File;
+import com.github.hakko.musiccabinet.service.library.LibraryUtil;
+
+/*
+ * Compares found files against stored files, as LibraryPresenceService does
+ * per directory, using File equality and hash codes.
+ *
+ * Files are generated in memory. A share of found files is changed (new
+ * modification time), so the diff has both matches and differences.
+ * copySets measures the set copies alone, to tell diff cost apart.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PresenceDiffBenchmark {
+
+	@Param("2000")
+	public int artists;
+
+	@Param("0.05")
+	public double changedRatio;
+
+	private List<File> storedFiles;
+	private List<File> foundFiles;
+
+	@Setup(Level.Trial)
+	public void generateFiles() {
+		long modified = new DateTime(2012, 1, 1, 0, 0).getMillis();
+		List<SyntheticTrack> tracks = new SyntheticLibrary().setArtists(artists).generate();
+		storedFiles = new ArrayList<>(tracks.size());
+		foundFiles = new ArrayList<>(tracks.size());
+		int changeEvery = changedRatio <= 0 ? Integer.MAX_VALUE : (int) (1 / changedRatio);
+		for (int i = 0; i < tracks.size(); i++) {
+			storedFiles.add(SyntheticLibrary.toFile("/music", tracks.get(i), modified));
+			foundFiles.add(SyntheticLibrary.toFile("/music", tracks.get(i),
+					i % changeEvery == 0 ? modified + 1000 : modified));
+		}
+	}
+
+	@Benchmark
+	public int copySets() {
+		Set<File> stored = new HashSet<>(storedFiles);
+		Set<File> found = new HashSet<>(foundFiles);
+		return stored.size() + found.size();
+	}
+
+	@Benchmark
+	public int diff() {
+		Set<File> stored = new HashSet<>(storedFiles);
+		Set<File> found = new HashSet<>(foundFiles);
+		LibraryUtil.removeIntersection(stored, found);
+		return stored.size() + found.size();
+	}
+
+	@Benchmark
+	public boolean equalSets() {
+		return new HashSet<>(storedFiles).equals(new HashSet<>(foundFiles));
+	}
+
+}
@@ -0,0 +1,241 @@
+package com.github.hakko.musiccabinet.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.commons.io.FileUtils;
+import org.joda.time.DateTime;
+
+import com.github.hakko.musiccabinet.domain.model.library.File;
+import com.github.hakko.musiccabinet.domain.model.library.MetaData;
+import com.github.hakko.musiccabinet.domain.model.library.MetaData.Mediatype;
+
+/*
+ * Generates a music library of given size, with names and structure similar
+ * to a real one: artist/album/track layout, multi-disc albums, compilations
+ * by various artists, a long tail of artists with a single album, and names
+ * with non-ASCII characters.
+ *
+ * Generation is deterministic for a given seed, so runs can be compared.
+ */
+public class SyntheticLibrary {
+
+	public enum Format { MP3, FLAC, OGG }
+
+	private static final String[] WORDS = {
+		"Black", "Silver", "Moon", "River", "Ghost", "Electric", "Velvet", "Summer",
+		"Midnight", "Golden", "Broken", "Wild", "Paper", "Glass", "Neon", "Ocean",
+		"Fire", "Winter", "Stone", "Echo", "Crystal", "Shadow", "Northern", "Lost",
+		"Sweet", "Blue", "Red", "Dream", "Machine", "Heart", "Thunder", "Garden",
+		"Björk", "Sigur", "Fjörd", "Mötley", "Café", "Señor", "Zoë", "Ångström"
+	};
+
+	private static final String[] GENRES = {
+		"Rock", "Pop", "Electronic", "Jazz", "Hip-Hop", "Folk", "Metal", "Classical",
+		"Indie", "Soul", "Blues", "Ambient", "Punk", "Reggae", "Country"
+	};
+
+	private static final String VARIOUS_ARTISTS = "Various Artists";
+
+	private int artists = 100;
+	private int totalTracks = 0; // no limit
+	private int albumsPerArtist = 3;
+	private int tracksPerAlbum = 11;
+	private double compilationRatio = 0.05;
+	private Format[] formats = Format.values();
+	private long seed = 1L;
+
+	/*
+	 * A generated track, with the tags it's written with, and its path
+	 * relative to library root.
+	 */
+	public static class SyntheticTrack {
+		public String path;
+		public Format format;
+		public String artist;
+		public String albumArtist;
+		public String album;
+		public String title;
+		public String genre;
+		public String composer;
+		public int trackNr, trackNrs, discNr, discNrs, year, duration;
+	}
+
+	/*
+	 * Returns the tracks of library. Album count per artist and track count
+	 * per album vary around the configured averages. If a track count is set,
+	 * albums per artist is derived from it, and generation stops once reached.
+	 */
+	public List<SyntheticTrack> generate() {
+		Random random = new Random(seed);
+		int albumsPerArtist = this.albumsPerArtist;
+		int tracksPerAlbum = this.tracksPerAlbum;
+		if (totalTracks > 0) {
+			// expected albums per artist is (2 + albumsPerArtist + 0.5) / 3, and
+			// expected tracks per album is tracksPerAlbum, plus 1/12 double albums
+			double albums = totalTracks / (artists * tracksPerAlbum * 13 / 12.0);
+			albumsPerArtist = Math.max(1, (int) Math.round(3 * albums - 2.5));
+			if (albums < 3.5 / 3) {
+				tracksPerAlbum = Math.max(1, (int) Math.round(tracksPerAlbum * albums * 3 / 3.5));
+			}
+		}
+		int maxTracks = totalTracks > 0 ? totalTracks : Integer.MAX_VALUE;
+		List<SyntheticTrack> tracks = new ArrayList<>();
+		for (int artistNr = 0; artistNr < artists && tracks.size() < maxTracks; artistNr++) {
+			String artist = name(random, artistNr, random.nextInt(10) == 0 ? "The " : "");
+			String genre = GENRES[random.nextInt(GENRES.length)];
+			// long tail: most artists have one album, a few have many
+			int albums = random.nextInt(3) == 0 ? 1 + random.nextInt(2 * albumsPerArtist) : 1;
+			for (int albumNr = 0; albumNr < albums; albumNr++) {
+				boolean isCompilation = random.nextDouble() < compilationRatio;
+				String albumArtist = isCompilation ? VARIOUS_ARTISTS : artist;
+				String album = name(random, artistNr * 31 + albumNr, "");
+				int year = 1960 + random.nextInt(55);
+				int discs = random.nextInt(12) == 0 ? 2 : 1;
+				int tracksPerDisc = Math.max(1, tracksPerAlbum / 2 + random.nextInt(tracksPerAlbum + 1));
+				Format format = formats[random.nextInt(formats.length)];
+				for (int discNr = 1; discNr <= discs; discNr++) {
+					for (int trackNr = 1; trackNr <= tracksPerDisc && tracks.size() < maxTracks; trackNr++) {
+						SyntheticTrack track = new SyntheticTrack();
+						track.format = format;
+						track.artist = isCompilation ? name(random, random.nextInt(artists), "") : artist;
+						track.albumArtist = albumArtist;
+						track.album = album;
+						track.title = name(random, random.nextInt(), "") + (random.nextInt(20) == 0
+								? " (feat. " + name(random, random.nextInt(artists), "") + ")" : "");
+						track.genre = genre;
+						track.composer = random.nextInt(4) == 0 ? name(random, random.nextInt(), "") : null;
+						track.trackNr = trackNr;
+						track.trackNrs = tracksPerDisc;
+						track.discNr = discNr;
+						track.discNrs = discs;
+						track.year = year;
+						track.duration = 90 + random.nextInt(360);
+						track.path = clean(albumArtist) + "/" + clean(album) + " (" + year + ")"
+								+ (discs > 1 ? "/CD" + discNr : "") + "/"
+								+ String.format("%02d - %s.%s", trackNr, clean(track.title),
+										format.name().toLowerCase());
+						tracks.add(track);
+					}
+				}
+			}
+		}
+		return tracks;
+	}
+
+	/*
+	 * Writes library to root directory, and returns written tracks. Files are
+	 * given modification times in the past, like an existing library.
+	 */
+	public List<SyntheticTrack> write(Path root, int audioSeconds) throws IOException {
+		List<SyntheticTrack> tracks = generate();
+		long modified = System.currentTimeMillis() - 365L * 24 * 3600 * 1000;
+		for (SyntheticTrack track : tracks) {
+			Path file = root.resolve(track.path);
+			Files.createDirectories(file.getParent());
+			AudioFixtures.write(file, track, audioSeconds);
+			Files.setLastModifiedTime(file, FileTime.fromMillis(modified));
+		}
+		return tracks;
+	}
+
+	/*
+	 * Returns track as a library file below root, with the meta-data it would
+	 * be read with, without it having to be written.
+	 */
+	public static File toFile(String root, SyntheticTrack track, long modified) {
+		java.io.File ioFile = new java.io.File(root, track.path);
+		File file = new File(ioFile.getParent(), ioFile.getName(), new DateTime(modified),
+				4096 + track.duration * 16000);
+		file.setMetaData(toMetaData(track));
+		return file;
+	}
+
+	public static MetaData toMetaData(SyntheticTrack track) {
+		MetaData metaData = new MetaData();
+		metaData.setMediaType(Mediatype.valueOf(track.format.name()));
+		metaData.setArtist(track.artist);
+		metaData.setAlbumArtist(track.albumArtist);
+		metaData.setAlbum(track.album);
+		metaData.setTitle(track.title);
+		metaData.setGenre(track.genre);
+		metaData.setComposer(track.composer);
+		metaData.setTrackNr((short) track.trackNr);
+		metaData.setTrackNrs((short) track.trackNrs);
+		metaData.setDiscNr((short) track.discNr);
+		metaData.setDiscNrs((short) track.discNrs);
+		metaData.setYear((short) track.year);
+		metaData.setBitrate((short) 128);
+		metaData.setDuration((short) track.duration);
+		return metaData;
+	}
+
+	public static void delete(Path root) throws IOException {
+		FileUtils.deleteDirectory(root.toFile());
+	}
+
+	private String name(Random random, int nr, String prefix) {
+		Random words = new Random(nr);
+		StringBuilder sb = new StringBuilder(prefix);
+		int length = 1 + words.nextInt(3);
+		for (int i = 0; i < length; i++) {
+			if (i > 0) {
+				sb.append(' ');
+			}
+			sb.append(WORDS[words.nextInt(WORDS.length)]);
+		}
+		// numbers keep names unique across a large library
+		if (random.nextInt(4) != 0) {
+			sb.append(' ').append(Math.abs(nr % 1000));
+		}
+		return sb.toString();
+	}
+
+	private String clean(String name) {
+		return name.replaceAll("[/\\\\:*?\"<>|]", "_");
+	}
+
+	public SyntheticLibrary setArtists(int artists) {
+		this.artists = artists;
+		return this;
+	}
+
+	/*
+	 * Total number of tracks, or 0 to have it follow from albums per artist.
+	 */
+	public SyntheticLibrary setTracks(int totalTracks) {
+		this.totalTracks = totalTracks;
+		return this;
+	}
+
+	public SyntheticLibrary setAlbumsPerArtist(int albumsPerArtist) {
+		this.albumsPerArtist = albumsPerArtist;
+		return this;
+	}
+
+	public SyntheticLibrary setTracksPerAlbum(int tracksPerAlbum) {
+		this.tracksPerAlbum = tracksPerAlbum;
+		return this;
+	}
+
+	public SyntheticLibrary setCompilationRatio(double compilationRatio) {
+		this.compilationRatio = compilationRatio;
+		return this;
+	}
+
+	public SyntheticLibrary setFormats(Format... formats) {
+		this.formats = formats;
+		return this;
+	}
+
+	public SyntheticLibrary setSeed(long seed) {
+		this.seed = seed;
+		return this;
+	}
+
+}
@@ -0,0 +1,87 @@
+package com.github.hakko.musiccabinet.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.hakko.musiccabinet.benchmark.SyntheticLibrary.Format;
+import com.github.hakko.musiccabinet.benchmark.SyntheticLibrary.SyntheticTrack;
+import com.github.hakko.musiccabinet.domain.model.library.File;
+import com.github.hakko.musiccabinet.io.HeaderTagReader;
+import com.github.hakko.musiccabinet.service.library.AudioTagService;
+
+/*
+ * Reads meta-data of generated files through AudioTagService.updateMetadata(),
+ * per format, with and without HeaderTagReader. The tag cache is not used.
+ *
+ * Score is time per file.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TagReadBenchmark {
+
+	@Param({"MP3", "FLAC", "OGG"})
+	public Format format;
+
+	@Param({"true", "false"})
+	public boolean headerTagReader;
+
+	@Param("50")
+	public int artists;
+
+	private Path root;
+	private List<File> files;
+	private AudioTagService audioTagService;
+	private int next;
+
+	@Setup(Level.Trial)
+	public void writeLibrary() throws IOException {
+		root = Files.createTempDirectory("musiccabinet-tags");
+		files = new ArrayList<>();
+		for (SyntheticTrack track : new SyntheticLibrary().setArtists(artists)
+				.setFormats(format).write(root, 4)) {
+			Path path = root.resolve(track.path);
+			files.add(new File(path, Files.readAttributes(path, BasicFileAttributes.class)));
+		}
+		audioTagService = new AudioTagService();
+		if (headerTagReader) {
+			audioTagService.setHeaderTagReader(new HeaderTagReader());
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void deleteLibrary() throws IOException {
+		SyntheticLibrary.delete(root);
+	}
+
+	@Benchmark
+	public Object updateMetadata() {
+		File file = files.get(next++ % files.size());
+		file.setMetaData(null);
+		audioTagService.updateMetadata(file);
+		return file.getMetadata();
+	}
+
+}
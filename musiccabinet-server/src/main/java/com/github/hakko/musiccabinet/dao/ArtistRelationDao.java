@@ -1,6 +1,7 @@
 package com.github.hakko.musiccabinet.dao;
 
 import java.util.List;
+import java.util.Map;
 
 import com.github.hakko.musiccabinet.domain.model.music.Artist;
 import com.github.hakko.musiccabinet.domain.model.music.ArtistRelation;
@@ -8,6 +9,7 @@ import com.github.hakko.musiccabinet.domain.model.music.ArtistRelation;
 public interface ArtistRelationDao {
 
 	void createArtistRelations(Artist sourceArtist, List<ArtistRelation> artistRelations);
+	void createArtistRelations(Map<Artist, List<ArtistRelation>> artistRelations);
 	List<ArtistRelation> getArtistRelations(Artist sourceArtist);
 	
 }
\ No newline at end of file
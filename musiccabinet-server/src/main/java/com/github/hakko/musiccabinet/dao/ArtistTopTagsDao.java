@@ -1,6 +1,7 @@
 package com.github.hakko.musiccabinet.dao;
 
 import java.util.List;
+import java.util.Map;
 
 import com.github.hakko.musiccabinet.domain.model.music.Artist;
 import com.github.hakko.musiccabinet.domain.model.music.Tag;
@@ -8,6 +9,7 @@ import com.github.hakko.musiccabinet.domain.model.music.Tag;
 public interface ArtistTopTagsDao {
 
 	void createTopTags(Artist artist, List<Tag> tags);
+	void createTopTags(Map<Artist, List<Tag>> topTags);
 	List<Tag> getTopTags(int artistId);
 	List<Tag> getTopTags(int artistId, int limit);
 	
@@ -1,6 +1,7 @@
 package com.github.hakko.musiccabinet.dao;
 
 import java.util.List;
+import java.util.Map;
 
 import com.github.hakko.musiccabinet.domain.model.music.Artist;
 import com.github.hakko.musiccabinet.domain.model.music.Track;
@@ -8,6 +9,7 @@ import com.github.hakko.musiccabinet.domain.model.music.Track;
 public interface ArtistTopTracksDao {
 
 	void createTopTracks(Artist artist, List<Track> topTracks);
+	void createTopTracks(Map<Artist, List<Track>> topTracks);
 	List<Track> getTopTracks(Artist artist);
 	List<Track> getTopTracks(int artistId);
 
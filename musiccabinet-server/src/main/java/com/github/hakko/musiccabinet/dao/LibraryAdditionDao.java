@@ -2,15 +2,30 @@ package com.github.hakko.musiccabinet.dao;
 
 import java.util.Set;
 
+import org.joda.time.DateTime;
+
+import com.github.hakko.musiccabinet.domain.model.aggr.DirectoryContent;
+import com.github.hakko.musiccabinet.domain.model.aggr.SearchIndexUpdateProgress;
 import com.github.hakko.musiccabinet.domain.model.library.File;
 
 public interface LibraryAdditionDao {
 
 	void clearImport();
 
+	Set<String> getScanRootPaths();
+	void setScanRootPaths(Set<String> rootPaths);
+	Set<String> getCheckpoint();
+	void clearUncheckpointedImport();
+
+	void addDirectoryContent(DirectoryContent content);
 	void addSubdirectories(String directory, Set<String> subDirectories);
 	void addFiles(String directory, Set<File> files);
+	void addModified(String directory, DateTime modified);
 	
 	void updateLibrary();
+	void updateLibraryContent();
+	void updateLibrarySummary();
+	
+	SearchIndexUpdateProgress getUpdateProgress();
 	
 }
\ No newline at end of file
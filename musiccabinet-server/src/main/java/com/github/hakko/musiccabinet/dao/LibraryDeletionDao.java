@@ -10,7 +10,9 @@ public interface LibraryDeletionDao {
 
 	void deleteSubdirectories(String directory, Set<String> subDirectories);
 	void deleteFiles(String directory, Set<File> files);
+	void moveFiles(String directory, Set<File> movedFiles);
 	
 	void updateLibrary();
+	void updateLibraryContent();
 
 }
\ No newline at end of file
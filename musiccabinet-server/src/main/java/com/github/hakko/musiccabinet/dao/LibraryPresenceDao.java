@@ -3,6 +3,7 @@ package com.github.hakko.musiccabinet.dao;
 import java.util.List;
 import java.util.Set;
 
+import com.github.hakko.musiccabinet.domain.model.aggr.LibrarySnapshot;
 import com.github.hakko.musiccabinet.domain.model.library.File;
 
 public interface LibraryPresenceDao {
@@ -11,5 +12,6 @@ public interface LibraryPresenceDao {
 	Set<String> getSubdirectories(String directory);
 	Set<File> getFiles(String directory);
 	List<String> getRootDirectories();
-	
+	LibrarySnapshot getLibrarySnapshot();
+
 }
\ No newline at end of file
@@ -4,6 +4,7 @@ import java.util.List;
 
 import com.github.hakko.musiccabinet.domain.model.library.WebserviceInvocation;
 import com.github.hakko.musiccabinet.domain.model.library.WebserviceInvocation.Calltype;
+import com.github.hakko.musiccabinet.domain.model.music.Album;
 
 public interface WebserviceHistoryDao {
 
@@ -11,6 +12,9 @@ public interface WebserviceHistoryDao {
 	// (to prevent the same question to be asked again shortly)
 	void logWebserviceInvocation(WebserviceInvocation webserviceInvocation);
 
+	// Log a number of WebserviceInvocations, as having happened now.
+	void logWebserviceInvocations(List<WebserviceInvocation> webserviceInvocations);
+
 	// Log that a certain WebserviceInvocation happened,
 	// but failed in a way that couldn't be recovered (not just temporary
 	// offline or so, probably a weird artist tag with loads of guest artists etc).
@@ -29,5 +33,12 @@ public interface WebserviceHistoryDao {
 
 	List<String> getArtistNamesWithNoInvocations(Calltype callType);
 	List<String> getArtistNamesWithOldestInvocations(Calltype callType);
+
+	// Artists in library for which invocations of callType are not allowed,
+	// as they've been made too recently (or are quarantined or blocked).
+	List<String> getArtistNamesWithRecentInvocations(Calltype callType);
+
+	// Albums in library for which invocations of callType are not allowed.
+	List<Album> getAlbumsWithRecentInvocations(Calltype callType);
 	
 }
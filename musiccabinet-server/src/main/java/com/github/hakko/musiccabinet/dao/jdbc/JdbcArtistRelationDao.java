@@ -3,7 +3,10 @@ package com.github.hakko.musiccabinet.dao.jdbc;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Types;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.sql.DataSource;
 
@@ -24,9 +27,26 @@ public class JdbcArtistRelationDao implements ArtistRelationDao, JdbcTemplateDao
 
 	@Override
 	public void createArtistRelations(Artist sourceArtist, List<ArtistRelation> artistRelations) {
-		if (artistRelations.size() > 0) {
+		createArtistRelations(Collections.singletonMap(sourceArtist, artistRelations));
+	}
+
+	/*
+	 * Imports relations of several source artists at once, with a single call
+	 * to update_artistrelation().
+	 */
+	@Override
+	public void createArtistRelations(Map<Artist, List<ArtistRelation>> artistRelations) {
+		Map<Integer, List<ArtistRelation>> sourceArtistRelations = new LinkedHashMap<>();
+		for (Artist sourceArtist : artistRelations.keySet()) {
+			if (artistRelations.get(sourceArtist).size() > 0) {
+				sourceArtistRelations.put(jdbcTemplate.queryForInt(
+						"select * from music.get_artist_id(?)", sourceArtist.getName()),
+						artistRelations.get(sourceArtist));
+			}
+		}
+		if (sourceArtistRelations.size() > 0) {
 			clearImportTable();
-			batchInsert(sourceArtist, artistRelations);
+			batchInsert(sourceArtistRelations);
 			updateLibrary();
 		}
 	}
@@ -35,10 +55,7 @@ public class JdbcArtistRelationDao implements ArtistRelationDao, JdbcTemplateDao
 		jdbcTemplate.execute("truncate music.artistrelation_import");
 	}
 
-	private void batchInsert(Artist sourceArtist, List<ArtistRelation> ArtistRelations) {
-		int sourceArtistId = jdbcTemplate.queryForInt("select * from music.get_artist_id(?)",
-				sourceArtist.getName());
-
+	private void batchInsert(Map<Integer, List<ArtistRelation>> sourceArtistRelations) {
 		String sql = "insert into music.artistrelation_import (source_id, target_artist_name, weight) values (?,?,?)";
 		BatchSqlUpdate batchUpdate = new BatchSqlUpdate(jdbcTemplate.getDataSource(), sql);
 		batchUpdate.setBatchSize(1000);
@@ -46,9 +63,11 @@ public class JdbcArtistRelationDao implements ArtistRelationDao, JdbcTemplateDao
 		batchUpdate.declareParameter(new SqlParameter("target_artist_name", Types.VARCHAR));
 		batchUpdate.declareParameter(new SqlParameter("weight", Types.FLOAT));
 
-		for (ArtistRelation ar : ArtistRelations) {
-			batchUpdate.update(new Object[]{
-					sourceArtistId, ar.getTarget().getName(), ar.getMatch()});
+		for (int sourceArtistId : sourceArtistRelations.keySet()) {
+			for (ArtistRelation ar : sourceArtistRelations.get(sourceArtistId)) {
+				batchUpdate.update(new Object[]{
+						sourceArtistId, ar.getTarget().getName(), ar.getMatch()});
+			}
 		}
 		batchUpdate.flush();
 	}
@@ -3,7 +3,10 @@ package com.github.hakko.musiccabinet.dao.jdbc;
 import static java.lang.String.format;
 
 import java.sql.Types;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.sql.DataSource;
 
@@ -24,9 +27,26 @@ public class JdbcArtistTopTagsDao implements ArtistTopTagsDao, JdbcTemplateDao {
 
 	@Override
 	public void createTopTags(Artist artist, List<Tag> tags) {
-		if (tags.size() > 0) {
+		createTopTags(Collections.singletonMap(artist, tags));
+	}
+
+	/*
+	 * Replaces top tags of several artists at once, with a single call to
+	 * update_artisttoptag(). Artists without top tags are left as is.
+	 */
+	@Override
+	public void createTopTags(Map<Artist, List<Tag>> topTags) {
+		Map<Integer, List<Tag>> artistTopTags = new LinkedHashMap<>();
+		for (Artist artist : topTags.keySet()) {
+			if (topTags.get(artist).size() > 0) {
+				artistTopTags.put(jdbcTemplate.queryForInt(
+						"select * from music.get_artist_id(?)", artist.getName()),
+						topTags.get(artist));
+			}
+		}
+		if (artistTopTags.size() > 0) {
 			clearImportTable();
-			batchInsert(artist, tags);
+			batchInsert(artistTopTags);
 			updateTopTags();
 		}
 	}
@@ -35,10 +55,7 @@ public class JdbcArtistTopTagsDao implements ArtistTopTagsDao, JdbcTemplateDao {
 		jdbcTemplate.execute("truncate music.artisttoptag_import");
 	}
 
-	private void batchInsert(Artist artist, List<Tag> tags) {
-		int sourceArtistId = jdbcTemplate.queryForInt(
-				"select * from music.get_artist_id(?)", artist.getName());
-
+	private void batchInsert(Map<Integer, List<Tag>> artistTopTags) {
 		String sql = "insert into music.artisttoptag_import (artist_id, tag_name, tag_count) values (?,?,?)";
 		BatchSqlUpdate batchUpdate = new BatchSqlUpdate(jdbcTemplate.getDataSource(), sql);
 		batchUpdate.setBatchSize(1000);
@@ -46,8 +63,10 @@ public class JdbcArtistTopTagsDao implements ArtistTopTagsDao, JdbcTemplateDao {
 		batchUpdate.declareParameter(new SqlParameter("tag_name", Types.VARCHAR));
 		batchUpdate.declareParameter(new SqlParameter("tag_count", Types.SMALLINT));
 
-		for (Tag tag : tags) {
-			batchUpdate.update(new Object[]{sourceArtistId, tag.getName(), tag.getCount()});
+		for (int artistId : artistTopTags.keySet()) {
+			for (Tag tag : artistTopTags.get(artistId)) {
+				batchUpdate.update(new Object[]{artistId, tag.getName(), tag.getCount()});
+			}
 		}
 		batchUpdate.flush();
 	}
@@ -1,7 +1,10 @@
 package com.github.hakko.musiccabinet.dao.jdbc;
 
 import java.sql.Types;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.sql.DataSource;
 
@@ -21,9 +24,26 @@ public class JdbcArtistTopTracksDao implements ArtistTopTracksDao, JdbcTemplateD
 
 	@Override
 	public void createTopTracks(Artist artist, List<Track> topTracks) {
-		if (topTracks.size() > 0) {
+		createTopTracks(Collections.singletonMap(artist, topTracks));
+	}
+
+	/*
+	 * Replaces top tracks of several artists at once, with a single call to
+	 * update_artisttoptrack(). Artists without top tracks are left as is.
+	 */
+	@Override
+	public void createTopTracks(Map<Artist, List<Track>> topTracks) {
+		Map<Integer, List<Track>> artistTopTracks = new LinkedHashMap<>();
+		for (Artist artist : topTracks.keySet()) {
+			if (topTracks.get(artist).size() > 0) {
+				artistTopTracks.put(jdbcTemplate.queryForInt(
+						"select * from music.get_artist_id(?)", artist.getName()),
+						topTracks.get(artist));
+			}
+		}
+		if (artistTopTracks.size() > 0) {
 			clearImportTable();
-			batchInsert(artist, topTracks);
+			batchInsert(artistTopTracks);
 			updateTopTracks();
 		}
 	}
@@ -32,10 +52,7 @@ public class JdbcArtistTopTracksDao implements ArtistTopTracksDao, JdbcTemplateD
 		jdbcTemplate.execute("truncate music.artisttoptrack_import");
 	}
 
-	private void batchInsert(Artist artist, List<Track> topTracks) {
-		int sourceArtistId = jdbcTemplate.queryForInt(
-				"select * from music.get_artist_id(?)", artist.getName());
-		
+	private void batchInsert(Map<Integer, List<Track>> artistTopTracks) {
 		String sql = "insert into music.artisttoptrack_import (artist_id, track_name, rank) values (?,?,?)";
 		BatchSqlUpdate batchUpdate = new BatchSqlUpdate(jdbcTemplate.getDataSource(), sql);
 		batchUpdate.setBatchSize(1000);
@@ -43,9 +60,11 @@ public class JdbcArtistTopTracksDao implements ArtistTopTracksDao, JdbcTemplateD
 		batchUpdate.declareParameter(new SqlParameter("track_name", Types.VARCHAR));
 		batchUpdate.declareParameter(new SqlParameter("rank", Types.SMALLINT));
 		
-		short rank = 0;
-		for (Track t : topTracks) {
-			batchUpdate.update(new Object[]{sourceArtistId, t.getName(), ++rank});
+		for (int artistId : artistTopTracks.keySet()) {
+			short rank = 0;
+			for (Track t : artistTopTracks.get(artistId)) {
+				batchUpdate.update(new Object[]{artistId, t.getName(), ++rank});
+			}
 		}
 		batchUpdate.flush();
 	}
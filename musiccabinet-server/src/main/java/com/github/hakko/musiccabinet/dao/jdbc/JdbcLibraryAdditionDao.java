@@ -1,15 +1,28 @@
 package com.github.hakko.musiccabinet.dao.jdbc;
 
-import java.sql.Types;
+import static java.sql.Types.BOOLEAN;
+import static java.sql.Types.INTEGER;
+import static java.sql.Types.SMALLINT;
+import static java.sql.Types.TIMESTAMP;
+import static java.sql.Types.VARCHAR;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 import javax.sql.DataSource;
 
+import org.joda.time.DateTime;
 import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.jdbc.core.SqlParameter;
-import org.springframework.jdbc.object.BatchSqlUpdate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 
 import com.github.hakko.musiccabinet.dao.LibraryAdditionDao;
+import com.github.hakko.musiccabinet.dao.util.BulkInsertBuffer;
+import com.github.hakko.musiccabinet.domain.model.aggr.DirectoryContent;
+import com.github.hakko.musiccabinet.domain.model.aggr.SearchIndexUpdateProgress;
 import com.github.hakko.musiccabinet.domain.model.library.File;
 import com.github.hakko.musiccabinet.domain.model.library.MetaData;
 import com.github.hakko.musiccabinet.log.Logger;
@@ -17,99 +30,285 @@ import com.github.hakko.musiccabinet.log.Logger;
 public class JdbcLibraryAdditionDao implements LibraryAdditionDao, JdbcTemplateDao {
 
 	private JdbcTemplate jdbcTemplate;
+
+	/*
+	 * Layout of header tag rows, as added by addMetadata() (also used by
+	 * IngestBatchBenchmark).
+	 */
+	public static final String HEADER_TAG_IMPORT = "library.file_headertag_import";
+	public static final String[] HEADER_TAG_IMPORT_COLUMNS = {"path", "filename",
+		"extension", "bitrate", "vbr", "duration",
+		"artist_name", "album_artist_name", "composer_name", "album_name",
+		"track_name", "track_nr", "track_nrs", "disc_nr", "disc_nrs", "year",
+		"tag_name", "lyrics", "coverart", "artistsort_name", "albumartistsort_name"};
+	public static final int[] HEADER_TAG_IMPORT_TYPES = {VARCHAR, VARCHAR,
+		VARCHAR, SMALLINT, BOOLEAN, SMALLINT,
+		VARCHAR, VARCHAR, VARCHAR, VARCHAR,
+		VARCHAR, SMALLINT, SMALLINT, SMALLINT, SMALLINT, SMALLINT,
+		VARCHAR, VARCHAR, BOOLEAN, VARCHAR, VARCHAR};
 	
 	private static final Logger LOG = Logger.getLogger(JdbcLibraryAdditionDao.class);
 
+	/*
+	 * Rows are buffered across directories, and written to the import
+	 * tables (using COPY, unless disabled) once flushSize rows are pending,
+	 * or when the library is about to be updated.
+	 */
+	private int flushSize = 5000;
+	private boolean useCopy = true;
+
+	/*
+	 * Imported files are added to library in chunks of about chunkSize files
+	 * (whole directories, ordered by path), each in its own transaction. Until
+	 * all chunks are added, remaining files are kept in pending import tables.
+	 */
+	private int chunkSize = 10000;
+
+	private SearchIndexUpdateProgress progress = 
+			new SearchIndexUpdateProgress("chunks of new files added to library");
+
+	private final BulkInsertBuffer directoryImport = new BulkInsertBuffer(
+			"library.directory_import",
+			new String[]{"parent_path", "path"},
+			new int[]{VARCHAR, VARCHAR});
+
+	private final BulkInsertBuffer fileImport = new BulkInsertBuffer(
+			"library.file_import",
+			new String[]{"path", "filename", "modified", "size"},
+			new int[]{VARCHAR, VARCHAR, TIMESTAMP, INTEGER});
+
+	private final BulkInsertBuffer directoryModifiedImport = new BulkInsertBuffer(
+			"library.directory_modified_import",
+			new String[]{"path", "modified"},
+			new int[]{VARCHAR, TIMESTAMP});
+
+	private final BulkInsertBuffer scanCheckpoint = new BulkInsertBuffer(
+			"library.scan_checkpoint",
+			new String[]{"path"},
+			new int[]{VARCHAR});
+
+	private final BulkInsertBuffer headerTagImport = new BulkInsertBuffer(
+			HEADER_TAG_IMPORT, HEADER_TAG_IMPORT_COLUMNS, HEADER_TAG_IMPORT_TYPES);
+
 	@Override
-	public void clearImport() {
+	public synchronized void clearImport() {
+		if (jdbcTemplate.queryForInt("select count(*) from library.file_import_pending") > 0) {
+			LOG.info("Resuming interrupted library update.");
+			addPendingFiles();
+		}
+		directoryImport.clear();
+		directoryModifiedImport.clear();
+		fileImport.clear();
+		headerTagImport.clear();
+		scanCheckpoint.clear();
 		jdbcTemplate.execute("truncate library.directory_import");
+		jdbcTemplate.execute("truncate library.directory_modified_import");
 		jdbcTemplate.execute("truncate library.file_import");
 		jdbcTemplate.execute("truncate library.file_headertag_import");
+		jdbcTemplate.execute("truncate library.scan_checkpoint");
+		jdbcTemplate.execute("truncate library.scan_root");
 	}
 
 	@Override
-	public void addSubdirectories(String directory, Set<String> subDirectories) {
+	public Set<String> getScanRootPaths() {
+		return new HashSet<>(jdbcTemplate.queryForList(
+				"select path from library.scan_root", String.class));
+	}
 
-		String sql = "insert into library.directory_import (parent_path, path) values (?,?)";
-		BatchSqlUpdate batchUpdate = new BatchSqlUpdate(jdbcTemplate.getDataSource(), sql);
-		batchUpdate.declareParameter(new SqlParameter("parent_path", Types.VARCHAR));
-		batchUpdate.declareParameter(new SqlParameter("path", Types.VARCHAR));
-		
-		for (String subDirectory : subDirectories) {
-			batchUpdate.update(new Object[]{directory, subDirectory});
+	@Override
+	public void setScanRootPaths(Set<String> rootPaths) {
+		jdbcTemplate.execute("truncate library.scan_root");
+		for (String rootPath : rootPaths) {
+			jdbcTemplate.update("insert into library.scan_root (path) values (?)", rootPath);
 		}
-		batchUpdate.flush();
+	}
 
+	/*
+	 * Adds everything read from (a chunk of) a directory, and checkpoints the
+	 * directory if it's the last chunk. Rows are only flushed once the whole
+	 * content is buffered, so a checkpoint is always written in the same
+	 * transaction as the last rows of its directory.
+	 */
+	@Override
+	public synchronized void addDirectoryContent(DirectoryContent content) {
+		String directory = content.getDirectory();
+		for (String subDirectory : content.getSubDirectories()) {
+			directoryImport.add(directory, subDirectory);
+		}
+		addFileRows(content.getFiles());
+		if (content.getModified() != null) {
+			directoryModifiedImport.add(directory, content.getModified().toDate());
+		}
+		if (directory != null && content.isLastChunk()) {
+			scanCheckpoint.add(directory);
+		}
+		flushIfFull();
 	}
 
 	@Override
-	public void addFiles(String directory, Set<File> files) {
+	public Set<String> getCheckpoint() {
+		return new HashSet<>(jdbcTemplate.queryForList(
+				"select path from library.scan_checkpoint", String.class));
+	}
 
-		String sql = "insert into library.file_import (path, filename, modified, size) values (?,?,?,?)";
-		BatchSqlUpdate batchUpdate = new BatchSqlUpdate(jdbcTemplate.getDataSource(), sql);
-		batchUpdate.declareParameter(new SqlParameter("path", Types.VARCHAR));
-		batchUpdate.declareParameter(new SqlParameter("filename", Types.VARCHAR));
-		batchUpdate.declareParameter(new SqlParameter("modified", Types.TIMESTAMP));
-		batchUpdate.declareParameter(new SqlParameter("size", Types.INTEGER));
+	/*
+	 * Import rows of directories that weren't checkpointed (as earlier chunks
+	 * of a large directory are flushed before its last chunk is read) are
+	 * discarded before resuming, as those directories are imported again.
+	 */
+	@Override
+	public void clearUncheckpointedImport() {
+		jdbcTemplate.update("delete from library.directory_import di where not exists"
+				+ " (select 1 from library.scan_checkpoint sc where sc.path = di.parent_path)");
+		jdbcTemplate.update("delete from library.directory_modified_import dmi where not exists"
+				+ " (select 1 from library.scan_checkpoint sc where sc.path = dmi.path)");
+		jdbcTemplate.update("delete from library.file_import fi where not exists"
+				+ " (select 1 from library.scan_checkpoint sc where sc.path = fi.path)");
+		jdbcTemplate.update("delete from library.file_headertag_import fhi where not exists"
+				+ " (select 1 from library.scan_checkpoint sc where sc.path = fhi.path)");
+	}
 
-		for (File file : files) {
-			batchUpdate.update(new Object[]{file.getDirectory(), file.getFilename(), 
-					file.getModified().toDate(), file.getSize()});
+	@Override
+	public synchronized void addSubdirectories(String directory, Set<String> subDirectories) {
+		for (String subDirectory : subDirectories) {
+			directoryImport.add(directory, subDirectory);
 		}
-		batchUpdate.flush();
+		flushIfFull();
+	}
+
+	@Override
+	public synchronized void addModified(String directory, DateTime modified) {
+		directoryModifiedImport.add(directory, modified.toDate());
+		flushIfFull();
+	}
 
+	@Override
+	public synchronized void addFiles(String directory, Set<File> files) {
+		addFileRows(files);
+		flushIfFull();
+	}
+
+	private void addFileRows(Set<File> files) {
+		for (File file : files) {
+			fileImport.add(file.getDirectory(), file.getFilename(), 
+					file.getModified().toDate(), file.getSize());
+		}
 		addMetadata(files);
 	}
 	
 	private void addMetadata(Set<File> files) {
-		String sql = "insert into library.file_headertag_import (path, filename, extension,"
-				+ "bitrate, vbr, duration, artist_name, album_artist_name, composer_name,"
-				+ "album_name, track_name, track_nr, track_nrs, disc_nr, disc_nrs, year,"
-				+ "tag_name, lyrics, coverart, artistsort_name, albumartistsort_name) values"
-				+ "(?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?)";
-		BatchSqlUpdate batch = new BatchSqlUpdate(jdbcTemplate.getDataSource(), sql);
-		batch.declareParameter(new SqlParameter("path", Types.VARCHAR));
-		batch.declareParameter(new SqlParameter("filename", Types.VARCHAR));
-		batch.declareParameter(new SqlParameter("extension", Types.VARCHAR));
-		batch.declareParameter(new SqlParameter("bitrate", Types.SMALLINT));
-		batch.declareParameter(new SqlParameter("vbr", Types.BOOLEAN));
-		batch.declareParameter(new SqlParameter("duration", Types.SMALLINT));
-		batch.declareParameter(new SqlParameter("artist_name", Types.VARCHAR));
-		batch.declareParameter(new SqlParameter("album_artist_name", Types.VARCHAR));
-		batch.declareParameter(new SqlParameter("composer_name", Types.VARCHAR));
-		batch.declareParameter(new SqlParameter("album_name", Types.VARCHAR));
-		batch.declareParameter(new SqlParameter("track_name", Types.VARCHAR));
-		batch.declareParameter(new SqlParameter("track_nr", Types.SMALLINT));
-		batch.declareParameter(new SqlParameter("track_nrs", Types.SMALLINT));
-		batch.declareParameter(new SqlParameter("disc_nr", Types.SMALLINT));
-		batch.declareParameter(new SqlParameter("disc_nrs", Types.SMALLINT));
-		batch.declareParameter(new SqlParameter("year", Types.SMALLINT));
-		batch.declareParameter(new SqlParameter("tag_name", Types.VARCHAR));
-		batch.declareParameter(new SqlParameter("lyrics", Types.VARCHAR));
-		batch.declareParameter(new SqlParameter("coverart", Types.BOOLEAN));
-		batch.declareParameter(new SqlParameter("artistsort_name", Types.VARCHAR));
-		batch.declareParameter(new SqlParameter("albumartistsort_name", Types.VARCHAR));
 		for (File file : files) {
 			MetaData md = file.getMetadata();
 			if (md != null) {
-				batch.update(new Object[]{file.getDirectory(), file.getFilename(),
+				headerTagImport.add(file.getDirectory(), file.getFilename(),
 						md.getMediaType().getFilesuffix(), md.getBitrate(), md.isVbr(),
 						md.getDuration(), md.getArtist(), md.getAlbumArtist(), 
 						md.getComposer(), md.getAlbum(), md.getTitle(), md.getTrackNr(), 
 						md.getTrackNrs(), md.getDiscNr(), md.getDiscNrs(), md.getYear(),
 						md.getGenre(), md.getLyrics(), md.isCoverArtEmbedded(), 
-						md.getArtistSort(), md.getAlbumArtistSort()});
+						md.getArtistSort(), md.getAlbumArtistSort());
 			}
 		}
-		batch.flush();
 	}
 
+	private void flushIfFull() {
+		if (directoryImport.size() + directoryModifiedImport.size() + fileImport.size()
+				+ headerTagImport.size() + scanCheckpoint.size() >= flushSize) {
+			flush();
+		}
+	}
+
+	private synchronized void flush() {
+		BulkInsertBuffer.flush(jdbcTemplate, useCopy, directoryImport, 
+				directoryModifiedImport, fileImport, headerTagImport, scanCheckpoint);
+	}
+
+	/*
+	 * Adds directories, and moves imported files to pending tables, in one
+	 * transaction. Files are then added chunk by chunk, so that a large import
+	 * neither runs as one huge transaction nor has to start over if aborted.
+	 */
 	@Override
 	public void updateLibrary() {
+		updateLibraryContent();
+		updateLibrarySummary();
+	}
+
+	@Override
+	public void updateLibraryContent() {
+		flush();
+		long ms = -System.currentTimeMillis();
+		jdbcTemplate.queryForInt("select library.stage_library_import()");
+		ms += System.currentTimeMillis();
+		LOG.debug("stage_library_import(): " + ms + " ms");
+		addPendingFiles();
+	}
+
+	private void addPendingFiles() {
+		List<String[]> chunks = getPendingChunks();
+		progress.reset();
+		progress.setTotalOperations(chunks.size());
+		progress.setFinishedOperations(0);
+		for (String[] chunk : chunks) {
+			long ms = -System.currentTimeMillis();
+			jdbcTemplate.queryForInt("select library.add_files_to_library(?, ?)", 
+					chunk[0], chunk[1]);
+			ms += System.currentTimeMillis();
+			progress.addFinishedOperation();
+			LOG.debug("add_files_to_library(): chunk " + progress.getFinishedOperations()
+					+ "/" + chunks.size() + " in " + ms + " ms");
+		}
+		long ms = -System.currentTimeMillis();
+		jdbcTemplate.queryForInt("select library.finish_library_import()");
+		ms += System.currentTimeMillis();
+		LOG.debug("finish_library_import(): " + ms + " ms");
+	}
+
+	/*
+	 * Artist index, local genres and statistics are derived from library as
+	 * a whole, and are left out of directory-scoped updates (see
+	 * LibraryWatchService), which update them once a batch is done.
+	 */
+	@Override
+	public void updateLibrarySummary() {
 		long ms = -System.currentTimeMillis();
-		jdbcTemplate.execute("select library.add_to_library()");
+		jdbcTemplate.queryForInt("select library.update_library_summary()");
 		ms += System.currentTimeMillis();
-		LOG.debug("add_to_library(): " + ms + " ms");
+		LOG.debug("update_library_summary(): " + ms + " ms");
+	}
+
+	/*
+	 * Returns first and last directory path of each chunk of pending files.
+	 */
+	private List<String[]> getPendingChunks() {
+		final List<String[]> chunks = new ArrayList<>();
+		final String[] chunk = new String[2];
+		final int[] files = new int[1];
+		jdbcTemplate.query("select path, count(*) from library.file_import_pending"
+				+ " group by path order by path", new RowCallbackHandler() {
+			@Override
+			public void processRow(ResultSet rs) throws SQLException {
+				if (chunk[0] == null) {
+					chunk[0] = rs.getString(1);
+				}
+				chunk[1] = rs.getString(1);
+				files[0] += rs.getInt(2);
+				if (files[0] >= chunkSize) {
+					chunks.add(chunk.clone());
+					chunk[0] = null;
+					files[0] = 0;
+				}
+			}
+		});
+		if (chunk[0] != null) {
+			chunks.add(chunk);
+		}
+		return chunks;
+	}
+
+	@Override
+	public SearchIndexUpdateProgress getUpdateProgress() {
+		return progress;
 	}
 
 	@Override
@@ -123,4 +322,16 @@ public class JdbcLibraryAdditionDao implements LibraryAdditionDao, JdbcTemplateD
 		this.jdbcTemplate = new JdbcTemplate(dataSource);
 	}
 
+	public void setFlushSize(int flushSize) {
+		this.flushSize = flushSize;
+	}
+
+	public void setUseCopy(boolean useCopy) {
+		this.useCopy = useCopy;
+	}
+
+	public void setChunkSize(int chunkSize) {
+		this.chunkSize = chunkSize;
+	}
+
 }
\ No newline at end of file
@@ -730,6 +730,7 @@ public class JdbcLibraryBrowserDao implements LibraryBrowserDao, JdbcTemplateDao
 	@Override
 	public void markAllFilesForFullRescan() {
 		jdbcTemplate.update("update library.file set modified = 'infinity', size = -1");
+		jdbcTemplate.update("update library.directory set modified = null");
 	}
 
 	@Override
@@ -1,15 +1,15 @@
 package com.github.hakko.musiccabinet.dao.jdbc;
 
-import java.sql.Types;
+import static java.sql.Types.VARCHAR;
+
 import java.util.Set;
 
 import javax.sql.DataSource;
 
 import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.jdbc.core.SqlParameter;
-import org.springframework.jdbc.object.BatchSqlUpdate;
 
 import com.github.hakko.musiccabinet.dao.LibraryDeletionDao;
+import com.github.hakko.musiccabinet.dao.util.BulkInsertBuffer;
 import com.github.hakko.musiccabinet.domain.model.library.File;
 import com.github.hakko.musiccabinet.log.Logger;
 
@@ -18,40 +18,100 @@ public class JdbcLibraryDeletionDao implements LibraryDeletionDao, JdbcTemplateD
 	private JdbcTemplate jdbcTemplate;
 
 	private static final Logger LOG = Logger.getLogger(JdbcLibraryDeletionDao.class);
-	
+
+	/*
+	 * Deleted directories and files are buffered across directories, and
+	 * written to the delete tables (using COPY, unless disabled) once flushSize
+	 * rows are pending, or when the library is about to be updated.
+	 */
+	private int flushSize = 5000;
+	private boolean useCopy = true;
+
+	protected String fileSeparator = java.io.File.separator;
+
+	private final BulkInsertBuffer directoryDelete = new BulkInsertBuffer(
+			"library.directory_delete",
+			new String[]{"path", "from_path", "to_path"},
+			new int[]{VARCHAR, VARCHAR, VARCHAR});
+
+	private final BulkInsertBuffer fileDelete = new BulkInsertBuffer(
+			"library.file_delete",
+			new String[]{"path", "filename"},
+			new int[]{VARCHAR, VARCHAR});
+
+	private final BulkInsertBuffer fileMove = new BulkInsertBuffer(
+			"library.file_move",
+			new String[]{"from_path", "filename", "to_path"},
+			new int[]{VARCHAR, VARCHAR, VARCHAR});
+
 	@Override
-	public void clearImport() {
+	public synchronized void clearImport() {
+		directoryDelete.clear();
+		fileDelete.clear();
+		fileMove.clear();
 		jdbcTemplate.execute("truncate library.directory_delete");
 		jdbcTemplate.execute("truncate library.file_delete");
+		jdbcTemplate.execute("truncate library.file_move");
 	}
 
+	/*
+	 * Each deleted directory is stored with the range of paths below it, so
+	 * that delete_from_library() can remove a whole sub-tree in one go.
+	 */
 	@Override
-	public void deleteSubdirectories(String directory, Set<String> subDirectories) {
-		String sql = "insert into library.directory_delete (path) values (?)";
-		BatchSqlUpdate batchUpdate = new BatchSqlUpdate(jdbcTemplate.getDataSource(), sql);
-		batchUpdate.declareParameter(new SqlParameter("path", Types.VARCHAR));
-		
+	public synchronized void deleteSubdirectories(String directory, Set<String> subDirectories) {
 		for (String subDirectory : subDirectories) {
-			batchUpdate.update(new Object[]{subDirectory});
+			String fromPath = subDirectory.endsWith(fileSeparator) ?
+					subDirectory : subDirectory + fileSeparator;
+			int last = fromPath.length() - 1;
+			String toPath = fromPath.substring(0, last) + (char) (fromPath.charAt(last) + 1);
+			directoryDelete.add(subDirectory, fromPath, toPath);
 		}
-		batchUpdate.flush();
+		flushIfFull();
 	}
 
 	@Override
-	public void deleteFiles(String directory, Set<File> files) {
-		String sql = "insert into library.file_delete (path, filename) values (?,?)";
-		BatchSqlUpdate batchUpdate = new BatchSqlUpdate(jdbcTemplate.getDataSource(), sql);
-		batchUpdate.declareParameter(new SqlParameter("path", Types.VARCHAR));
-		batchUpdate.declareParameter(new SqlParameter("filename", Types.VARCHAR));
-		
+	public synchronized void deleteFiles(String directory, Set<File> files) {
 		for (File file : files) {
-			batchUpdate.update(new Object[]{file.getDirectory(), file.getFilename()});
+			fileDelete.add(file.getDirectory(), file.getFilename());
+		}
+		flushIfFull();
+	}
+
+	/*
+	 * Moved files are given their new directory before anything is deleted,
+	 * so they survive deletion of their old directory.
+	 */
+	@Override
+	public synchronized void moveFiles(String directory, Set<File> movedFiles) {
+		for (File file : movedFiles) {
+			fileMove.add(file.getDirectory(), file.getFilename(), directory);
+		}
+		flushIfFull();
+	}
+
+	private void flushIfFull() {
+		if (directoryDelete.size() + fileDelete.size() + fileMove.size() >= flushSize) {
+			flush();
 		}
-		batchUpdate.flush();
+	}
+
+	private synchronized void flush() {
+		BulkInsertBuffer.flush(jdbcTemplate, useCopy, directoryDelete, fileDelete, fileMove);
 	}
 
 	@Override
 	public void updateLibrary() {
+		updateLibraryContent();
+		long ms = -System.currentTimeMillis();
+		jdbcTemplate.execute("select library.update_library_summary()");
+		ms += System.currentTimeMillis();
+		LOG.debug("update_library_summary(): " + ms + " ms");
+	}
+
+	@Override
+	public void updateLibraryContent() {
+		flush();
 		long ms = -System.currentTimeMillis();
 		jdbcTemplate.execute("select library.delete_from_library()");
 		ms += System.currentTimeMillis();
@@ -64,9 +124,17 @@ public class JdbcLibraryDeletionDao implements LibraryDeletionDao, JdbcTemplateD
 	}
 
 	// Spring setters
-	
+
 	public void setDataSource(DataSource dataSource) {
 		this.jdbcTemplate = new JdbcTemplate(dataSource);
 	}
 
-}
\ No newline at end of file
+	public void setFlushSize(int flushSize) {
+		this.flushSize = flushSize;
+	}
+
+	public void setUseCopy(boolean useCopy) {
+		this.useCopy = useCopy;
+	}
+
+}
@@ -1,7 +1,10 @@
 package com.github.hakko.musiccabinet.dao.jdbc;
 
+import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Timestamp;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -9,16 +12,21 @@ import java.util.Set;
 import javax.sql.DataSource;
 
 import org.joda.time.DateTime;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.support.JdbcUtils;
 
 import com.github.hakko.musiccabinet.dao.LibraryPresenceDao;
+import com.github.hakko.musiccabinet.domain.model.aggr.LibrarySnapshot;
 import com.github.hakko.musiccabinet.domain.model.library.File;
 
 public class JdbcLibraryPresenceDao implements LibraryPresenceDao, JdbcTemplateDao {
 
 	private JdbcTemplate jdbcTemplate;
 
+	private static final int SNAPSHOT_FETCH_SIZE = 10000;
+
 	@Override
 	public boolean exists(String directory) {
 		String sql = "select exists(select 1 from library.directory where path = ?)";
@@ -63,6 +71,70 @@ public class JdbcLibraryPresenceDao implements LibraryPresenceDao, JdbcTemplateD
 		return jdbcTemplate.queryForList(sql, String.class);
 	}
 
+	/*
+	 * Reads all directories and files in one go. The PostgreSQL driver only
+	 * honours fetch size outside of auto-commit mode, so rows are streamed
+	 * through a cursor within a (read-only) transaction rather than being
+	 * buffered as a whole.
+	 */
+	@Override
+	public LibrarySnapshot getLibrarySnapshot() {
+		final String directorySql = "select id, parent_id, path, modified from library.directory";
+		final String fileSql = "select directory_id, filename, modified, size from library.file";
+
+		final LibrarySnapshot snapshot = new LibrarySnapshot();
+		jdbcTemplate.execute(new ConnectionCallback<Void>() {
+			@Override
+			public Void doInConnection(Connection connection) throws SQLException {
+				boolean autoCommit = connection.getAutoCommit();
+				connection.setAutoCommit(false);
+				try {
+					stream(connection, directorySql, new RowCallbackHandler() {
+						@Override
+						public void processRow(ResultSet rs) throws SQLException {
+							int id = rs.getInt(1);
+							int parentId = rs.getInt(2);
+							Integer parent = rs.wasNull() ? null : parentId;
+							Timestamp modified = rs.getTimestamp(4);
+							snapshot.addDirectory(id, parent, rs.getString(3),
+									modified == null ? null : modified.getTime());
+						}
+					});
+					stream(connection, fileSql, new RowCallbackHandler() {
+						@Override
+						public void processRow(ResultSet rs) throws SQLException {
+							snapshot.addFile(rs.getInt(1), rs.getString(2), 
+									rs.getTimestamp(3).getTime(), rs.getInt(4));
+						}
+					});
+				} finally {
+					connection.rollback();
+					connection.setAutoCommit(autoCommit);
+				}
+				return null;
+			}
+		});
+
+		return snapshot;
+	}
+
+	private void stream(Connection connection, String sql, RowCallbackHandler handler) 
+			throws SQLException {
+		PreparedStatement ps = null;
+		ResultSet rs = null;
+		try {
+			ps = connection.prepareStatement(sql);
+			ps.setFetchSize(SNAPSHOT_FETCH_SIZE);
+			rs = ps.executeQuery();
+			while (rs.next()) {
+				handler.processRow(rs);
+			}
+		} finally {
+			JdbcUtils.closeResultSet(rs);
+			JdbcUtils.closeStatement(ps);
+		}
+	}
+
 	@Override
 	public JdbcTemplate getJdbcTemplate() {
 		return jdbcTemplate;
@@ -2,7 +2,12 @@ package com.github.hakko.musiccabinet.dao.jdbc;
 
 import static java.lang.String.format;
 
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.sql.Timestamp;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 
@@ -10,7 +15,9 @@ import javax.sql.DataSource;
 
 import org.joda.time.DateTime;
 import org.joda.time.Days;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
 
 import com.github.hakko.musiccabinet.dao.MusicDao;
 import com.github.hakko.musiccabinet.dao.LastFmDao;
@@ -35,6 +42,121 @@ public class JdbcWebserviceHistoryDao implements JdbcTemplateDao, WebserviceHist
 		logWebserviceInvocation(wi, new Date());
 	}
 
+	/*
+	 * Logs artist and album invocations in batched statements, delete and
+	 * insert, instead of a few round trips per invocation. All are run in one
+	 * transaction, so that a failed insert doesn't leave artists or albums
+	 * without history. Other kinds of invocations are logged one by one.
+	 */
+	@Override
+	public void logWebserviceInvocations(List<WebserviceInvocation> invocations) {
+		final Timestamp invocationTime = new Timestamp(System.currentTimeMillis());
+		final List<WebserviceInvocation> artistInvocations = new ArrayList<>();
+		final List<WebserviceInvocation> albumInvocations = new ArrayList<>();
+		for (WebserviceInvocation wi : invocations) {
+			if (isArtistInvocation(wi)) {
+				artistInvocations.add(wi);
+			} else if (isAlbumInvocation(wi)) {
+				albumInvocations.add(wi);
+			} else {
+				logWebserviceInvocation(wi, invocationTime);
+			}
+		}
+		if (artistInvocations.isEmpty() && albumInvocations.isEmpty()) {
+			return;
+		}
+
+		jdbcTemplate.execute(new ConnectionCallback<Void>() {
+			@Override
+			public Void doInConnection(Connection connection) throws SQLException {
+				boolean autoCommit = connection.getAutoCommit();
+				connection.setAutoCommit(false);
+				try {
+					logArtistInvocations(connection, artistInvocations, invocationTime);
+					logAlbumInvocations(connection, albumInvocations, invocationTime);
+					connection.commit();
+				} catch (SQLException | RuntimeException e) {
+					connection.rollback();
+					throw e;
+				} finally {
+					connection.setAutoCommit(autoCommit);
+				}
+				return null;
+			}
+		});
+	}
+
+	private void logArtistInvocations(Connection connection,
+			List<WebserviceInvocation> invocations, Timestamp invocationTime) throws SQLException {
+		if (invocations.isEmpty()) {
+			return;
+		}
+		try (PreparedStatement delete = connection.prepareStatement(
+				"delete from library.webservice_history where calltype_id = ?"
+				+ " and artist_id = (select id from music.artist where artist_name = upper(?))");
+			PreparedStatement insert = connection.prepareStatement(
+				"insert into library.webservice_history (artist_id, calltype_id, invocation_time)"
+				+ " values (music.get_artist_id(?), ?, ?)")) {
+			for (WebserviceInvocation wi : invocations) {
+				int callTypeId = wi.getCallType().getDatabaseId();
+				String artistName = wi.getArtist().getName();
+				delete.setInt(1, callTypeId);
+				delete.setString(2, artistName);
+				delete.addBatch();
+				insert.setString(1, artistName);
+				insert.setInt(2, callTypeId);
+				insert.setTimestamp(3, invocationTime);
+				insert.addBatch();
+			}
+			delete.executeBatch();
+			insert.executeBatch();
+		}
+	}
+
+	private void logAlbumInvocations(Connection connection,
+			List<WebserviceInvocation> invocations, Timestamp invocationTime) throws SQLException {
+		if (invocations.isEmpty()) {
+			return;
+		}
+		try (PreparedStatement delete = connection.prepareStatement(
+				"delete from library.webservice_history where calltype_id = ?"
+				+ " and album_id = (select alb.id from music.album alb"
+				+ " inner join music.artist art on alb.artist_id = art.id"
+				+ " where art.artist_name = upper(?) and alb.album_name = upper(?))");
+			PreparedStatement insert = connection.prepareStatement(
+				"insert into library.webservice_history (album_id, calltype_id, invocation_time)"
+				+ " values (music.get_album_id(?, ?), ?, ?)")) {
+			for (WebserviceInvocation wi : invocations) {
+				int callTypeId = wi.getCallType().getDatabaseId();
+				String artistName = wi.getAlbum().getArtist().getName();
+				String albumName = wi.getAlbum().getName();
+				delete.setInt(1, callTypeId);
+				delete.setString(2, artistName);
+				delete.setString(3, albumName);
+				delete.addBatch();
+				insert.setString(1, artistName);
+				insert.setString(2, albumName);
+				insert.setInt(3, callTypeId);
+				insert.setTimestamp(4, invocationTime);
+				insert.addBatch();
+			}
+			delete.executeBatch();
+			insert.executeBatch();
+		}
+	}
+
+	private boolean isArtistInvocation(WebserviceInvocation wi) {
+		return wi.getArtist() != null && wi.getAlbum() == null && wi.getTrack() == null
+				&& wi.getUser() == null && wi.getGroup() == null && wi.getTag() == null
+				&& wi.getPage() == null;
+	}
+
+	private boolean isAlbumInvocation(WebserviceInvocation wi) {
+		return wi.getAlbum() != null && wi.getArtist() == null && wi.getTrack() == null
+				&& wi.getUser() == null && wi.getGroup() == null && wi.getTag() == null
+				&& wi.getPage() == null;
+	}
+
 	@Override
 	public void quarantineWebserviceInvocation(WebserviceInvocation wi) {
 		Date oneMonthFromNow = new DateTime().plusMonths(1).toDate();
@@ -234,6 +356,47 @@ public class JdbcWebserviceHistoryDao implements JdbcTemplateDao, WebserviceHist
 		return jdbcTemplate.queryForList(sql, String.class);
 	}
 
+	/*
+	 * Return artists found in local library, where the last invocation of callType
+	 * happened no more than callType.getDaysToCache() full days ago, or is set in
+	 * the future. Matches isWebserviceInvocationAllowed() for a single artist.
+	 */
+	@Override
+	public List<String> getArtistNamesWithRecentInvocations(Calltype callType) {
+		String sql = "select a.artist_name_capitalization from library.webservice_history h"
+			+ " inner join music.artist a on h.artist_id = a.id"
+			+ " where h.calltype_id = " + callType.getDatabaseId()
+			+ " and h.artist_id in (select artist_id from library.artist)"
+			+ " and h.invocation_time > now() - interval '"
+			+ (callType.getDaysToCache() + 1) + " days'";
+
+		return jdbcTemplate.queryForList(sql, String.class);
+	}
+
+	/*
+	 * Return albums found in local library, where the last invocation of callType
+	 * happened no more than callType.getDaysToCache() full days ago, or is set in
+	 * the future. Matches isWebserviceInvocationAllowed() for a single album.
+	 */
+	@Override
+	public List<Album> getAlbumsWithRecentInvocations(Calltype callType) {
+		String sql = "select art.artist_name_capitalization, alb.album_name_capitalization"
+			+ " from library.webservice_history h"
+			+ " inner join music.album alb on h.album_id = alb.id"
+			+ " inner join music.artist art on alb.artist_id = art.id"
+			+ " where h.calltype_id = " + callType.getDatabaseId()
+			+ " and h.album_id in (select album_id from library.album)"
+			+ " and h.invocation_time > now() - interval '"
+			+ (callType.getDaysToCache() + 1) + " days'";
+
+		return jdbcTemplate.query(sql, new RowMapper<Album>() {
+			@Override
+			public Album mapRow(ResultSet rs, int rowNum) throws SQLException {
+				return new Album(rs.getString(1), rs.getString(2));
+			}
+		});
+	}
+
 	/*
 	 * Return artists found in local library, who's never been looked up from last.fm.
 	 * 
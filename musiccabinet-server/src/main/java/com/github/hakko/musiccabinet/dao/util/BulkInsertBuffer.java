@@ -0,0 +1,210 @@
+package com.github.hakko.musiccabinet.dao.util;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyManager;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.StatementCreatorUtils;
+import org.springframework.jdbc.support.nativejdbc.C3P0NativeJdbcExtractor;
+import org.springframework.jdbc.support.nativejdbc.NativeJdbcExtractor;
+
+import com.github.hakko.musiccabinet.log.Logger;
+
+/*
+ * Collects rows for a single table in memory, and writes them in one go.
+ *
+ * Rows are written using the PostgreSQL COPY protocol, which is considerably
+ * faster than inserting rows one by one. If COPY isn't available (the data
+ * source doesn't hand out PostgreSQL connections, or it has been disabled)
+ * rows are written as a batch of prepared insert statements instead.
+ *
+ * Values are expected to be String, Number, Boolean, java.util.Date or null.
+ *
+ * Not thread-safe, callers are expected to synchronize.
+ */
+public class BulkInsertBuffer {
+
+	private final String table;
+	private final String[] columns;
+	private final int[] types;
+
+	private List<Object[]> rows = new ArrayList<>();
+
+	private static final NativeJdbcExtractor NATIVE_JDBC_EXTRACTOR = new C3P0NativeJdbcExtractor();
+
+	private static final Logger LOG = Logger.getLogger(BulkInsertBuffer.class);
+
+	/*
+	 * @param table		Table name, including schema
+	 * @param columns	Column names, in order of row values
+	 * @param types		java.sql.Types per column, used for batch inserts
+	 */
+	public BulkInsertBuffer(String table, String[] columns, int[] types) {
+		if (columns.length != types.length) {
+			throw new IllegalArgumentException("Expected one type per column!");
+		}
+		this.table = table;
+		this.columns = columns;
+		this.types = types;
+	}
+
+	public void add(Object... row) {
+		if (row.length != columns.length) {
+			throw new IllegalArgumentException("Expected " + columns.length
+					+ " values for " + table + ", got " + row.length);
+		}
+		rows.add(row);
+	}
+
+	public int size() {
+		return rows.size();
+	}
+
+	public void clear() {
+		rows = new ArrayList<>();
+	}
+
+	/*
+	 * Writes and clears buffered rows.
+	 */
+	public void flush(JdbcTemplate jdbcTemplate, boolean useCopy) {
+		flush(jdbcTemplate, useCopy, this);
+	}
+
+	/*
+	 * Writes and clears buffered rows of all given buffers, in one transaction.
+	 * Either all rows are written, or none.
+	 */
+	public static void flush(JdbcTemplate jdbcTemplate, final boolean useCopy, 
+			final BulkInsertBuffer... buffers) {
+		jdbcTemplate.execute(new ConnectionCallback<Void>() {
+			@Override
+			public Void doInConnection(Connection connection) throws SQLException {
+				boolean autoCommit = connection.getAutoCommit();
+				connection.setAutoCommit(false);
+				try {
+					for (BulkInsertBuffer buffer : buffers) {
+						buffer.write(connection, useCopy);
+					}
+					connection.commit();
+				} catch (SQLException | RuntimeException e) {
+					connection.rollback();
+					throw e;
+				} finally {
+					connection.setAutoCommit(autoCommit);
+				}
+				return null;
+			}
+		});
+		for (BulkInsertBuffer buffer : buffers) {
+			buffer.clear();
+		}
+	}
+
+	private void write(Connection connection, boolean useCopy) throws SQLException {
+		if (rows.isEmpty()) {
+			return;
+		}
+		long ms = -System.currentTimeMillis();
+		if (!useCopy || !copy(connection)) {
+			insert(connection);
+		}
+		ms += System.currentTimeMillis();
+		LOG.debug("Wrote " + rows.size() + " rows to " + table + ": " + ms + " ms");
+	}
+
+	private boolean copy(Connection connection) throws SQLException {
+		Connection nativeConnection = NATIVE_JDBC_EXTRACTOR.getNativeConnection(connection);
+		if (!(nativeConnection instanceof PGConnection)) {
+			return false;
+		}
+		String sql = "copy " + table + " (" + join(columns) + ") from stdin";
+		CopyManager copyManager = ((PGConnection) nativeConnection).getCopyAPI();
+		try {
+			copyManager.copyIn(sql, new StringReader(toCopyText()));
+		} catch (IOException e) {
+			throw new DataAccessResourceFailureException("Copy to " + table + " failed!", e);
+		}
+		return true;
+	}
+
+	private void insert(Connection connection) throws SQLException {
+		String sql = "insert into " + table + " (" + join(columns) + ") values ("
+				+ PostgreSQLUtil.getParameters(columns.length) + ")";
+		try (PreparedStatement ps = connection.prepareStatement(sql)) {
+			for (Object[] row : rows) {
+				for (int i = 0; i < columns.length; i++) {
+					StatementCreatorUtils.setParameterValue(ps, i + 1, types[i], row[i]);
+				}
+				ps.addBatch();
+			}
+			ps.executeBatch();
+		}
+	}
+
+	/*
+	 * Formats rows according to COPY text format: tab separated columns,
+	 * one row per line, \N for null, and backslash escaped control characters.
+	 */
+	protected String toCopyText() {
+		StringBuilder sb = new StringBuilder();
+		for (Object[] row : rows) {
+			for (int i = 0; i < row.length; i++) {
+				if (i > 0) {
+					sb.append('\t');
+				}
+				appendValue(sb, row[i]);
+			}
+			sb.append('\n');
+		}
+		return sb.toString();
+	}
+
+	private void appendValue(StringBuilder sb, Object value) {
+		if (value == null) {
+			sb.append("\\N");
+		} else if (value instanceof Boolean) {
+			sb.append((Boolean) value ? 't' : 'f');
+		} else if (value instanceof Date) {
+			// same local time representation as a bound java.sql.Timestamp
+			sb.append(new Timestamp(((Date) value).getTime()).toString());
+		} else if (value instanceof Number) {
+			sb.append(value.toString());
+		} else {
+			appendText(sb, value.toString());
+		}
+	}
+
+	private void appendText(StringBuilder sb, String text) {
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			switch (c) {
+			case '\\': sb.append("\\\\"); break;
+			case '\t': sb.append("\\t"); break;
+			case '\n': sb.append("\\n"); break;
+			case '\r': sb.append("\\r"); break;
+			default: sb.append(c);
+			}
+		}
+	}
+
+	private String join(String[] values) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < values.length; i++) {
+			sb.append(i == 0 ? "" : ", ").append(values[i]);
+		}
+		return sb.toString();
+	}
+
+}
@@ -53,10 +53,18 @@ public enum PostgreSQLFunction {
 		
 	ADD_TO_LIBRARY("library", "add_to_library",
 		"sql/library/add-to-library.sql"),
+	STAGE_LIBRARY_IMPORT("library", "stage_library_import",
+		"sql/library/stage-library-import.sql"),
+	ADD_FILES_TO_LIBRARY("library", "add_files_to_library",
+		"sql/library/add-files-to-library.sql"),
+	FINISH_LIBRARY_IMPORT("library", "finish_library_import",
+		"sql/library/finish-library-import.sql"),
 	DELETE_FROM_LIBRARY("library", "delete_from_library",
 		"sql/library/delete-from-library.sql"),
 	UPDATE_STATISTICS("library", "update_statistics",
 		"sql/library/update-statistics.sql"),
+	UPDATE_LIBRARY_SUMMARY("library", "update_library_summary",
+		"sql/library/update-library-summary.sql"),
 	UPDATE_AVAILABLE_TOP_TRACKS("library", "update_librarytoptracks",
 		"sql/library/update-librarytoptracks.sql"),
 	BLOCK_WEBSERVICE("library", "block_webservice",
@@ -3,17 +3,28 @@ package com.github.hakko.musiccabinet.domain.model.aggr;
 import java.util.HashSet;
 import java.util.Set;
 
+import org.joda.time.DateTime;
+
 import com.github.hakko.musiccabinet.domain.model.library.File;
 
 /*
  * Represent content found in a directory (names of subdirectories, files).
  * Used for message passing by Spring Integration.
+ *
+ * Directories with many files are sent as several messages, each holding a
+ * chunk of files. Only the last chunk holds sub-directories and modification
+ * time, and marks the directory as complete.
  */
 public class DirectoryContent {
 
+	public static final int DEFAULT_CHUNK_SIZE = 1000;
+
 	private String directory;
 	private Set<String> subDirectories = new HashSet<>();
 	private Set<File> files = new HashSet<>();
+	private DateTime modified;
+	private Set<File> movedFiles = new HashSet<>();
+	private boolean lastChunk = true;
 
 	public DirectoryContent(String directory) {
 		this.directory = directory;
@@ -25,6 +36,12 @@ public class DirectoryContent {
 		this.files = files;
 	}
 
+	public DirectoryContent(String directory, Set<String> subDirectories, Set<File> files,
+			DateTime modified) {
+		this(directory, subDirectories, files);
+		this.modified = modified;
+	}
+
 	public String getDirectory() {
 		return directory;
 	}
@@ -36,7 +53,48 @@ public class DirectoryContent {
 	public Set<File> getFiles() {
 		return files;
 	}
+
+	/*
+	 * Last modification time of directory, or null if unknown/not relevant.
+	 */
+	public DateTime getModified() {
+		return modified;
+	}
+
+	public void setModified(DateTime modified) {
+		this.modified = modified;
+	}
+
+	/*
+	 * Files moved into directory, as found at their old place (File.getDirectory()).
+	 */
+	public Set<File> getMovedFiles() {
+		return movedFiles;
+	}
+
+	public void setMovedFiles(Set<File> movedFiles) {
+		this.movedFiles = movedFiles;
+	}
 	
+	public boolean isLastChunk() {
+		return lastChunk;
+	}
+
+	public void setLastChunk(boolean lastChunk) {
+		this.lastChunk = lastChunk;
+	}
+
+	/*
+	 * Moves files found so far to a new chunk of this directory, to be sent
+	 * ahead of it.
+	 */
+	public DirectoryContent takeChunk() {
+		DirectoryContent chunk = new DirectoryContent(directory, new HashSet<String>(), files);
+		chunk.setLastChunk(false);
+		files = new HashSet<>();
+		return chunk;
+	}
+
 	public String toString() {
 		return "dir: " + directory + ", subdirs: " + subDirectories;
 	}
@@ -0,0 +1,220 @@
+package com.github.hakko.musiccabinet.domain.model.aggr;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.joda.time.DateTime;
+
+import com.github.hakko.musiccabinet.domain.model.library.File;
+
+/*
+ * Compact in-memory image of library.directory and library.file, read once
+ * at the start of a scan, so that found directories can be compared to what
+ * is already stored without querying the database per directory.
+ *
+ * Each directory path is kept once and shared by all its files. Children and
+ * files are chained through primitive arrays rather than per-directory
+ * collections, and File objects are only created for the directory asked for.
+ *
+ * Not thread-safe while being loaded.
+ */
+public class LibrarySnapshot {
+
+	private static final int NONE = -1;
+	private static final long UNKNOWN = Long.MIN_VALUE;
+	private static final int INITIAL_CAPACITY = 1024;
+
+	// directories, indexed by load order
+	private Map<String, Integer> directoryIndex = new HashMap<>();
+	private Map<Integer, Integer> idIndex = new HashMap<>();
+	private Map<Integer, List<Integer>> orphans = new HashMap<>();
+	private String[] paths = new String[INITIAL_CAPACITY];
+	private int[] firstChild = new int[INITIAL_CAPACITY];
+	private int[] nextSibling = new int[INITIAL_CAPACITY];
+	private int[] firstFile = new int[INITIAL_CAPACITY];
+	private long[] directoryModified = new long[INITIAL_CAPACITY];
+	private int directories = 0;
+
+	// files, indexed by load order
+	private String[] filenames = new String[INITIAL_CAPACITY];
+	private long[] modified = new long[INITIAL_CAPACITY];
+	private int[] size = new int[INITIAL_CAPACITY];
+	private int[] nextFile = new int[INITIAL_CAPACITY];
+	private int[] fileDirectory = new int[INITIAL_CAPACITY];
+	private int files = 0;
+
+	// files by name, for finding moved files. built on first use.
+	private Map<String, Integer> filenameIndex;
+	private int[] nextSameName;
+
+	/*
+	 * Adds a directory. parentId is expected to be null for root directories.
+	 * Parents may be added before or after their sub-directories.
+	 */
+	public void addDirectory(int id, Integer parentId, String path) {
+		addDirectory(id, parentId, path, null);
+	}
+
+	/*
+	 * As above, including the directory modification time stored at last scan
+	 * (or null, if not known).
+	 */
+	public void addDirectory(int id, Integer parentId, String path, Long modified) {
+		if (directories == paths.length) {
+			int capacity = directories + (directories >> 1);
+			paths = Arrays.copyOf(paths, capacity);
+			firstChild = Arrays.copyOf(firstChild, capacity);
+			nextSibling = Arrays.copyOf(nextSibling, capacity);
+			firstFile = Arrays.copyOf(firstFile, capacity);
+			directoryModified = Arrays.copyOf(directoryModified, capacity);
+		}
+		int index = directories++;
+		paths[index] = path;
+		firstChild[index] = NONE;
+		nextSibling[index] = NONE;
+		firstFile[index] = NONE;
+		directoryModified[index] = modified == null ? UNKNOWN : modified;
+		directoryIndex.put(path, index);
+		idIndex.put(id, index);
+
+		if (parentId != null) {
+			Integer parent = idIndex.get(parentId);
+			if (parent != null) {
+				linkChild(parent, index);
+			} else {
+				List<Integer> waiting = orphans.get(parentId);
+				if (waiting == null) {
+					waiting = new ArrayList<>();
+					orphans.put(parentId, waiting);
+				}
+				waiting.add(index);
+			}
+		}
+		List<Integer> children = orphans.remove(id);
+		if (children != null) {
+			for (int child : children) {
+				linkChild(index, child);
+			}
+		}
+	}
+
+	/*
+	 * Adds a file to a previously added directory. Files in unknown
+	 * directories are ignored.
+	 */
+	public void addFile(int directoryId, String filename, long modified, int size) {
+		Integer directory = idIndex.get(directoryId);
+		if (directory == null) {
+			return;
+		}
+		if (files == filenames.length) {
+			int capacity = files + (files >> 1);
+			filenames = Arrays.copyOf(filenames, capacity);
+			this.modified = Arrays.copyOf(this.modified, capacity);
+			this.size = Arrays.copyOf(this.size, capacity);
+			nextFile = Arrays.copyOf(nextFile, capacity);
+			fileDirectory = Arrays.copyOf(fileDirectory, capacity);
+		}
+		int index = files++;
+		filenames[index] = filename;
+		this.modified[index] = modified;
+		this.size[index] = size;
+		nextFile[index] = firstFile[directory];
+		firstFile[directory] = index;
+		fileDirectory[index] = directory;
+		filenameIndex = null;
+	}
+
+	private void linkChild(int parent, int child) {
+		nextSibling[child] = firstChild[parent];
+		firstChild[parent] = child;
+	}
+
+	public boolean exists(String directory) {
+		return directoryIndex.containsKey(directory);
+	}
+
+	/*
+	 * Returns true if directory is known, and was last scanned with the same
+	 * modification time as given.
+	 */
+	public boolean isUnchanged(String directory, long modified) {
+		Integer index = directoryIndex.get(directory);
+		return index != null && directoryModified[index] != UNKNOWN
+				&& directoryModified[index] == modified;
+	}
+
+	public Set<String> getSubdirectories(String directory) {
+		Set<String> subDirectories = new HashSet<>();
+		Integer index = directoryIndex.get(directory);
+		if (index != null) {
+			for (int c = firstChild[index]; c != NONE; c = nextSibling[c]) {
+				subDirectories.add(paths[c]);
+			}
+		}
+		return subDirectories;
+	}
+
+	public Set<File> getFiles(String directory) {
+		Set<File> result = new HashSet<>();
+		Integer index = directoryIndex.get(directory);
+		if (index != null) {
+			String path = paths[index];
+			for (int f = firstFile[index]; f != NONE; f = nextFile[f]) {
+				result.add(new File(path, filenames[f], new DateTime(modified[f]), size[f]));
+			}
+		}
+		return result;
+	}
+
+	/*
+	 * Returns path of the directory holding a file with the same name,
+	 * modification time and size as given file, or null unless there is
+	 * exactly one such directory. Used to find files moved between directories.
+	 */
+	public String findDirectory(File file) {
+		if (filenameIndex == null) {
+			indexFilenames();
+		}
+		Integer first = filenameIndex.get(file.getFilename());
+		long fileModified = file.getModified().getMillis();
+		String found = null;
+		for (int f = first == null ? NONE : first; f != NONE; f = nextSameName[f]) {
+			if (modified[f] == fileModified && size[f] == file.getSize()) {
+				if (found != null) {
+					return null;
+				}
+				found = paths[fileDirectory[f]];
+			}
+		}
+		return found;
+	}
+
+	private void indexFilenames() {
+		filenameIndex = new HashMap<>();
+		nextSameName = new int[files];
+		for (int f = 0; f < files; f++) {
+			Integer next = filenameIndex.put(filenames[f], f);
+			nextSameName[f] = next == null ? NONE : next;
+		}
+	}
+
+	public int getDirectoryCount() {
+		return directories;
+	}
+
+	public int getFileCount() {
+		return files;
+	}
+
+	@Override
+	public String toString() {
+		return "library snapshot: " + directories + " directories, " + files + " files";
+	}
+
+}
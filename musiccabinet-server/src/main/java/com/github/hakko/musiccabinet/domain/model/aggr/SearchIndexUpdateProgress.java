@@ -41,7 +41,7 @@ public class SearchIndexUpdateProgress {
 		this.finishedOperations = finishedOperations;
 	}
 	
-	public void addFinishedOperation() {
+	public synchronized void addFinishedOperation() {
 		if (finishedOperations == NOT_INITIALIZED) {
 			finishedOperations = 0;
 		}
@@ -0,0 +1,326 @@
+package com.github.hakko.musiccabinet.io;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.imageio.ImageIO;
+
+import org.apache.commons.lang.StringUtils;
+import org.jaudiotagger.tag.datatype.Artwork;
+
+import com.github.hakko.musiccabinet.log.Logger;
+
+/*
+ * Persistent cache of embedded cover art, used to avoid parsing audio files
+ * every time their artwork is shown.
+ *
+ * Images are stored by content hash, so an album with the same picture
+ * embedded in every track keeps one copy. Each audio file gets a small
+ * reference to its image, keyed by path, size and modification time, which
+ * makes a changed file miss the cache. Files without artwork are remembered
+ * too. Scaled-down variants are stored next to the original image, as JPEG.
+ *
+ * Entries are written to temporary files and moved in place, so concurrent
+ * readers never see half-written files. If the cache directory can't be
+ * written, artwork is simply read from audio files every time.
+ *
+ * References left behind by changed or deleted files, and images no longer
+ * referenced, are removed by compact(), which is run after library scans.
+ */
+public class ArtworkCache {
+
+	/*
+	 * Returned for files known to have no embedded artwork.
+	 */
+	public static final Artwork NO_ARTWORK = new Artwork();
+
+	private static final String REFERENCES = "references";
+	private static final String IMAGES = "images";
+	private static final String TEMPORARY = ".tmp";
+
+	// temporary files older than this are left behind by a crash
+	private static final long TEMPORARY_MAX_AGE_MS = 60 * 60 * 1000;
+
+	private final Path directory;
+
+	private static final Logger LOG = Logger.getLogger(ArtworkCache.class);
+
+	/*
+	 * Directory location is set in applicationContext.xml (see DataDirectory).
+	 */
+	public ArtworkCache(java.io.File directory) {
+		this.directory = directory.toPath();
+	}
+
+	/*
+	 * Returns cached artwork of file, NO_ARTWORK if file is known to have none,
+	 * or null if file isn't cached, or has changed.
+	 */
+	public Artwork get(java.io.File file) {
+		String[] reference = getReference(file);
+		if (reference == null) {
+			return null;
+		} else if (reference.length == 0) {
+			return NO_ARTWORK;
+		}
+		byte[] data = read(getImage(reference[0], null));
+		return data == null ? null : toArtwork(data, reference[1]);
+	}
+
+	/*
+	 * Returns cached artwork of file, scaled to fit within size x size pixels.
+	 * Scaled images are created on first request. Returns null if file isn't
+	 * cached, NO_ARTWORK if it has no (readable) artwork.
+	 */
+	public Artwork get(java.io.File file, int size) {
+		String[] reference = getReference(file);
+		if (reference == null) {
+			return null;
+		} else if (reference.length == 0) {
+			return NO_ARTWORK;
+		}
+		Path scaledImage = getImage(reference[0], size);
+		byte[] data = read(scaledImage);
+		if (data == null) {
+			byte[] original = read(getImage(reference[0], null));
+			if (original == null) {
+				return null;
+			}
+			if ((data = scale(original, size)) == null) {
+				return NO_ARTWORK;
+			}
+			write(scaledImage, data);
+		}
+		return toArtwork(data, "image/jpeg");
+	}
+
+	/*
+	 * Stores artwork of file. Pass null for files without artwork.
+	 */
+	public void put(java.io.File file, Artwork artwork) {
+		String reference = file.getPath();
+		if (artwork != null && artwork.getBinaryData() != null) {
+			String contentHash = hash(artwork.getBinaryData());
+			Path image = getImage(contentHash, null);
+			if (!Files.exists(image) && !write(image, artwork.getBinaryData())) {
+				return;
+			}
+			reference += "\0" + contentHash + "\0" + StringUtils.defaultString(artwork.getMimeType());
+		}
+		write(getReference(file.getPath(), file.length(), file.lastModified()),
+				reference.getBytes(UTF_8));
+	}
+
+	/*
+	 * Removes references of files that have changed or are gone, then images
+	 * (and scaled variants) no longer referenced. An image removed while a
+	 * new reference to it is written is just read from the audio file again.
+	 */
+	public void compact() {
+		long ms = -System.currentTimeMillis();
+		Set<String> contentHashes = new HashSet<>();
+		int references = 0, removedReferences = 0, removedImages = 0;
+		for (Path reference : list(directory.resolve(REFERENCES))) {
+			if (isTemporary(reference)) {
+				deleteIfOld(reference);
+				continue;
+			}
+			references++;
+			String[] parts = readReference(reference);
+			java.io.File file = parts == null ? null : new java.io.File(parts[0]);
+			if (file == null || !file.exists() || !reference.equals(
+					getReference(file.getPath(), file.length(), file.lastModified()))) {
+				delete(reference);
+				removedReferences++;
+			} else if (parts.length == 3) {
+				contentHashes.add(parts[1]);
+			}
+		}
+		for (Path image : list(directory.resolve(IMAGES))) {
+			if (isTemporary(image)) {
+				deleteIfOld(image);
+			} else if (!contentHashes.contains(
+					StringUtils.substringBefore(image.getFileName().toString(), "-"))) {
+				delete(image);
+				removedImages++;
+			}
+		}
+		ms += System.currentTimeMillis();
+		LOG.info("Compacted artwork cache, removed " + removedReferences + " of " + references
+				+ " references and " + removedImages + " images in " + ms + " ms.");
+	}
+
+	// returns {content hash, mime type}, an empty array for no artwork, or null
+	private String[] getReference(java.io.File file) {
+		String[] reference = readReference(
+				getReference(file.getPath(), file.length(), file.lastModified()));
+		if (reference == null || !reference[0].equals(file.getPath())) {
+			return null;
+		}
+		return Arrays.copyOfRange(reference, 1, reference.length);
+	}
+
+	// returns {path} for no artwork, {path, content hash, mime type}, or null
+	private String[] readReference(Path reference) {
+		byte[] data = read(reference);
+		if (data == null) {
+			return null;
+		}
+		String[] parts = StringUtils.splitPreserveAllTokens(new String(data, UTF_8), '\0');
+		return parts.length == 1 || parts.length == 3 ? parts : null;
+	}
+
+	private Path getReference(String path, long size, long modified) {
+		String key = hash((path + '\0' + size + '\0' + modified).getBytes(UTF_8));
+		return directory.resolve(REFERENCES).resolve(key.substring(0, 2)).resolve(key);
+	}
+
+	private Path getImage(String contentHash, Integer size) {
+		String name = size == null ? contentHash : contentHash + "-" + size + ".jpg";
+		return directory.resolve(IMAGES).resolve(contentHash.substring(0, 2)).resolve(name);
+	}
+
+	private Artwork toArtwork(byte[] data, String mimeType) {
+		Artwork artwork = new Artwork();
+		artwork.setBinaryData(data);
+		artwork.setMimeType(mimeType);
+		return artwork;
+	}
+
+	/*
+	 * Scales image down (never up) to fit within size x size pixels, keeping
+	 * aspect ratio. Returns JPEG data, or null if image can't be decoded.
+	 */
+	protected byte[] scale(byte[] original, int size) {
+		try {
+			BufferedImage image = ImageIO.read(new ByteArrayInputStream(original));
+			if (image == null) {
+				return null;
+			}
+			double ratio = Math.min(1.0, (double) size / Math.max(image.getWidth(), image.getHeight()));
+			int width = Math.max(1, (int) Math.round(image.getWidth() * ratio));
+			int height = Math.max(1, (int) Math.round(image.getHeight() * ratio));
+
+			BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+			Graphics2D g = scaled.createGraphics();
+			g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+			g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+			g.drawImage(image, 0, 0, width, height, null);
+			g.dispose();
+
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			ImageIO.write(scaled, "jpg", out);
+			return out.toByteArray();
+		} catch (IOException | RuntimeException e) {
+			LOG.warn("Could not scale artwork!", e);
+			return null;
+		}
+	}
+
+	private byte[] read(Path path) {
+		try {
+			return Files.exists(path) ? Files.readAllBytes(path) : null;
+		} catch (IOException e) {
+			LOG.warn("Could not read artwork cache entry " + path, e);
+			return null;
+		}
+	}
+
+	private boolean write(Path path, byte[] data) {
+		try {
+			Files.createDirectories(path.getParent());
+			Path tmp = Files.createTempFile(path.getParent(), null, TEMPORARY);
+			try {
+				Files.write(tmp, data);
+				try {
+					Files.move(tmp, path, ATOMIC_MOVE);
+				} catch (AtomicMoveNotSupportedException e) {
+					Files.move(tmp, path, REPLACE_EXISTING);
+				}
+			} finally {
+				Files.deleteIfExists(tmp);
+			}
+			return true;
+		} catch (IOException e) {
+			LOG.warn("Could not write artwork cache entry " + path, e);
+			return false;
+		}
+	}
+
+	// returns entries of base/xx/ directories
+	private List<Path> list(Path base) {
+		List<Path> entries = new ArrayList<>();
+		if (Files.isDirectory(base)) {
+			try (DirectoryStream<Path> prefixes = Files.newDirectoryStream(base)) {
+				for (Path prefix : prefixes) {
+					if (Files.isDirectory(prefix)) {
+						try (DirectoryStream<Path> stream = Files.newDirectoryStream(prefix)) {
+							for (Path entry : stream) {
+								entries.add(entry);
+							}
+						}
+					}
+				}
+			} catch (IOException e) {
+				LOG.warn("Could not list artwork cache entries in " + base, e);
+			}
+		}
+		return entries;
+	}
+
+	private boolean isTemporary(Path path) {
+		return path.getFileName().toString().endsWith(TEMPORARY);
+	}
+
+	private void deleteIfOld(Path path) {
+		try {
+			if (System.currentTimeMillis() - Files.getLastModifiedTime(path).toMillis()
+					> TEMPORARY_MAX_AGE_MS) {
+				Files.deleteIfExists(path);
+			}
+		} catch (IOException e) {
+			LOG.warn("Could not delete artwork cache entry " + path, e);
+		}
+	}
+
+	private void delete(Path path) {
+		try {
+			Files.deleteIfExists(path);
+		} catch (IOException e) {
+			LOG.warn("Could not delete artwork cache entry " + path, e);
+		}
+	}
+
+	private String hash(byte[] data) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-1").digest(data);
+			StringBuilder sb = new StringBuilder(40);
+			for (byte b : digest) {
+				sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+			}
+			return sb.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e); // always available
+		}
+	}
+
+}
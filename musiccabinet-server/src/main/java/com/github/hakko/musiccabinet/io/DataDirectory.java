@@ -0,0 +1,42 @@
+package com.github.hakko.musiccabinet.io;
+
+import com.github.hakko.musiccabinet.log.Logger;
+
+/*
+ * Directory for files kept between runs, like the tag cache.
+ *
+ * Set by musiccabinet.home (see applicationContext.xml), which defaults to
+ * .musiccabinet in the user's home directory. Unlike java.io.tmpdir, that's
+ * not cleaned by the system, which would silently empty the caches.
+ */
+public class DataDirectory {
+
+	private final java.io.File directory;
+
+	private static final Logger LOG = Logger.getLogger(DataDirectory.class);
+
+	public DataDirectory(String directory) {
+		this.directory = new java.io.File(directory);
+	}
+
+	/*
+	 * Returns file at location, resolved against data directory unless it's
+	 * an absolute path. Parent directories are created if missing.
+	 */
+	public java.io.File getFile(String location) {
+		java.io.File file = new java.io.File(location);
+		if (!file.isAbsolute()) {
+			file = new java.io.File(directory, location);
+		}
+		java.io.File parent = file.getParentFile();
+		if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+			LOG.warn("Could not create directory " + parent);
+		}
+		return file;
+	}
+
+	public java.io.File getDirectory() {
+		return directory;
+	}
+
+}
@@ -0,0 +1,494 @@
+package com.github.hakko.musiccabinet.io;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static java.nio.charset.StandardCharsets.UTF_16;
+import static java.nio.charset.StandardCharsets.UTF_16BE;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardOpenOption.READ;
+import static org.jaudiotagger.tag.FieldKey.ALBUM;
+import static org.jaudiotagger.tag.FieldKey.ALBUM_ARTIST;
+import static org.jaudiotagger.tag.FieldKey.ALBUM_ARTIST_SORT;
+import static org.jaudiotagger.tag.FieldKey.ARTIST;
+import static org.jaudiotagger.tag.FieldKey.ARTIST_SORT;
+import static org.jaudiotagger.tag.FieldKey.COMPOSER;
+import static org.jaudiotagger.tag.FieldKey.DISC_NO;
+import static org.jaudiotagger.tag.FieldKey.DISC_TOTAL;
+import static org.jaudiotagger.tag.FieldKey.GENRE;
+import static org.jaudiotagger.tag.FieldKey.LYRICS;
+import static org.jaudiotagger.tag.FieldKey.TITLE;
+import static org.jaudiotagger.tag.FieldKey.TRACK;
+import static org.jaudiotagger.tag.FieldKey.TRACK_TOTAL;
+import static org.jaudiotagger.tag.FieldKey.YEAR;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.lang.StringUtils;
+import org.jaudiotagger.tag.FieldKey;
+
+/*
+ * Reads tags and audio properties of MP3 and FLAC files from their leading
+ * blocks only, typically a few KB, rather than parsing the complete file.
+ *
+ * MP3: ID3v2.3/ID3v2.4 text frames, lyrics and picture presence, followed by
+ * the first MPEG frame and its Xing/Info/VBRI header.
+ * FLAC: STREAMINFO, VORBIS_COMMENT and PICTURE presence. Pictures and other
+ * large blocks are skipped without being read.
+ *
+ * Anything out of the ordinary (ID3v2.2, ID3v2.3 unsynchronisation, compressed
+ * or encrypted frames, no ID3v2 tag, no recognizable audio frame) makes read()
+ * return null, and the file is expected to be read by JAudioTagger instead.
+ */
+public class HeaderTagReader {
+
+	private static final int BUFFER_SIZE = 16 * 1024;
+	private static final int MAX_SYNC_SEARCH = 8 * 1024;
+	private static final int MAX_FRAME_SIZE = 1024 * 1024;
+
+	private static final Map<String, FieldKey> ID3_FRAMES = new HashMap<>();
+	private static final Map<String, FieldKey> VORBIS_FIELDS = new HashMap<>();
+
+	static {
+		ID3_FRAMES.put("TPE1", ARTIST);
+		ID3_FRAMES.put("TSOP", ARTIST_SORT);
+		ID3_FRAMES.put("TPE2", ALBUM_ARTIST);
+		ID3_FRAMES.put("TSO2", ALBUM_ARTIST_SORT);
+		ID3_FRAMES.put("TALB", ALBUM);
+		ID3_FRAMES.put("TIT2", TITLE);
+		ID3_FRAMES.put("TYER", YEAR);
+		ID3_FRAMES.put("TDRC", YEAR);
+		ID3_FRAMES.put("TCON", GENRE);
+		ID3_FRAMES.put("TCOM", COMPOSER);
+		ID3_FRAMES.put("TRCK", TRACK);
+		ID3_FRAMES.put("TPOS", DISC_NO);
+
+		VORBIS_FIELDS.put("ARTIST", ARTIST);
+		VORBIS_FIELDS.put("ARTISTSORT", ARTIST_SORT);
+		VORBIS_FIELDS.put("ALBUMARTIST", ALBUM_ARTIST);
+		VORBIS_FIELDS.put("ALBUMARTISTSORT", ALBUM_ARTIST_SORT);
+		VORBIS_FIELDS.put("ALBUM", ALBUM);
+		VORBIS_FIELDS.put("TITLE", TITLE);
+		VORBIS_FIELDS.put("DATE", YEAR);
+		VORBIS_FIELDS.put("GENRE", GENRE);
+		VORBIS_FIELDS.put("LYRICS", LYRICS);
+		VORBIS_FIELDS.put("COMPOSER", COMPOSER);
+		VORBIS_FIELDS.put("DISCNUMBER", DISC_NO);
+		VORBIS_FIELDS.put("DISCTOTAL", DISC_TOTAL);
+		VORBIS_FIELDS.put("TRACKNUMBER", TRACK);
+		VORBIS_FIELDS.put("TRACKTOTAL", TRACK_TOTAL);
+	}
+
+	private static final String FLAC_ALBUM_ARTIST = "ALBUM ARTIST";
+
+	// kbps, indexed by [MPEG1 ? 0 : 1][layer - 1][bitrate index]
+	private static final int[][][] BITRATES = {{
+		{0, 32, 64, 96, 128, 160, 192, 224, 256, 288, 320, 352, 384, 416, 448},
+		{0, 32, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320, 384},
+		{0, 32, 40, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320}
+	}, {
+		{0, 32, 48, 56, 64, 80, 96, 112, 128, 144, 160, 176, 192, 224, 256},
+		{0, 8, 16, 24, 32, 40, 48, 56, 64, 80, 96, 112, 128, 144, 160},
+		{0, 8, 16, 24, 32, 40, 48, 56, 64, 80, 96, 112, 128, 144, 160}
+	}};
+
+	// Hz, indexed by [version bits][sample rate index]
+	private static final int[][] SAMPLE_RATES = {
+		{11025, 12000, 8000}, null, {22050, 24000, 16000}, {44100, 48000, 32000}
+	};
+
+	/*
+	 * Tags and audio properties, as read from file.
+	 */
+	public static class HeaderTag {
+
+		private Map<FieldKey, String> fields = new EnumMap<>(FieldKey.class);
+		private boolean coverArtEmbedded;
+		private boolean vbr;
+		private int bitrate;
+		private int duration;
+
+		public String getFirst(FieldKey fieldKey) {
+			return fields.get(fieldKey);
+		}
+
+		public boolean isCoverArtEmbedded() {
+			return coverArtEmbedded;
+		}
+
+		public boolean isVbr() {
+			return vbr;
+		}
+
+		public int getBitrate() {
+			return bitrate;
+		}
+
+		public int getDuration() {
+			return duration;
+		}
+
+		private void add(FieldKey fieldKey, String value) {
+			value = StringUtils.trimToNull(value);
+			if (value != null && !fields.containsKey(fieldKey)) {
+				fields.put(fieldKey, value);
+			}
+		}
+
+	}
+
+	/*
+	 * Returns tags of given file, or null if it isn't a plain MP3/FLAC file.
+	 */
+	public HeaderTag read(java.io.File file) {
+		try (FileChannel channel = FileChannel.open(file.toPath(), READ)) {
+			Input in = new Input(channel);
+			ByteBuffer magic = in.get(0, 4);
+			if (magic.get(0) == 'I' && magic.get(1) == 'D' && magic.get(2) == '3') {
+				return readMp3(in);
+			} else if (magic.getInt(0) == 0x664c6143) { // "fLaC"
+				return readFlac(in);
+			}
+		} catch (IOException | RuntimeException e) {
+			// let JAudioTagger have a go, and report errors
+		}
+		return null;
+	}
+
+	private HeaderTag readMp3(Input in) throws IOException {
+		ByteBuffer header = in.get(0, 10);
+		int version = header.get(3);
+		int flags = header.get(5);
+		if ((version != 3 && version != 4) || (flags & 0x40) != 0
+				|| (version == 3 && (flags & 0x80) != 0)) {
+			return null; // ID3v2.2, extended header or ID3v2.3 unsynchronisation
+		}
+		boolean isUnsynchronised = (flags & 0x80) != 0;
+		long tagEnd = 10 + syncSafe(header, 6);
+		long audioStart = tagEnd + (version == 4 && (flags & 0x10) != 0 ? 10 : 0);
+
+		HeaderTag tag = new HeaderTag();
+		long position = 10;
+		while (position + 10 <= tagEnd) {
+			ByteBuffer frameHeader = in.get(position, 10);
+			if (frameHeader.get(0) == 0) {
+				break; // padding
+			}
+			String id = ascii(frameHeader, 0);
+			int size = version == 4 ? syncSafe(frameHeader, 4) : frameHeader.getInt(4);
+			int frameFlags = frameHeader.get(9);
+			if (!StringUtils.isAlphanumeric(id) || size < 0 || position + 10 + size > tagEnd
+					|| (frameFlags & (version == 4 ? 0x4c : 0xe0)) != 0) {
+				return null; // garbled, compressed, encrypted or grouped frame
+			}
+			if ("APIC".equals(id)) {
+				tag.coverArtEmbedded = true;
+			} else if ("USLT".equals(id) && size <= MAX_FRAME_SIZE) {
+				tag.add(LYRICS, getLyrics(getFrameBody(in, position, size, 
+						frameFlags, isUnsynchronised)));
+			} else if (ID3_FRAMES.containsKey(id) && size <= MAX_FRAME_SIZE) {
+				String text = getText(getFrameBody(in, position, size, 
+						frameFlags, isUnsynchronised));
+				FieldKey fieldKey = ID3_FRAMES.get(id);
+				tag.add(fieldKey, text);
+				if (text != null && (fieldKey == TRACK || fieldKey == DISC_NO)) {
+					tag.add(fieldKey == TRACK ? TRACK_TOTAL : DISC_TOTAL,
+							StringUtils.substringAfter(text, "/"));
+				}
+			}
+			position += 10 + size;
+		}
+
+		return readMpegFrame(in, audioStart, tag) ? tag : null;
+	}
+
+	/*
+	 * Returns frame content, after dropping an ID3v2.4 data length indicator
+	 * and undoing unsynchronisation (0xff 0x00 -> 0xff).
+	 */
+	private ByteBuffer getFrameBody(Input in, long position, int size, int frameFlags, 
+			boolean isUnsynchronised) throws IOException {
+		ByteBuffer body = in.get(position + 10, size);
+		if ((frameFlags & 0x01) != 0) {
+			body.position(4);
+			body = body.slice();
+		}
+		if (isUnsynchronised || (frameFlags & 0x02) != 0) {
+			ByteBuffer resynchronised = ByteBuffer.allocate(body.limit());
+			for (int i = 0; i < body.limit(); i++) {
+				byte b = body.get(i);
+				resynchronised.put(b);
+				if (b == (byte) 0xff && i + 1 < body.limit() && body.get(i + 1) == 0) {
+					i++;
+				}
+			}
+			resynchronised.flip();
+			body = resynchronised;
+		}
+		return body;
+	}
+
+	/*
+	 * Finds first MPEG audio frame, and reads audio properties from it and
+	 * its Xing/Info/VBRI header, or from file size if it has none.
+	 */
+	private boolean readMpegFrame(Input in, long audioStart, HeaderTag tag) throws IOException {
+		int length = (int) Math.min(MAX_SYNC_SEARCH, in.size() - audioStart);
+		ByteBuffer buffer = in.get(audioStart, length);
+		for (int offset = 0; offset + 4 <= length; offset++) {
+			MpegFrame frame = MpegFrame.parse(buffer.getInt(offset));
+			if (frame == null) {
+				continue;
+			}
+			long frameStart = audioStart + offset;
+			ByteBuffer content = in.get(frameStart, (int) Math.min(
+					Math.max(frame.length, 4 + 32 + 18), in.size() - frameStart));
+			long frames = -1, bytes = -1;
+			int xing = 4 + frame.getSideInfoSize();
+			String xingId = content.limit() >= xing + 8 ? ascii(content, xing) : null;
+			if ("Xing".equals(xingId) || "Info".equals(xingId)) {
+				int xingFlags = content.getInt(xing + 4);
+				int field = xing + 8;
+				if ((xingFlags & 1) != 0 && content.limit() >= field + 4) {
+					frames = content.getInt(field) & 0xffffffffL;
+					field += 4;
+				}
+				if ((xingFlags & 2) != 0 && content.limit() >= field + 4) {
+					bytes = content.getInt(field) & 0xffffffffL;
+				}
+				tag.vbr = "Xing".equals(xingId);
+			} else if (content.limit() >= 4 + 32 + 18 && "VBRI".equals(ascii(content, 36))) {
+				bytes = content.getInt(36 + 10) & 0xffffffffL;
+				frames = content.getInt(36 + 14) & 0xffffffffL;
+				tag.vbr = true;
+			} else if (!isFollowedByFrame(in, frameStart + frame.length)) {
+				continue; // false sync
+			}
+
+			long audioLength = in.size() - frameStart;
+			double seconds;
+			if (frames > 0) {
+				seconds = (double) frames * frame.samplesPerFrame / frame.sampleRate;
+			} else {
+				seconds = audioLength * 8.0 / (frame.bitrate * 1000);
+			}
+			tag.duration = (int) Math.round(seconds);
+			if (!tag.vbr) {
+				tag.bitrate = frame.bitrate;
+			} else if (seconds > 0) {
+				tag.bitrate = (int) ((bytes > 0 ? bytes : audioLength) * 8 / seconds / 1000);
+			}
+			return true;
+		}
+		return false;
+	}
+
+	private boolean isFollowedByFrame(Input in, long position) throws IOException {
+		if (position + 4 > in.size()) {
+			return position == in.size();
+		}
+		return MpegFrame.parse(in.get(position, 4).getInt(0)) != null;
+	}
+
+	private static class MpegFrame {
+
+		private int version, layer, bitrate, sampleRate, samplesPerFrame, length;
+		private boolean mono;
+
+		private static MpegFrame parse(int header) {
+			int version = (header >>> 19) & 3;
+			int layer = 4 - ((header >>> 17) & 3);
+			int bitrateIndex = (header >>> 12) & 0xf;
+			int sampleRateIndex = (header >>> 10) & 3;
+			if ((header >>> 21) != 0x7ff || version == 1 || layer == 4
+					|| bitrateIndex == 0 || bitrateIndex == 15 || sampleRateIndex == 3) {
+				return null;
+			}
+			MpegFrame frame = new MpegFrame();
+			frame.version = version;
+			frame.layer = layer;
+			frame.bitrate = BITRATES[version == 3 ? 0 : 1][layer - 1][bitrateIndex];
+			frame.sampleRate = SAMPLE_RATES[version][sampleRateIndex];
+			frame.mono = ((header >>> 6) & 3) == 3;
+			int padding = (header >>> 9) & 1;
+			if (layer == 1) {
+				frame.samplesPerFrame = 384;
+				frame.length = (12 * frame.bitrate * 1000 / frame.sampleRate + padding) * 4;
+			} else {
+				frame.samplesPerFrame = layer == 3 && version != 3 ? 576 : 1152;
+				frame.length = frame.samplesPerFrame / 8 * frame.bitrate * 1000
+						/ frame.sampleRate + padding;
+			}
+			return frame;
+		}
+
+		private int getSideInfoSize() {
+			if (version == 3) {
+				return mono ? 17 : 32;
+			}
+			return mono ? 9 : 17;
+		}
+
+	}
+
+	private HeaderTag readFlac(Input in) throws IOException {
+		HeaderTag tag = new HeaderTag();
+		String flacAlbumArtist = null;
+		long sampleRate = 0, samples = 0;
+		long position = 4;
+		boolean isLast = false;
+		while (!isLast) {
+			ByteBuffer blockHeader = in.get(position, 4);
+			int type = blockHeader.get(0) & 0x7f;
+			isLast = (blockHeader.get(0) & 0x80) != 0;
+			int length = blockHeader.getInt(0) & 0xffffff;
+			if (type == 0 && length >= 18) {
+				ByteBuffer streamInfo = in.get(position + 4, 18);
+				sampleRate = (streamInfo.getInt(10) >>> 12) & 0xfffff;
+				samples = ((streamInfo.get(13) & 0x0fL) << 32) | (streamInfo.getInt(14) & 0xffffffffL);
+			} else if (type == 4 && length <= MAX_FRAME_SIZE) {
+				ByteBuffer comments = in.get(position + 4, length).order(ByteOrder.LITTLE_ENDIAN);
+				comments.position(4 + comments.getInt(0));
+				for (int count = comments.getInt(); count > 0; count--) {
+					byte[] bytes = new byte[comments.getInt()];
+					comments.get(bytes);
+					String comment = new String(bytes, UTF_8);
+					String key = StringUtils.substringBefore(comment, "=").toUpperCase();
+					String value = StringUtils.substringAfter(comment, "=");
+					if (VORBIS_FIELDS.containsKey(key)) {
+						tag.add(VORBIS_FIELDS.get(key), value);
+					} else if (FLAC_ALBUM_ARTIST.equals(key) && flacAlbumArtist == null) {
+						flacAlbumArtist = value;
+					} else if ("METADATA_BLOCK_PICTURE".equals(key) || "COVERART".equals(key)) {
+						tag.coverArtEmbedded = true;
+					}
+				}
+			} else if (type == 6) {
+				tag.coverArtEmbedded = true;
+			} else if (type == 127) {
+				return null;
+			}
+			position += 4 + length;
+			if (position > in.size()) {
+				return null;
+			}
+		}
+		if (sampleRate == 0) {
+			return null;
+		}
+		// some older versions of Foobar and JRiver uses Album Artist (with a space)
+		tag.add(ALBUM_ARTIST, flacAlbumArtist);
+
+		double seconds = (double) samples / sampleRate;
+		tag.duration = (int) Math.round(seconds);
+		tag.bitrate = seconds > 0 ? (int) ((in.size() - position) * 8 / seconds / 1000) : 0;
+		tag.vbr = true;
+		return tag;
+	}
+
+	// text frame: encoding, followed by one or more (null separated) strings
+	private String getText(ByteBuffer frame) throws IOException {
+		Charset charset = getCharset(frame.get(0));
+		String text = decode(frame, 1, frame.limit(), charset);
+		return StringUtils.substringBefore(text, "\u0000");
+	}
+
+	// lyrics frame: encoding, language, null terminated description, lyrics
+	private String getLyrics(ByteBuffer frame) throws IOException {
+		Charset charset = getCharset(frame.get(0));
+		int width = charset == ISO_8859_1 || charset == UTF_8 ? 1 : 2;
+		int offset = 4;
+		while (offset + width <= frame.limit() &&
+				(frame.get(offset) != 0 || (width == 2 && frame.get(offset + 1) != 0))) {
+			offset += width;
+		}
+		offset += width;
+		if (offset >= frame.limit()) {
+			return null;
+		}
+		return StringUtils.substringBefore(decode(frame, offset, frame.limit(), charset), "\u0000");
+	}
+
+	private Charset getCharset(byte encoding) throws IOException {
+		switch (encoding) {
+		case 0: return ISO_8859_1;
+		case 1: return UTF_16;
+		case 2: return UTF_16BE;
+		case 3: return UTF_8;
+		default: throw new IOException("Unknown text encoding " + encoding);
+		}
+	}
+
+	private String decode(ByteBuffer buffer, int from, int to, Charset charset) {
+		byte[] bytes = new byte[Math.max(0, to - from)];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = buffer.get(from + i);
+		}
+		return new String(bytes, charset);
+	}
+
+	private String ascii(ByteBuffer buffer, int offset) {
+		return decode(buffer, offset, offset + 4, ISO_8859_1);
+	}
+
+	private int syncSafe(ByteBuffer buffer, int offset) {
+		return (buffer.get(offset) & 0x7f) << 21 | (buffer.get(offset + 1) & 0x7f) << 14
+				| (buffer.get(offset + 2) & 0x7f) << 7 | (buffer.get(offset + 3) & 0x7f);
+	}
+
+	/*
+	 * Random access to file content, served from an initial read of the
+	 * first BUFFER_SIZE bytes whenever possible.
+	 */
+	private static class Input {
+
+		private FileChannel channel;
+		private ByteBuffer start;
+		private long size;
+
+		private Input(FileChannel channel) throws IOException {
+			this.channel = channel;
+			this.size = channel.size();
+			start = ByteBuffer.allocate((int) Math.min(BUFFER_SIZE, size));
+			read(start, 0);
+		}
+
+		private long size() {
+			return size;
+		}
+
+		// returns a big-endian buffer holding length bytes from position
+		private ByteBuffer get(long position, int length) throws IOException {
+			if (length < 0 || position < 0 || position + length > size) {
+				throw new EOFException("Can't read " + length + " bytes at " + position);
+			}
+			if (position + length <= start.capacity()) {
+				ByteBuffer buffer = start.duplicate();
+				buffer.limit((int) position + length).position((int) position);
+				return buffer.slice();
+			}
+			ByteBuffer buffer = ByteBuffer.allocate(length);
+			read(buffer, position);
+			return buffer;
+		}
+
+		private void read(ByteBuffer buffer, long position) throws IOException {
+			while (buffer.hasRemaining()) {
+				int read = channel.read(buffer, position);
+				if (read < 0) {
+					throw new EOFException();
+				}
+				position += read;
+			}
+			buffer.flip();
+		}
+
+	}
+
+}
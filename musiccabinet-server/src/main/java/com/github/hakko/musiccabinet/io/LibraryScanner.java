@@ -10,6 +10,7 @@ import java.nio.file.attribute.BasicFileAttributes;
 import java.util.HashMap;
 import java.util.Map;
 
+import org.joda.time.DateTime;
 import org.springframework.integration.core.PollableChannel;
 import org.springframework.integration.message.GenericMessage;
 
@@ -24,9 +25,19 @@ public class LibraryScanner extends SimpleFileVisitor<Path> {
 	private Map<Path, DirectoryContent> map = new HashMap<>();
 	
 	private PollableChannel libraryPresenceChannel;
+	private int chunkSize;
 	
     public LibraryScanner(PollableChannel libraryPresenceChannel) {
+		this(libraryPresenceChannel, DirectoryContent.DEFAULT_CHUNK_SIZE);
+	}
+
+    /*
+     * Directories with more than chunkSize files are sent in chunks of at
+     * most chunkSize files (see DirectoryContent).
+     */
+    public LibraryScanner(PollableChannel libraryPresenceChannel, int chunkSize) {
 		this.libraryPresenceChannel = libraryPresenceChannel;
+		this.chunkSize = Math.max(1, chunkSize);
 	}
 
 	@Override
@@ -35,7 +46,9 @@ public class LibraryScanner extends SimpleFileVisitor<Path> {
     	if (parentContent != null) {
     		parentContent.getSubDirectories().add(dir.toString());
     	}
-    	map.put(dir, new DirectoryContent(dir.toString()));
+    	DirectoryContent content = new DirectoryContent(dir.toString());
+    	content.setModified(new DateTime(attrs.lastModifiedTime().toMillis()));
+    	map.put(dir, content);
     	
     	return CONTINUE;
     }
@@ -43,10 +56,19 @@ public class LibraryScanner extends SimpleFileVisitor<Path> {
     @Override
     public FileVisitResult visitFile(Path file, BasicFileAttributes attr) {
     	DirectoryContent directoryContent = map.get(file.getParent());
+    	if (attr.isDirectory()) {
+    		// only happens at max depth, for directories that won't be entered
+    		directoryContent.getSubDirectories().add(file.toString());
+    		return CONTINUE;
+    	}
     	if (attr.size() > Integer.MAX_VALUE) {
     		LOG.warn(file.getFileName() + " has actual file size " + attr.size());
     	}
     	directoryContent.getFiles().add(new File(file, attr));
+    	if (directoryContent.getFiles().size() >= chunkSize) {
+    		libraryPresenceChannel.send(new GenericMessage<DirectoryContent>(
+    				directoryContent.takeChunk()));
+    	}
     	
     	return CONTINUE;
     }
@@ -54,12 +76,16 @@ public class LibraryScanner extends SimpleFileVisitor<Path> {
     @Override
     public FileVisitResult visitFileFailed(Path file, IOException e) {
     	LOG.warn("Visiting " + file + " failed!", e);
+    	forgetModified(map.get(file.getParent()));
         return CONTINUE;
     }
 
     @Override
     public FileVisitResult postVisitDirectory(Path dir, IOException e) {
     	DirectoryContent content = map.get(dir);
+    	if (e != null) {
+    		forgetModified(content);
+    	}
     	
     	libraryPresenceChannel.send(new GenericMessage<DirectoryContent>(content));
     	
@@ -67,5 +93,15 @@ public class LibraryScanner extends SimpleFileVisitor<Path> {
     	
     	return CONTINUE;
     }
+
+    /*
+     * Directories that couldn't be completely read are sent without
+     * modification time, so they're not considered up-to-date next scan.
+     */
+    private void forgetModified(DirectoryContent content) {
+    	if (content != null) {
+    		content.setModified(null);
+    	}
+    }
     
 }
\ No newline at end of file
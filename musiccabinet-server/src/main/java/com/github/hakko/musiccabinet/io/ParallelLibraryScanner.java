@@ -0,0 +1,180 @@
+package com.github.hakko.musiccabinet.io;
+
+import static java.nio.file.LinkOption.NOFOLLOW_LINKS;
+
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import org.apache.commons.io.IOUtils;
+import org.joda.time.DateTime;
+import org.springframework.integration.core.PollableChannel;
+import org.springframework.integration.message.GenericMessage;
+
+import com.github.hakko.musiccabinet.domain.model.aggr.DirectoryContent;
+import com.github.hakko.musiccabinet.domain.model.aggr.LibrarySnapshot;
+import com.github.hakko.musiccabinet.domain.model.library.File;
+import com.github.hakko.musiccabinet.log.Logger;
+
+/*
+ * Alternative to LibraryScanner, that lists sub-directories in parallel
+ * using a fork/join pool. This pays off on storage where each directory
+ * listing or file stat has a high latency, like network shares.
+ *
+ * Messages are sent with the same semantics as LibraryScanner: one message
+ * per directory, sent after the messages of all of its sub-directories
+ * (post-visit order). Sibling directories are sent in no particular order.
+ * Directories with more than chunkSize files have chunks of files sent as
+ * they're listed, ahead of the directory message.
+ *
+ * Symbolic links are not followed, and directories that can't be read are
+ * logged and left out of their parent directory, just like Files.walkFileTree.
+ *
+ * If given a snapshot of library content (incremental scan), directories
+ * that have the same modification time as at last scan aren't listed, and
+ * no message is sent for them. Adding, removing or renaming an entry updates
+ * the modification time of its directory, so their stored content is still
+ * valid; their stored sub-directories are visited instead of listed ones.
+ * Files changed in place (re-tagged, say) don't update the modification time
+ * of their directory though, and are only found by non-incremental scans.
+ */
+public class ParallelLibraryScanner {
+
+	private static final Logger LOG = Logger.getLogger(ParallelLibraryScanner.class);
+
+	private PollableChannel libraryPresenceChannel;
+	private int parallelism;
+	private LibrarySnapshot snapshot;
+	private int chunkSize;
+
+	public ParallelLibraryScanner(PollableChannel libraryPresenceChannel, int parallelism) {
+		this(libraryPresenceChannel, parallelism, null);
+	}
+
+	public ParallelLibraryScanner(PollableChannel libraryPresenceChannel, int parallelism,
+			LibrarySnapshot snapshot) {
+		this(libraryPresenceChannel, parallelism, snapshot, DirectoryContent.DEFAULT_CHUNK_SIZE);
+	}
+
+	public ParallelLibraryScanner(PollableChannel libraryPresenceChannel, int parallelism,
+			LibrarySnapshot snapshot, int chunkSize) {
+		this.libraryPresenceChannel = libraryPresenceChannel;
+		this.parallelism = parallelism;
+		this.snapshot = snapshot;
+		this.chunkSize = Math.max(1, chunkSize);
+	}
+
+	public void scan(Path root) throws IOException {
+		BasicFileAttributes attr = Files.readAttributes(root, BasicFileAttributes.class);
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		try {
+			pool.invoke(new DirectoryTask(root, attr.lastModifiedTime().toMillis()));
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	// returns true if the directory could be read, or was unchanged.
+	private class DirectoryTask extends RecursiveTask<Boolean> {
+
+		private static final long serialVersionUID = 7137946271931485214L;
+
+		private final Path dir;
+		private final long modified;
+
+		public DirectoryTask(Path dir, long modified) {
+			this.dir = dir;
+			this.modified = modified;
+		}
+
+		@Override
+		protected Boolean compute() {
+			if (snapshot != null && snapshot.isUnchanged(dir.toString(), modified)) {
+				visitStoredSubDirectories();
+				return true;
+			}
+
+			DirectoryContent content = new DirectoryContent(dir.toString());
+			content.setModified(new DateTime(modified));
+			List<DirectoryTask> subTasks = new ArrayList<>();
+
+			DirectoryStream<Path> stream;
+			try {
+				stream = Files.newDirectoryStream(dir);
+			} catch (IOException e) {
+				LOG.warn("Visiting " + dir + " failed!", e);
+				return false;
+			}
+			try {
+				for (Path path : stream) {
+					visit(path, content, subTasks);
+					if (content.getFiles().size() >= chunkSize) {
+						libraryPresenceChannel.send(new GenericMessage<DirectoryContent>(
+								content.takeChunk()));
+					}
+				}
+			} catch (DirectoryIteratorException e) {
+				LOG.warn("Visiting " + dir + " failed!", e);
+				content.setModified(null);
+			} finally {
+				IOUtils.closeQuietly(stream);
+			}
+
+			invokeAll(subTasks);
+			for (DirectoryTask subTask : subTasks) {
+				if (subTask.join()) {
+					content.getSubDirectories().add(subTask.dir.toString());
+				}
+			}
+
+			libraryPresenceChannel.send(new GenericMessage<DirectoryContent>(content));
+
+			return true;
+		}
+
+		private void visit(Path path, DirectoryContent content, List<DirectoryTask> subTasks) {
+			try {
+				BasicFileAttributes attr = Files.readAttributes(
+						path, BasicFileAttributes.class, NOFOLLOW_LINKS);
+				if (attr.isDirectory()) {
+					subTasks.add(new DirectoryTask(path, attr.lastModifiedTime().toMillis()));
+				} else {
+					if (attr.size() > Integer.MAX_VALUE) {
+						LOG.warn(path.getFileName() + " has actual file size " + attr.size());
+					}
+					content.getFiles().add(new File(path, attr));
+				}
+			} catch (IOException e) {
+				LOG.warn("Visiting " + path + " failed!", e);
+				content.setModified(null);
+			}
+		}
+
+		private void visitStoredSubDirectories() {
+			List<DirectoryTask> subTasks = new ArrayList<>();
+			for (String subDirectory : snapshot.getSubdirectories(dir.toString())) {
+				Path path = Paths.get(subDirectory);
+				try {
+					BasicFileAttributes attr = Files.readAttributes(
+							path, BasicFileAttributes.class, NOFOLLOW_LINKS);
+					if (attr.isDirectory()) {
+						subTasks.add(new DirectoryTask(path, attr.lastModifiedTime().toMillis()));
+					}
+				} catch (IOException e) {
+					LOG.warn("Visiting " + path + " failed!", e);
+				}
+			}
+			invokeAll(subTasks);
+		}
+
+	}
+
+}
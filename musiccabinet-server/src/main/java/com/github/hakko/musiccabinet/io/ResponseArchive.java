@@ -0,0 +1,353 @@
+package com.github.hakko.musiccabinet.io;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static com.github.hakko.musiccabinet.ws.lastfm.AbstractWSClient.PARAM_API_KEY;
+import static com.github.hakko.musiccabinet.ws.lastfm.AbstractWSClient.PARAM_API_SIG;
+import static com.github.hakko.musiccabinet.ws.lastfm.AbstractWSClient.PARAM_SK;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.NameValuePair;
+
+import com.github.hakko.musiccabinet.domain.model.library.WebserviceInvocation;
+import com.github.hakko.musiccabinet.log.Logger;
+
+/*
+ * Archive of Last.fm response bodies, to rebuild the database (or re-parse
+ * responses after a parser change) without fetching them again.
+ *
+ * Successful responses are stored by AbstractWSGetClient, keyed by call type
+ * and request parameters. When replay is on, clients read
+ * responses from here instead of calling Last.fm, and invocations not in the
+ * archive are treated as not allowed. The update services, parsers and DAOs
+ * are the same either way, so a replay is just a search index update that
+ * runs at disk speed.
+ *
+ * Like TagCache, the archive is an append-only file, with an index of key to
+ * file offset on heap. Bodies are gzipped. A newer response replaces an older
+ * one, which is left behind until the file is compacted (at start, if mostly
+ * stale). A record cut short by a crash is discarded, along with anything
+ * after it. If the file can't be opened, nothing is archived.
+ */
+public class ResponseArchive implements ResponseArchiveMBean {
+
+	/*
+	 * Bump VERSION whenever record layout or key format changes.
+	 */
+	private static final int MAGIC = 0x4d435241; // "MCRA"
+	private static final int VERSION = 2;
+	private static final int HEADER_SIZE = 8;
+
+	private static final int MAX_RECORD_SIZE = 64 * 1024 * 1024;
+	private static final int MIN_STALE_FOR_COMPACTION = 1000;
+
+	private final java.io.File file;
+
+	private boolean isRecording = true;
+	private volatile boolean isReplay;
+
+	private FileChannel channel;
+	private long end;
+	private boolean isOpen, hasFailed;
+
+	private Map<String, Long> offsets = new HashMap<>();
+	private int stale;
+	private long hits, misses;
+
+	private static final Logger LOG = Logger.getLogger(ResponseArchive.class);
+
+	/*
+	 * File location is set in applicationContext.xml (see DataDirectory).
+	 */
+	public ResponseArchive(java.io.File file) {
+		this.file = file;
+	}
+
+	/*
+	 * Returns archived response body for invocation, or null if there's none.
+	 */
+	public synchronized String get(WebserviceInvocation wi, List<NameValuePair> params) {
+		if (!open()) {
+			return null;
+		}
+		String key = getKey(wi, params);
+		Long offset = offsets.get(key);
+		if (offset == null) {
+			misses++;
+			return null;
+		}
+		try {
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(read(offset)));
+			if (!key.equals(in.readUTF())) {
+				throw new IOException("Key mismatch at offset " + offset);
+			}
+			in.readLong(); // stored at
+			byte[] body = IOUtils.toByteArray(new GZIPInputStream(in));
+			hits++;
+			return new String(body, UTF_8);
+		} catch (IOException | RuntimeException e) {
+			LOG.warn("Could not read archived response for " + wi, e);
+			misses++;
+			return null;
+		}
+	}
+
+	public synchronized void put(WebserviceInvocation wi, List<NameValuePair> params,
+			String responseBody) {
+		if (!isRecording || responseBody == null || !open()) {
+			return;
+		}
+		String key = getKey(wi, params);
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream(responseBody.length() / 4);
+			DataOutputStream out = new DataOutputStream(bytes);
+			out.writeInt(0); // record length, set below
+			out.writeUTF(key);
+			out.writeLong(System.currentTimeMillis());
+			out.flush();
+			try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+				gzip.write(responseBody.getBytes(UTF_8));
+			}
+
+			ByteBuffer record = ByteBuffer.wrap(bytes.toByteArray());
+			record.putInt(0, record.limit() - 4);
+			long offset = end;
+			write(channel, record, offset);
+			end += record.limit();
+			index(key, offset);
+		} catch (IOException e) {
+			LOG.warn("Could not archive response for " + wi, e);
+		}
+	}
+
+	/*
+	 * Key of invocation. Built from call type and the request parameters sent
+	 * to Last.fm, so that it identifies the call even where the invocation
+	 * leaves out some of them (like the user of library.gettracks), and stays
+	 * the same as long as the call does (unlike toString(), where tag counts
+	 * are included).
+	 *
+	 * API key and signature are the same for every call, or derived from the
+	 * others, and are left out. So is the session key, which is a credential;
+	 * the user of an authenticated call is taken from the invocation instead.
+	 */
+	protected static String getKey(WebserviceInvocation wi, List<NameValuePair> params) {
+		StringBuilder sb = new StringBuilder(wi.getCallType().name());
+		if (wi.getUser() != null) {
+			sb.append("|lastfmuser=").append(wi.getUser().getLastFmUsername());
+		}
+		for (NameValuePair param : params) {
+			String name = param.getName();
+			if (!PARAM_API_KEY.equals(name) && !PARAM_API_SIG.equals(name) && !PARAM_SK.equals(name)) {
+				sb.append('|').append(name).append('=').append(param.getValue());
+			}
+		}
+		return sb.toString();
+	}
+
+	public synchronized void close() {
+		IOUtils.closeQuietly(channel);
+		channel = null;
+		isOpen = false;
+	}
+
+	private boolean open() {
+		if (!isOpen && !hasFailed) {
+			try {
+				load();
+				if (stale > offsets.size() && stale >= MIN_STALE_FOR_COMPACTION) {
+					compact();
+				}
+				isOpen = true;
+			} catch (IOException e) {
+				LOG.warn("Could not open response archive " + file + ", not archiving!", e);
+				close();
+				hasFailed = true;
+			}
+		}
+		return isOpen;
+	}
+
+	/*
+	 * Indexes records, reading only length and key of each.
+	 */
+	private void load() throws IOException {
+		long ms = -System.currentTimeMillis();
+		channel = new RandomAccessFile(file, "rw").getChannel();
+		offsets = new HashMap<>();
+		stale = 0;
+
+		long length = channel.size();
+		if (length < HEADER_SIZE || !hasValidHeader()) {
+			channel.truncate(0);
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			header.putInt(MAGIC).putInt(VERSION).flip();
+			write(channel, header, 0);
+			end = HEADER_SIZE;
+			return;
+		}
+
+		long offset = HEADER_SIZE;
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+				new FileInputStream(file), 64 * 1024))) {
+			IOUtils.skipFully(in, HEADER_SIZE);
+			while (offset + 4 <= length) {
+				int recordLength = in.readInt();
+				checkLength(recordLength, offset);
+				in.mark(recordLength);
+				String key = in.readUTF();
+				in.reset();
+				IOUtils.skipFully(in, recordLength);
+				index(key, offset);
+				offset += 4 + recordLength;
+			}
+		} catch (IOException e) {
+			// incomplete record, truncated below
+		}
+		if (offset < length) {
+			LOG.warn("Discarding incomplete archived responses from offset " + offset);
+			channel.truncate(offset);
+		}
+		end = offset;
+		ms += System.currentTimeMillis();
+		LOG.debug("Loaded response archive with " + offsets.size() + " responses ("
+				+ stale + " stale) in " + ms + " ms");
+	}
+
+	private boolean hasValidHeader() throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		read(channel, header, 0);
+		header.flip();
+		return header.getInt() == MAGIC && header.getInt() == VERSION;
+	}
+
+	/*
+	 * Rewrites archive file with current responses only.
+	 */
+	private void compact() throws IOException {
+		java.io.File tmp = new java.io.File(file.getPath() + ".tmp");
+		try (FileChannel out = new RandomAccessFile(tmp, "rw").getChannel()) {
+			out.truncate(0);
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			header.putInt(MAGIC).putInt(VERSION).flip();
+			long position = write(out, header, 0);
+			for (Long offset : offsets.values()) {
+				byte[] record = read(offset);
+				ByteBuffer buffer = ByteBuffer.allocate(4 + record.length);
+				buffer.putInt(record.length).put(record).flip();
+				position = write(out, buffer, position);
+			}
+		}
+		close();
+		try {
+			Files.move(tmp.toPath(), file.toPath(), REPLACE_EXISTING);
+		} catch (IOException e) {
+			LOG.warn("Could not compact response archive " + file, e);
+			Files.deleteIfExists(tmp.toPath());
+		}
+		load();
+	}
+
+	// returns record body (all but length)
+	private byte[] read(long offset) throws IOException {
+		ByteBuffer lengthBuffer = ByteBuffer.allocate(4);
+		read(channel, lengthBuffer, offset);
+		int length = lengthBuffer.getInt(0);
+		checkLength(length, offset);
+		ByteBuffer record = ByteBuffer.allocate(length);
+		read(channel, record, offset + 4);
+		return record.array();
+	}
+
+	private void checkLength(int length, long offset) throws IOException {
+		if (length <= 0 || length > MAX_RECORD_SIZE || offset + 4 + length > channel.size()) {
+			throw new IOException("Invalid response archive record at offset " + offset);
+		}
+	}
+
+	private static void read(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			int read = channel.read(buffer, position);
+			if (read < 0) {
+				throw new IOException("Unexpected end of response archive at " + position);
+			}
+			position += read;
+		}
+	}
+
+	private static long write(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			position += channel.write(buffer, position);
+		}
+		return position;
+	}
+
+	private void index(String key, long offset) {
+		if (offsets.put(key, offset) != null) {
+			stale++;
+		}
+	}
+
+	@Override
+	public synchronized int getResponses() {
+		return open() ? offsets.size() : 0;
+	}
+
+	@Override
+	public synchronized int getStaleResponses() {
+		return stale;
+	}
+
+	@Override
+	public synchronized long getSizeBytes() {
+		return end;
+	}
+
+	@Override
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	@Override
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	@Override
+	public boolean isReplay() {
+		return isReplay;
+	}
+
+	/*
+	 * Turns replay on or off. During replay, no calls are made to Last.fm.
+	 */
+	@Override
+	public void setReplay(boolean isReplay) {
+		this.isReplay = isReplay;
+		LOG.info("Replay of archived Last.fm responses " + (isReplay ? "on." : "off."));
+	}
+
+	// Spring setters
+
+	public void setRecording(boolean isRecording) {
+		this.isRecording = isRecording;
+	}
+
+}
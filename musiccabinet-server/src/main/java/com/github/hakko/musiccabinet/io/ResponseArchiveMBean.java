@@ -0,0 +1,17 @@
+package com.github.hakko.musiccabinet.io;
+
+/*
+ * Management interface of ResponseArchive, as seen through JMX.
+ */
+public interface ResponseArchiveMBean {
+
+	int getResponses();
+	int getStaleResponses();
+	long getSizeBytes();
+	long getHits();
+	long getMisses();
+
+	boolean isReplay();
+	void setReplay(boolean isReplay);
+
+}
@@ -0,0 +1,401 @@
+package com.github.hakko.musiccabinet.io;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+
+import org.apache.commons.io.IOUtils;
+
+import com.github.hakko.musiccabinet.domain.model.library.MetaData;
+import com.github.hakko.musiccabinet.domain.model.library.MetaData.Mediatype;
+import com.github.hakko.musiccabinet.log.Logger;
+
+/*
+ * Persistent cache of file meta-data, used to avoid parsing audio files again
+ * when a library is re-added (after a full rescan or a database rebuild).
+ *
+ * Entries are keyed by file path, and only returned if file size and
+ * modification time are unchanged since the entry was written.
+ *
+ * The cache is an append-only file of binary records. Existing records are
+ * memory-mapped at start, and only an index of path hash to file offset is
+ * kept on heap. A changed file gets a new record, and the old one is left
+ * behind until the cache file is compacted (at start, if mostly stale).
+ * A record cut short by a crash is discarded, along with anything after it.
+ *
+ * If the cache file can't be opened, the cache silently stays empty.
+ */
+public class TagCache {
+
+	/*
+	 * Bump VERSION whenever record layout or meta-data parsing changes, to
+	 * have existing caches discarded rather than returning outdated data.
+	 */
+	private static final int MAGIC = 0x4d435443; // "MCTC"
+	private static final int VERSION = 2;
+	private static final int HEADER_SIZE = 8;
+
+	private static final short NULL_SHORT = Short.MIN_VALUE;
+	private static final int MAX_RECORD_SIZE = 16 * 1024 * 1024;
+	private static final int MIN_STALE_FOR_COMPACTION = 1000;
+
+	private final java.io.File file;
+
+	private FileChannel channel;
+	private MappedByteBuffer mapped;
+	private long end;
+	private boolean isOpen, hasFailed;
+
+	// open addressing index, path hash -> record offset
+	private long[] hashes = new long[1024];
+	private long[] offsets = new long[1024];
+	private int entries, stale;
+
+	private static final Logger LOG = Logger.getLogger(TagCache.class);
+
+	/*
+	 * File location is set in applicationContext.xml (see DataDirectory).
+	 */
+	public TagCache(java.io.File file) {
+		this.file = file;
+	}
+
+	/*
+	 * Returns cached meta-data, or null if file isn't cached, or has changed.
+	 */
+	public synchronized MetaData get(String path, int size, long modified) {
+		if (!open()) {
+			return null;
+		}
+		long offset = find(hash(path));
+		if (offset == -1) {
+			return null;
+		}
+		try {
+			ByteBuffer record = read(offset);
+			if (!path.equals(getString(record)) || record.getInt() != size
+					|| record.getLong() != modified) {
+				return null;
+			}
+			return getMetaData(record);
+		} catch (IOException | RuntimeException e) {
+			LOG.warn("Could not read tag cache entry for " + path, e);
+			return null;
+		}
+	}
+
+	public synchronized void put(String path, int size, long modified, MetaData metaData) {
+		if (!open()) {
+			return;
+		}
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+			DataOutputStream out = new DataOutputStream(bytes);
+			out.writeInt(0); // record length, set below
+			putString(out, path);
+			out.writeInt(size);
+			out.writeLong(modified);
+			putMetaData(out, metaData);
+			out.flush();
+
+			ByteBuffer record = ByteBuffer.wrap(bytes.toByteArray());
+			record.putInt(0, record.limit() - 4);
+			long offset = end;
+			write(channel, record, offset);
+			end += record.limit();
+			index(hash(path), offset);
+		} catch (IOException e) {
+			LOG.warn("Could not write tag cache entry for " + path, e);
+		}
+	}
+
+	public synchronized int size() {
+		return open() ? entries : 0;
+	}
+
+	public synchronized void close() {
+		IOUtils.closeQuietly(channel);
+		channel = null;
+		mapped = null;
+		isOpen = false;
+	}
+
+	private boolean open() {
+		if (!isOpen && !hasFailed) {
+			try {
+				load();
+				if (stale > entries && stale >= MIN_STALE_FOR_COMPACTION) {
+					compact();
+				}
+				isOpen = true;
+			} catch (IOException e) {
+				LOG.warn("Could not open tag cache " + file + ", not caching tags!", e);
+				close();
+				hasFailed = true;
+			}
+		}
+		return isOpen;
+	}
+
+	private void load() throws IOException {
+		long ms = -System.currentTimeMillis();
+		channel = new RandomAccessFile(file, "rw").getChannel();
+		hashes = new long[1024];
+		offsets = new long[1024];
+		entries = stale = 0;
+
+		long length = channel.size();
+		if (length < HEADER_SIZE || !hasValidHeader()) {
+			channel.truncate(0);
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			header.putInt(MAGIC).putInt(VERSION).flip();
+			write(channel, header, 0);
+			end = HEADER_SIZE;
+			mapped = null;
+			return;
+		}
+
+		mapped = channel.map(MapMode.READ_ONLY, 0, Math.min(length, Integer.MAX_VALUE));
+		long offset = HEADER_SIZE;
+		while (offset + 4 <= length) {
+			ByteBuffer record;
+			try {
+				record = read(offset);
+			} catch (IOException | RuntimeException e) {
+				break;
+			}
+			index(hash(getString(record)), offset);
+			offset += 4 + record.limit();
+		}
+		if (offset < length) {
+			LOG.warn("Discarding incomplete tag cache entries from offset " + offset);
+			channel.truncate(offset);
+			mapped = channel.map(MapMode.READ_ONLY, 0, Math.min(offset, Integer.MAX_VALUE));
+		}
+		end = offset;
+		ms += System.currentTimeMillis();
+		LOG.debug("Loaded tag cache with " + entries + " entries ("
+				+ stale + " stale) in " + ms + " ms");
+	}
+
+	private boolean hasValidHeader() throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		read(channel, header, 0);
+		header.flip();
+		return header.getInt() == MAGIC && header.getInt() == VERSION;
+	}
+
+	/*
+	 * Rewrites cache file with current entries only.
+	 */
+	private void compact() throws IOException {
+		java.io.File tmp = new java.io.File(file.getPath() + ".tmp");
+		try (FileChannel out = new RandomAccessFile(tmp, "rw").getChannel()) {
+			out.truncate(0);
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			header.putInt(MAGIC).putInt(VERSION).flip();
+			long position = write(out, header, 0);
+			for (int i = 0; i < hashes.length; i++) {
+				if (hashes[i] != 0) {
+					ByteBuffer record = read(offsets[i]);
+					ByteBuffer length = ByteBuffer.allocate(4);
+					length.putInt(record.limit()).flip();
+					position = write(out, length, position);
+					position = write(out, record, position);
+				}
+			}
+		}
+		close();
+		try {
+			Files.move(tmp.toPath(), file.toPath(), REPLACE_EXISTING);
+		} catch (IOException e) {
+			// typically on Windows, where a mapped file can't be replaced
+			LOG.warn("Could not compact tag cache " + file, e);
+			Files.deleteIfExists(tmp.toPath());
+		}
+		load();
+	}
+
+	// returns record body (all but length), positioned at start
+	private ByteBuffer read(long offset) throws IOException {
+		if (mapped != null && offset + 4 <= mapped.limit()) {
+			int length = mapped.getInt((int) offset);
+			checkLength(length, offset);
+			if (offset + 4 + length <= mapped.limit()) {
+				ByteBuffer record = mapped.duplicate();
+				record.position((int) offset + 4);
+				record.limit((int) offset + 4 + length);
+				return record.slice();
+			}
+		}
+		ByteBuffer lengthBuffer = ByteBuffer.allocate(4);
+		read(channel, lengthBuffer, offset);
+		int length = lengthBuffer.getInt(0);
+		checkLength(length, offset);
+		ByteBuffer record = ByteBuffer.allocate(length);
+		read(channel, record, offset + 4);
+		record.flip();
+		return record;
+	}
+
+	private void checkLength(int length, long offset) throws IOException {
+		if (length <= 0 || length > MAX_RECORD_SIZE || offset + 4 + length > channel.size()) {
+			throw new IOException("Invalid tag cache record at offset " + offset);
+		}
+	}
+
+	private static void read(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			int read = channel.read(buffer, position);
+			if (read < 0) {
+				throw new IOException("Unexpected end of tag cache at " + position);
+			}
+			position += read;
+		}
+	}
+
+	private static long write(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			position += channel.write(buffer, position);
+		}
+		return position;
+	}
+
+	private void index(long hash, long offset) {
+		if (2 * (entries + 1) > hashes.length) {
+			long[] oldHashes = hashes, oldOffsets = offsets;
+			hashes = new long[oldHashes.length * 2];
+			offsets = new long[oldOffsets.length * 2];
+			for (int i = 0; i < oldHashes.length; i++) {
+				if (oldHashes[i] != 0) {
+					int slot = slot(oldHashes[i]);
+					hashes[slot] = oldHashes[i];
+					offsets[slot] = oldOffsets[i];
+				}
+			}
+		}
+		int slot = slot(hash);
+		if (hashes[slot] == 0) {
+			hashes[slot] = hash;
+			entries++;
+		} else {
+			stale++;
+		}
+		offsets[slot] = offset;
+	}
+
+	private long find(long hash) {
+		int slot = slot(hash);
+		return hashes[slot] == 0 ? -1 : offsets[slot];
+	}
+
+	// slot holding hash, or the empty slot where it belongs
+	private int slot(long hash) {
+		int mask = hashes.length - 1;
+		int slot = (int) (hash ^ (hash >>> 32)) & mask;
+		while (hashes[slot] != 0 && hashes[slot] != hash) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	// 64-bit FNV-1a. 0 marks an empty slot, and is never returned.
+	protected static long hash(String path) {
+		long hash = 0xcbf29ce484222325L;
+		for (int i = 0; i < path.length(); i++) {
+			hash ^= path.charAt(i);
+			hash *= 0x100000001b3L;
+		}
+		return hash == 0 ? 1 : hash;
+	}
+
+	private void putMetaData(DataOutputStream out, MetaData md) throws IOException {
+		out.writeByte(md.getMediaType().ordinal());
+		out.writeShort(md.getBitrate());
+		out.writeBoolean(md.isVbr());
+		out.writeShort(md.getDuration());
+		putString(out, md.getArtist());
+		putString(out, md.getArtistSort());
+		putString(out, md.getAlbumArtist());
+		putString(out, md.getAlbumArtistSort());
+		putString(out, md.getAlbum());
+		putString(out, md.getTitle());
+		putShort(out, md.getYear());
+		putString(out, md.getGenre());
+		putString(out, md.getLyrics());
+		putString(out, md.getComposer());
+		putShort(out, md.getDiscNr());
+		putShort(out, md.getDiscNrs());
+		putShort(out, md.getTrackNr());
+		putShort(out, md.getTrackNrs());
+		out.writeBoolean(md.isCoverArtEmbedded());
+	}
+
+	private MetaData getMetaData(ByteBuffer in) {
+		MetaData md = new MetaData();
+		md.setMediaType(Mediatype.values()[in.get()]);
+		md.setBitrate(in.getShort());
+		md.setVbr(in.get() != 0);
+		md.setDuration(in.getShort());
+		md.setArtist(getString(in));
+		md.setArtistSort(getString(in));
+		md.setAlbumArtist(getString(in));
+		md.setAlbumArtistSort(getString(in));
+		md.setAlbum(getString(in));
+		md.setTitle(getString(in));
+		md.setYear(getShort(in));
+		md.setGenre(getString(in));
+		md.setLyrics(getString(in));
+		md.setComposer(getString(in));
+		md.setDiscNr(getShort(in));
+		md.setDiscNrs(getShort(in));
+		md.setTrackNr(getShort(in));
+		md.setTrackNrs(getShort(in));
+		md.setCoverArtEmbedded(in.get() != 0);
+		return md;
+	}
+
+	private void putString(DataOutputStream out, String s) throws IOException {
+		if (s == null) {
+			out.writeInt(-1);
+		} else {
+			byte[] bytes = s.getBytes(UTF_8);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+	}
+
+	private String getString(ByteBuffer in) {
+		int length = in.getInt();
+		if (length == -1) {
+			return null;
+		}
+		byte[] bytes = new byte[length];
+		in.get(bytes);
+		return new String(bytes, UTF_8);
+	}
+
+	private void putShort(DataOutputStream out, Short s) throws IOException {
+		out.writeShort(s == null ? NULL_SHORT : s);
+	}
+
+	private Short getShort(ByteBuffer in) {
+		short s = in.getShort();
+		return s == NULL_SHORT ? null : s;
+	}
+
+	@Override
+	public String toString() {
+		return "tag cache " + file + " (" + entries + " entries)";
+	}
+
+}
@@ -0,0 +1,248 @@
+package com.github.hakko.musiccabinet.io;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+
+import com.github.hakko.musiccabinet.log.Logger;
+
+/*
+ * Limits the number of threads doing I/O against each volume during a
+ * library scan.
+ *
+ * Every scan root is mapped to a volume: a configured path prefix, if one
+ * matches, or else the FileStore it's on. The number of concurrent readers
+ * allowed per volume is configured per path prefix, or detected from the
+ * FileStore: network file systems allow many readers, as their latency is
+ * hidden by parallel requests, solid state disks some, and spinning disks
+ * only one (seeking between files is what makes them slow).
+ *
+ * Rotational disks are detected through /sys/class/block on Linux. Where
+ * that isn't available, unknownLimit is used.
+ *
+ * Paths are mapped to the volume of the longest matching root, so a file
+ * system mounted below a scan root counts as part of the root's volume.
+ */
+public class VolumeConcurrency {
+
+	private static final Set<String> NETWORK_TYPES = new HashSet<>(Arrays.asList(
+			"nfs", "nfs4", "cifs", "smbfs", "smb2", "afpfs", "webdav", "9p", "fuse.sshfs"));
+
+	private Map<String, Integer> limits = new HashMap<>();
+	private int rotationalLimit = 1;
+	private int solidStateLimit = 8;
+	private int networkLimit = 16;
+	private int unknownLimit = 4;
+
+	private final Map<Object, Volume> volumes = new HashMap<>();
+	private Map<String, Volume> roots = new LinkedHashMap<>();
+
+	private static final Logger LOG = Logger.getLogger(VolumeConcurrency.class);
+
+	/*
+	 * Sets the root paths of a scan, and looks up their volumes.
+	 * Paths that don't exist are left out.
+	 */
+	public synchronized void setRoots(Collection<String> rootPaths) {
+		roots = new LinkedHashMap<>();
+		for (String rootPath : rootPaths) {
+			Volume volume = getVolume(Paths.get(rootPath));
+			if (volume != null) {
+				roots.put(rootPath, volume);
+			}
+		}
+	}
+
+	/*
+	 * Returns volume of the longest root path that path is on, or null.
+	 */
+	public synchronized Volume findVolume(String path) {
+		String longest = null;
+		for (String root : roots.keySet()) {
+			if (isBelow(path, root) && (longest == null || root.length() > longest.length())) {
+				longest = root;
+			}
+		}
+		return longest == null ? null : roots.get(longest);
+	}
+
+	/*
+	 * Returns the distinct volumes of current roots.
+	 */
+	public synchronized List<Volume> getVolumes() {
+		List<Volume> distinct = new ArrayList<>();
+		for (Volume volume : roots.values()) {
+			if (!distinct.contains(volume)) {
+				distinct.add(volume);
+			}
+		}
+		return distinct;
+	}
+
+	/*
+	 * Returns the sum of limits for volumes of current roots.
+	 */
+	public int getTotalLimit() {
+		int total = 0;
+		for (Volume volume : getVolumes()) {
+			total += volume.getLimit();
+		}
+		return total;
+	}
+
+	protected synchronized Volume getVolume(Path root) {
+		String prefix = null;
+		for (String configured : limits.keySet()) {
+			if (isBelow(root.toString(), configured)
+					&& (prefix == null || configured.length() > prefix.length())) {
+				prefix = configured;
+			}
+		}
+		if (prefix != null) {
+			Volume volume = volumes.get(prefix);
+			if (volume == null) {
+				volumes.put(prefix, volume = new Volume(prefix, limits.get(prefix)));
+			}
+			return volume;
+		}
+		try {
+			FileStore store = Files.getFileStore(root);
+			Volume volume = volumes.get(store);
+			if (volume == null) {
+				volume = new Volume(store.name() + " (" + store.type() + ")", detectLimit(store));
+				volumes.put(store, volume);
+				LOG.info("Scanning " + volume);
+			}
+			return volume;
+		} catch (IOException e) {
+			LOG.warn("Could not find volume of " + root, e);
+			return null;
+		}
+	}
+
+	private int detectLimit(FileStore store) {
+		if (NETWORK_TYPES.contains(store.type().toLowerCase())) {
+			return networkLimit;
+		}
+		Boolean rotational = isRotational(store.name());
+		if (rotational == null) {
+			return unknownLimit;
+		}
+		return rotational ? rotationalLimit : solidStateLimit;
+	}
+
+	/*
+	 * Looks up device (say /dev/sda1, or /dev/mapper/x which links to /dev/dm-0)
+	 * in /sys/class/block. Partitions don't have a queue of their own, so their
+	 * parent device is tried as well. Returns null if not known.
+	 */
+	protected Boolean isRotational(String device) {
+		try {
+			Path devicePath = Paths.get(device);
+			if (!device.startsWith("/dev/") || !Files.exists(devicePath)) {
+				return null;
+			}
+			Path block = Paths.get("/sys/class/block",
+					devicePath.toRealPath().getFileName().toString());
+			if (!Files.exists(block)) {
+				return null;
+			}
+			block = block.toRealPath();
+			for (Path dir : new Path[]{block, block.getParent()}) {
+				Path rotational = dir.resolve("queue").resolve("rotational");
+				if (Files.isReadable(rotational)) {
+					return "1".equals(new String(Files.readAllBytes(rotational),
+							StandardCharsets.US_ASCII).trim());
+				}
+			}
+		} catch (IOException | RuntimeException e) {
+			LOG.debug("Could not tell if " + device + " is rotational: " + e.getMessage());
+		}
+		return null;
+	}
+
+	private boolean isBelow(String path, String root) {
+		if (!path.startsWith(root)) {
+			return false;
+		}
+		return path.length() == root.length() || root.endsWith(java.io.File.separator)
+				|| path.startsWith(java.io.File.separator, root.length());
+	}
+
+	/*
+	 * A volume, with permits for its number of concurrent readers.
+	 */
+	public static class Volume {
+
+		private final String name;
+		private final int limit;
+		private final Semaphore permits;
+
+		public Volume(String name, int limit) {
+			this.name = name;
+			this.limit = Math.max(1, limit);
+			this.permits = new Semaphore(this.limit, true);
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public int getLimit() {
+			return limit;
+		}
+
+		public void acquire() {
+			permits.acquireUninterruptibly();
+		}
+
+		public void release() {
+			permits.release();
+		}
+
+		@Override
+		public String toString() {
+			return name + " (" + limit + " readers)";
+		}
+
+	}
+
+	// Spring setters
+
+	/*
+	 * Concurrent readers per path prefix, overriding detection.
+	 */
+	public void setLimits(Map<String, Integer> limits) {
+		this.limits = limits;
+	}
+
+	public void setRotationalLimit(int rotationalLimit) {
+		this.rotationalLimit = rotationalLimit;
+	}
+
+	public void setSolidStateLimit(int solidStateLimit) {
+		this.solidStateLimit = solidStateLimit;
+	}
+
+	public void setNetworkLimit(int networkLimit) {
+		this.networkLimit = networkLimit;
+	}
+
+	public void setUnknownLimit(int unknownLimit) {
+		this.unknownLimit = unknownLimit;
+	}
+
+}
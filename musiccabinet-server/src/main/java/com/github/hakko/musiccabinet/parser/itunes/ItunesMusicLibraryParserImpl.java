@@ -1,11 +1,16 @@
 package com.github.hakko.musiccabinet.parser.itunes;
 
+import static org.apache.commons.lang.math.NumberUtils.toInt;
+import static org.apache.commons.lang.math.NumberUtils.toLong;
+
 import java.io.InputStream;
 
 import javax.xml.stream.XMLEventReader;
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.events.XMLEvent;
 
+import org.joda.time.format.ISODateTimeFormat;
+
 import com.github.hakko.musiccabinet.exception.ApplicationException;
 import com.github.hakko.musiccabinet.parser.AbstractStAXParserImpl;
 
@@ -17,6 +22,9 @@ import com.github.hakko.musiccabinet.parser.AbstractStAXParserImpl;
  * network access for unit tests to pass). Also, we want to parse parts of it, update
  * database, and repeat that until the whole file has been read. That's why a stax
  * parser seems more feasible for the job than the sax parsers used for last.fm data.
+ *
+ * Each track is passed to the callback once its dict has been read, with all
+ * fields needed to add its file to library without reading its tags.
  */
 public class ItunesMusicLibraryParserImpl extends AbstractStAXParserImpl implements ItunesMusicLibraryParser {
 	
@@ -35,10 +43,30 @@ public class ItunesMusicLibraryParserImpl extends AbstractStAXParserImpl impleme
 	private static final String TAG_DICT = "dict";
 	private static final String TAG_KEY = "key";
 	
+	private static final int TRACK_DICT_DEPTH = 3; // plist dict > Tracks dict > track dict
+
 	private static final String KEY_TRACKS = "Tracks";
 	private static final String KEY_TRACK_ID = "Track ID";
 	private static final String KEY_NAME = "Name";
 	private static final String KEY_ARTIST = "Artist";
+	private static final String KEY_ALBUM_ARTIST = "Album Artist";
+	private static final String KEY_COMPOSER = "Composer";
+	private static final String KEY_ALBUM = "Album";
+	private static final String KEY_GENRE = "Genre";
+	private static final String KEY_SIZE = "Size";
+	private static final String KEY_TOTAL_TIME = "Total Time";
+	private static final String KEY_DISC_NUMBER = "Disc Number";
+	private static final String KEY_DISC_COUNT = "Disc Count";
+	private static final String KEY_TRACK_NUMBER = "Track Number";
+	private static final String KEY_TRACK_COUNT = "Track Count";
+	private static final String KEY_YEAR = "Year";
+	private static final String KEY_DATE_MODIFIED = "Date Modified";
+	private static final String KEY_BIT_RATE = "Bit Rate";
+	private static final String KEY_PLAY_COUNT = "Play Count";
+	private static final String KEY_ARTWORK_COUNT = "Artwork Count";
+	private static final String KEY_SORT_ARTIST = "Sort Artist";
+	private static final String KEY_SORT_ALBUM_ARTIST = "Sort Album Artist";
+	private static final String KEY_LOCATION = "Location";
 	
 	public ItunesMusicLibraryParserImpl(InputStream source,
 			ItunesMusicLibraryParserCallback callback) throws ApplicationException {
@@ -74,6 +102,10 @@ public class ItunesMusicLibraryParserImpl extends AbstractStAXParserImpl impleme
 	private void endElement(String qName) {
 		String chars = characterData.toString();
 		if (TAG_DICT.equals(qName)) {
+			if (dictDepth == TRACK_DICT_DEPTH && track != null && KEY_TRACKS.equals(dictDepthOneKey)) {
+				callback.addTrack(track);
+				track = null;
+			}
 			--dictDepth;
 			if (dictDepth == 0) {
 				callback.endOfTracks();
@@ -83,18 +115,45 @@ public class ItunesMusicLibraryParserImpl extends AbstractStAXParserImpl impleme
 			if (dictDepth == 1) {
 				dictDepthOneKey = chars;
 			}
-		} else {
-			if (KEY_TRACKS.equals(dictDepthOneKey)) {
-				if (KEY_TRACK_ID.equals(currentKey)) {
-					track = new ItunesTrack();
-					track.internalId = chars;
-				} else if (KEY_NAME.equals(currentKey)) {
-					track.track = chars.trim();
-				} else if (KEY_ARTIST.equals(currentKey)) {
-					track.artist = chars.trim();
-					callback.addTrack(track);
-				}
+		} else if (KEY_TRACKS.equals(dictDepthOneKey) && dictDepth == TRACK_DICT_DEPTH) {
+			if (KEY_TRACK_ID.equals(currentKey)) {
+				track = new ItunesTrack();
+				track.internalId = chars;
+			} else if (track != null) {
+				setField(track, currentKey, chars);
+			}
+		}
+	}
+
+	private void setField(ItunesTrack track, String key, String chars) {
+		switch (key) {
+		case KEY_NAME: track.track = chars.trim(); break;
+		case KEY_ARTIST: track.artist = chars.trim(); break;
+		case KEY_ALBUM_ARTIST: track.albumArtist = chars.trim(); break;
+		case KEY_COMPOSER: track.composer = chars.trim(); break;
+		case KEY_ALBUM: track.album = chars.trim(); break;
+		case KEY_GENRE: track.genre = chars.trim(); break;
+		case KEY_SORT_ARTIST: track.artistSort = chars.trim(); break;
+		case KEY_SORT_ALBUM_ARTIST: track.albumArtistSort = chars.trim(); break;
+		case KEY_LOCATION: track.location = chars.trim(); break;
+		case KEY_SIZE: track.size = toLong(chars); break;
+		case KEY_TOTAL_TIME: track.totalTime = toInt(chars); break;
+		case KEY_DISC_NUMBER: track.discNumber = toInt(chars); break;
+		case KEY_DISC_COUNT: track.discCount = toInt(chars); break;
+		case KEY_TRACK_NUMBER: track.trackNumber = toInt(chars); break;
+		case KEY_TRACK_COUNT: track.trackCount = toInt(chars); break;
+		case KEY_YEAR: track.year = toInt(chars); break;
+		case KEY_BIT_RATE: track.bitRate = toInt(chars); break;
+		case KEY_PLAY_COUNT: track.playCount = toInt(chars); break;
+		case KEY_ARTWORK_COUNT: track.artworkCount = toInt(chars); break;
+		case KEY_DATE_MODIFIED:
+			try {
+				track.dateModified = ISODateTimeFormat.dateTimeParser().parseMillis(chars.trim());
+			} catch (IllegalArgumentException e) {
+				track.dateModified = 0;
 			}
+			break;
+		default:
 		}
 	}
 
@@ -102,9 +161,30 @@ public class ItunesMusicLibraryParserImpl extends AbstractStAXParserImpl impleme
 		characterData.append(data);
 	}
 
-	protected class ItunesTrack {
+	/*
+	 * A track, as stored by iTunes. Numbers not given are 0.
+	 */
+	public static class ItunesTrack {
 		public String internalId;
 		public String artist;
 		public String track;
+		public String albumArtist;
+		public String composer;
+		public String album;
+		public String genre;
+		public String artistSort;
+		public String albumArtistSort;
+		public String location; // file:// URL
+		public long size;
+		public long dateModified;
+		public int totalTime; // ms
+		public int discNumber;
+		public int discCount;
+		public int trackNumber;
+		public int trackCount;
+		public int year;
+		public int bitRate; // kbps
+		public int playCount;
+		public int artworkCount;
 	}
 }
\ No newline at end of file
@@ -1,6 +1,7 @@
 package com.github.hakko.musiccabinet.service.lastfm;
 
-import java.util.ArrayList;
+import static com.github.hakko.musiccabinet.domain.model.library.WebserviceInvocation.Calltype.ALBUM_GET_INFO;
+
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -9,7 +10,6 @@ import com.github.hakko.musiccabinet.dao.AlbumInfoDao;
 import com.github.hakko.musiccabinet.domain.model.music.Album;
 import com.github.hakko.musiccabinet.domain.model.music.AlbumInfo;
 import com.github.hakko.musiccabinet.exception.ApplicationException;
-import com.github.hakko.musiccabinet.log.Logger;
 import com.github.hakko.musiccabinet.parser.lastfm.AlbumInfoParser;
 import com.github.hakko.musiccabinet.parser.lastfm.AlbumInfoParserImpl;
 import com.github.hakko.musiccabinet.util.StringUtil;
@@ -28,8 +28,6 @@ public class AlbumInfoService extends SearchIndexUpdateService {
 	
 	private static final int BATCH_SIZE = 1000;
 	
-	private static final Logger LOG = Logger.getLogger(AlbumInfoService.class);
-	
 	public List<AlbumInfo> getAlbumInfosForArtist(int artistId) {
 		return albumInfoDao.getAlbumInfosForArtist(artistId);
 	}
@@ -43,30 +41,35 @@ public class AlbumInfoService extends SearchIndexUpdateService {
 	protected void updateSearchIndex() throws ApplicationException {
 		List<Album> albums = albumInfoDao.getAlbumsWithoutInfo();
 		
-		List<AlbumInfo> albumInfos = new ArrayList<>();
 		setTotalOperations(albums.size());
+		webserviceHistoryService.startAlbumUpdate(ALBUM_GET_INFO, albums);
 		
-		for (Album album : albums) {
-			try {
-				WSResponse wsResponse = albumInfoClient.getAlbumInfo(album);
-				if (wsResponse.wasCallAllowed() && wsResponse.wasCallSuccessful()) {
+		boolean isWritten = false;
+		try {
+			new SearchIndexUpdatePipeline<Album, AlbumInfo>(this) {
+				@Override
+				protected WSResponse call(Album album) throws ApplicationException {
+					return albumInfoClient.getAlbumInfo(album);
+				}
+
+				@Override
+				protected AlbumInfo parse(Album album, WSResponse wsResponse)
+						throws ApplicationException {
 					StringUtil stringUtil = new StringUtil(wsResponse.getResponseBody());
 					AlbumInfoParser aiParser = 
 						new AlbumInfoParserImpl(stringUtil.getInputStream());
-					albumInfos.add(aiParser.getAlbumInfo());
-					
-					if (albumInfos.size() == BATCH_SIZE) {
-						albumInfoDao.createAlbumInfo(albumInfos);
-						albumInfos.clear();
-					}
+					return aiParser.getAlbumInfo();
 				}
-			} catch (ApplicationException e) {
-				LOG.warn("Fetching album info for " + album.getName() + " failed.", e);
-			}
-			addFinishedOperation();
-		}
 
-		albumInfoDao.createAlbumInfo(albumInfos);
+				@Override
+				protected void write(List<AlbumInfo> batch) {
+					albumInfoDao.createAlbumInfo(batch);
+				}
+			}.setBatchSize(BATCH_SIZE).run(albums);
+			isWritten = true;
+		} finally {
+			webserviceHistoryService.endUpdate(ALBUM_GET_INFO, isWritten);
+		}
 	}
 
 	@Override
@@ -2,7 +2,6 @@ package com.github.hakko.musiccabinet.service.lastfm;
 
 import static com.github.hakko.musiccabinet.domain.model.library.WebserviceInvocation.Calltype.ARTIST_GET_INFO;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
 
@@ -54,37 +53,40 @@ public class ArtistInfoService extends SearchIndexUpdateService {
 		Set<String> artistNames = webserviceHistoryService.
 				getArtistNamesScheduledForUpdate(ARTIST_GET_INFO);
 		
-		List<ArtistInfo> artistInfos = new ArrayList<>(artistNames.size());
 		setTotalOperations(artistNames.size());
 		
-		for (String artistName : artistNames) {
-			try {
-				WSResponse wsResponse = artistInfoClient.getArtistInfo(
-						new Artist(artistName), lastFmSettingsService.getLang());
-				if (wsResponse.wasCallAllowed() && wsResponse.wasCallSuccessful()) {
+		final String lang = lastFmSettingsService.getLang();
+		boolean isWritten = false;
+		try {
+			new SearchIndexUpdatePipeline<String, ArtistInfo>(this) {
+				@Override
+				protected WSResponse call(String artistName) throws ApplicationException {
+					return artistInfoClient.getArtistInfo(new Artist(artistName), lang);
+				}
+
+				@Override
+				protected ArtistInfo parse(String artistName, WSResponse wsResponse)
+						throws ApplicationException {
 					StringUtil stringUtil = new StringUtil(wsResponse.getResponseBody());
 					ArtistInfoParser aiParser = 
 						new ArtistInfoParserImpl(stringUtil.getInputStream());
-					if (aiParser.getArtistInfo() != null) {
-						artistInfos.add(aiParser.getArtistInfo());
-					} else {
+					if (aiParser.getArtistInfo() == null) {
 						LOG.warn("Artist info response for " + artistName 
 								+ " not parsed correctly. Response was " 
 								+ wsResponse.getResponseBody());
 					}
-					
-					if (artistInfos.size() == BATCH_SIZE) {
-						artistInfoDao.createArtistInfo(artistInfos);
-						artistInfos.clear();
-					}
+					return aiParser.getArtistInfo();
 				}
-			} catch (ApplicationException e) {
-				LOG.warn("Fetching artist info for " + artistName + " failed.", e);
-			}
-			addFinishedOperation();
-		}
 
-		artistInfoDao.createArtistInfo(artistInfos);
+				@Override
+				protected void write(List<ArtistInfo> batch) {
+					artistInfoDao.createArtistInfo(batch);
+				}
+			}.setBatchSize(BATCH_SIZE).run(artistNames);
+			isWritten = true;
+		} finally {
+			webserviceHistoryService.endUpdate(ARTIST_GET_INFO, isWritten);
+		}
 	}
 
 	@Override
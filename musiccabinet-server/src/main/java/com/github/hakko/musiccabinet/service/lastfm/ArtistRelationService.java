@@ -2,12 +2,15 @@ package com.github.hakko.musiccabinet.service.lastfm;
 
 import static com.github.hakko.musiccabinet.domain.model.library.WebserviceInvocation.Calltype.ARTIST_GET_SIMILAR;
 
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import com.github.hakko.musiccabinet.dao.ArtistRelationDao;
 import com.github.hakko.musiccabinet.domain.model.music.Artist;
+import com.github.hakko.musiccabinet.domain.model.music.ArtistRelation;
 import com.github.hakko.musiccabinet.exception.ApplicationException;
-import com.github.hakko.musiccabinet.log.Logger;
 import com.github.hakko.musiccabinet.parser.lastfm.ArtistSimilarityParser;
 import com.github.hakko.musiccabinet.parser.lastfm.ArtistSimilarityParserImpl;
 import com.github.hakko.musiccabinet.util.StringUtil;
@@ -25,8 +28,6 @@ public class ArtistRelationService extends SearchIndexUpdateService {
 	protected ArtistRelationDao artistRelationDao;
 	protected WebserviceHistoryService webserviceHistoryService;
 
-	private static final Logger LOG = Logger.getLogger(ArtistRelationService.class);
-	
 	@Override
 	protected void updateSearchIndex() throws ApplicationException {
 		Set<String> artistNames = webserviceHistoryService.
@@ -34,20 +35,33 @@ public class ArtistRelationService extends SearchIndexUpdateService {
 
 		setTotalOperations(artistNames.size());
 		
-		for (String artistName : artistNames) {
-			try {
-				WSResponse wsResponse = artistSimilarityClient.getArtistSimilarity(new Artist(artistName));
-				if (wsResponse.wasCallAllowed() && wsResponse.wasCallSuccessful()) {
+		boolean isWritten = false;
+		try {
+			new SearchIndexUpdatePipeline<String, ArtistSimilarityParser>(this) {
+				@Override
+				protected WSResponse call(String artistName) throws ApplicationException {
+					return artistSimilarityClient.getArtistSimilarity(new Artist(artistName));
+				}
+
+				@Override
+				protected ArtistSimilarityParser parse(String artistName, WSResponse wsResponse)
+						throws ApplicationException {
 					StringUtil stringUtil = new StringUtil(wsResponse.getResponseBody());
-					ArtistSimilarityParser asParser = 
-						new ArtistSimilarityParserImpl(stringUtil.getInputStream());
-					artistRelationDao.createArtistRelations(asParser.getArtist(), 
-							asParser.getArtistRelations());
+					return new ArtistSimilarityParserImpl(stringUtil.getInputStream());
+				}
+
+				@Override
+				protected void write(List<ArtistSimilarityParser> batch) {
+					Map<Artist, List<ArtistRelation>> artistRelations = new LinkedHashMap<>();
+					for (ArtistSimilarityParser asParser : batch) {
+						artistRelations.put(asParser.getArtist(), asParser.getArtistRelations());
+					}
+					artistRelationDao.createArtistRelations(artistRelations);
 				}
-			} catch (ApplicationException e) {
-				LOG.warn("Fetching artist relations for " + artistName + " failed.", e);
-			}
-			addFinishedOperation();
+			}.run(artistNames);
+			isWritten = true;
+		} finally {
+			webserviceHistoryService.endUpdate(ARTIST_GET_SIMILAR, isWritten);
 		}
 	}
 
@@ -3,14 +3,15 @@ package com.github.hakko.musiccabinet.service.lastfm;
 import static com.github.hakko.musiccabinet.domain.model.library.WebserviceInvocation.Calltype.ARTIST_GET_TOP_TAGS;
 
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import com.github.hakko.musiccabinet.dao.ArtistTopTagsDao;
 import com.github.hakko.musiccabinet.domain.model.music.Artist;
 import com.github.hakko.musiccabinet.domain.model.music.Tag;
 import com.github.hakko.musiccabinet.exception.ApplicationException;
-import com.github.hakko.musiccabinet.log.Logger;
 import com.github.hakko.musiccabinet.parser.lastfm.ArtistTopTagsParser;
 import com.github.hakko.musiccabinet.parser.lastfm.ArtistTopTagsParserImpl;
 import com.github.hakko.musiccabinet.util.StringUtil;
@@ -26,8 +27,6 @@ public class ArtistTopTagsService extends SearchIndexUpdateService {
 	protected ArtistTopTagsDao artistTopTagsDao;
 	protected WebserviceHistoryService webserviceHistoryService;
 
-	private static final Logger LOG = Logger.getLogger(ArtistTopTagsService.class);
-	
 	public List<Tag> getTopTags(int artistId, int limit) throws ApplicationException {
 		return artistTopTagsDao.getTopTags(artistId, limit);
 	}
@@ -39,21 +38,36 @@ public class ArtistTopTagsService extends SearchIndexUpdateService {
 		
 		setTotalOperations(artistNames.size());
 		
-		for (String artistName : artistNames) {
-			try {
-				WSResponse wsResponse = artistTopTagsClient.getTopTags(new Artist(artistName));
-				if (wsResponse.wasCallAllowed() && wsResponse.wasCallSuccessful()) {
+		boolean isWritten = false;
+		try {
+			new SearchIndexUpdatePipeline<String, ArtistTopTagsParser>(this) {
+				@Override
+				protected WSResponse call(String artistName) throws ApplicationException {
+					return artistTopTagsClient.getTopTags(new Artist(artistName));
+				}
+
+				@Override
+				protected ArtistTopTagsParser parse(String artistName, WSResponse wsResponse)
+						throws ApplicationException {
 					StringUtil stringUtil = new StringUtil(wsResponse.getResponseBody());
 					ArtistTopTagsParser attParser =
 						new ArtistTopTagsParserImpl(stringUtil.getInputStream());
 					removeTagsWithLowTagCount(attParser.getTopTags());
-					artistTopTagsDao.createTopTags(attParser.getArtist(), 
-							attParser.getTopTags());
+					return attParser;
 				}
-			} catch (ApplicationException e) {
-				LOG.warn("Fetching top tags for " + artistName + " failed.", e);
-			}
-			addFinishedOperation();
+
+				@Override
+				protected void write(List<ArtistTopTagsParser> batch) {
+					Map<Artist, List<Tag>> topTags = new LinkedHashMap<>();
+					for (ArtistTopTagsParser attParser : batch) {
+						topTags.put(attParser.getArtist(), attParser.getTopTags());
+					}
+					artistTopTagsDao.createTopTags(topTags);
+				}
+			}.run(artistNames);
+			isWritten = true;
+		} finally {
+			webserviceHistoryService.endUpdate(ARTIST_GET_TOP_TAGS, isWritten);
 		}
 	}
 
@@ -2,14 +2,15 @@ package com.github.hakko.musiccabinet.service.lastfm;
 
 import static com.github.hakko.musiccabinet.domain.model.library.WebserviceInvocation.Calltype.ARTIST_GET_TOP_TRACKS;
 
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import com.github.hakko.musiccabinet.dao.ArtistTopTracksDao;
 import com.github.hakko.musiccabinet.domain.model.music.Artist;
 import com.github.hakko.musiccabinet.domain.model.music.Track;
 import com.github.hakko.musiccabinet.exception.ApplicationException;
-import com.github.hakko.musiccabinet.log.Logger;
 import com.github.hakko.musiccabinet.parser.lastfm.ArtistTopTracksParser;
 import com.github.hakko.musiccabinet.parser.lastfm.ArtistTopTracksParserImpl;
 import com.github.hakko.musiccabinet.util.StringUtil;
@@ -25,8 +26,6 @@ public class ArtistTopTracksService extends SearchIndexUpdateService {
 	protected ArtistTopTracksDao artistTopTracksDao;
 	protected WebserviceHistoryService webserviceHistoryService;
 
-	private static final Logger LOG = Logger.getLogger(ArtistTopTracksService.class);
-
 	public List<Track> getTopTracks(int artistId) {
 		return artistTopTracksDao.getTopTracks(artistId);
 	}
@@ -37,20 +36,33 @@ public class ArtistTopTracksService extends SearchIndexUpdateService {
 				getArtistNamesScheduledForUpdate(ARTIST_GET_TOP_TRACKS);
 		setTotalOperations(artistNames.size());
 		
-		for (String artistName : artistNames) {
-			try {
-				WSResponse wsResponse = artistTopTracksClient.getTopTracks(new Artist(artistName));
-				if (wsResponse.wasCallAllowed() && wsResponse.wasCallSuccessful()) {
+		boolean isWritten = false;
+		try {
+			new SearchIndexUpdatePipeline<String, ArtistTopTracksParser>(this) {
+				@Override
+				protected WSResponse call(String artistName) throws ApplicationException {
+					return artistTopTracksClient.getTopTracks(new Artist(artistName));
+				}
+
+				@Override
+				protected ArtistTopTracksParser parse(String artistName, WSResponse wsResponse)
+						throws ApplicationException {
 					StringUtil stringUtil = new StringUtil(wsResponse.getResponseBody());
-					ArtistTopTracksParser attParser =
-						new ArtistTopTracksParserImpl(stringUtil.getInputStream());
-					artistTopTracksDao.createTopTracks(attParser.getArtist(), 
-							attParser.getTopTracks());
+					return new ArtistTopTracksParserImpl(stringUtil.getInputStream());
+				}
+
+				@Override
+				protected void write(List<ArtistTopTracksParser> batch) {
+					Map<Artist, List<Track>> topTracks = new LinkedHashMap<>();
+					for (ArtistTopTracksParser attParser : batch) {
+						topTracks.put(attParser.getArtist(), attParser.getTopTracks());
+					}
+					artistTopTracksDao.createTopTracks(topTracks);
 				}
-			} catch (ApplicationException e) {
-				LOG.warn("Fetching top tracks for " + artistName + " failed.", e);
-			}
-			addFinishedOperation();
+			}.run(artistNames);
+			isWritten = true;
+		} finally {
+			webserviceHistoryService.endUpdate(ARTIST_GET_TOP_TRACKS, isWritten);
 		}
 	}
 
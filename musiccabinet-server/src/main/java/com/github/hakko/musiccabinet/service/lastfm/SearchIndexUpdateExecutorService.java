@@ -2,9 +2,8 @@ package com.github.hakko.musiccabinet.service.lastfm;
 
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
 
 import com.github.hakko.musiccabinet.exception.ApplicationException;
 import com.github.hakko.musiccabinet.log.Logger;
@@ -20,9 +19,10 @@ import com.github.hakko.musiccabinet.log.Logger;
  * for tagInfoService, which has to be executed sequentially as it depends
  * on artistTopTagsService for deciding which tags to fetch info for.
  * 
- * The parallel execution is throttled by handing out permits to do last.fm calls
- * every second, and having the update service threads claim such a permit before
- * making a call.
+ * The parallel execution is throttled by having the update service threads
+ * claim a permit from ThrottleService before making a last.fm call.
+ * Within the larger update services, calls, parsing and database writes
+ * overlap as well (see SearchIndexUpdatePipeline).
  * 
  * This class is not thread-safe in itself. It is meant to be called once a day.
  */
@@ -30,7 +30,7 @@ public class SearchIndexUpdateExecutorService {
 
 	private ThrottleService throttleService;
 
-	private ScheduledExecutorService scheduler;
+	private ExecutorService executor;
 	private CountDownLatch activeThreads;
 	
 	private Logger LOG = Logger.getLogger(SearchIndexUpdateExecutorService.class);
@@ -39,31 +39,20 @@ public class SearchIndexUpdateExecutorService {
 		final int threads = updateServices.size();
 		activeThreads = new CountDownLatch(threads);
 		
-		scheduler = Executors.newScheduledThreadPool(threads + 1);
-		scheduler.scheduleAtFixedRate(new Throttler(), 0, 1, TimeUnit.MINUTES);
+		executor = Executors.newFixedThreadPool(threads);
 
 		for (SearchIndexUpdateService updateService : updateServices) {
-			scheduler.execute(new Worker(updateService));
+			executor.execute(new Worker(updateService));
 		}
 		
 		try {
 			activeThreads.await();
 		} catch (InterruptedException e) {
 		}
-		scheduler.shutdown();
+		executor.shutdown();
 	}
 
-	// used to send allowance to invoke last.fm calls, five per second.
-	private class Throttler implements Runnable {
-
-		@Override
-		public void run() {
-			throttleService.allowCalls();
-		}
-		
-	}
-
-	// wraps actual update jobs. shutdowns throttler when last update job is done.
+	// wraps actual update jobs, and counts down when done.
 	private class Worker implements Runnable {
 
 		private SearchIndexUpdateService updateService;
@@ -0,0 +1,245 @@
+package com.github.hakko.musiccabinet.service.lastfm;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import com.github.hakko.musiccabinet.exception.ApplicationException;
+import com.github.hakko.musiccabinet.log.Logger;
+import com.github.hakko.musiccabinet.ws.lastfm.WSResponse;
+
+/*
+ * Runs the Last.fm calls of a search index update as three overlapping stages:
+ *
+ * - callers: a few threads making calls, each waiting for a permit from
+ *   ThrottleService and then for the response,
+ * - parsers: a small pool parsing responses,
+ * - writer: a single thread writing parsed results to database, in batches.
+ *
+ * This way, a permit is never left unused while a response is parsed or
+ * written. Callers are ordinary threads on the shared HTTP client, rather than
+ * a non-blocking client, as throttling and not threads is what bounds the rate.
+ *
+ * When parsers fall behind, callers parse themselves. When the writer falls
+ * behind, parsers wait. That keeps memory use bounded for large updates.
+ *
+ * A pipeline is meant to be run once, from SearchIndexUpdateService.updateSearchIndex().
+ */
+public abstract class SearchIndexUpdatePipeline<I, R> {
+
+	private final SearchIndexUpdateService updateService;
+
+	private int callThreads = 2;
+	private int parseThreads = 2;
+	private int batchSize = 100;
+
+	private Iterator<I> items;
+	private BlockingQueue<Object> results;
+	private volatile Throwable writeFailure;
+
+	private static final Object END_OF_RESULTS = new Object();
+
+	private static final Logger LOG = Logger.getLogger(SearchIndexUpdatePipeline.class);
+
+	public SearchIndexUpdatePipeline(SearchIndexUpdateService updateService) {
+		this.updateService = updateService;
+	}
+
+	/*
+	 * Makes a Last.fm call for item.
+	 */
+	protected abstract WSResponse call(I item) throws ApplicationException;
+
+	/*
+	 * Parses a successful response. Returns null if there's nothing to write.
+	 */
+	protected abstract R parse(I item, WSResponse wsResponse) throws ApplicationException;
+
+	/*
+	 * Writes a batch of parsed results to database.
+	 */
+	protected abstract void write(List<R> batch) throws ApplicationException;
+
+	/*
+	 * Runs all items through pipeline, and returns when they're written.
+	 * Failure for a single item is logged and skipped. After a failed write,
+	 * no more calls are made, results in flight are dropped, and the failure
+	 * is thrown.
+	 */
+	public void run(Collection<I> items) throws ApplicationException {
+		this.items = items.iterator();
+		this.results = new ArrayBlockingQueue<>(2 * batchSize);
+
+		ExecutorService callers = Executors.newFixedThreadPool(callThreads);
+		ThreadPoolExecutor parsers = new ThreadPoolExecutor(parseThreads, parseThreads,
+				0, MILLISECONDS, new ArrayBlockingQueue<Runnable>(4 * parseThreads),
+				new ThreadPoolExecutor.CallerRunsPolicy());
+		ExecutorService writer = Executors.newSingleThreadExecutor();
+		try {
+			Future<?> writing = writer.submit(new Writer());
+			for (int i = 0; i < callThreads; i++) {
+				callers.execute(new Caller(parsers));
+			}
+			await(callers);
+			await(parsers);
+			results.put(END_OF_RESULTS);
+			writing.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ApplicationException("Update of " + updateService.getUpdateDescription()
+					+ " was interrupted!", e);
+		} catch (ExecutionException e) {
+			writeFailure = e.getCause();
+		} finally {
+			callers.shutdownNow();
+			parsers.shutdownNow();
+			writer.shutdownNow();
+		}
+
+		if (writeFailure instanceof ApplicationException) {
+			throw (ApplicationException) writeFailure;
+		} else if (writeFailure instanceof RuntimeException) {
+			throw (RuntimeException) writeFailure;
+		} else if (writeFailure != null) {
+			throw new ApplicationException("Writing " + updateService.getUpdateDescription()
+					+ " failed!", writeFailure);
+		}
+	}
+
+	private void await(ExecutorService executor) throws InterruptedException {
+		executor.shutdown();
+		executor.awaitTermination(Long.MAX_VALUE, SECONDS);
+	}
+
+	private synchronized I nextItem() {
+		return items.hasNext() ? items.next() : null;
+	}
+
+	private class Caller implements Runnable {
+
+		private final ExecutorService parsers;
+
+		public Caller(ExecutorService parsers) {
+			this.parsers = parsers;
+		}
+
+		@Override
+		public void run() {
+			for (I item; writeFailure == null && !Thread.currentThread().isInterrupted()
+					&& (item = nextItem()) != null; ) {
+				try {
+					WSResponse wsResponse = call(item);
+					if (wsResponse.wasCallAllowed() && wsResponse.wasCallSuccessful()) {
+						parsers.execute(new Parser(item, wsResponse));
+						continue;
+					}
+				} catch (ApplicationException | RuntimeException e) {
+					LOG.warn("Fetching " + updateService.getUpdateDescription()
+							+ " for " + item + " failed.", e);
+				}
+				updateService.addFinishedOperation();
+			}
+		}
+
+	}
+
+	private class Parser implements Runnable {
+
+		private final I item;
+		private final WSResponse wsResponse;
+
+		public Parser(I item, WSResponse wsResponse) {
+			this.item = item;
+			this.wsResponse = wsResponse;
+		}
+
+		@Override
+		public void run() {
+			try {
+				R result = parse(item, wsResponse);
+				if (result != null) {
+					results.put(result);
+					return;
+				}
+			} catch (ApplicationException | RuntimeException e) {
+				LOG.warn("Parsing " + updateService.getUpdateDescription()
+						+ " for " + item + " failed.", e);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			updateService.addFinishedOperation();
+		}
+
+	}
+
+	/*
+	 * Takes results until end of results, and writes them in batches. After a
+	 * failed write, results are only counted, so that parsers don't block.
+	 */
+	private class Writer implements Runnable {
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public void run() {
+			List<Object> taken = new ArrayList<>(batchSize);
+			List<R> batch = new ArrayList<>(batchSize);
+			boolean isFinished = false;
+			while (!isFinished) {
+				try {
+					taken.add(results.take());
+				} catch (InterruptedException e) {
+					return;
+				}
+				results.drainTo(taken, batchSize - 1);
+				for (Object result : taken) {
+					if (result == END_OF_RESULTS) {
+						isFinished = true;
+					} else {
+						batch.add((R) result);
+					}
+				}
+				if (!batch.isEmpty() && writeFailure == null) {
+					try {
+						write(batch);
+					} catch (ApplicationException | RuntimeException e) {
+						LOG.warn("Writing " + updateService.getUpdateDescription() + " failed.", e);
+						writeFailure = e;
+					}
+				}
+				for (int i = 0; i < batch.size(); i++) {
+					updateService.addFinishedOperation();
+				}
+				taken.clear();
+				batch.clear();
+			}
+		}
+
+	}
+
+	public SearchIndexUpdatePipeline<I, R> setCallThreads(int callThreads) {
+		this.callThreads = Math.max(1, callThreads);
+		return this;
+	}
+
+	public SearchIndexUpdatePipeline<I, R> setParseThreads(int parseThreads) {
+		this.parseThreads = Math.max(1, parseThreads);
+		return this;
+	}
+
+	public SearchIndexUpdatePipeline<I, R> setBatchSize(int batchSize) {
+		this.batchSize = Math.max(1, batchSize);
+		return this;
+	}
+
+}
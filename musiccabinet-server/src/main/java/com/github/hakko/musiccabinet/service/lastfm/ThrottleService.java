@@ -1,39 +1,151 @@
 package com.github.hakko.musiccabinet.service.lastfm;
 
-import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.github.hakko.musiccabinet.log.Logger;
 
 /*
  * ThrottleService is the single point of decision whether last.fm calls
  * are currently allowed.
- * 
+ *
  * The terms of service states that a maximum of five calls per second,
  * averaging over a five minute period is allowed.
- * 
- * To play it safe, we stick to allowing max five calls per second (not
- * adding up for the fluctuation).
- * 
- * TODO : maybe hand out 60 * 5 permits once per minute?
+ *
+ * Calls are paced by a token bucket, refilled continuously rather than in
+ * steps, so permits are handed out evenly over time without a scheduler.
+ * Up to burst permits can be saved up while idle, and used at once.
+ *
+ * A bucket refilled at the allowed rate would let burst calls more than
+ * allowed through in a five minute period. The refill rate is therefore
+ * lowered by burst / averaging period, so that no averaging period ever sees
+ * more than callsPerSecond * averagingSeconds calls.
+ *
+ * Each call reserves the next free permit and sleeps until it's due, so
+ * waiting callers neither hold a lock nor poll. Wait times are exposed
+ * through JMX (see ThrottleServiceMBean).
  */
-public class ThrottleService {
+public class ThrottleService implements ThrottleServiceMBean {
 
-	private Semaphore semaphore = new Semaphore(0, true);
+	private double callsPerSecond = 5;
+	private int burst = 5;
+	private int averagingSeconds = 300;
 
-	private static final int THRESHOLD = 5;
+	private long nanosPerPermit;
+	private long nextPermitNanos;
+	private boolean isStarted;
+
+	private long calls;
+	private long waitNanos;
+	private long maxWaitNanos;
+	private final AtomicInteger waitingCalls = new AtomicInteger();
 
 	private Logger LOG = Logger.getLogger(ThrottleService.class);
-	
+
 	public void awaitAllowance() {
+		long waitNanos = reserve();
+		if (waitNanos <= 0) {
+			return;
+		}
+		waitingCalls.incrementAndGet();
 		try {
-			semaphore.acquire();
+			sleep(waitNanos);
 		} catch (InterruptedException e) {
-			LOG.warn("Throttle semaphore acquire interrupted!", e);
+			LOG.warn("Throttle wait interrupted!", e);
+			Thread.currentThread().interrupt();
+		} finally {
+			waitingCalls.decrementAndGet();
+		}
+	}
+
+	/*
+	 * Takes next permit, and returns nanos until it may be used.
+	 *
+	 * Permits are due one per nanosPerPermit, and the next one is due at
+	 * nextPermitNanos. A caller may use a permit up to burst - 1 permits
+	 * ahead of time. After an idle period, nextPermitNanos is moved up to
+	 * now, which caps the permits saved up at burst.
+	 */
+	protected synchronized long reserve() {
+		long now = nanoTime();
+		if (!isStarted) {
+			nanosPerPermit = Math.round(1e9 / Math.max(0.01, callsPerSecond
+					- (double) burst / Math.max(1, averagingSeconds)));
+			nextPermitNanos = now;
+			isStarted = true;
 		}
+		if (nextPermitNanos < now) {
+			nextPermitNanos = now;
+		}
+		long wait = Math.max(0, nextPermitNanos - (burst - 1) * nanosPerPermit - now);
+		nextPermitNanos += nanosPerPermit;
+
+		calls++;
+		waitNanos += wait;
+		maxWaitNanos = Math.max(maxWaitNanos, wait);
+		return wait;
+	}
+
+	protected long nanoTime() {
+		return System.nanoTime();
+	}
+
+	protected void sleep(long nanos) throws InterruptedException {
+		TimeUnit.NANOSECONDS.sleep(nanos);
+	}
+
+	@Override
+	public synchronized long getCalls() {
+		return calls;
+	}
+
+	@Override
+	public int getWaitingCalls() {
+		return waitingCalls.get();
 	}
-	
-	public void allowCalls() {
-		semaphore.release(60 * THRESHOLD - semaphore.availablePermits());
+
+	@Override
+	public synchronized long getTotalWaitMillis() {
+		return waitNanos / 1000000;
+	}
+
+	@Override
+	public synchronized double getAverageWaitMillis() {
+		return calls == 0 ? 0 : waitNanos / 1e6 / calls;
+	}
+
+	@Override
+	public synchronized long getMaxWaitMillis() {
+		return maxWaitNanos / 1000000;
+	}
+
+	@Override
+	public synchronized double getPermitsPerSecond() {
+		return isStarted ? 1e9 / nanosPerPermit : 0;
+	}
+
+	@Override
+	public synchronized void reset() {
+		calls = 0;
+		waitNanos = 0;
+		maxWaitNanos = 0;
+	}
+
+	// Spring setters
+
+	public synchronized void setCallsPerSecond(double callsPerSecond) {
+		this.callsPerSecond = callsPerSecond;
+		isStarted = false;
+	}
+
+	public synchronized void setBurst(int burst) {
+		this.burst = Math.max(1, burst);
+		isStarted = false;
+	}
+
+	public synchronized void setAveragingSeconds(int averagingSeconds) {
+		this.averagingSeconds = averagingSeconds;
+		isStarted = false;
 	}
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,17 @@
+package com.github.hakko.musiccabinet.service.lastfm;
+
+/*
+ * Management interface of ThrottleService, as seen through JMX.
+ */
+public interface ThrottleServiceMBean {
+
+	long getCalls();
+	int getWaitingCalls();
+	long getTotalWaitMillis();
+	double getAverageWaitMillis();
+	long getMaxWaitMillis();
+	double getPermitsPerSecond();
+
+	void reset();
+
+}
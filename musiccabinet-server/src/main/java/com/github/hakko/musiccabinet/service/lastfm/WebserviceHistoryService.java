@@ -1,11 +1,33 @@
 package com.github.hakko.musiccabinet.service.lastfm;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 
 import com.github.hakko.musiccabinet.dao.WebserviceHistoryDao;
 import com.github.hakko.musiccabinet.domain.model.library.WebserviceInvocation;
+import com.github.hakko.musiccabinet.domain.model.library.WebserviceInvocation.Calltype;
+import com.github.hakko.musiccabinet.domain.model.music.Album;
 
+/*
+ * Keeps track of which web service invocations have been made, and which are
+ * allowed to be made again.
+ * 
+ * While an artist or album update is running (from
+ * getArtistNamesScheduledForUpdate() or startAlbumUpdate() until endUpdate()),
+ * decisions for the scheduled artists or albums are read once from database
+ * and kept in memory, and logged invocations are written in batches. Other
+ * invocations are checked and logged one by one.
+ *
+ * Batches are taken from the pending list while holding the lock, but written
+ * after it's released, so that other threads aren't blocked by the database.
+ */
 public class WebserviceHistoryService {
 
 	protected WebserviceHistoryDao historyDao;
@@ -13,6 +35,15 @@ public class WebserviceHistoryService {
 	
 	private boolean onlyUpdateNewArtists = false;
 
+	// artist or album key -> invocation allowed, for each running update
+	private Map<Calltype, Map<String, Boolean>> decisions = new HashMap<>();
+
+	private List<WebserviceInvocation> pendingInvocations = new ArrayList<>();
+	private long pendingSince;
+
+	private int logBatchSize = 100;
+	private int logIntervalSeconds = 60;
+
 	public boolean isOnlyUpdateNewArtists() {
 		return onlyUpdateNewArtists;
 	}
@@ -21,11 +52,38 @@ public class WebserviceHistoryService {
 		this.onlyUpdateNewArtists = onlyUpdateNewArtists;
 	}
 	
+	/*
+	 * Logs invocation. During an artist update, the invocation is buffered
+	 * and written when logBatchSize invocations are pending, or when the oldest
+	 * has been pending for logIntervalSeconds, or when the update ends.
+	 */
 	public void logWebserviceInvocation(WebserviceInvocation invocation) {
-		historyDao.logWebserviceInvocation(invocation);
+		List<WebserviceInvocation> batch = null;
+		synchronized (this) {
+			if (setPrefetchedDecision(invocation)) {
+				if (pendingInvocations.isEmpty()) {
+					pendingSince = System.currentTimeMillis();
+				}
+				pendingInvocations.add(invocation);
+				if (pendingInvocations.size() >= logBatchSize || System.currentTimeMillis()
+						- pendingSince >= logIntervalSeconds * 1000L) {
+					batch = takePendingInvocations();
+				} else {
+					return;
+				}
+			}
+		}
+		if (batch != null) {
+			write(batch);
+		} else {
+			historyDao.logWebserviceInvocation(invocation);
+		}
 	}
 
 	public void quarantineWebserviceInvocation(WebserviceInvocation invocation) {
+		synchronized (this) {
+			setPrefetchedDecision(invocation);
+		}
 		historyDao.quarantineWebserviceInvocation(invocation);
 	}
 
@@ -34,6 +92,15 @@ public class WebserviceHistoryService {
 	}
 	
 	public boolean isWebserviceInvocationAllowed(WebserviceInvocation invocation) {
+		List<WebserviceInvocation> batch;
+		synchronized (this) {
+			Boolean isAllowed = getPrefetchedDecision(invocation);
+			if (isAllowed != null) {
+				return isAllowed;
+			}
+			batch = takePendingInvocations();
+		}
+		write(batch); // so that database sees pending invocations
 		return historyDao.isWebserviceInvocationAllowed(invocation);
 	}
 
@@ -46,9 +113,129 @@ public class WebserviceHistoryService {
 		if (!onlyUpdateNewArtists) {
 			artistNames.addAll(historyDao.getArtistNamesWithOldestInvocations(callType));
 		}
+		prefetchDecisions(callType, artistNames,
+				historyDao.getArtistNamesWithRecentInvocations(callType));
 		return artistNames;
 	}
 
+	/*
+	 * Starts album update for callType, for albums scheduled by the caller.
+	 * Ended by endUpdate().
+	 */
+	public void startAlbumUpdate(Calltype callType, List<Album> albums) {
+		List<String> keys = new ArrayList<>();
+		for (Album album : albums) {
+			keys.add(getKey(album));
+		}
+		List<String> notAllowedKeys = new ArrayList<>();
+		for (Album album : historyDao.getAlbumsWithRecentInvocations(callType)) {
+			notAllowedKeys.add(getKey(album));
+		}
+		prefetchDecisions(callType, keys, notAllowedKeys);
+	}
+
+	/*
+	 * Keeps whether invocations of callType are allowed for all scheduled
+	 * artists or albums, read from database in a single query.
+	 */
+	private void prefetchDecisions(Calltype callType, Collection<String> keys,
+			Collection<String> notAllowedKeys) {
+		Set<String> notAllowed = new HashSet<>(notAllowedKeys);
+		Map<String, Boolean> callTypeDecisions = new HashMap<>();
+		for (String key : keys) {
+			callTypeDecisions.put(key, !notAllowed.contains(key));
+		}
+		synchronized (this) {
+			decisions.put(callType, callTypeDecisions);
+		}
+	}
+
+	/*
+	 * Ends artist or album update for callType, and drops its prefetched decisions, as
+	 * they'd go stale. Pending invocations are written if the update wrote
+	 * its results. Otherwise, the pending invocations of callType are dropped,
+	 * so that those are fetched again by the next update.
+	 * 
+	 * Decisions are dropped after pending invocations are written, so that
+	 * they're never checked against a database that hasn't got them yet.
+	 */
+	public void endUpdate(Calltype callType, boolean isWritten) {
+		if (isWritten) {
+			List<WebserviceInvocation> batch;
+			synchronized (this) {
+				batch = takePendingInvocations();
+			}
+			write(batch);
+		}
+		synchronized (this) {
+			if (!isWritten) {
+				for (Iterator<WebserviceInvocation> it = pendingInvocations.iterator(); it.hasNext(); ) {
+					if (it.next().getCallType() == callType) {
+						it.remove();
+					}
+				}
+			}
+			decisions.remove(callType);
+		}
+	}
+
+	private Boolean getPrefetchedDecision(WebserviceInvocation invocation) {
+		Map<String, Boolean> callTypeDecisions = decisions.get(invocation.getCallType());
+		String key = getKey(invocation);
+		return callTypeDecisions == null || key == null ? null : callTypeDecisions.get(key);
+	}
+
+	/*
+	 * Marks a prefetched invocation as no longer allowed. Returns false if
+	 * invocation isn't part of a running artist or album update.
+	 */
+	private boolean setPrefetchedDecision(WebserviceInvocation invocation) {
+		Map<String, Boolean> callTypeDecisions = decisions.get(invocation.getCallType());
+		String key = getKey(invocation);
+		if (callTypeDecisions == null || key == null || !callTypeDecisions.containsKey(key)) {
+			return false;
+		}
+		callTypeDecisions.put(key, false);
+		return true;
+	}
+
+	/*
+	 * Returns key of decision for an artist or album invocation (artist name,
+	 * or artist and album name), or null for other kinds of invocations.
+	 */
+	private String getKey(WebserviceInvocation wi) {
+		if (wi.getTrack() != null || wi.getUser() != null || wi.getGroup() != null
+				|| wi.getTag() != null || wi.getPage() != null) {
+			return null;
+		} else if (wi.getArtist() != null && wi.getAlbum() == null) {
+			return wi.getArtist().getName();
+		} else if (wi.getAlbum() != null && wi.getArtist() == null) {
+			return getKey(wi.getAlbum());
+		}
+		return null;
+	}
+
+	private String getKey(Album album) {
+		return album.getArtist().getName() + '\0' + album.getName();
+	}
+
+	/*
+	 * Empties list of pending invocations, and returns them. Called while
+	 * holding the lock; the returned invocations are written after it's
+	 * released.
+	 */
+	private List<WebserviceInvocation> takePendingInvocations() {
+		List<WebserviceInvocation> invocations = pendingInvocations;
+		pendingInvocations = new ArrayList<>();
+		return invocations;
+	}
+
+	private void write(List<WebserviceInvocation> invocations) {
+		if (!invocations.isEmpty()) {
+			historyDao.logWebserviceInvocations(invocations);
+		}
+	}
+
 	public void clearLanguageSpecificInvocations() {
 		historyDao.clearLanguageSpecificWebserviceInvocations();
 	}
@@ -62,5 +249,13 @@ public class WebserviceHistoryService {
 	public void setSearchIndexUpdateSettingsService(SearchIndexUpdateSettingsService settingsService) {
 		this.settingsService = settingsService;
 	}
+
+	public void setLogBatchSize(int logBatchSize) {
+		this.logBatchSize = logBatchSize;
+	}
+
+	public void setLogIntervalSeconds(int logIntervalSeconds) {
+		this.logIntervalSeconds = logIntervalSeconds;
+	}
 	
 }
\ No newline at end of file
@@ -4,6 +4,7 @@ import static java.util.regex.Pattern.compile;
 import static org.apache.commons.io.FilenameUtils.getExtension;
 import static org.apache.commons.lang.math.NumberUtils.toInt;
 import static org.jaudiotagger.tag.FieldKey.ALBUM;
+import static org.jaudiotagger.tag.FieldKey.ALBUM_ARTIST;
 import static org.jaudiotagger.tag.FieldKey.ALBUM_ARTIST_SORT;
 import static org.jaudiotagger.tag.FieldKey.ARTIST;
 import static org.jaudiotagger.tag.FieldKey.ARTIST_SORT;
@@ -44,6 +45,10 @@ import com.github.hakko.musiccabinet.domain.model.library.File;
 import com.github.hakko.musiccabinet.domain.model.library.MetaData;
 import com.github.hakko.musiccabinet.domain.model.library.MetaData.Mediatype;
 import com.github.hakko.musiccabinet.exception.ApplicationException;
+import com.github.hakko.musiccabinet.io.ArtworkCache;
+import com.github.hakko.musiccabinet.io.HeaderTagReader;
+import com.github.hakko.musiccabinet.io.HeaderTagReader.HeaderTag;
+import com.github.hakko.musiccabinet.io.TagCache;
 import com.github.hakko.musiccabinet.log.Logger;
 
 public class AudioTagService {
@@ -59,6 +64,10 @@ public class AudioTagService {
     private static final Pattern TRACK_NUMBER_PATTERN = compile("(\\d+)/\\d+");
 
 	public static final String UNKNOWN_ALBUM = "[Unknown album]";
+
+	private TagCache tagCache;
+	private HeaderTagReader headerTagReader;
+	private ArtworkCache artworkCache;
 	
 	public AudioTagService() {
 		for (MetaData.Mediatype mediaType : MetaData.Mediatype.values()) {
@@ -74,12 +83,29 @@ public class AudioTagService {
 			return;
 		}
 
+		java.io.File ioFile = new java.io.File(file.getDirectory(), file.getFilename());
+		long modified = file.getModified().getMillis();
+		if (tagCache != null) {
+			MetaData cached = tagCache.get(ioFile.getPath(), file.getSize(), modified);
+			if (cached != null) {
+				file.setMetaData(cached);
+				return;
+			}
+		}
+
 		MetaData metaData = new MetaData();
 		metaData.setMediaType(Mediatype.valueOf(extension));
 
+		if (headerTagReader != null && readHeaderTag(ioFile, metaData)) {
+			file.setMetaData(metaData);
+			if (tagCache != null) {
+				tagCache.put(ioFile.getPath(), file.getSize(), modified, metaData);
+			}
+			return;
+		}
+
 		try {
-			AudioFile audioFile = AudioFileIO.read(new java.io.File(
-					file.getDirectory(), file.getFilename()));
+			AudioFile audioFile = AudioFileIO.read(ioFile);
 			
 			Tag tag = audioFile.getTag();
 			if (tag != null) {
@@ -108,6 +134,9 @@ public class AudioTagService {
 			}
 
 			file.setMetaData(metaData);
+			if (tagCache != null) {
+				tagCache.put(ioFile.getPath(), file.getSize(), modified, metaData);
+			}
 			
 		} catch (CannotReadException | IOException | TagException
 				| ReadOnlyFileException | InvalidAudioFrameException 
@@ -118,22 +147,83 @@ public class AudioTagService {
 		}
 	}
 
+	/*
+	 * Reads common MP3 and FLAC files from their leading blocks only. Returns
+	 * false for anything HeaderTagReader leaves to JAudioTagger.
+	 */
+	private boolean readHeaderTag(java.io.File ioFile, MetaData metaData) {
+		HeaderTag tag = headerTagReader.read(ioFile);
+		if (tag == null) {
+			return false;
+		}
+		metaData.setArtist(tag.getFirst(ARTIST));
+		metaData.setArtistSort(tag.getFirst(ARTIST_SORT));
+		metaData.setAlbumArtist(tag.getFirst(ALBUM_ARTIST));
+		metaData.setAlbumArtistSort(tag.getFirst(ALBUM_ARTIST_SORT));
+		metaData.setAlbum(toAlbum(tag.getFirst(ALBUM)));
+		metaData.setTitle(tag.getFirst(TITLE));
+		metaData.setYear(tag.getFirst(YEAR));
+		metaData.setGenre(toGenre(tag.getFirst(GENRE)));
+		metaData.setLyrics(tag.getFirst(LYRICS));
+		metaData.setComposer(tag.getFirst(COMPOSER));
+		metaData.setDiscNr(toFirstNumber(tag.getFirst(DISC_NO)));
+		metaData.setDiscNrs(toShort(tag.getFirst(DISC_TOTAL)));
+		metaData.setTrackNr(toFirstNumber(tag.getFirst(TRACK)));
+		metaData.setTrackNrs(toShort(tag.getFirst(TRACK_TOTAL)));
+		metaData.setCoverArtEmbedded(tag.isCoverArtEmbedded());
+		metaData.setVbr(tag.isVbr());
+		metaData.setBitrate((short) tag.getBitrate());
+		metaData.setDuration((short) tag.getDuration());
+		return true;
+	}
+
 	public boolean isAudioFile(String extension) {
 		return extension != null && ALLOWED_EXTENSIONS.contains(extension.toUpperCase());
 	}
 	
-    public Artwork getArtwork(java.io.File file) throws ApplicationException {
-    	Tag tag = null;
-    	try {
-    		AudioFile audioFile = AudioFileIO.read(file);
-    		tag = audioFile.getTag();
-    	} catch (CannotReadException | IOException | TagException
-    			| ReadOnlyFileException | InvalidAudioFrameException 
-    			| RuntimeException e) {
-    		throw new ApplicationException("Failed reading artwork from file " + file, e);
-    	}
-        return tag == null ? null : tag.getFirstArtwork();
-    }
+	/*
+	 * Returns embedded artwork of file, or null if there is none. Artwork is
+	 * kept in an on-disk cache, so each file is only parsed once (until changed).
+	 */
+	public Artwork getArtwork(java.io.File file) throws ApplicationException {
+		Artwork artwork = artworkCache == null ? null : artworkCache.get(file);
+		if (artwork == null) {
+			artwork = readArtwork(file);
+			if (artworkCache != null) {
+				artworkCache.put(file, artwork);
+			}
+		}
+		return artwork == ArtworkCache.NO_ARTWORK ? null : artwork;
+	}
+
+	/*
+	 * Returns embedded artwork of file as a JPEG image that fits within
+	 * size x size pixels, or null if there is none.
+	 */
+	public Artwork getArtwork(java.io.File file, int size) throws ApplicationException {
+		if (artworkCache == null) {
+			return getArtwork(file);
+		}
+		Artwork artwork = artworkCache.get(file, size);
+		if (artwork == null) {
+			artworkCache.put(file, readArtwork(file));
+			artwork = artworkCache.get(file, size);
+		}
+		return artwork == ArtworkCache.NO_ARTWORK ? null : artwork;
+	}
+
+	private Artwork readArtwork(java.io.File file) throws ApplicationException {
+		Tag tag = null;
+		try {
+			AudioFile audioFile = AudioFileIO.read(file);
+			tag = audioFile.getTag();
+		} catch (CannotReadException | IOException | TagException
+				| ReadOnlyFileException | InvalidAudioFrameException 
+				| RuntimeException e) {
+			throw new ApplicationException("Failed reading artwork from file " + file, e);
+		}
+		return tag == null ? null : tag.getFirstArtwork();
+	}
 	
 	private String getTagField(Tag tag, FieldKey fieldKey) {
 		try {
@@ -145,7 +235,7 @@ public class AudioTagService {
 	}
 	
 	private String toAlbumArtist(Tag tag) {
-		String albumArtist = getTagField(tag, FieldKey.ALBUM_ARTIST);
+		String albumArtist = getTagField(tag, ALBUM_ARTIST);
 		if (albumArtist == null && tag instanceof AbstractID3v2Tag && tag.hasField(MP3_ALBUM_ARTIST)) {
 			// TPE2 is commonly used for "Album artist", but JAudioTagger doesn't pick it up
 			albumArtist = StringUtils.trimToNull(tag.getFirst(MP3_ALBUM_ARTIST));
@@ -199,4 +289,18 @@ public class AudioTagService {
 		return NumberUtils.isDigits(tag) ? NumberUtils.toShort(tag) : null;
 	}
 
-}
\ No newline at end of file
+	// Spring setters
+
+	public void setTagCache(TagCache tagCache) {
+		this.tagCache = tagCache;
+	}
+
+	public void setHeaderTagReader(HeaderTagReader headerTagReader) {
+		this.headerTagReader = headerTagReader;
+	}
+
+	public void setArtworkCache(ArtworkCache artworkCache) {
+		this.artworkCache = artworkCache;
+	}
+
+}
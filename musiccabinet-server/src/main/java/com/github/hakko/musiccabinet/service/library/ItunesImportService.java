@@ -0,0 +1,218 @@
+package com.github.hakko.musiccabinet.service.library;
+
+import static org.apache.commons.io.FilenameUtils.getExtension;
+import static org.apache.commons.lang.StringUtils.trimToNull;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import com.github.hakko.musiccabinet.dao.TrackPlayCountDao;
+import com.github.hakko.musiccabinet.domain.model.library.MetaData;
+import com.github.hakko.musiccabinet.domain.model.library.MetaData.Mediatype;
+import com.github.hakko.musiccabinet.domain.model.library.TrackPlayCount;
+import com.github.hakko.musiccabinet.exception.ApplicationException;
+import com.github.hakko.musiccabinet.io.TagCache;
+import com.github.hakko.musiccabinet.log.Logger;
+import com.github.hakko.musiccabinet.parser.itunes.ItunesMusicLibraryParserCallback;
+import com.github.hakko.musiccabinet.parser.itunes.ItunesMusicLibraryParserImpl;
+import com.github.hakko.musiccabinet.parser.itunes.ItunesMusicLibraryParserImpl.ItunesTrack;
+
+/*
+ * Imports a library from an iTunes Music Library.xml file, without reading
+ * tags of files that iTunes already knows.
+ *
+ * Meta-data of each track is taken from the iTunes library and stored in the
+ * tag cache, keyed by file path, size and modification time as usual. Tracks
+ * are only trusted if their file is still the same size, and modified within
+ * the same second, as iTunes recorded. The regular library scan then finds
+ * the cached meta-data, and only reads tags of files iTunes didn't know, or
+ * that have changed since.
+ *
+ * Going through the tag cache leaves deciding what's new, moved or deleted
+ * to the regular scan. Lyrics aren't part of the iTunes library, and are left
+ * empty for imported files.
+ *
+ * Play counts from iTunes are imported as well (keeping the highest known).
+ * Entries of the same artist and track name (several copies of a song, say)
+ * are added up first, as they're the same track in the library.
+ */
+public class ItunesImportService {
+
+	private static final long MODIFIED_TOLERANCE = 1000; // iTunes stores seconds
+
+	private TagCache tagCache;
+	private TrackPlayCountDao trackPlayCountDao;
+	private LibraryScannerService libraryScannerService;
+
+	private static final Logger LOG = Logger.getLogger(ItunesImportService.class);
+
+	/*
+	 * Imports meta-data from iTunes library file, and then adds media folders
+	 * to library. Returns number of tracks imported.
+	 */
+	public int importLibrary(java.io.File itunesLibrary, Set<String> mediaFolders)
+			throws ApplicationException {
+		int imported;
+		try (InputStream source = new BufferedInputStream(new FileInputStream(itunesLibrary))) {
+			imported = importMetaData(source);
+		} catch (IOException e) {
+			throw new ApplicationException("Could not read " + itunesLibrary, e);
+		}
+		libraryScannerService.add(mediaFolders);
+		return imported;
+	}
+
+	/*
+	 * Stores meta-data of unchanged tracks in tag cache, and imports their
+	 * play counts. Returns number of tracks stored.
+	 */
+	public int importMetaData(InputStream itunesLibrary) throws ApplicationException {
+		Importer importer = new Importer();
+		new ItunesMusicLibraryParserImpl(itunesLibrary, importer);
+		if (trackPlayCountDao != null && !importer.playCounts.isEmpty()) {
+			trackPlayCountDao.createTrackPlayCounts(
+					new ArrayList<>(importer.playCounts.values()));
+		}
+		LOG.info("Imported " + importer.imported + " tracks from iTunes, skipped "
+				+ importer.skipped + " (missing, changed or not audio files).");
+		return importer.imported;
+	}
+
+	private class Importer implements ItunesMusicLibraryParserCallback {
+
+		// play counts by upper case artist and track name, matched as in library
+		private Map<String, TrackPlayCount> playCounts = new LinkedHashMap<>();
+		private int imported, skipped;
+
+		@Override
+		public void addTrack(ItunesTrack track) {
+			if (importTrack(track)) {
+				imported++;
+			} else {
+				skipped++;
+			}
+			if (track.playCount > 0 && track.artist != null && track.track != null) {
+				addPlayCount(track);
+			}
+		}
+
+		private void addPlayCount(ItunesTrack track) {
+			String key = track.artist.toUpperCase() + '\0' + track.track.toUpperCase();
+			TrackPlayCount playCount = playCounts.get(key);
+			if (playCount == null) {
+				playCounts.put(key, new TrackPlayCount(track.artist, track.track, track.playCount));
+			} else {
+				playCount.setPlayCount(playCount.getPlayCount() + track.playCount);
+			}
+		}
+
+		@Override
+		public void endOfTracks() {
+		}
+
+	}
+
+	private boolean importTrack(ItunesTrack track) {
+		Path path = toPath(track.location);
+		if (path == null) {
+			return false;
+		}
+		Mediatype mediaType = toMediatype(path);
+		if (mediaType == null) {
+			return false;
+		}
+		BasicFileAttributes attributes;
+		try {
+			attributes = Files.readAttributes(path, BasicFileAttributes.class);
+		} catch (IOException e) {
+			return false;
+		}
+		long modified = attributes.lastModifiedTime().toMillis();
+		if (!attributes.isRegularFile() || attributes.size() != track.size
+				|| Math.abs(modified - track.dateModified) >= MODIFIED_TOLERANCE) {
+			return false;
+		}
+		tagCache.put(path.toString(), (int) attributes.size(), modified,
+				toMetaData(track, mediaType));
+		return true;
+	}
+
+	protected MetaData toMetaData(ItunesTrack track, Mediatype mediaType) {
+		MetaData metaData = new MetaData();
+		metaData.setMediaType(mediaType);
+		metaData.setArtist(trimToNull(track.artist));
+		metaData.setArtistSort(trimToNull(track.artistSort));
+		metaData.setAlbumArtist(trimToNull(track.albumArtist));
+		metaData.setAlbumArtistSort(trimToNull(track.albumArtistSort));
+		String album = trimToNull(track.album);
+		metaData.setAlbum(album == null ? AudioTagService.UNKNOWN_ALBUM : album);
+		metaData.setTitle(trimToNull(track.track));
+		metaData.setComposer(trimToNull(track.composer));
+		metaData.setGenre(trimToNull(track.genre));
+		metaData.setYear(toShort(track.year));
+		metaData.setTrackNr(toShort(track.trackNumber));
+		metaData.setTrackNrs(toShort(track.trackCount));
+		metaData.setDiscNr(toShort(track.discNumber));
+		metaData.setDiscNrs(toShort(track.discCount));
+		metaData.setBitrate((short) track.bitRate);
+		metaData.setDuration((short) (track.totalTime / 1000));
+		metaData.setCoverArtEmbedded(track.artworkCount > 0);
+		return metaData;
+	}
+
+	/*
+	 * iTunes stores locations as file://localhost/path, with path URL encoded.
+	 */
+	protected Path toPath(String location) {
+		if (location == null || !location.startsWith("file:")) {
+			return null;
+		}
+		try {
+			return Paths.get(new URI(location.replaceFirst("^file://localhost/", "file:///")));
+		} catch (URISyntaxException | RuntimeException e) {
+			LOG.debug("Could not resolve iTunes location " + location);
+			return null;
+		}
+	}
+
+	private Mediatype toMediatype(Path path) {
+		String extension = getExtension(path.getFileName().toString()).toUpperCase();
+		for (Mediatype mediaType : Mediatype.values()) {
+			if (mediaType.getFilesuffix().equals(extension)) {
+				return mediaType;
+			}
+		}
+		return null;
+	}
+
+	private Short toShort(int value) {
+		return value <= 0 || value > Short.MAX_VALUE ? null : (short) value;
+	}
+
+	// Spring setters
+
+	public void setTagCache(TagCache tagCache) {
+		this.tagCache = tagCache;
+	}
+
+	public void setTrackPlayCountDao(TrackPlayCountDao trackPlayCountDao) {
+		this.trackPlayCountDao = trackPlayCountDao;
+	}
+
+	public void setLibraryScannerService(LibraryScannerService libraryScannerService) {
+		this.libraryScannerService = libraryScannerService;
+	}
+
+}
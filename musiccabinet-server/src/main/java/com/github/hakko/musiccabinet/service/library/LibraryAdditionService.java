@@ -2,11 +2,14 @@ package com.github.hakko.musiccabinet.service.library;
 
 import static com.github.hakko.musiccabinet.service.library.LibraryUtil.FINISHED_MESSAGE;
 
+import java.util.Set;
+
 import org.springframework.integration.Message;
 import org.springframework.integration.core.PollableChannel;
 
 import com.github.hakko.musiccabinet.dao.LibraryAdditionDao;
 import com.github.hakko.musiccabinet.domain.model.aggr.DirectoryContent;
+import com.github.hakko.musiccabinet.domain.model.aggr.SearchIndexUpdateProgress;
 
 /*
  * The library scanning is modeled according to the "Pipes and Filters"
@@ -20,28 +23,70 @@ public class LibraryAdditionService implements LibraryReceiverService {
 	protected PollableChannel libraryAdditionChannel;  // consumer of
 	
 	private LibraryAdditionDao libraryAdditionDao;
+	private PipelineStage pipelineStage = new PipelineStage("addition");
 	
 	public void clearImport() {
 		libraryAdditionDao.clearImport();
 	}
+
+	/*
+	 * Returns directories already imported by an interrupted scan of the same
+	 * root paths, or null if there's no such scan to resume.
+	 */
+	public Set<String> getResumableCheckpoint(Set<String> rootPaths) {
+		Set<String> scanRootPaths = libraryAdditionDao.getScanRootPaths();
+		if (scanRootPaths.isEmpty() || !scanRootPaths.equals(rootPaths)) {
+			return null;
+		}
+		libraryAdditionDao.clearUncheckpointedImport();
+		return libraryAdditionDao.getCheckpoint();
+	}
+
+	/*
+	 * Returns true if a scan was interrupted, and is waiting to be resumed.
+	 */
+	public boolean hasResumableImport() {
+		return !libraryAdditionDao.getScanRootPaths().isEmpty();
+	}
+
+	/*
+	 * Marks start of a resumable scan of given root paths, after clearImport().
+	 */
+	public void startImport(Set<String> rootPaths) {
+		libraryAdditionDao.setScanRootPaths(rootPaths);
+	}
 	
 	public void updateLibrary() {
 		libraryAdditionDao.updateLibrary();
 	}
 
+	public void updateLibraryContent() {
+		libraryAdditionDao.updateLibraryContent();
+	}
+
+	public void updateLibrarySummary() {
+		libraryAdditionDao.updateLibrarySummary();
+	}
+
+	public SearchIndexUpdateProgress getUpdateProgress() {
+		return libraryAdditionDao.getUpdateProgress();
+	}
+
+	public PipelineStage getPipelineStage() {
+		return pipelineStage;
+	}
+
 	@SuppressWarnings("unchecked")
 	@Override
 	public void receive() {
 		Message<DirectoryContent> message;
+		pipelineStage.reset();
 		while (true) {
-			message = (Message<DirectoryContent>) libraryAdditionChannel.receive();
+			message = (Message<DirectoryContent>) pipelineStage.receive(libraryAdditionChannel);
 			if (message == null || message.equals(FINISHED_MESSAGE)) {
 				break;
 			} else {
-				DirectoryContent content = message.getPayload();
-				String dir = content.getDirectory();
-				libraryAdditionDao.addSubdirectories(dir, content.getSubDirectories());
-				libraryAdditionDao.addFiles(dir, content.getFiles());
+				libraryAdditionDao.addDirectoryContent(message.getPayload());
 			}
 		}
 	}
@@ -54,4 +99,8 @@ public class LibraryAdditionService implements LibraryReceiverService {
 		this.libraryAdditionChannel = libraryAdditionChannel;
 	}
 
+	public void setPipelineStage(PipelineStage pipelineStage) {
+		this.pipelineStage = pipelineStage;
+	}
+
 }
\ No newline at end of file
@@ -22,6 +22,7 @@ public class LibraryDeletionService implements LibraryReceiverService {
 	protected PollableChannel libraryDeletionChannel;  // consumer of
 	
 	private LibraryDeletionDao libraryDeletionDao;
+	private PipelineStage pipelineStage = new PipelineStage("deletion");
 
 	public void clearImport() {
 		libraryDeletionDao.clearImport();
@@ -31,17 +32,27 @@ public class LibraryDeletionService implements LibraryReceiverService {
 		libraryDeletionDao.updateLibrary();
 	}
 
+	public void updateLibraryContent() {
+		libraryDeletionDao.updateLibraryContent();
+	}
+
+	public PipelineStage getPipelineStage() {
+		return pipelineStage;
+	}
+
 	@SuppressWarnings("unchecked")
 	@Override
 	public void receive() {
 		Message<DirectoryContent> message;
+		pipelineStage.reset();
 		while (true) {
-			message = (Message<DirectoryContent>) libraryDeletionChannel.receive();
+			message = (Message<DirectoryContent>) pipelineStage.receive(libraryDeletionChannel);
 			if (message == null || message.equals(FINISHED_MESSAGE)) {
 				break;
 			} else {
 				DirectoryContent content = message.getPayload();
 				String dir = content.getDirectory();
+				libraryDeletionDao.moveFiles(dir, content.getMovedFiles());
 				libraryDeletionDao.deleteFiles(dir, content.getFiles());
 				libraryDeletionDao.deleteSubdirectories(dir, content.getSubDirectories());
 			}
@@ -61,4 +72,8 @@ public class LibraryDeletionService implements LibraryReceiverService {
 		this.libraryDeletionChannel = libraryDeletionChannel;
 	}
 
+	public void setPipelineStage(PipelineStage pipelineStage) {
+		this.pipelineStage = pipelineStage;
+	}
+
 }
\ No newline at end of file
@@ -2,12 +2,24 @@ package com.github.hakko.musiccabinet.service.library;
 
 import static com.github.hakko.musiccabinet.service.library.LibraryUtil.FINISHED_MESSAGE;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor.CallerRunsPolicy;
+import java.util.concurrent.TimeUnit;
+
 import org.springframework.integration.Message;
 import org.springframework.integration.core.PollableChannel;
 
 import com.github.hakko.musiccabinet.domain.model.aggr.DirectoryContent;
 import com.github.hakko.musiccabinet.domain.model.aggr.SearchIndexUpdateProgress;
 import com.github.hakko.musiccabinet.domain.model.library.File;
+import com.github.hakko.musiccabinet.io.VolumeConcurrency;
+import com.github.hakko.musiccabinet.io.VolumeConcurrency.Volume;
+import com.github.hakko.musiccabinet.log.Logger;
 
 /*
  * The library scanning is modeled according to the "Pipes and Filters"
@@ -15,6 +27,20 @@ import com.github.hakko.musiccabinet.domain.model.library.File;
  * 
  * This class acts as a filter that forces a physical meta data read of files
  * detected as new.
+ *
+ * Reading meta data is bound by disk latency and tag parsing rather than by
+ * the pipeline, so each directory message is handed to a pool of reader
+ * threads. A message is read by a single reader, and forwarded to the
+ * addition channel once all its files have been read. The finishing message
+ * is not forwarded until all readers are done.
+ *
+ * A large directory arrives as several chunks (see DirectoryContent), which
+ * may be read in parallel by different readers. Its last chunk (which marks
+ * the directory as imported) is held back until all other chunks have been
+ * forwarded.
+ *
+ * Readers of a volume are limited by VolumeConcurrency (one per spinning
+ * disk, say), and there are enough readers to read all volumes in parallel.
  */
 public class LibraryMetadataService implements LibraryReceiverService {
 
@@ -22,8 +48,18 @@ public class LibraryMetadataService implements LibraryReceiverService {
 	private PollableChannel libraryAdditionChannel; // producer of
 
 	private AudioTagService audioTagService;
-	
+	private VolumeConcurrency volumeConcurrency;
+
+	private int readerThreads = Runtime.getRuntime().availableProcessors();
+
+	// number of messages being read per directory, and held back last chunks
+	private final Map<String, Integer> messagesInProgress = new HashMap<>();
+	private final Map<String, Message<DirectoryContent>> lastChunks = new HashMap<>();
+
 	private SearchIndexUpdateProgress progress = new SearchIndexUpdateProgress("new files read for meta-data");
+	private PipelineStage pipelineStage = new PipelineStage("metadata");
+
+	private static final Logger LOG = Logger.getLogger(LibraryMetadataService.class);
 
 	@SuppressWarnings("unchecked")
 	@Override
@@ -31,25 +67,119 @@ public class LibraryMetadataService implements LibraryReceiverService {
 		Message<DirectoryContent> message;
 		progress.reset();
 		progress.setFinishedOperations(0);
+		pipelineStage.reset();
+		ThreadPoolExecutor readers = createReaders();
 		while (true) {
-			message = (Message<DirectoryContent>) libraryMetadataChannel.receive();
+			message = (Message<DirectoryContent>) pipelineStage.receive(libraryMetadataChannel);
 			if (message == null || message.equals(FINISHED_MESSAGE)) {
-				libraryAdditionChannel.send(message);
+				awaitReaders(readers);
+				pipelineStage.send(libraryAdditionChannel, message);
 				break;
 			} else {
-				for (File file : message.getPayload().getFiles()) {
+				startReading(message.getPayload().getDirectory());
+				readers.execute(new Reader(message));
+			}
+		}
+	}
+
+	/*
+	 * Readers are fed through a short queue. When it's full, the receiving
+	 * thread reads the directory itself, which keeps memory bounded and lets
+	 * back pressure propagate to the presence channel.
+	 */
+	private ThreadPoolExecutor createReaders() {
+		int threads = Math.max(1, readerThreads);
+		if (volumeConcurrency != null) {
+			threads = Math.max(threads, volumeConcurrency.getTotalLimit());
+		}
+		return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(threads), new CallerRunsPolicy());
+	}
+
+	private void awaitReaders(ThreadPoolExecutor readers) {
+		readers.shutdown();
+		try {
+			while (!readers.awaitTermination(1, TimeUnit.MINUTES)) {
+				LOG.debug("Awaiting " + readers.getActiveCount() + " meta-data readers.");
+			}
+		} catch (InterruptedException e) {
+			LOG.warn("Interrupted while awaiting meta-data readers!", e);
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void startReading(String directory) {
+		synchronized (messagesInProgress) {
+			Integer messages = messagesInProgress.get(directory);
+			messagesInProgress.put(directory, messages == null ? 1 : messages + 1);
+		}
+	}
+
+	private void forward(Message<DirectoryContent> message) {
+		List<Message<DirectoryContent>> messages = new ArrayList<>();
+		String directory = message.getPayload().getDirectory();
+		synchronized (messagesInProgress) {
+			int inProgress = messagesInProgress.remove(directory) - 1;
+			if (inProgress > 0) {
+				messagesInProgress.put(directory, inProgress);
+			}
+			if (message.getPayload().isLastChunk() && inProgress > 0) {
+				lastChunks.put(directory, message);
+			} else {
+				messages.add(message);
+				if (inProgress == 0 && lastChunks.containsKey(directory)) {
+					messages.add(lastChunks.remove(directory));
+				}
+			}
+		}
+		for (Message<DirectoryContent> m : messages) {
+			pipelineStage.send(libraryAdditionChannel, m);
+		}
+	}
+
+	// reads meta-data for all files in a directory, then passes it on.
+	private class Reader implements Runnable {
+
+		private Message<DirectoryContent> message;
+
+		public Reader(Message<DirectoryContent> message) {
+			this.message = message;
+		}
+
+		@Override
+		public void run() {
+			DirectoryContent content = message.getPayload();
+			Volume volume = null;
+			try {
+				if (volumeConcurrency != null && content.getDirectory() != null
+						&& !content.getFiles().isEmpty()) {
+					volume = volumeConcurrency.findVolume(content.getDirectory());
+				}
+				if (volume != null) {
+					volume.acquire();
+				}
+				for (File file : content.getFiles()) {
 					audioTagService.updateMetadata(file);
 					progress.addFinishedOperation();
 				}
-				libraryAdditionChannel.send(message);
+			} finally {
+				if (volume != null) {
+					volume.release();
+				}
+				forward(message);
 			}
 		}
+
 	}
 
 	public SearchIndexUpdateProgress getUpdateProgress() {
 		return progress;
 	}
 
+	public PipelineStage getPipelineStage() {
+		return pipelineStage;
+	}
+
 	public void setLibraryMetadataChannel(PollableChannel libraryMetadataChannel) {
 		this.libraryMetadataChannel = libraryMetadataChannel;
 	}
@@ -57,9 +187,21 @@ public class LibraryMetadataService implements LibraryReceiverService {
 	public void setLibraryAdditionChannel(PollableChannel libraryAdditionChannel) {
 		this.libraryAdditionChannel = libraryAdditionChannel;
 	}
-	
+
 	public void setAudioTagService(AudioTagService audioTagService) {
 		this.audioTagService = audioTagService;
 	}
 
-}
\ No newline at end of file
+	public void setVolumeConcurrency(VolumeConcurrency volumeConcurrency) {
+		this.volumeConcurrency = volumeConcurrency;
+	}
+
+	public void setReaderThreads(int readerThreads) {
+		this.readerThreads = readerThreads;
+	}
+
+	public void setPipelineStage(PipelineStage pipelineStage) {
+		this.pipelineStage = pipelineStage;
+	}
+
+}
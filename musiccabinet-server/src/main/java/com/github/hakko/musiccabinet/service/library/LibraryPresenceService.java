@@ -4,15 +4,22 @@ import static com.github.hakko.musiccabinet.service.library.LibraryUtil.FINISHED
 import static com.github.hakko.musiccabinet.service.library.LibraryUtil.msg;
 import static com.github.hakko.musiccabinet.service.library.LibraryUtil.removeIntersection;
 
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
 import java.util.Set;
 
+import org.joda.time.DateTime;
 import org.springframework.integration.Message;
 import org.springframework.integration.core.PollableChannel;
 
 import com.github.hakko.musiccabinet.dao.LibraryPresenceDao;
 import com.github.hakko.musiccabinet.domain.model.aggr.DirectoryContent;
+import com.github.hakko.musiccabinet.domain.model.aggr.LibrarySnapshot;
 import com.github.hakko.musiccabinet.domain.model.aggr.SearchIndexUpdateProgress;
 import com.github.hakko.musiccabinet.domain.model.library.File;
+import com.github.hakko.musiccabinet.log.Logger;
 
 /*
  * The library scanning is modeled according to the "Pipes and Filters"
@@ -23,6 +30,20 @@ import com.github.hakko.musiccabinet.domain.model.library.File;
  *  (1) not changed (then left untouched)
  *  (2) newly added (then passed on to read meta data, then added to db)
  *  (3) deleted (then passed to db for removal)
+ * 
+ * Unless disabled, current library content is read from database once at
+ * full scan start (as a LibrarySnapshot), rather than once per found directory.
+ * The snapshot also holds directory modification times from last scan, and
+ * directories found with a new modification time are passed on to have it
+ * stored, even if their content is unchanged.
+ *
+ * With a snapshot, new files are also matched against files that have gone
+ * missing from their old place (by name, size and modification time). Those
+ * are passed on as moved, rather than as new and deleted, which keeps their
+ * library identity and saves reading their meta data again.
+ *
+ * Large directories arrive in chunks of files (see DirectoryContent). Stored
+ * files not found in a chunk are remembered until the directory's last chunk.
  */
 public class LibraryPresenceService implements LibraryReceiverService {
 
@@ -32,54 +53,203 @@ public class LibraryPresenceService implements LibraryReceiverService {
 	
 	private LibraryPresenceDao libraryPresenceDao;
 	
+	private boolean useLibrarySnapshot = true;
+	private boolean detectMovedFiles = true;
+	private LibrarySnapshot snapshot;
+	private Set<String> checkpoint = new HashSet<>();
+	private Set<File> movedFiles = new HashSet<>();
+	private Map<String, Set<File>> remainingFiles = new HashMap<>();
+	
 	private SearchIndexUpdateProgress progress = new SearchIndexUpdateProgress("directories found during search");
+	private PipelineStage pipelineStage = new PipelineStage("presence");
+
+	private static final Logger LOG = Logger.getLogger(LibraryPresenceService.class);
 
 	@SuppressWarnings("unchecked")
 	@Override
 	public void receive() {
 		Message<DirectoryContent> message;
 		progress.reset();
-		while (true) {
-			message = (Message<DirectoryContent>) libraryPresenceChannel.receive();
-			if (message == null || message.equals(FINISHED_MESSAGE)) {
-				libraryMetadataChannel.send(message);
-				libraryDeletionChannel.send(message);
-				break;
-			} else {
-				compareDirectoryContent(message.getPayload());
-				progress.addFinishedOperation();
+		pipelineStage.reset();
+		try {
+			while (true) {
+				message = (Message<DirectoryContent>) pipelineStage.receive(libraryPresenceChannel);
+				if (message == null || message.equals(FINISHED_MESSAGE)) {
+					pipelineStage.send(libraryMetadataChannel, message);
+					pipelineStage.send(libraryDeletionChannel, message);
+					break;
+				} else {
+					compareDirectoryContent(message.getPayload());
+					progress.addFinishedOperation();
+				}
 			}
+		} finally {
+			snapshot = null;
+			checkpoint = new HashSet<>();
+			movedFiles = new HashSet<>();
+			remainingFiles = new HashMap<>();
 		}
 	}
 
+	/*
+	 * Loads library content to compare found directories against, before
+	 * receive() is called. Returns null if disabled. Without a snapshot,
+	 * library content is read per found directory.
+	 */
+	public LibrarySnapshot loadSnapshot() {
+		snapshot = null;
+		if (useLibrarySnapshot) {
+			long ms = -System.currentTimeMillis();
+			snapshot = libraryPresenceDao.getLibrarySnapshot();
+			ms += System.currentTimeMillis();
+			LOG.debug("Loaded " + snapshot + " in " + ms + " ms");
+		}
+		return snapshot;
+	}
+
+	/*
+	 * Sets directories already imported by an interrupted scan, that is being
+	 * resumed. Their additions are not passed on again, but deletions are, as
+	 * deletions are never checkpointed (removing a file twice is harmless).
+	 */
+	public void setCheckpoint(Set<String> checkpoint) {
+		this.checkpoint = checkpoint == null ? new HashSet<String>() : checkpoint;
+	}
+
 	protected void compareDirectoryContent(DirectoryContent content) {
 		String directory = content.getDirectory();
+		boolean isImported = checkpoint.contains(directory);
 		Set<File> foundFiles = content.getFiles();
+		Set<File> remaining = remainingFiles.remove(directory);
+		boolean isChunked = remaining != null;
+		Set<File> dbFiles = isChunked ? remaining : getFiles(directory);
+		if (!content.isLastChunk()) {
+			compareChunk(directory, foundFiles, dbFiles, isImported);
+			return;
+		}
 		Set<String> foundSubDirs = content.getSubDirectories();
-		Set<File> dbFiles = libraryPresenceDao.getFiles(directory);
-		Set<String> dbSubDirs = libraryPresenceDao.getSubdirectories(directory);
+		Set<String> dbSubDirs = getSubdirectories(directory);
+		DateTime modified = getChangedModified(content);
 
 		if (!dbSubDirs.equals(foundSubDirs) || !dbFiles.equals(foundFiles)) {
 			removeIntersection(dbSubDirs, foundSubDirs);
 			removeIntersection(dbFiles, foundFiles);
+			Set<File> moved = removeMovedFiles(directory, foundFiles);
 
-			if (!foundSubDirs.isEmpty() || !foundFiles.isEmpty()) {
-				libraryMetadataChannel.send(msg(directory, foundSubDirs, foundFiles));
+			if (!isImported && (isChunked || !foundSubDirs.isEmpty() 
+					|| !foundFiles.isEmpty() || modified != null)) {
+				pipelineStage.send(libraryMetadataChannel, msg(directory, foundSubDirs, foundFiles, modified));
 			}
-			if (!dbSubDirs.isEmpty() || !dbFiles.isEmpty()) {
-				libraryDeletionChannel.send(msg(directory, dbSubDirs, dbFiles));
+			if (!dbSubDirs.isEmpty() || !dbFiles.isEmpty() || !moved.isEmpty()) {
+				Message<DirectoryContent> deletion = msg(directory, dbSubDirs, dbFiles);
+				deletion.getPayload().setMovedFiles(moved);
+				pipelineStage.send(libraryDeletionChannel, deletion);
 			}
+		} else if ((isChunked || modified != null) && !isImported) {
+			pipelineStage.send(libraryMetadataChannel, msg(directory, 
+					new HashSet<String>(), new HashSet<File>(), modified));
 		}
 	}
 
+	/*
+	 * Files in a chunk of a large directory are compared to all its stored
+	 * files. New files are passed on right away, while stored files not found
+	 * yet are kept until the last chunk, and deleted if not found by then.
+	 * The last chunk is always passed on, as it marks the directory imported.
+	 */
+	private void compareChunk(String directory, Set<File> foundFiles, Set<File> dbFiles,
+			boolean isImported) {
+		removeIntersection(dbFiles, foundFiles);
+		remainingFiles.put(directory, dbFiles);
+		Set<File> moved = removeMovedFiles(directory, foundFiles);
+
+		if (!isImported && !foundFiles.isEmpty()) {
+			Message<DirectoryContent> chunk = msg(directory, new HashSet<String>(), foundFiles);
+			chunk.getPayload().setLastChunk(false);
+			pipelineStage.send(libraryMetadataChannel, chunk);
+		}
+		if (!moved.isEmpty()) {
+			Message<DirectoryContent> chunk = msg(directory, new HashSet<String>(), new HashSet<File>());
+			chunk.getPayload().setMovedFiles(moved);
+			chunk.getPayload().setLastChunk(false);
+			pipelineStage.send(libraryDeletionChannel, chunk);
+		}
+	}
+
+	/*
+	 * Removes new files that are found to be moved from another directory,
+	 * and returns them as found at their old place. A library file counts as
+	 * moved if it's the only one matching a new file, and it no longer exists.
+	 * Each library file is only taken to be moved once, so copies are added.
+	 */
+	private Set<File> removeMovedFiles(String directory, Set<File> foundFiles) {
+		Set<File> moved = new HashSet<>();
+		if (!detectMovedFiles || snapshot == null || foundFiles.isEmpty()) {
+			return moved;
+		}
+		for (Iterator<File> it = foundFiles.iterator(); it.hasNext();) {
+			File file = it.next();
+			String oldDirectory = snapshot.findDirectory(file);
+			if (oldDirectory == null || oldDirectory.equals(directory)
+					|| new java.io.File(oldDirectory, file.getFilename()).exists()) {
+				continue;
+			}
+			File oldFile = new File(oldDirectory, file.getFilename(), file.getModified(), file.getSize());
+			if (movedFiles.add(oldFile)) {
+				moved.add(oldFile);
+				it.remove();
+			}
+		}
+		return moved;
+	}
+
+	/*
+	 * Returns found modification time of directory, if it differs from the one
+	 * stored at last scan. Only known when comparing against a snapshot.
+	 */
+	private DateTime getChangedModified(DirectoryContent content) {
+		DateTime modified = content.getModified();
+		if (snapshot == null || modified == null
+				|| snapshot.isUnchanged(content.getDirectory(), modified.getMillis())) {
+			return null;
+		}
+		return modified;
+	}
+
+	private Set<File> getFiles(String directory) {
+		return snapshot == null ? libraryPresenceDao.getFiles(directory)
+				: snapshot.getFiles(directory);
+	}
+
+	private Set<String> getSubdirectories(String directory) {
+		return snapshot == null ? libraryPresenceDao.getSubdirectories(directory)
+				: snapshot.getSubdirectories(directory);
+	}
+
 	public SearchIndexUpdateProgress getUpdateProgress() {
 		return progress;
 	}
 
+	public PipelineStage getPipelineStage() {
+		return pipelineStage;
+	}
+
 	public void setLibraryPresenceDao(LibraryPresenceDao libraryDao) {
 		this.libraryPresenceDao = libraryDao;
 	}
 	
+	public void setUseLibrarySnapshot(boolean useLibrarySnapshot) {
+		this.useLibrarySnapshot = useLibrarySnapshot;
+	}
+
+	public void setDetectMovedFiles(boolean detectMovedFiles) {
+		this.detectMovedFiles = detectMovedFiles;
+	}
+
+	public void setPipelineStage(PipelineStage pipelineStage) {
+		this.pipelineStage = pipelineStage;
+	}
+
 	public void setLibraryPresenceChannel(PollableChannel libraryPresenceChannel) {
 		this.libraryPresenceChannel = libraryPresenceChannel;
 	}
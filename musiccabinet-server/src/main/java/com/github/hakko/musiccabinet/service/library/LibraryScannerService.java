@@ -4,23 +4,39 @@ import static com.github.hakko.musiccabinet.service.library.LibraryUtil.FINISHED
 import static com.github.hakko.musiccabinet.service.library.LibraryUtil.msg;
 
 import java.io.IOException;
+import java.nio.file.FileVisitOption;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.springframework.core.task.TaskExecutor;
 import org.springframework.integration.core.PollableChannel;
 
+import com.github.hakko.musiccabinet.domain.model.aggr.DirectoryContent;
+import com.github.hakko.musiccabinet.domain.model.aggr.LibrarySnapshot;
 import com.github.hakko.musiccabinet.domain.model.aggr.SearchIndexUpdateProgress;
 import com.github.hakko.musiccabinet.domain.model.library.File;
 import com.github.hakko.musiccabinet.exception.ApplicationException;
+import com.github.hakko.musiccabinet.io.ArtworkCache;
 import com.github.hakko.musiccabinet.io.LibraryScanner;
+import com.github.hakko.musiccabinet.io.ParallelLibraryScanner;
+import com.github.hakko.musiccabinet.io.VolumeConcurrency;
+import com.github.hakko.musiccabinet.io.VolumeConcurrency.Volume;
 import com.github.hakko.musiccabinet.log.Logger;
 
 /*
@@ -37,11 +53,18 @@ public class LibraryScannerService {
 	
 	private TaskExecutor taskExecutor;
 	private CountDownLatch workerThreads = new CountDownLatch(0);
+	private int scannerThreads = 4;
+	private int chunkSize = DirectoryContent.DEFAULT_CHUNK_SIZE;
+	private VolumeConcurrency volumeConcurrency;
+	private boolean incrementalScan = false;
+	private PipelineStage pipelineStage = new PipelineStage("scanner");
 	
 	private LibraryPresenceService libraryPresenceService;
 	private LibraryMetadataService libraryMetadataService;
 	private LibraryAdditionService libraryAdditionService;
 	private LibraryDeletionService libraryDeletionService;
+	private ArtworkCache artworkCache;
+	private LibraryWatchService libraryWatchService;
 	
 	protected String fileSeparator = java.io.File.separator;
 
@@ -51,33 +74,207 @@ public class LibraryScannerService {
 
 	public void add(Set<String> paths) throws ApplicationException {
 		update(paths, true);
+		if (libraryWatchService != null) {
+			libraryWatchService.refreshRoots();
+		}
 	}
 
-	public void update(Set<String> paths, boolean isRootPaths) throws ApplicationException {
+	/*
+	 * Progress is checkpointed as the scan goes (see JdbcLibraryAdditionDao).
+	 * If the previous scan of the same paths was interrupted, its import is
+	 * kept, and directories already imported aren't read for meta-data again.
+	 */
+	public synchronized void update(Set<String> paths, boolean isRootPaths) throws ApplicationException {
 		isLibraryBeingScanned = true;
 		try {
-			clearImport();
-			startReceivingServices();
 			Set<String> rootPaths = getRootPaths(paths);
-			for (String path : rootPaths) {
-				Files.walkFileTree(Paths.get(path), new LibraryScanner(libraryPresenceChannel));
+			Set<String> checkpoint = libraryAdditionService.getResumableCheckpoint(rootPaths);
+			if (checkpoint == null) {
+				clearImport();
+				libraryAdditionService.startImport(rootPaths);
+			} else {
+				LOG.info("Resuming interrupted scan, " + checkpoint.size() 
+						+ " directories already imported.");
 			}
+			LibrarySnapshot snapshot = libraryPresenceService.loadSnapshot();
+			libraryPresenceService.setCheckpoint(checkpoint);
+			setVolumeRoots(rootPaths);
+			pipelineStage.reset();
+			startReceivingServices();
+			scan(rootPaths, incrementalScan ? snapshot : null);
 			if (isRootPaths) {
-				libraryPresenceChannel.send(msg(null, rootPaths, new HashSet<File>()));
+				pipelineStage.send(libraryPresenceChannel, msg(null, rootPaths, new HashSet<File>()));
+			}
+			pipelineStage.send(libraryPresenceChannel, FINISHED_MESSAGE);
+			workerThreads.await();
+			libraryDeletionService.updateLibraryContent();
+			libraryAdditionService.updateLibrary();
+			if (isRootPaths && artworkCache != null) {
+				artworkCache.compact();
+			}
+		} catch (IOException | InterruptedException e) {
+			throw new ApplicationException("Scanning aborted due to error!", e);
+		} finally {
+			isLibraryBeingScanned = false;
+		}
+	}
+
+	/*
+	 * Scans a few known directories, typically the ones reported as changed
+	 * by LibraryWatchService. Directories are listed without their sub-
+	 * directories, while sub-trees (new directories) are scanned in full.
+	 * Stored library content is read per directory rather than as a snapshot.
+	 * Artwork cache is compacted by full scans only, as it's read as a whole.
+	 * Library summary is left for the caller to update (see updateSummary).
+	 * 
+	 * Returns false, without scanning, if an interrupted scan is waiting to be
+	 * resumed, as its import (and checkpoint) would be lost otherwise.
+	 */
+	public synchronized boolean updateDirectories(Set<String> directories, Set<String> subTrees)
+			throws ApplicationException {
+		if (libraryAdditionService.hasResumableImport()) {
+			return false;
+		}
+		isLibraryBeingScanned = true;
+		try {
+			clearImport();
+			Set<String> roots = new HashSet<>(directories);
+			roots.addAll(subTrees);
+			setVolumeRoots(roots);
+			pipelineStage.reset();
+			startReceivingServices();
+			for (String directory : directories) {
+				Path path = Paths.get(directory);
+				if (Files.isDirectory(path)) {
+					Files.walkFileTree(path, EnumSet.noneOf(FileVisitOption.class), 1,
+							new LibraryScanner(pipelineStage.outputTo(libraryPresenceChannel), chunkSize));
+				}
 			}
-			libraryPresenceChannel.send(FINISHED_MESSAGE);
+			Set<String> existingSubTrees = new HashSet<>();
+			for (String subTree : subTrees) {
+				if (Files.isDirectory(Paths.get(subTree))) {
+					existingSubTrees.add(subTree);
+				}
+			}
+			scan(existingSubTrees, null);
+			pipelineStage.send(libraryPresenceChannel, FINISHED_MESSAGE);
 			workerThreads.await();
-			updateLibrary();
+			libraryDeletionService.updateLibraryContent();
+			libraryAdditionService.updateLibraryContent();
+			return true;
 		} catch (IOException | InterruptedException e) {
 			throw new ApplicationException("Scanning aborted due to error!", e);
+		} finally {
+			isLibraryBeingScanned = false;
 		}
-		isLibraryBeingScanned = false;
 	}
 	
-	public void delete(Set<String> paths) throws ApplicationException {
+	/*
+	 * Directories are listed by the given number of threads, or by a plain
+	 * sequential file tree walk if only one thread is allowed.
+	 * 
+	 * Incremental scans skip directories not modified since last scan (see
+	 * ParallelLibraryScanner), and need a snapshot of current library content.
+	 * They're not done by default, as files re-tagged in place go undetected.
+	 * A full rescan (LibraryBrowserService.markAllFilesForFullRescan) clears
+	 * stored modification times, so that all directories are listed again.
+	 */
+	private void scan(Path root, LibrarySnapshot snapshot, int threads) throws IOException {
+		PollableChannel channel = pipelineStage.outputTo(libraryPresenceChannel);
+		if (snapshot != null || threads > 1) {
+			new ParallelLibraryScanner(channel, Math.max(1, threads), snapshot, chunkSize).scan(root);
+		} else {
+			Files.walkFileTree(root, new LibraryScanner(channel, chunkSize));
+		}
+	}
+
+	/*
+	 * Without volume concurrency configured, roots are scanned one at a time
+	 * by scannerThreads threads. Otherwise, roots on different volumes are
+	 * scanned in parallel, and roots on the same volume one after another, by
+	 * as many threads as the volume allows.
+	 */
+	private void scan(Set<String> rootPaths, final LibrarySnapshot snapshot) 
+			throws IOException, InterruptedException {
+		if (volumeConcurrency == null) {
+			for (String path : rootPaths) {
+				scan(Paths.get(path), snapshot, scannerThreads);
+			}
+			return;
+		}
+		final Map<Volume, List<Path>> rootsByVolume = new LinkedHashMap<>();
+		for (String path : rootPaths) {
+			Volume volume = volumeConcurrency.findVolume(path);
+			if (volume == null) {
+				volume = new Volume(path, scannerThreads);
+			}
+			if (!rootsByVolume.containsKey(volume)) {
+				rootsByVolume.put(volume, new ArrayList<Path>());
+			}
+			rootsByVolume.get(volume).add(Paths.get(path));
+		}
+		if (rootsByVolume.size() == 1) {
+			Volume volume = rootsByVolume.keySet().iterator().next();
+			scan(rootsByVolume.get(volume), snapshot, volume.getLimit());
+			return;
+		}
+		List<Callable<Void>> volumeScans = new ArrayList<>();
+		for (final Volume volume : rootsByVolume.keySet()) {
+			volumeScans.add(new Callable<Void>() {
+				@Override
+				public Void call() throws IOException {
+					scan(rootsByVolume.get(volume), snapshot, volume.getLimit());
+					return null;
+				}
+			});
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(volumeScans.size());
+		try {
+			for (Future<Void> future : executor.invokeAll(volumeScans)) {
+				try {
+					future.get();
+				} catch (ExecutionException e) {
+					if (e.getCause() instanceof IOException) {
+						throw (IOException) e.getCause();
+					}
+					throw new IllegalStateException(e.getCause());
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private void scan(List<Path> roots, LibrarySnapshot snapshot, int threads) throws IOException {
+		for (Path root : roots) {
+			scan(root, snapshot, threads);
+		}
+	}
+
+	private void setVolumeRoots(Set<String> rootPaths) {
+		if (volumeConcurrency != null) {
+			volumeConcurrency.setRoots(rootPaths);
+		}
+	}
+
+	/*
+	 * Updates artist index, local genres and library statistics, once a
+	 * batch of directory-scoped updates is done.
+	 */
+	public synchronized void updateSummary() {
+		libraryAdditionService.updateLibrarySummary();
+	}
+
+	public synchronized void delete(Set<String> paths) throws ApplicationException {
 		isLibraryBeingScanned = true;
-		libraryDeletionService.delete(paths);
-		isLibraryBeingScanned = false;
+		try {
+			libraryDeletionService.delete(paths);
+		} finally {
+			isLibraryBeingScanned = false;
+		}
+		if (libraryWatchService != null) {
+			libraryWatchService.refreshRoots();
+		}
 	}
 
 	/*
@@ -107,19 +304,28 @@ public class LibraryScannerService {
 		List<SearchIndexUpdateProgress> updateProgress = new ArrayList<>();
 		updateProgress.add(libraryPresenceService.getUpdateProgress());
 		updateProgress.add(libraryMetadataService.getUpdateProgress());
+		updateProgress.add(libraryAdditionService.getUpdateProgress());
+		for (PipelineStage stage : getPipelineStages()) {
+			updateProgress.add(stage.getUpdateProgress());
+		}
 		return updateProgress;
 	}
+
+	public List<PipelineStage> getPipelineStages() {
+		List<PipelineStage> stages = new ArrayList<>();
+		stages.add(pipelineStage);
+		stages.add(libraryPresenceService.getPipelineStage());
+		stages.add(libraryMetadataService.getPipelineStage());
+		stages.add(libraryAdditionService.getPipelineStage());
+		stages.add(libraryDeletionService.getPipelineStage());
+		return stages;
+	}
 	
 	private void clearImport() {
 		libraryAdditionService.clearImport();
 		libraryDeletionService.clearImport();
 	}
 	
-	private void updateLibrary() {
-		libraryDeletionService.updateLibrary();
-		libraryAdditionService.updateLibrary();
-	}
-	
 	private void startReceivingServices() {
 		List<LibraryReceiverService> libraryReceiverServices = new ArrayList<>();
 		libraryReceiverServices.add(libraryPresenceService);
@@ -152,6 +358,26 @@ public class LibraryScannerService {
 		this.taskExecutor = taskExecutor;
 	}
 
+	public void setScannerThreads(int scannerThreads) {
+		this.scannerThreads = scannerThreads;
+	}
+
+	public void setVolumeConcurrency(VolumeConcurrency volumeConcurrency) {
+		this.volumeConcurrency = volumeConcurrency;
+	}
+
+	public void setChunkSize(int chunkSize) {
+		this.chunkSize = chunkSize;
+	}
+
+	public void setIncrementalScan(boolean incrementalScan) {
+		this.incrementalScan = incrementalScan;
+	}
+
+	public void setPipelineStage(PipelineStage pipelineStage) {
+		this.pipelineStage = pipelineStage;
+	}
+
 	public void setLibraryPresenceService(LibraryPresenceService libraryPresenceService) {
 		this.libraryPresenceService = libraryPresenceService;
 	}
@@ -168,6 +394,14 @@ public class LibraryScannerService {
 		this.libraryDeletionService = libraryDeletionService;
 	}
 
+	public void setArtworkCache(ArtworkCache artworkCache) {
+		this.artworkCache = artworkCache;
+	}
+
+	public void setLibraryWatchService(LibraryWatchService libraryWatchService) {
+		this.libraryWatchService = libraryWatchService;
+	}
+
 	protected void setFileSeparator(String fileSeparator) {
 		this.fileSeparator = fileSeparator;
 	}
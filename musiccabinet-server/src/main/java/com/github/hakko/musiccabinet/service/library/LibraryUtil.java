@@ -4,6 +4,7 @@ import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
 
+import org.joda.time.DateTime;
 import org.springframework.integration.Message;
 import org.springframework.integration.message.GenericMessage;
 import org.springframework.integration.support.MessageBuilder;
@@ -24,6 +25,12 @@ public class LibraryUtil {
 		return new GenericMessage<DirectoryContent>(
 				new DirectoryContent(directory, subDirectories, files));
 	}
+
+	public static GenericMessage<DirectoryContent> msg(String directory, 
+			Set<String> subDirectories, Set<File> files, DateTime modified) {
+		return new GenericMessage<DirectoryContent>(
+				new DirectoryContent(directory, subDirectories, files, modified));
+	}
 	
 	@SafeVarargs
 	public static <T> Set<T> set(T... t) {
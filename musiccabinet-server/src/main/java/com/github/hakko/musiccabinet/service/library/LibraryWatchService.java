@@ -0,0 +1,371 @@
+package com.github.hakko.musiccabinet.service.library;
+
+import static java.nio.file.FileVisitResult.CONTINUE;
+import static java.nio.file.LinkOption.NOFOLLOW_LINKS;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import org.apache.commons.io.IOUtils;
+
+import com.github.hakko.musiccabinet.dao.LibraryPresenceDao;
+import com.github.hakko.musiccabinet.exception.ApplicationException;
+import com.github.hakko.musiccabinet.log.Logger;
+
+/*
+ * Keeps library up-to-date between scans, by watching all library directories
+ * for changes (using inotify on Linux).
+ *
+ * Events are collected per directory, and a directory is re-scanned once no
+ * new events have been seen for debounceTime ms (a copied album typically
+ * causes a burst of events). Changed directories are listed without their
+ * sub-directories, while new directories are scanned in full. If the event
+ * queue overflows, all library roots are scanned.
+ *
+ * Directory scans leave out library summary (artist index, genres and
+ * statistics), which is updated summaryDelay ms after the first scan instead.
+ * Library roots are read again whenever roots are added or deleted, and
+ * events outside current roots are dropped. Changes are postponed while an
+ * interrupted library scan is waiting to be resumed.
+ *
+ * Scans are done through LibraryScannerService, one at a time, and never at
+ * the same time as a full library scan.
+ */
+public class LibraryWatchService {
+
+	private LibraryScannerService libraryScannerService;
+	private LibraryPresenceDao libraryPresenceDao;
+
+	private boolean enabled = false;
+	private long debounceTime = 5000;
+	private long summaryDelay = 60000;
+
+	private WatchService watchService;
+	private Thread watcher;
+	private volatile boolean isRootsChanged;
+
+	// only accessed by watcher thread, once started
+	private Set<String> rootPaths;
+	private Map<WatchKey, Path> keys = new HashMap<>();
+	private Map<Path, Long> pendingDirectories = new HashMap<>();
+	private Set<Path> pendingSubTrees = new HashSet<>();
+	private boolean pendingRootPaths;
+	private long pendingSummary;
+
+	private static final Logger LOG = Logger.getLogger(LibraryWatchService.class);
+
+	/*
+	 * Called by Spring at startup. Starts watching, if enabled. A failure is
+	 * logged rather than thrown, as the library is still updated by scans.
+	 */
+	public void init() {
+		if (enabled) {
+			try {
+				start();
+			} catch (ApplicationException | RuntimeException e) {
+				LOG.warn("Could not start watching library directories!", e);
+			}
+		}
+	}
+
+	/*
+	 * Starts watching current library root directories.
+	 */
+	public void start() throws ApplicationException {
+		start(new HashSet<>(libraryPresenceDao.getRootDirectories()));
+	}
+
+	public synchronized void start(Set<String> rootPaths) throws ApplicationException {
+		stop();
+		this.rootPaths = rootPaths;
+		keys = new HashMap<>();
+		pendingDirectories = new HashMap<>();
+		pendingSubTrees = new HashSet<>();
+		pendingRootPaths = false;
+		pendingSummary = 0;
+		isRootsChanged = false;
+		try {
+			watchService = FileSystems.getDefault().newWatchService();
+			long ms = -System.currentTimeMillis();
+			for (String rootPath : rootPaths) {
+				register(Paths.get(rootPath));
+			}
+			ms += System.currentTimeMillis();
+			LOG.info("Watching " + keys.size() + " library directories, registered in " + ms + " ms");
+		} catch (IOException e) {
+			IOUtils.closeQuietly(watchService);
+			throw new ApplicationException("Could not watch library!", e);
+		}
+		watcher = new Thread(new Watcher(watchService), "LibraryWatchService");
+		watcher.setDaemon(true);
+		watcher.start();
+	}
+
+	public synchronized void stop() {
+		if (watcher != null) {
+			watcher.interrupt();
+			IOUtils.closeQuietly(watchService);
+			watcher = null;
+			watchService = null;
+		}
+	}
+
+	public synchronized boolean isWatching() {
+		return watcher != null;
+	}
+
+	/*
+	 * Called by LibraryScannerService when library roots are added or deleted.
+	 * Roots are read again by the watcher thread.
+	 */
+	public void refreshRoots() {
+		isRootsChanged = true;
+	}
+
+	private class Watcher implements Runnable {
+
+		private WatchService watchService;
+
+		public Watcher(WatchService watchService) {
+			this.watchService = watchService;
+		}
+
+		@Override
+		public void run() {
+			try {
+				while (!Thread.currentThread().isInterrupted()) {
+					WatchKey key = watchService.poll(debounceTime, MILLISECONDS);
+					while (key != null) {
+						handleEvents(key);
+						key = watchService.poll();
+					}
+					if (isRootsChanged) {
+						isRootsChanged = false;
+						updateRoots();
+					}
+					updateQuietDirectories();
+					updateSummary();
+				}
+			} catch (InterruptedException | ClosedWatchServiceException e) {
+				LOG.debug("Library watching stopped.");
+			}
+		}
+
+	}
+
+	private void handleEvents(WatchKey key) {
+		Path dir = keys.get(key);
+		for (WatchEvent<?> event : key.pollEvents()) {
+			if (event.kind() == OVERFLOW) {
+				pendingRootPaths = true;
+			} else if (dir != null) {
+				Path child = dir.resolve((Path) event.context());
+				boolean isDirectory = Files.isDirectory(child, NOFOLLOW_LINKS);
+				if (event.kind() == ENTRY_CREATE && isDirectory) {
+					register(child);
+					pendingSubTrees.add(child);
+					pendingDirectories.put(child, System.currentTimeMillis());
+				}
+				if (event.kind() != ENTRY_MODIFY || !isDirectory) {
+					pendingDirectories.put(dir, System.currentTimeMillis());
+				}
+			}
+		}
+		if (!key.reset()) {
+			keys.remove(key);
+		}
+	}
+
+	/*
+	 * Watches new roots, and stops watching (and drops pending changes of)
+	 * directories no longer within a root.
+	 */
+	private void updateRoots() {
+		Set<String> currentRootPaths = new HashSet<>(libraryPresenceDao.getRootDirectories());
+		for (String rootPath : currentRootPaths) {
+			if (!rootPaths.contains(rootPath)) {
+				LOG.info("Watching new library root " + rootPath);
+				register(Paths.get(rootPath));
+			}
+		}
+		rootPaths = currentRootPaths;
+		for (Iterator<Entry<WatchKey, Path>> it = keys.entrySet().iterator(); it.hasNext(); ) {
+			Entry<WatchKey, Path> entry = it.next();
+			if (!isWithinRoots(entry.getValue())) {
+				entry.getKey().cancel();
+				it.remove();
+			}
+		}
+		for (Iterator<Path> it = pendingDirectories.keySet().iterator(); it.hasNext(); ) {
+			Path path = it.next();
+			if (!isWithinRoots(path)) {
+				it.remove();
+				pendingSubTrees.remove(path);
+			}
+		}
+	}
+
+	private boolean isWithinRoots(Path path) {
+		for (String rootPath : rootPaths) {
+			if (path.startsWith(Paths.get(rootPath))) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/*
+	 * Scans directories that have been quiet for debounceTime ms. Directories
+	 * within a sub-tree that is scanned anyway are left out.
+	 */
+	private void updateQuietDirectories() {
+		long quietSince = System.currentTimeMillis() - debounceTime;
+		Set<Path> subTrees = new HashSet<>();
+		Set<Path> directories = new HashSet<>();
+		for (Iterator<Entry<Path, Long>> it = pendingDirectories.entrySet().iterator(); it.hasNext(); ) {
+			Entry<Path, Long> entry = it.next();
+			if (entry.getValue() <= quietSince) {
+				it.remove();
+				if (pendingSubTrees.remove(entry.getKey())) {
+					subTrees.add(entry.getKey());
+				} else {
+					directories.add(entry.getKey());
+				}
+			}
+		}
+		removeNested(subTrees, subTrees);
+		removeNested(directories, subTrees);
+
+		try {
+			if (pendingRootPaths) {
+				pendingRootPaths = false;
+				LOG.info("Too many library changes to keep track of, scanning all roots.");
+				libraryScannerService.update(rootPaths, false);
+				pendingSummary = 0;
+			} else if (!directories.isEmpty() || !subTrees.isEmpty()) {
+				LOG.debug("Scanning changed directories " + directories + ", new " + subTrees);
+				if (libraryScannerService.updateDirectories(toString(directories), toString(subTrees))) {
+					if (pendingSummary == 0) {
+						pendingSummary = System.currentTimeMillis() + summaryDelay;
+					}
+				} else {
+					LOG.debug("Interrupted library scan not resumed yet, postponing changes.");
+					postpone(directories, subTrees);
+				}
+			}
+		} catch (ApplicationException e) {
+			LOG.warn("Scanning changed library directories failed!", e);
+		}
+	}
+
+	private void postpone(Set<Path> directories, Set<Path> subTrees) {
+		long now = System.currentTimeMillis();
+		for (Path path : directories) {
+			pendingDirectories.put(path, now);
+		}
+		for (Path path : subTrees) {
+			pendingDirectories.put(path, now);
+			pendingSubTrees.add(path);
+		}
+	}
+
+	private void updateSummary() {
+		if (pendingSummary != 0 && pendingSummary <= System.currentTimeMillis()) {
+			pendingSummary = 0;
+			libraryScannerService.updateSummary();
+		}
+	}
+
+	private void removeNested(Set<Path> paths, Set<Path> subTrees) {
+		for (Iterator<Path> it = paths.iterator(); it.hasNext(); ) {
+			Path path = it.next();
+			for (Path subTree : subTrees) {
+				if (!path.equals(subTree) && path.startsWith(subTree)) {
+					it.remove();
+					break;
+				}
+			}
+		}
+	}
+
+	private Set<String> toString(Set<Path> paths) {
+		Set<String> strings = new HashSet<>();
+		for (Path path : paths) {
+			strings.add(path.toString());
+		}
+		return strings;
+	}
+
+	/*
+	 * Registers directory and all its sub-directories. Each directory uses
+	 * an inotify watch, and large libraries may need a raised system limit
+	 * (fs.inotify.max_user_watches).
+	 */
+	private void register(Path start) {
+		try {
+			Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
+				@Override
+				public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+					try {
+						keys.put(dir.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY), dir);
+					} catch (IOException e) {
+						LOG.warn("Could not watch " + dir + "!", e);
+					}
+					return CONTINUE;
+				}
+
+				@Override
+				public FileVisitResult visitFileFailed(Path file, IOException e) {
+					LOG.warn("Visiting " + file + " failed!", e);
+					return CONTINUE;
+				}
+			});
+		} catch (IOException e) {
+			LOG.warn("Could not watch " + start + "!", e);
+		}
+	}
+
+	// Spring setters
+
+	public void setLibraryScannerService(LibraryScannerService libraryScannerService) {
+		this.libraryScannerService = libraryScannerService;
+	}
+
+	public void setLibraryPresenceDao(LibraryPresenceDao libraryPresenceDao) {
+		this.libraryPresenceDao = libraryPresenceDao;
+	}
+
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	public void setDebounceTime(long debounceTime) {
+		this.debounceTime = debounceTime;
+	}
+
+	public void setSummaryDelay(long summaryDelay) {
+		this.summaryDelay = summaryDelay;
+	}
+
+}
@@ -0,0 +1,169 @@
+package com.github.hakko.musiccabinet.service.library;
+
+import static com.github.hakko.musiccabinet.service.library.LibraryUtil.FINISHED_MESSAGE;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.integration.Message;
+import org.springframework.integration.channel.QueueChannel;
+import org.springframework.integration.core.PollableChannel;
+
+import com.github.hakko.musiccabinet.domain.model.aggr.SearchIndexUpdateProgress;
+
+/*
+ * Counts messages passing through one stage of the library scanning pipeline,
+ * and the time the stage spends blocked on its channels.
+ *
+ * Time blocked on send means that the next stage can't keep up, time blocked
+ * on receive that the previous stage is the bottleneck. A full input queue
+ * points the same way. Registered as an MBean (see applicationContext.xml), and
+ * summarized in LibraryScannerService.getUpdateProgress().
+ */
+public class PipelineStage implements PipelineStageMBean {
+
+	private String name;
+
+	private final AtomicLong messagesIn = new AtomicLong();
+	private final AtomicLong messagesOut = new AtomicLong();
+	private final AtomicLong sendBlockedNanos = new AtomicLong();
+	private final AtomicLong receiveBlockedNanos = new AtomicLong();
+
+	private volatile long started = System.nanoTime();
+	private volatile long lastActive = started;
+	private volatile PollableChannel input;
+
+	public PipelineStage() {
+	}
+
+	public PipelineStage(String name) {
+		this.name = name;
+	}
+
+	public Message<?> receive(PollableChannel channel) {
+		input = channel;
+		long nanos = -System.nanoTime();
+		Message<?> message = channel.receive();
+		nanos += System.nanoTime();
+		receiveBlockedNanos.addAndGet(nanos);
+		if (message != null && !message.equals(FINISHED_MESSAGE)) {
+			messagesIn.incrementAndGet();
+			lastActive = System.nanoTime();
+		}
+		return message;
+	}
+
+	public void send(PollableChannel channel, Message<?> message) {
+		long nanos = -System.nanoTime();
+		channel.send(message);
+		nanos += System.nanoTime();
+		sendBlockedNanos.addAndGet(nanos);
+		if (message != null && !message.equals(FINISHED_MESSAGE)) {
+			messagesOut.incrementAndGet();
+			lastActive = System.nanoTime();
+		}
+	}
+
+	/*
+	 * Returns a channel that sends through this stage, for producers that
+	 * only know about channels (LibraryScanner, ParallelLibraryScanner).
+	 */
+	public PollableChannel outputTo(final PollableChannel channel) {
+		return new PollableChannel() {
+			@Override
+			public boolean send(Message<?> message) {
+				PipelineStage.this.send(channel, message);
+				return true;
+			}
+
+			@Override
+			public boolean send(Message<?> message, long timeout) {
+				return send(message);
+			}
+
+			@Override
+			public Message<?> receive() {
+				return channel.receive();
+			}
+
+			@Override
+			public Message<?> receive(long timeout) {
+				return channel.receive(timeout);
+			}
+		};
+	}
+
+	@Override
+	public void reset() {
+		messagesIn.set(0);
+		messagesOut.set(0);
+		sendBlockedNanos.set(0);
+		receiveBlockedNanos.set(0);
+		started = lastActive = System.nanoTime();
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public long getMessagesIn() {
+		return messagesIn.get();
+	}
+
+	@Override
+	public long getMessagesOut() {
+		return messagesOut.get();
+	}
+
+	@Override
+	public long getSendBlockedMillis() {
+		return sendBlockedNanos.get() / 1000000;
+	}
+
+	@Override
+	public long getReceiveBlockedMillis() {
+		return receiveBlockedNanos.get() / 1000000;
+	}
+
+	/*
+	 * Returns number of messages waiting in input queue, or -1 if unknown.
+	 */
+	@Override
+	public int getQueueSize() {
+		PollableChannel channel = input;
+		return channel instanceof QueueChannel ? ((QueueChannel) channel).getQueueSize() : -1;
+	}
+
+	/*
+	 * Returns messages handled per second, from reset until last message.
+	 * Handled means received, or sent for stages without input.
+	 */
+	@Override
+	public double getItemsPerSecond() {
+		long items = messagesIn.get() > 0 ? messagesIn.get() : messagesOut.get();
+		long nanos = lastActive - started;
+		return nanos <= 0 ? 0 : items * 1e9 / nanos;
+	}
+
+	public SearchIndexUpdateProgress getUpdateProgress() {
+		SearchIndexUpdateProgress progress = new SearchIndexUpdateProgress(toString());
+		progress.setFinishedOperations((int) Math.max(messagesIn.get(), messagesOut.get()));
+		return progress;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("directories through %s (in %d, out %d, queued %d, "
+				+ "blocked on send %d ms, on receive %d ms, %.1f/s)", name,
+				getMessagesIn(), getMessagesOut(), getQueueSize(),
+				getSendBlockedMillis(), getReceiveBlockedMillis(), getItemsPerSecond());
+	}
+
+	// Spring setters
+
+	public void setName(String name) {
+		this.name = name;
+	}
+
+}
@@ -0,0 +1,18 @@
+package com.github.hakko.musiccabinet.service.library;
+
+/*
+ * Management interface of PipelineStage, as seen through JMX.
+ */
+public interface PipelineStageMBean {
+
+	String getName();
+	long getMessagesIn();
+	long getMessagesOut();
+	long getSendBlockedMillis();
+	long getReceiveBlockedMillis();
+	int getQueueSize();
+	double getItemsPerSecond();
+
+	void reset();
+
+}
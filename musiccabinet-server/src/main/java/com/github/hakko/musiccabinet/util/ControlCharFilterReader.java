@@ -0,0 +1,33 @@
+package com.github.hakko.musiccabinet.util;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+
+/*
+ * Replaces ISO control characters (except tab and line breaks) with space,
+ * while reading. Same result as XMLUtil.removeISOControlChars(), without
+ * having the whole text in memory first.
+ */
+public class ControlCharFilterReader extends FilterReader {
+
+	public ControlCharFilterReader(Reader in) {
+		super(in);
+	}
+
+	@Override
+	public int read() throws IOException {
+		int c = super.read();
+		return c == -1 ? c : XMLUtil.filter((char) c);
+	}
+
+	@Override
+	public int read(char[] buffer, int offset, int length) throws IOException {
+		int read = super.read(buffer, offset, length);
+		for (int i = offset; i < offset + read; i++) {
+			buffer[i] = XMLUtil.filter(buffer[i]);
+		}
+		return read;
+	}
+
+}
@@ -2,9 +2,11 @@ package com.github.hakko.musiccabinet.util;
 
 import static com.github.hakko.musiccabinet.configuration.CharSet.UTF8;
 
-import java.io.ByteArrayInputStream;
 import java.io.InputStream;
-import java.io.UnsupportedEncodingException;
+import java.io.StringReader;
+import java.nio.charset.Charset;
+
+import org.apache.commons.io.input.ReaderInputStream;
 
 import com.github.hakko.musiccabinet.exception.ApplicationException;
 
@@ -16,14 +18,12 @@ public class StringUtil {
 		this.str = str;
 	}
 	
+	/*
+	 * Returns string as UTF-8 encoded stream. Bytes are encoded while read,
+	 * a buffer at a time, rather than as a copy of the whole string.
+	 */
 	public InputStream getInputStream() throws ApplicationException {
-		InputStream is;
-		try {
-			is = new ByteArrayInputStream(str.getBytes(UTF8));
-		} catch (UnsupportedEncodingException e) {
-			throw new ApplicationException("UTF-8 encoding not supported!", e);
-		}
-		return is;
+		return new ReaderInputStream(new StringReader(str), Charset.forName(UTF8));
 	}
 
-}
\ No newline at end of file
+}
@@ -2,16 +2,31 @@ package com.github.hakko.musiccabinet.util;
 
 public class XMLUtil {
 
+	/*
+	 * Returns input with ISO control characters replaced by space. Input is
+	 * returned as is if it doesn't contain any (which is the common case).
+	 */
 	public static String removeISOControlChars(String input) {
+		int first = 0;
+		while (first < input.length() && filter(input.charAt(first)) == input.charAt(first)) {
+			first++;
+		}
+		if (first == input.length()) {
+			return input;
+		}
 		char[] chars = input.toCharArray();
-		for (int i = 0; i < chars.length; i++) {
-			char c = chars[i];
-			if (Character.isISOControl(c) && c != 0x09
-					&& c != 0x0A && c != 0x0D) {
-				chars[i] = ' ';
-			}
+		for (int i = first; i < chars.length; i++) {
+			chars[i] = filter(chars[i]);
 		}
 		return new String(chars);
 	}
 
-}
\ No newline at end of file
+	protected static char filter(char c) {
+		if (Character.isISOControl(c) && c != 0x09
+				&& c != 0x0A && c != 0x0D) {
+			return ' ';
+		}
+		return c;
+	}
+
+}
@@ -0,0 +1,208 @@
+package com.github.hakko.musiccabinet.ws;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpException;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.params.HttpClientParams;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.client.DecompressingHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.protocol.HttpContext;
+
+import com.github.hakko.musiccabinet.log.Logger;
+import com.github.hakko.musiccabinet.ws.musicbrainz.AbstractMusicBrainzClient;
+
+/*
+ * HTTP transport shared by all web service clients (Last.fm and MusicBrainz).
+ *
+ * Connections are pooled, with a limit per host, and kept alive between calls
+ * for keepAliveSeconds (or shorter, if the server says so). Responses are
+ * requested gzip compressed, and decompressed transparently.
+ *
+ * The pooled client is thread safe, so search index updates running in
+ * parallel can share it. Pool usage is exposed through JMX (see
+ * HttpTransportMBean).
+ */
+public class HttpTransport implements HttpTransportMBean {
+
+	private int maxConnections = 20;
+	private int maxConnectionsPerHost = 8;
+	private int maxMusicBrainzConnections = 2;
+	private int connectTimeoutMillis = 60 * 1000;
+	private int socketTimeoutMillis = 60 * 1000;
+	private int leaseTimeoutMillis = 60 * 1000;
+	private int keepAliveSeconds = 30;
+
+	private PoolingClientConnectionManager connectionManager;
+	private HttpClient httpClient;
+
+	private final AtomicLong responses = new AtomicLong();
+	private final AtomicLong gzipResponses = new AtomicLong();
+
+	private static final String GZIP = "gzip";
+
+	private static final Logger LOG = Logger.getLogger(HttpTransport.class);
+
+	/*
+	 * Returns the shared client, created on first call.
+	 */
+	public synchronized HttpClient getHttpClient() {
+		if (httpClient == null) {
+			connectionManager = new PoolingClientConnectionManager();
+			connectionManager.setMaxTotal(maxConnections);
+			connectionManager.setDefaultMaxPerRoute(maxConnectionsPerHost);
+			connectionManager.setMaxPerRoute(new HttpRoute(new HttpHost(
+					AbstractMusicBrainzClient.HOST)), maxMusicBrainzConnections);
+
+			HttpParams params = new BasicHttpParams();
+			HttpConnectionParams.setConnectionTimeout(params, connectTimeoutMillis);
+			HttpConnectionParams.setSoTimeout(params, socketTimeoutMillis);
+			HttpConnectionParams.setStaleCheckingEnabled(params, true);
+			HttpClientParams.setConnectionManagerTimeout(params, leaseTimeoutMillis);
+
+			DefaultHttpClient pooledClient = new DefaultHttpClient(connectionManager, params);
+			pooledClient.setKeepAliveStrategy(keepAliveStrategy);
+			pooledClient.addResponseInterceptor(responseCounter);
+			httpClient = new DecompressingHttpClient(pooledClient);
+
+			LOG.debug("Created HTTP transport, " + maxConnections + " connections, "
+					+ maxConnectionsPerHost + " per host.");
+		}
+		return httpClient;
+	}
+
+	/*
+	 * Keep connections alive for as long as server says, but no longer than
+	 * keepAliveSeconds, as idle connections are dropped silently by Last.fm.
+	 */
+	ConnectionKeepAliveStrategy keepAliveStrategy = new DefaultConnectionKeepAliveStrategy() {
+		@Override
+		public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+			long duration = super.getKeepAliveDuration(response, context);
+			long maxDuration = keepAliveSeconds * 1000L;
+			return duration < 0 ? maxDuration : Math.min(duration, maxDuration);
+		}
+	};
+
+	/*
+	 * Counts responses, before they are decompressed.
+	 */
+	private HttpResponseInterceptor responseCounter = new HttpResponseInterceptor() {
+		@Override
+		public void process(HttpResponse response, HttpContext context)
+				throws HttpException, IOException {
+			responses.incrementAndGet();
+			HttpEntity entity = response.getEntity();
+			Header encoding = entity == null ? null : entity.getContentEncoding();
+			if (encoding != null && GZIP.equalsIgnoreCase(encoding.getValue())) {
+				gzipResponses.incrementAndGet();
+			}
+		}
+	};
+
+	/*
+	 * Closes connections that have been idle for longer than allowed.
+	 */
+	@Override
+	public synchronized void closeIdleConnections() {
+		if (connectionManager != null) {
+			connectionManager.closeExpiredConnections();
+			connectionManager.closeIdleConnections(keepAliveSeconds, TimeUnit.SECONDS);
+		}
+	}
+
+	public synchronized void close() {
+		if (connectionManager != null) {
+			connectionManager.shutdown();
+			connectionManager = null;
+			httpClient = null;
+		}
+	}
+
+	private synchronized PoolStats getStats() {
+		return connectionManager == null ? new PoolStats(0, 0, 0, maxConnections) :
+			connectionManager.getTotalStats();
+	}
+
+	@Override
+	public int getLeasedConnections() {
+		return getStats().getLeased();
+	}
+
+	@Override
+	public int getAvailableConnections() {
+		return getStats().getAvailable();
+	}
+
+	@Override
+	public int getPendingRequests() {
+		return getStats().getPending();
+	}
+
+	@Override
+	public int getMaxConnections() {
+		return getStats().getMax();
+	}
+
+	@Override
+	public long getResponses() {
+		return responses.get();
+	}
+
+	@Override
+	public long getGzipResponses() {
+		return gzipResponses.get();
+	}
+
+	@Override
+	public void reset() {
+		responses.set(0);
+		gzipResponses.set(0);
+	}
+
+	// Spring setters
+
+	public void setMaxConnections(int maxConnections) {
+		this.maxConnections = maxConnections;
+	}
+
+	public void setMaxConnectionsPerHost(int maxConnectionsPerHost) {
+		this.maxConnectionsPerHost = maxConnectionsPerHost;
+	}
+
+	public void setMaxMusicBrainzConnections(int maxMusicBrainzConnections) {
+		this.maxMusicBrainzConnections = maxMusicBrainzConnections;
+	}
+
+	public void setConnectTimeoutMillis(int connectTimeoutMillis) {
+		this.connectTimeoutMillis = connectTimeoutMillis;
+	}
+
+	public void setSocketTimeoutMillis(int socketTimeoutMillis) {
+		this.socketTimeoutMillis = socketTimeoutMillis;
+	}
+
+	public void setLeaseTimeoutMillis(int leaseTimeoutMillis) {
+		this.leaseTimeoutMillis = leaseTimeoutMillis;
+	}
+
+	public void setKeepAliveSeconds(int keepAliveSeconds) {
+		this.keepAliveSeconds = keepAliveSeconds;
+	}
+
+}
@@ -0,0 +1,18 @@
+package com.github.hakko.musiccabinet.ws;
+
+/*
+ * Management interface of HttpTransport, as seen through JMX.
+ */
+public interface HttpTransportMBean {
+
+	int getLeasedConnections();
+	int getAvailableConnections();
+	int getPendingRequests();
+	int getMaxConnections();
+	long getResponses();
+	long getGzipResponses();
+
+	void closeIdleConnections();
+	void reset();
+
+}
@@ -29,6 +29,9 @@ public abstract class AbstractWSClient {
 	/*
 	 * Http client used for actual communication with Last.fm. 
 	 * Placed as class variable to allow for unit testing.
+	 * 
+	 * In the application context, the pooled client of HttpTransport is
+	 * injected, and shared by all clients.
 	 */
 	protected HttpClient httpClient;
 	
@@ -105,6 +108,10 @@ public abstract class AbstractWSClient {
 		}
 	};
 	
+	/*
+	 * Closes connections of a client created by constructor. Not to be called
+	 * when the shared client of HttpTransport is used.
+	 */
 	public void close() {
 		httpClient.getConnectionManager().shutdown();
 	}
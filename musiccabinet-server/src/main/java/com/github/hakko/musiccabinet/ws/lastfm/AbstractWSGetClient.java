@@ -10,13 +10,12 @@ import java.util.List;
 import org.apache.http.NameValuePair;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.HttpResponseException;
-import org.apache.http.client.ResponseHandler;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.utils.URIBuilder;
-import org.apache.http.impl.client.BasicResponseHandler;
 
 import com.github.hakko.musiccabinet.domain.model.library.WebserviceInvocation;
 import com.github.hakko.musiccabinet.exception.ApplicationException;
+import com.github.hakko.musiccabinet.io.ResponseArchive;
 import com.github.hakko.musiccabinet.service.lastfm.ThrottleService;
 import com.github.hakko.musiccabinet.service.lastfm.WebserviceHistoryService;
 
@@ -50,8 +49,16 @@ public abstract class AbstractWSGetClient extends AbstractWSClient {
 	 */
 	private ThrottleService throttleService;
 
+	/*
+	 * Archive of successful responses, that can be replayed instead of
+	 * calling Last.fm. Optional.
+	 */
+	private ResponseArchive responseArchive;
+
 	protected final WSConfiguration wsConfiguration;
 
+	private static final WSResponseHandler RESPONSE_HANDLER = new WSResponseHandler();
+
 	public AbstractWSGetClient() {
 		super();
 		this.wsConfiguration = WSConfiguration.UNAUTHENTICATED_LOGGED;
@@ -88,11 +95,17 @@ public abstract class AbstractWSGetClient extends AbstractWSClient {
 	}
 	
 	private WSResponse invokeLoggedCall(WebserviceInvocation wi, List<NameValuePair> params) throws ApplicationException {
+		if (responseArchive != null && responseArchive.isReplay()) {
+			return invokeArchivedCall(wi, params);
+		}
 		WSResponse wsResponse;
 		if (getHistoryService().isWebserviceInvocationAllowed(wi)) {
 			wsResponse = invokeCall(params);
 			if (wsResponse.wasCallSuccessful()) {
 				getHistoryService().logWebserviceInvocation(wi);
+				if (responseArchive != null) {
+					responseArchive.put(wi, params, wsResponse.getResponseBody());
+				}
 			} else if (!wsResponse.isErrorRecoverable()) {
 				getHistoryService().quarantineWebserviceInvocation(wi);
 			} else {
@@ -104,6 +117,23 @@ public abstract class AbstractWSGetClient extends AbstractWSClient {
 		return wsResponse;
 	}
 
+	/*
+	 * Returns archived response, as if Last.fm was called. History isn't
+	 * checked, as replay is meant to re-create data already fetched.
+	 */
+	private WSResponse invokeArchivedCall(WebserviceInvocation wi,
+			List<NameValuePair> params) throws ApplicationException {
+		String responseBody = responseArchive.get(wi, params);
+		if (responseBody == null) {
+			return new WSResponse();
+		}
+		WSResponse wsResponse = new WSResponse(responseBody);
+		if (wsResponse.wasCallSuccessful()) {
+			getHistoryService().logWebserviceInvocation(wi);
+		}
+		return wsResponse;
+	}
+
 	/*
 	 * Try calling the web service. If invocation fails but it is marked as
 	 * recoverable, sleep for five minutes and try again until fifteen
@@ -140,8 +170,7 @@ public abstract class AbstractWSGetClient extends AbstractWSClient {
 		HttpClient httpClient = getHttpClient();
 		try {
 			HttpGet httpGet = new HttpGet(getURI(params));
-            ResponseHandler<String> responseHandler = new BasicResponseHandler();
-            String responseBody = httpClient.execute(httpGet, responseHandler);
+            String responseBody = httpClient.execute(httpGet, RESPONSE_HANDLER);
             wsResponse = new WSResponse(responseBody);
 		} catch (HttpResponseException e) {
 			wsResponse = new WSResponse(isHttpRecoverable(e.getStatusCode()), 
@@ -186,5 +215,9 @@ public abstract class AbstractWSGetClient extends AbstractWSClient {
 	public void setThrottleService(ThrottleService throttleService) {
 		this.throttleService = throttleService;
 	}
+
+	public void setResponseArchive(ResponseArchive responseArchive) {
+		this.responseArchive = responseArchive;
+	}
 	
 }
\ No newline at end of file
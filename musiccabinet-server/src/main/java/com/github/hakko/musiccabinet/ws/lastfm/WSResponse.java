@@ -113,21 +113,21 @@ public class WSResponse {
 	 * 
 	 */
 	private void parseErrorCodeAndMessage() throws ApplicationException {
-		char[] chars = responseBody.toCharArray();
 		int quoteCount = 0, openTagCount = 0, closeTagCount = 0;
 		int errorCodeStart = 0, errorCodeEnd = 0, errorMsgStart = 0, errorMsgEnd = 0;
 
-		for (int i = 0; i < chars.length; i++) {
-			if (chars[i] == '"') {
+		for (int i = 0; i < responseBody.length(); i++) {
+			char c = responseBody.charAt(i);
+			if (c == '"') {
 				++quoteCount;
 				if (quoteCount == 7) {
 					errorCodeStart = i + 1;
 				} else if (quoteCount == 8) {
 					errorCodeEnd = i;
 				}
-			} else if (chars[i] == '>' && ++closeTagCount == 3) {
+			} else if (c == '>' && ++closeTagCount == 3) {
 				errorMsgStart = i + 1;
-			} else if (chars[i] == '<' && ++openTagCount == 4) {
+			} else if (c == '<' && ++openTagCount == 4) {
 				errorMsgEnd = i;
 			}
 		}
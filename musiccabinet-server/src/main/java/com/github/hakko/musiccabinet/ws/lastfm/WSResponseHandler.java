@@ -0,0 +1,75 @@
+package com.github.hakko.musiccabinet.ws.lastfm;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+
+import org.apache.http.Header;
+import org.apache.http.HeaderElement;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.NameValuePair;
+import org.apache.http.StatusLine;
+import org.apache.http.client.HttpResponseException;
+import org.apache.http.client.ResponseHandler;
+import org.apache.http.util.EntityUtils;
+
+import com.github.hakko.musiccabinet.configuration.CharSet;
+import com.github.hakko.musiccabinet.util.ControlCharFilterReader;
+
+/*
+ * Reads a Last.fm response body, like BasicResponseHandler, but decodes it and
+ * removes control characters in one pass over the entity stream. That leaves
+ * WSResponse with nothing to copy, as body is already clean.
+ *
+ * The body is read to a String rather than parsed while streamed, as it is
+ * also archived (see ResponseArchive), and parsed after the connection has
+ * been released (see SearchIndexUpdatePipeline).
+ */
+public class WSResponseHandler implements ResponseHandler<String> {
+
+	private static final int BUFFER_SIZE = 8192;
+
+	@Override
+	public String handleResponse(HttpResponse response) throws HttpResponseException, IOException {
+		StatusLine statusLine = response.getStatusLine();
+		HttpEntity entity = response.getEntity();
+		if (statusLine.getStatusCode() >= 300) {
+			EntityUtils.consume(entity);
+			throw new HttpResponseException(statusLine.getStatusCode(),
+					statusLine.getReasonPhrase());
+		}
+		if (entity == null) {
+			return null;
+		}
+		long length = entity.getContentLength();
+		StringBuilder sb = new StringBuilder(length > 0 && length < Integer.MAX_VALUE ?
+				(int) length : BUFFER_SIZE);
+		try (Reader reader = new ControlCharFilterReader(new InputStreamReader(
+				entity.getContent(), getCharset(entity)))) {
+			char[] buffer = new char[BUFFER_SIZE];
+			for (int read; (read = reader.read(buffer)) != -1; ) {
+				sb.append(buffer, 0, read);
+			}
+		}
+		return sb.toString();
+	}
+
+	/*
+	 * Returns charset given in Content-Type header, or UTF-8.
+	 */
+	protected Charset getCharset(HttpEntity entity) {
+		Header contentType = entity.getContentType();
+		if (contentType != null) {
+			for (HeaderElement element : contentType.getElements()) {
+				NameValuePair charset = element.getParameterByName("charset");
+				if (charset != null && Charset.isSupported(charset.getValue())) {
+					return Charset.forName(charset.getValue());
+				}
+			}
+		}
+		return Charset.forName(CharSet.UTF8);
+	}
+
+}
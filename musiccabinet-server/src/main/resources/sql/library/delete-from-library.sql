@@ -1,17 +1,31 @@
 create function library.delete_from_library() returns int as $$
 begin
 
-	with recursive deleted_directories (id) as (
-		select id from library.directory
-		where path in (select path from library.directory_delete)
-			union all
-		select d.id from
-		deleted_directories dd, library.directory d
-		where d.parent_id = dd.id
-	)
-	update library.directory set deleted = true where id in (
-		select id from deleted_directories
-	);
+	-- files found moved to another directory keep their id (and thereby
+	-- their tracks, play counts and stars). their new directories are added
+	-- here, and get parent ids set when directory import is staged.
+	insert into library.directory (path)
+	select distinct to_path from library.file_move fm
+		where not exists
+		(select 1 from library.directory d where d.path = fm.to_path);
+
+	update library.file f set directory_id = dto.id
+	from library.file_move fm
+	inner join library.directory dfrom on dfrom.path = fm.from_path
+	inner join library.directory dto on dto.path = fm.to_path
+	where f.directory_id = dfrom.id and f.filename = fm.filename;
+
+	truncate library.file_move;
+
+	-- deleted directories, and all directories below them. paths below a
+	-- directory fall within [from_path, to_path), in byte order, which lets
+	-- a whole sub-tree be found by a single index range scan.
+	update library.directory d set deleted = true
+	from library.directory_delete dd where d.path = dd.path;
+
+	update library.directory d set deleted = true
+	from library.directory_delete dd 
+	where d.path ~>=~ dd.from_path and d.path ~<~ dd.to_path;
 
 	update library.file set deleted = true where directory_id in (
 		select id from library.directory where deleted
@@ -75,13 +89,6 @@ begin
 		where ma.artist_id = art.artist_id
 	);
 
-	delete from library.artistindex ai where not exists (
-		select 1 from music.artist ma 
-		inner join library.artist la on la.artist_id = ma.id
-		where ascii(ma.artist_name) = ai.ascii_code or
-			(ascii(ma.artist_name) > 90 and ai.ascii_code = ascii('#'))
-	);
-	
 	delete from library.file where deleted;
 	
 	delete from library.directory where deleted;
@@ -90,8 +97,6 @@ begin
 	
 	truncate library.directory_delete;
 	
-	perform library.update_statistics();
-	
 	return 0;
 
 end;
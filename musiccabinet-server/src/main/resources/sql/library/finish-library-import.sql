@@ -0,0 +1,43 @@
+create function library.finish_library_import() returns int as $$
+begin
+
+	-- all pending files are added by now, drop any stray tags
+	truncate library.file_headertag_import_pending;
+
+	-- give new albums ids in order of latest file modification, which
+	-- recently added albums are listed by
+	if exists (select 1 from library.album_import_pending) then
+		update library.album la set id = aip.id
+		from (select album_id, (select max(id) from library.album)
+			+ row_number() over (order by max(modified), album_id) as id
+			from library.album_import_pending group by album_id) aip
+		where la.album_id = aip.album_id;
+
+		perform setval('library.album_id_seq', (select max(id) from library.album));
+
+		truncate library.album_import_pending;
+	end if;
+
+	-- set album cover art from found image files. we need to:
+	-- * find most prioritized image per folder (in case of multiple cover images
+	-- * create a mapping from directory to album (done via filetag)
+	-- in case an album exists in multiple directories with different artwork,
+	-- no guarantees are given on which one is chosen
+	update library.album a
+		set coverartfile_id = f.id
+	from library.file f 
+	inner join (
+		select directory_id, min(priority) as priority from library.file f 
+		inner join library.coverartfilename c on upper(f.filename) = upper(c.filename) group by directory_id
+	) mp on f.directory_id = mp.directory_id
+	inner join library.coverartfilename c on upper(f.filename) = upper(c.filename) and mp.priority = c.priority
+	inner join (
+		select distinct f.directory_id, ft.album_id from library.filetag ft
+		inner join library.file f on ft.file_id = f.id
+	) da on f.directory_id = da.directory_id
+	where da.album_id = a.album_id and a.coverartfile_id is null;
+
+	return 0;
+
+end;
+$$ language plpgsql;
\ No newline at end of file
@@ -0,0 +1,49 @@
+create function library.stage_library_import() returns int as $$
+begin
+
+	-- add missing parent directories
+	insert into library.directory (path)
+	select distinct parent_path from library.directory_import di
+		where parent_path is not null and not exists
+		(select 1 from library.directory d where d.path = di.parent_path);
+
+	-- add missing directories
+	insert into library.directory (path)
+	select distinct path from library.directory_import di
+		where not exists
+		(select 1 from library.directory d where d.path = di.path);
+
+	-- set correct parent directory ids
+	update library.directory_import di
+		set parent_id = d.id
+	from library.directory d where d.path = di.parent_path;
+
+	-- set correct directory ids
+	update library.directory d
+		set parent_id = di.parent_id
+	from library.directory_import di where di.path = d.path;
+	
+	truncate library.directory_import;
+
+	-- remember modification time of scanned directories
+	update library.directory d
+		set modified = dmi.modified
+	from library.directory_modified_import dmi where dmi.path = d.path;
+
+	truncate library.directory_modified_import;
+
+	-- move file import to pending tables, to be added in chunks
+	insert into library.file_import_pending select * from library.file_import;
+	insert into library.file_headertag_import_pending select * from library.file_headertag_import;
+
+	truncate library.file_import;
+	truncate library.file_headertag_import;
+
+	-- scan is imported, nothing to resume
+	truncate library.scan_checkpoint;
+	truncate library.scan_root;
+
+	return (select count(*) from library.file_import_pending);
+
+end;
+$$ language plpgsql;
\ No newline at end of file
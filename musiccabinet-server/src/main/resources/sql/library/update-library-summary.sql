@@ -0,0 +1,34 @@
+create function library.update_library_summary() returns int as $$
+begin
+
+	-- whatever is derived from library as a whole. directory-scoped updates
+	-- leave this out, and have it done once a batch of them is finished.
+
+	-- update local artist genres, based on file tags
+	truncate library.artisttoptag;
+	insert into library.artisttoptag (artist_id, tag_id, tag_count)
+	select ac.artist_id, tag_id, 100 * tag_count / artist_count from
+	(select artist_id, count(artist_id) as artist_count from library.filetag group by artist_id order by artist_id) ac
+	inner join
+	(select artist_id, tag_id, count(tag_id) as tag_count from library.filetag where tag_id is not null group by artist_id, tag_id) tc
+	on ac.artist_id = tc.artist_id;
+	
+	-- create set of unique first letters from artist names
+	truncate library.artistindex;
+
+	insert into library.artistindex (ascii_code)
+	select distinct ascii(artist_name) from music.artist ma 
+	inner join library.artist la on la.artist_id = ma.id
+	where ascii(artist_name) <= 90;
+	
+	insert into library.artistindex (ascii_code)
+	select ascii('#') from music.artist ma 
+	inner join library.artist la on la.artist_id = ma.id
+	where ascii(artist_name) > 90 limit 1;
+	
+	perform library.update_statistics();
+	
+	return 0;
+
+end;
+$$ language plpgsql;
\ No newline at end of file
@@ -1,12 +1,8 @@
 create function music.update_artisttoptag() returns int as $$
-declare
-	artistid int;
 begin
 
 	update music.artisttoptag_import set tag_name = lower(tag_name);
 
-	select artist_id into artistid from music.artisttoptag_import limit 1;
-
 	-- create missing tag(s)
 	insert into music.tag (tag_name)
 	select distinct tag_name from music.artisttoptag_import imp
@@ -17,8 +13,9 @@ begin
 	update music.artisttoptag_import imp set tag_id = t.id
 	from music.tag t where imp.tag_name = t.tag_name;
 
-	-- clear previous tags for artist
-	delete from music.artisttoptag where artist_id = artistid;
+	-- clear previous tags for imported artist(s)
+	delete from music.artisttoptag where artist_id in
+		(select distinct artist_id from music.artisttoptag_import);
 
 	-- add new top tags (import file have shown to contain duplicates).
 	insert into music.artisttoptag (artist_id, tag_id, tag_count)
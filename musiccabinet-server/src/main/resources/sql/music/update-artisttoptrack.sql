@@ -1,10 +1,6 @@
 create function music.update_artisttoptrack() returns int as $$
-declare
-	artistid int;
 begin
 
-	select artist_id into artistid from music.artisttoptrack_import limit 1;
-
 	-- create missing tracks(s)
 	insert into music.track (artist_id, track_name, track_name_capitalization)
 	select distinct on (artist_id, upper(track_name)) artist_id, upper(track_name), track_name from music.artisttoptrack_import
@@ -18,8 +14,9 @@ begin
 		where upper(music.artisttoptrack_import.track_name) = music.track.track_name
 		  and music.artisttoptrack_import.artist_id = music.track.artist_id;
 
-	-- clear previous tracks for artist
-	delete from music.artisttoptrack where artist_id = artistid;
+	-- clear previous tracks for imported artist(s)
+	delete from music.artisttoptrack where artist_id in
+		(select distinct artist_id from music.artisttoptrack_import);
 
 	-- add new top tracks.
 	insert into music.artisttoptrack (artist_id, track_id, rank)
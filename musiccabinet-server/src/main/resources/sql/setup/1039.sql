@@ -0,0 +1,3 @@
+alter table library.directory add column modified timestamp;
+
+create table library.directory_modified_import (path text not null, modified timestamp not null);
\ No newline at end of file
@@ -0,0 +1,5 @@
+create table library.file_import_pending (like library.file_import);
+create index file_import_pending_path on library.file_import_pending (path);
+
+create table library.file_headertag_import_pending (like library.file_headertag_import);
+create index file_headertag_import_pending_path on library.file_headertag_import_pending (path);
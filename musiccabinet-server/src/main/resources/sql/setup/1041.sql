@@ -0,0 +1,3 @@
+create table library.scan_checkpoint (path text not null);
+
+create table library.scan_root (path text not null);
@@ -0,0 +1,4 @@
+alter table library.directory_delete add column from_path text;
+alter table library.directory_delete add column to_path text;
+
+create index directory_path_pattern on library.directory (path text_pattern_ops);
@@ -0,0 +1 @@
+create table library.file_move (from_path text not null, filename varchar(256) not null, to_path text not null);
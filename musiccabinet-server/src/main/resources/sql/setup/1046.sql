@@ -0,0 +1 @@
+create table library.album_import_pending (album_id integer not null, modified timestamp not null);
\ No newline at end of file
@@ -8,7 +8,9 @@ import static junit.framework.Assert.assertTrue;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -116,6 +118,23 @@ public class JdbcArtistTopTagsDaoTest {
 		}
 	}
 	
+	@Test
+	public void storesTopTagsOfSeveralArtistsAtOnce() {
+		deleteArtistTopTags();
+
+		Map<Artist, List<Tag>> topTags = new LinkedHashMap<>();
+		topTags.put(cherArtist, cherTopTags);
+		topTags.put(rihannaArtist, rihannaTopTags);
+		dao.createTopTags(topTags);
+
+		topTags.put(rihannaArtist, asList(new Tag("dance", (short) 22)));
+		topTags.remove(cherArtist);
+		dao.createTopTags(topTags);
+
+		assertEquals(100, dao.getTopTags(cherArtist.getId()).size());
+		assertEquals(asList(new Tag("dance", (short) 22)), dao.getTopTags(rihannaArtist.getId()));
+	}
+
 	@Test
 	public void returnsMostPopularCloudTagsForArtist() throws ApplicationException {
 		deleteArtistTopTags();
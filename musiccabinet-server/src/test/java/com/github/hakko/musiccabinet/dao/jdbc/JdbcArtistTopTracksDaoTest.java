@@ -6,7 +6,9 @@ import static junit.framework.Assert.assertNotNull;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import junit.framework.Assert;
 
@@ -120,6 +122,27 @@ public class JdbcArtistTopTracksDaoTest {
 		}
 	}
 	
+	@Test
+	public void storesTopTracksOfSeveralArtistsAtOnce() {
+		deleteArtistTopTracks();
+
+		Map<Artist, List<Track>> topTracks = new LinkedHashMap<>();
+		topTracks.put(cherArtist, cherTopTracks);
+		topTracks.put(rihannaArtist, rihannaTopTracks);
+		dao.createTopTracks(topTracks);
+
+		assertEquals(cherTopTracks, dao.getTopTracks(cherArtist));
+		assertEquals(rihannaTopTracks, dao.getTopTracks(rihannaArtist));
+
+		rihannaTopTracks = Arrays.asList(new Track("Rihanna", "Umbrella"));
+		topTracks.put(rihannaArtist, rihannaTopTracks);
+		topTracks.put(cherArtist, new ArrayList<Track>());
+		dao.createTopTracks(topTracks);
+
+		assertEquals(cherTopTracks, dao.getTopTracks(cherArtist));
+		assertEquals(rihannaTopTracks, dao.getTopTracks(rihannaArtist));
+	}
+
 	@Test
 	public void returnsTopTracksWithLocalTrackId() {
 		deleteArtistTopTracks();
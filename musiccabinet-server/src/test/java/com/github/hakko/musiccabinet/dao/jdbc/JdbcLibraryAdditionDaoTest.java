@@ -7,6 +7,7 @@ import static org.joda.time.DateTime.parse;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import junit.framework.Assert;
 
@@ -17,7 +18,9 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 
+import com.github.hakko.musiccabinet.dao.util.PostgreSQLFunction;
 import com.github.hakko.musiccabinet.dao.util.PostgreSQLUtil;
+import com.github.hakko.musiccabinet.domain.model.aggr.DirectoryContent;
 import com.github.hakko.musiccabinet.domain.model.library.File;
 import com.github.hakko.musiccabinet.domain.model.library.MetaData;
 import com.github.hakko.musiccabinet.domain.model.library.MetaData.Mediatype;
@@ -71,5 +74,124 @@ public class JdbcLibraryAdditionDaoTest {
 		Assert.assertEquals(2001, albums.get(3).getYear());
 		Assert.assertEquals(2000, albums.get(4).getYear());
 	}
+
+	@Test
+	public void addsFilesInChunks() throws ApplicationException {
+		PostgreSQLUtil.truncateTables(libraryAdditionDao);
+		addAlbumDirectories();
+
+		libraryAdditionDao.setChunkSize(2);
+		try {
+			libraryAdditionDao.updateLibrary();
+		} finally {
+			libraryAdditionDao.setChunkSize(10000);
+		}
+
+		Assert.assertEquals(3, libraryBrowserDao.getRecentlyAddedAlbums(0, 10, null).size());
+		Assert.assertEquals(3, libraryAdditionDao.getUpdateProgress().getTotalOperations());
+		Assert.assertEquals(3, libraryAdditionDao.getUpdateProgress().getFinishedOperations());
+	}
+
+	@Test
+	public void addsAlbumsOrderedByFileModificationDateAcrossChunks() throws ApplicationException {
+		PostgreSQLUtil.loadFunction(libraryAdditionDao, PostgreSQLFunction.ADD_FILES_TO_LIBRARY);
+		PostgreSQLUtil.loadFunction(libraryAdditionDao, PostgreSQLFunction.FINISH_LIBRARY_IMPORT);
+		PostgreSQLUtil.truncateTables(libraryAdditionDao);
+		// added in path order, a before b, but b has the older files
+		addAlbumDirectory("a", "2012-01-01");
+		addAlbumDirectory("b", "2010-01-01");
+
+		libraryAdditionDao.setChunkSize(2);
+		try {
+			libraryAdditionDao.updateLibrary();
+		} finally {
+			libraryAdditionDao.setChunkSize(10000);
+		}
+
+		List<Album> albums = libraryBrowserDao.getRecentlyAddedAlbums(0, 10, null);
+		Assert.assertEquals(2, albums.size());
+		Assert.assertEquals("album a", albums.get(0).getName());
+		Assert.assertEquals("album b", albums.get(1).getName());
+	}
+
+	@Test
+	public void resumesInterruptedUpdate() throws ApplicationException {
+		PostgreSQLUtil.truncateTables(libraryAdditionDao);
+		libraryAdditionDao.setFlushSize(1);
+		try {
+			addAlbumDirectories();
+		} finally {
+			libraryAdditionDao.setFlushSize(5000);
+		}
+
+		// directories added and files staged, but no chunk of files added
+		libraryAdditionDao.getJdbcTemplate().queryForInt("select library.stage_library_import()");
+		Assert.assertEquals(0, libraryBrowserDao.getRecentlyAddedAlbums(0, 10, null).size());
+
+		libraryAdditionDao.clearImport();
+
+		Assert.assertEquals(3, libraryBrowserDao.getRecentlyAddedAlbums(0, 10, null).size());
+	}
+
+	@Test
+	public void checkpointIsWrittenWithLastRowsOfDirectory() throws ApplicationException {
+		PostgreSQLUtil.truncateTables(libraryAdditionDao);
+		String dir = "/checkpoint";
+		Set<File> files = new HashSet<>();
+		for (int i = 1; i <= 3; i++) {
+			files.add(new File(dir, "file" + i, parse("2012-01-01"), 0));
+		}
+
+		libraryAdditionDao.setFlushSize(2);
+		try {
+			libraryAdditionDao.addDirectoryContent(
+					new DirectoryContent(dir, new HashSet<String>(), files));
+		} finally {
+			libraryAdditionDao.setFlushSize(5000);
+		}
+
+		libraryAdditionDao.clearUncheckpointedImport();
+		Assert.assertEquals(set(dir), libraryAdditionDao.getCheckpoint());
+		Assert.assertEquals(3, libraryAdditionDao.getJdbcTemplate().queryForInt(
+				"select count(*) from library.file_import"));
+	}
+
+	@Test
+	public void updatesLibrarySummaryApartFromContent() throws ApplicationException {
+		PostgreSQLUtil.loadFunction(libraryAdditionDao, PostgreSQLFunction.UPDATE_LIBRARY_SUMMARY);
+		PostgreSQLUtil.truncateTables(libraryAdditionDao);
+		libraryAdditionDao.updateLibrarySummary();
+		addAlbumDirectories();
+
+		libraryAdditionDao.updateLibraryContent();
+		Assert.assertEquals(3, libraryBrowserDao.getRecentlyAddedAlbums(0, 10, null).size());
+		Assert.assertEquals(0, libraryBrowserDao.getArtistIndexes().size());
+
+		libraryAdditionDao.updateLibrarySummary();
+		Assert.assertEquals(1, libraryBrowserDao.getArtistIndexes().size());
+	}
+
+	private void addAlbumDirectories() {
+		for (String album : new String[]{"a", "b", "c"}) {
+			addAlbumDirectory(album, "2012-01-01");
+		}
+	}
+
+	private void addAlbumDirectory(String album, String modified) {
+		String dir = "/chunk/" + album;
+		Set<File> files = new HashSet<>();
+		for (int i = 1; i <= 2; i++) {
+			File file = new File(dir, "file" + i, parse(modified), 0);
+			MetaData md = new MetaData();
+			md.setArtist("artist");
+			md.setTitle("title " + album + i);
+			md.setAlbum("album " + album);
+			md.setMediaType(Mediatype.OGG);
+			file.setMetaData(md);
+			files.add(file);
+		}
+		libraryAdditionDao.addSubdirectories("/chunk", set(dir));
+		libraryAdditionDao.addFiles(dir, files);
+	}
 		
 }
\ No newline at end of file
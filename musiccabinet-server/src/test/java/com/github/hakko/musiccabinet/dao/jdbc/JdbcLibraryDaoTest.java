@@ -35,6 +35,7 @@ public class JdbcLibraryDaoTest {
 	public void clearLibrary() throws ApplicationException {
 		PostgreSQLUtil.loadFunction(additionDao, PostgreSQLFunction.ADD_TO_LIBRARY);
 		PostgreSQLUtil.loadFunction(additionDao, PostgreSQLFunction.DELETE_FROM_LIBRARY);
+		PostgreSQLUtil.loadFunction(additionDao, PostgreSQLFunction.UPDATE_LIBRARY_SUMMARY);
 		
 		additionDao.getJdbcTemplate().execute("truncate library.directory cascade");
 	}
@@ -7,6 +7,7 @@ import static com.github.hakko.musiccabinet.dao.util.PostgreSQLFunction.GET_LAST
 import static com.github.hakko.musiccabinet.dao.util.PostgreSQLFunction.GET_LASTFMGROUP_ID;
 import static com.github.hakko.musiccabinet.domain.model.library.Period.OVERALL;
 import static com.github.hakko.musiccabinet.domain.model.library.Period.SIX_MONTHS;
+import static com.github.hakko.musiccabinet.domain.model.library.WebserviceInvocation.Calltype.ALBUM_GET_INFO;
 import static com.github.hakko.musiccabinet.domain.model.library.WebserviceInvocation.Calltype.ARTIST_GET_INFO;
 import static com.github.hakko.musiccabinet.domain.model.library.WebserviceInvocation.Calltype.ARTIST_GET_SIMILAR;
 import static com.github.hakko.musiccabinet.domain.model.library.WebserviceInvocation.Calltype.ARTIST_GET_TOP_TRACKS;
@@ -34,6 +35,7 @@ import com.github.hakko.musiccabinet.domain.model.library.LastFmGroup;
 import com.github.hakko.musiccabinet.domain.model.library.LastFmUser;
 import com.github.hakko.musiccabinet.domain.model.library.WebserviceInvocation;
 import com.github.hakko.musiccabinet.domain.model.library.WebserviceInvocation.Calltype;
+import com.github.hakko.musiccabinet.domain.model.music.Album;
 import com.github.hakko.musiccabinet.domain.model.music.Artist;
 import com.github.hakko.musiccabinet.domain.model.music.Tag;
 import com.github.hakko.musiccabinet.domain.model.music.Track;
@@ -398,6 +400,110 @@ public class JdbcWebserviceHistoryDaoTest {
 		Assert.assertFalse(artistTopTracks.contains(MADONNA));
 	}
 
+	@Test
+	public void logsArtistInvocationsInBatch() {
+		Calltype TOP = Calltype.ARTIST_GET_TOP_TRACKS;
+		WebserviceInvocation topArtist1 = new WebserviceInvocation(TOP, new Artist("Arcade Fire"));
+		WebserviceInvocation topArtist2 = new WebserviceInvocation(TOP, new Artist("Arab Strap"));
+		WebserviceInvocation similarTrack = new WebserviceInvocation(Calltype.TRACK_GET_SIMILAR,
+				new Track("Arab Strap", "The First Big Weekend"));
+
+		deleteWebserviceInvocations();
+
+		dao.logWebserviceInvocations(Arrays.asList(topArtist1, topArtist2, similarTrack));
+		assertFalse(dao.isWebserviceInvocationAllowed(topArtist1));
+		assertFalse(dao.isWebserviceInvocationAllowed(topArtist2));
+		assertFalse(dao.isWebserviceInvocationAllowed(similarTrack));
+
+		// logging again replaces earlier invocation
+		dao.logWebserviceInvocations(Arrays.asList(topArtist1));
+		Assert.assertEquals(1, dao.getJdbcTemplate().queryForInt(
+				"select count(*) from library.webservice_history hist"
+				+ " inner join music.artist a on hist.artist_id = a.id"
+				+ " where a.artist_name = upper(?)", "Arcade Fire"));
+	}
+
+	@Test
+	public void logsAlbumInvocationsInBatch() {
+		WebserviceInvocation albumInfo1 = new WebserviceInvocation(ALBUM_GET_INFO,
+				new Album("Arab Strap", "Philophobia"));
+		WebserviceInvocation albumInfo2 = new WebserviceInvocation(ALBUM_GET_INFO,
+				new Album("Arab Strap", "Elephant Shoe"));
+		WebserviceInvocation topArtist = new WebserviceInvocation(ARTIST_GET_TOP_TRACKS,
+				new Artist("Arab Strap"));
+
+		deleteWebserviceInvocations();
+
+		dao.logWebserviceInvocations(Arrays.asList(albumInfo1, topArtist, albumInfo2));
+		assertFalse(dao.isWebserviceInvocationAllowed(albumInfo1));
+		assertFalse(dao.isWebserviceInvocationAllowed(albumInfo2));
+		assertFalse(dao.isWebserviceInvocationAllowed(topArtist));
+
+		// logging again replaces earlier invocation
+		dao.logWebserviceInvocations(Arrays.asList(albumInfo1));
+		Assert.assertEquals(1, dao.getJdbcTemplate().queryForInt(
+				"select count(*) from library.webservice_history hist"
+				+ " inner join music.album alb on hist.album_id = alb.id"
+				+ " where alb.album_name = upper(?)", "Philophobia"));
+	}
+
+	@Test
+	public void identifiesAlbumsWithRecentInvocations() {
+		deleteLibraryTracks();
+		deleteWebserviceInvocations();
+
+		File file = UnittestLibraryUtil.getFile("Madonna", "Like A Prayer", "Express Yourself");
+		UnittestLibraryUtil.submitFile(additionDao, file);
+
+		Album album = new Album(file.getMetadata().getArtist(), file.getMetadata().getAlbum());
+		WebserviceInvocation wi = new WebserviceInvocation(ALBUM_GET_INFO, album);
+		Assert.assertTrue(dao.getAlbumsWithRecentInvocations(ALBUM_GET_INFO).isEmpty());
+
+		dao.logWebserviceInvocations(Arrays.asList(wi));
+		List<Album> albums = dao.getAlbumsWithRecentInvocations(ALBUM_GET_INFO);
+		Assert.assertEquals(1, albums.size());
+		Assert.assertEquals(album.getName(), albums.get(0).getName());
+		Assert.assertEquals(album.getArtist().getName(), albums.get(0).getArtist().getName());
+
+		// make the invocation age in database, and compare to single album check.
+		DateTime dateTime = new DateTime();
+		for (int days = 1; days <= 20; days++) {
+			dao.getJdbcTemplate().update("update library.webservice_history set invocation_time = ?",
+					new Object[]{dateTime.minusDays(days).toDate()});
+			boolean isRecent = !dao.getAlbumsWithRecentInvocations(ALBUM_GET_INFO).isEmpty();
+			Assert.assertEquals(!dao.isWebserviceInvocationAllowed(wi), isRecent);
+		}
+	}
+
+	@Test
+	public void identifiesArtistsWithRecentInvocations() {
+		deleteLibraryTracks();
+		deleteWebserviceInvocations();
+
+		File file = UnittestLibraryUtil.getFile("Madonna", null, "Jump");
+		UnittestLibraryUtil.submitFile(additionDao, file);
+
+		final Calltype TOP_TRACKS = ARTIST_GET_TOP_TRACKS;
+		final String MADONNA = file.getMetadata().getArtist();
+		WebserviceInvocation wi = new WebserviceInvocation(TOP_TRACKS, new Artist(MADONNA));
+		Assert.assertFalse(dao.getArtistNamesWithRecentInvocations(TOP_TRACKS).contains(MADONNA));
+
+		dao.logWebserviceInvocation(wi);
+		Assert.assertTrue(dao.getArtistNamesWithRecentInvocations(TOP_TRACKS).contains(MADONNA));
+
+		// make the invocation age in database, and compare to single artist check.
+		DateTime dateTime = new DateTime();
+		for (int days = 1; days <= 14; days++) {
+			dao.getJdbcTemplate().update("update library.webservice_history set invocation_time = ?",
+					new Object[]{dateTime.minusDays(days).toDate()});
+			boolean isRecent = dao.getArtistNamesWithRecentInvocations(TOP_TRACKS).contains(MADONNA);
+			Assert.assertEquals(!dao.isWebserviceInvocationAllowed(wi), isRecent);
+		}
+
+		dao.quarantineWebserviceInvocation(wi);
+		Assert.assertTrue(dao.getArtistNamesWithRecentInvocations(TOP_TRACKS).contains(MADONNA));
+	}
+
 	@Test
 	public void quarantineLogsInvocationTimeInTheFuture() {
 		Calltype TOP = Calltype.ARTIST_GET_TOP_TRACKS;
@@ -0,0 +1,55 @@
+package com.github.hakko.musiccabinet.dao.util;
+
+import static java.sql.Types.BOOLEAN;
+import static java.sql.Types.INTEGER;
+import static java.sql.Types.TIMESTAMP;
+import static java.sql.Types.VARCHAR;
+
+import java.sql.Timestamp;
+import java.util.Date;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+public class BulkInsertBufferTest {
+
+	private BulkInsertBuffer buffer = new BulkInsertBuffer("library.test_import",
+			new String[]{"name", "size", "flag", "modified"},
+			new int[]{VARCHAR, INTEGER, BOOLEAN, TIMESTAMP});
+
+	@Test
+	public void formatsRowsAsCopyText() {
+		Date date = new Date(1330000000000L);
+		buffer.add("plain", 1, true, date);
+		buffer.add(null, null, false, null);
+
+		String expected = "plain\t1\tt\t" + new Timestamp(date.getTime()) + "\n"
+				+ "\\N\t\\N\tf\t\\N\n";
+		Assert.assertEquals(expected, buffer.toCopyText());
+	}
+
+	@Test
+	public void escapesSpecialCharacters() {
+		buffer.add("a\tb\\c\nd\re", 0, false, null);
+
+		Assert.assertEquals("a\\tb\\\\c\\nd\\re\t0\tf\t\\N\n", buffer.toCopyText());
+	}
+
+	@Test
+	public void clearsBufferedRows() {
+		buffer.add("a", 0, false, null);
+		buffer.add("b", 0, false, null);
+		Assert.assertEquals(2, buffer.size());
+
+		buffer.clear();
+		Assert.assertEquals(0, buffer.size());
+		Assert.assertEquals("", buffer.toCopyText());
+	}
+
+	@Test (expected = IllegalArgumentException.class)
+	public void rejectsRowsOfWrongLength() {
+		buffer.add("a", 0);
+	}
+
+}
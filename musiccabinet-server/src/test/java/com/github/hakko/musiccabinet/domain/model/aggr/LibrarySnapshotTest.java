@@ -0,0 +1,80 @@
+package com.github.hakko.musiccabinet.domain.model.aggr;
+
+import static com.github.hakko.musiccabinet.service.library.LibraryUtil.set;
+
+import junit.framework.Assert;
+
+import org.joda.time.DateTime;
+import org.junit.Test;
+
+import com.github.hakko.musiccabinet.domain.model.library.File;
+
+public class LibrarySnapshotTest {
+
+	@Test
+	public void resolvesSubdirectoriesRegardlessOfLoadOrder() {
+		LibrarySnapshot snapshot = new LibrarySnapshot();
+		snapshot.addDirectory(3, 2, "/a/b/c");
+		snapshot.addDirectory(2, 1, "/a/b");
+		snapshot.addDirectory(4, 1, "/a/d");
+		snapshot.addDirectory(1, null, "/a");
+
+		Assert.assertEquals(set("/a/b", "/a/d"), snapshot.getSubdirectories("/a"));
+		Assert.assertEquals(set("/a/b/c"), snapshot.getSubdirectories("/a/b"));
+		Assert.assertTrue(snapshot.getSubdirectories("/a/b/c").isEmpty());
+		Assert.assertTrue(snapshot.getSubdirectories("/x").isEmpty());
+		Assert.assertTrue(snapshot.getSubdirectories(null).isEmpty());
+		Assert.assertTrue(snapshot.exists("/a/d"));
+		Assert.assertFalse(snapshot.exists("/x"));
+	}
+
+	@Test
+	public void returnsFilesEqualToThoseStored() {
+		long modified = new DateTime(2012, 1, 1, 0, 0).getMillis();
+		LibrarySnapshot snapshot = new LibrarySnapshot();
+		snapshot.addDirectory(1, null, "/a");
+		snapshot.addDirectory(2, 1, "/a/b");
+		snapshot.addFile(1, "f1.mp3", modified, 100);
+		snapshot.addFile(1, "f2.mp3", modified, 200);
+		snapshot.addFile(2, "f3.mp3", modified, 300);
+		snapshot.addFile(9, "orphan.mp3", modified, 400);
+
+		Assert.assertEquals(set(
+				new File("/a", "f1.mp3", new DateTime(modified), 100),
+				new File("/a", "f2.mp3", new DateTime(modified), 200)),
+				snapshot.getFiles("/a"));
+		Assert.assertEquals(set(
+				new File("/a/b", "f3.mp3", new DateTime(modified), 300)),
+				snapshot.getFiles("/a/b"));
+		Assert.assertTrue(snapshot.getFiles("/x").isEmpty());
+		Assert.assertEquals(3, snapshot.getFileCount());
+		Assert.assertEquals(2, snapshot.getDirectoryCount());
+	}
+
+	@Test
+	public void comparesDirectoryModificationTime() {
+		LibrarySnapshot snapshot = new LibrarySnapshot();
+		snapshot.addDirectory(1, null, "/a", 1000L);
+		snapshot.addDirectory(2, 1, "/a/b");
+
+		Assert.assertTrue(snapshot.isUnchanged("/a", 1000L));
+		Assert.assertFalse(snapshot.isUnchanged("/a", 2000L));
+		Assert.assertFalse(snapshot.isUnchanged("/a/b", 1000L));
+		Assert.assertFalse(snapshot.isUnchanged("/x", 1000L));
+	}
+
+	@Test
+	public void growsBeyondInitialCapacity() {
+		LibrarySnapshot snapshot = new LibrarySnapshot();
+		snapshot.addDirectory(1, null, "/root");
+		for (int i = 2; i < 5000; i++) {
+			snapshot.addDirectory(i, 1, "/root/" + i);
+			snapshot.addFile(i, "file.mp3", 0, i);
+		}
+
+		Assert.assertEquals(4998, snapshot.getSubdirectories("/root").size());
+		Assert.assertEquals(set(new File("/root/4999", "file.mp3", new DateTime(0), 4999)),
+				snapshot.getFiles("/root/4999"));
+	}
+
+}
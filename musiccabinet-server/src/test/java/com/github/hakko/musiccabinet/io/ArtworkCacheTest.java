@@ -0,0 +1,134 @@
+package com.github.hakko.musiccabinet.io;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import javax.imageio.ImageIO;
+
+import junit.framework.Assert;
+
+import org.apache.commons.io.FileUtils;
+import org.jaudiotagger.tag.datatype.Artwork;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ArtworkCacheTest {
+
+	private java.io.File directory;
+	private java.io.File file;
+
+	private ArtworkCache cache;
+
+	@Before
+	public void createFiles() throws Exception {
+		directory = Files.createTempDirectory("artworkcache").toFile();
+		file = Files.createTempFile("artworkcache", ".mp3").toFile();
+		FileUtils.writeStringToFile(file, "audio");
+		cache = new ArtworkCache(directory);
+	}
+
+	@After
+	public void deleteFiles() throws Exception {
+		FileUtils.deleteDirectory(directory);
+		file.delete();
+	}
+
+	@Test
+	public void returnsStoredArtwork() throws Exception {
+		Assert.assertNull(cache.get(file));
+
+		cache.put(file, getArtwork(400, 300));
+		Artwork artwork = cache.get(file);
+
+		Assert.assertNotNull(artwork);
+		Assert.assertEquals("image/png", artwork.getMimeType());
+		Assert.assertTrue(Arrays.equals(
+				getArtwork(400, 300).getBinaryData(), artwork.getBinaryData()));
+	}
+
+	@Test
+	public void remembersFilesWithoutArtwork() {
+		cache.put(file, null);
+
+		Assert.assertSame(ArtworkCache.NO_ARTWORK, cache.get(file));
+		Assert.assertSame(ArtworkCache.NO_ARTWORK, cache.get(file, 100));
+	}
+
+	@Test
+	public void ignoresEntryForChangedFile() throws Exception {
+		cache.put(file, getArtwork(400, 300));
+		Assert.assertNotNull(cache.get(file));
+
+		file.setLastModified(file.lastModified() - 10000);
+		Assert.assertNull(cache.get(file));
+
+		cache.put(file, getArtwork(400, 300));
+		FileUtils.writeStringToFile(file, "modified audio");
+		Assert.assertNull(cache.get(file));
+	}
+
+	@Test
+	public void returnsScaledArtwork() throws Exception {
+		cache.put(file, getArtwork(400, 300));
+
+		for (int i = 0; i < 2; i++) {
+			Artwork artwork = cache.get(file, 100);
+			Assert.assertEquals("image/jpeg", artwork.getMimeType());
+			BufferedImage image = ImageIO.read(new ByteArrayInputStream(artwork.getBinaryData()));
+			Assert.assertEquals(100, image.getWidth());
+			Assert.assertEquals(75, image.getHeight());
+		}
+	}
+
+	@Test
+	public void neverScalesArtworkUp() throws Exception {
+		cache.put(file, getArtwork(50, 40));
+
+		BufferedImage image = ImageIO.read(new ByteArrayInputStream(
+				cache.get(file, 100).getBinaryData()));
+		Assert.assertEquals(50, image.getWidth());
+		Assert.assertEquals(40, image.getHeight());
+	}
+
+	@Test
+	public void compactionRemovesEntriesOfChangedFiles() throws Exception {
+		java.io.File other = Files.createTempFile("artworkcache", ".mp3").toFile();
+		try {
+			cache.put(file, getArtwork(400, 300));
+			cache.get(file, 100);
+			cache.put(other, getArtwork(50, 40));
+			Assert.assertEquals(5, countFiles());
+
+			FileUtils.writeStringToFile(file, "modified audio");
+			cache.compact();
+
+			Assert.assertEquals(2, countFiles());
+			Assert.assertNull(cache.get(file));
+			Assert.assertNotNull(cache.get(other));
+
+			other.delete();
+			cache.compact();
+			Assert.assertEquals(0, countFiles());
+		} finally {
+			other.delete();
+		}
+	}
+
+	private int countFiles() {
+		return FileUtils.listFiles(directory, null, true).size();
+	}
+
+	private Artwork getArtwork(int width, int height) throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ImageIO.write(new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB), "png", out);
+		Artwork artwork = new Artwork();
+		artwork.setBinaryData(out.toByteArray());
+		artwork.setMimeType("image/png");
+		return artwork;
+	}
+
+}
@@ -0,0 +1,48 @@
+package com.github.hakko.musiccabinet.io;
+
+import java.io.IOException;
+import java.nio.file.Files;
+
+import junit.framework.Assert;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DataDirectoryTest {
+
+	private java.io.File directory;
+
+	@Before
+	public void createDirectory() throws IOException {
+		directory = Files.createTempDirectory("datadirectory").toFile();
+	}
+
+	@After
+	public void deleteDirectory() {
+		FileUtils.deleteQuietly(directory);
+	}
+
+	@Test
+	public void resolvesRelativeLocationAgainstDataDirectory() {
+		java.io.File home = new java.io.File(directory, "home");
+		DataDirectory dataDirectory = new DataDirectory(home.getPath());
+
+		java.io.File file = dataDirectory.getFile("cache/tagcache");
+
+		Assert.assertEquals(new java.io.File(home, "cache/tagcache"), file);
+		Assert.assertTrue(file.getParentFile().isDirectory());
+		Assert.assertFalse(file.exists());
+	}
+
+	@Test
+	public void keepsAbsoluteLocation() {
+		DataDirectory dataDirectory = new DataDirectory(new java.io.File(directory, "home").getPath());
+		java.io.File location = new java.io.File(directory, "elsewhere/tagcache").getAbsoluteFile();
+
+		Assert.assertEquals(location, dataDirectory.getFile(location.getPath()));
+		Assert.assertTrue(location.getParentFile().isDirectory());
+	}
+
+}
@@ -0,0 +1,85 @@
+package com.github.hakko.musiccabinet.io;
+
+import static org.jaudiotagger.tag.FieldKey.ALBUM;
+import static org.jaudiotagger.tag.FieldKey.ALBUM_ARTIST;
+import static org.jaudiotagger.tag.FieldKey.ARTIST;
+import static org.jaudiotagger.tag.FieldKey.COMPOSER;
+import static org.jaudiotagger.tag.FieldKey.DISC_NO;
+import static org.jaudiotagger.tag.FieldKey.DISC_TOTAL;
+import static org.jaudiotagger.tag.FieldKey.GENRE;
+import static org.jaudiotagger.tag.FieldKey.LYRICS;
+import static org.jaudiotagger.tag.FieldKey.TITLE;
+import static org.jaudiotagger.tag.FieldKey.TRACK;
+import static org.jaudiotagger.tag.FieldKey.TRACK_TOTAL;
+import static org.jaudiotagger.tag.FieldKey.YEAR;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import com.github.hakko.musiccabinet.io.HeaderTagReader.HeaderTag;
+
+public class HeaderTagReaderTest {
+
+	private HeaderTagReader reader = new HeaderTagReader();
+
+	@Test
+	public void readsId3v2Tags() throws Exception {
+		HeaderTag tag = reader.read(getFile("library/boing.mp3"));
+
+		Assert.assertNotNull(tag);
+		Assert.assertEquals("Artist Name", tag.getFirst(ARTIST));
+		Assert.assertEquals("Album Artist", tag.getFirst(ALBUM_ARTIST));
+		Assert.assertEquals("Track Title", tag.getFirst(TITLE));
+		Assert.assertEquals("Album Title", tag.getFirst(ALBUM));
+		Assert.assertEquals("Genre", tag.getFirst(GENRE));
+		Assert.assertEquals("Composer", tag.getFirst(COMPOSER));
+		Assert.assertEquals("2012", tag.getFirst(YEAR));
+		Assert.assertEquals("1/2", tag.getFirst(TRACK));
+		Assert.assertEquals("2", tag.getFirst(TRACK_TOTAL));
+		Assert.assertEquals("3/4", tag.getFirst(DISC_NO));
+		Assert.assertEquals("4", tag.getFirst(DISC_TOTAL));
+		Assert.assertFalse(tag.isCoverArtEmbedded());
+		Assert.assertTrue(tag.getBitrate() > 0);
+	}
+
+	@Test
+	public void readsUnsynchronisedId3v24Tags() throws Exception {
+		HeaderTag tag = reader.read(getFile(
+				"library/media3/Artist/Embedded artwork/Embedded artwork.mp3"));
+
+		Assert.assertNotNull(tag);
+		Assert.assertEquals("Artist Name", tag.getFirst(ARTIST));
+		Assert.assertEquals("Embedded artwork", tag.getFirst(TITLE));
+		Assert.assertTrue(tag.isCoverArtEmbedded());
+	}
+
+	@Test
+	public void readsLyrics() throws Exception {
+		HeaderTag tag = reader.read(getFile("library/media7/lyrics.mp3"));
+
+		Assert.assertNotNull(tag);
+		Assert.assertTrue(tag.getFirst(LYRICS).startsWith("In the town where I was born"));
+	}
+
+	@Test
+	public void readsVorbisComments() throws Exception {
+		HeaderTag tag = reader.read(getFile("library/media0/aa.flac"));
+
+		Assert.assertNotNull(tag);
+		Assert.assertNotNull(tag.getFirst(ARTIST));
+		Assert.assertNotNull(tag.getFirst(TITLE));
+		Assert.assertTrue(tag.isVbr());
+	}
+
+	@Test
+	public void leavesId3v1OnlyFilesToJAudioTagger() throws Exception {
+		Assert.assertNull(reader.read(getFile("library/id3v1.mp3")));
+	}
+
+	private java.io.File getFile(String resource) throws Exception {
+		return new java.io.File(Thread.currentThread()
+				.getContextClassLoader().getResource(resource).toURI());
+	}
+
+}
@@ -0,0 +1,158 @@
+package com.github.hakko.musiccabinet.io;
+
+import static java.lang.Thread.currentThread;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.springframework.integration.Message;
+import org.springframework.integration.channel.QueueChannel;
+
+import com.github.hakko.musiccabinet.domain.model.aggr.DirectoryContent;
+import com.github.hakko.musiccabinet.domain.model.aggr.LibrarySnapshot;
+
+public class ParallelLibraryScannerTest {
+
+	@Test
+	public void findsSameContentAsSequentialScanner() throws Exception {
+		Path library = Paths.get(currentThread().getContextClassLoader()
+				.getResource("library").toURI());
+
+		QueueChannel sequentialChannel = new QueueChannel();
+		Files.walkFileTree(library, new LibraryScanner(sequentialChannel));
+
+		QueueChannel parallelChannel = new QueueChannel();
+		new ParallelLibraryScanner(parallelChannel, 4).scan(library);
+
+		Map<String, DirectoryContent> expected = toMap(receiveAll(sequentialChannel));
+		Map<String, DirectoryContent> actual = toMap(receiveAll(parallelChannel));
+
+		Assert.assertEquals(expected.keySet(), actual.keySet());
+		for (String directory : expected.keySet()) {
+			Assert.assertEquals(expected.get(directory).getSubDirectories(),
+					actual.get(directory).getSubDirectories());
+			Assert.assertEquals(expected.get(directory).getFiles(),
+					actual.get(directory).getFiles());
+		}
+	}
+
+	@Test
+	public void sendsSubDirectoriesBeforeTheirParent() throws Exception {
+		Path library = Paths.get(currentThread().getContextClassLoader()
+				.getResource("library").toURI());
+
+		QueueChannel channel = new QueueChannel();
+		new ParallelLibraryScanner(channel, 4).scan(library);
+
+		List<DirectoryContent> contents = receiveAll(channel);
+		List<String> sent = new ArrayList<>();
+		for (DirectoryContent content : contents) {
+			for (String subDirectory : content.getSubDirectories()) {
+				Assert.assertTrue(sent.contains(subDirectory));
+			}
+			sent.add(content.getDirectory());
+		}
+		Assert.assertEquals(library.toString(), sent.get(sent.size() - 1));
+	}
+
+	@Test
+	public void skipsDirectoriesUnchangedSinceLastScan() throws Exception {
+		Path library = Paths.get(currentThread().getContextClassLoader()
+				.getResource("library").toURI());
+
+		QueueChannel channel = new QueueChannel();
+		new ParallelLibraryScanner(channel, 4).scan(library);
+		List<DirectoryContent> contents = receiveAll(channel);
+		Assert.assertTrue(contents.size() > 1);
+
+		LibrarySnapshot snapshot = new LibrarySnapshot();
+		Map<String, Integer> ids = new HashMap<>();
+		for (DirectoryContent content : contents) {
+			ids.put(content.getDirectory(), ids.size());
+		}
+		DirectoryContent changed = contents.get(0);
+		for (DirectoryContent content : contents) {
+			Assert.assertNotNull(content.getModified());
+			long modified = content.getModified().getMillis();
+			snapshot.addDirectory(ids.get(content.getDirectory()), 
+					ids.get(Paths.get(content.getDirectory()).getParent().toString()),
+					content.getDirectory(), content == changed ? modified - 1 : modified);
+		}
+
+		new ParallelLibraryScanner(channel, 4, snapshot).scan(library);
+
+		List<DirectoryContent> rescanned = receiveAll(channel);
+		Assert.assertEquals(1, rescanned.size());
+		Assert.assertEquals(changed.getDirectory(), rescanned.get(0).getDirectory());
+		Assert.assertEquals(changed.getFiles(), rescanned.get(0).getFiles());
+	}
+
+	@Test
+	public void sendsLargeDirectoriesInChunks() throws Exception {
+		Path library = Paths.get(currentThread().getContextClassLoader()
+				.getResource("library").toURI());
+
+		QueueChannel channel = new QueueChannel();
+		new ParallelLibraryScanner(channel, 4).scan(library);
+		Map<String, DirectoryContent> expected = toMap(receiveAll(channel));
+
+		QueueChannel sequentialChannel = new QueueChannel();
+		Files.walkFileTree(library, new LibraryScanner(sequentialChannel, 1));
+		QueueChannel parallelChannel = new QueueChannel();
+		new ParallelLibraryScanner(parallelChannel, 4, null, 1).scan(library);
+
+		for (QueueChannel chunkedChannel : Arrays.asList(sequentialChannel, parallelChannel)) {
+			Map<String, DirectoryContent> actual = new HashMap<>();
+			Set<String> completed = new HashSet<>();
+			for (DirectoryContent content : receiveAll(chunkedChannel)) {
+				String directory = content.getDirectory();
+				Assert.assertFalse(completed.contains(directory));
+				Assert.assertEquals(content.isLastChunk(), content.getFiles().isEmpty());
+				if (content.isLastChunk()) {
+					completed.add(directory);
+				}
+				if (!actual.containsKey(directory)) {
+					actual.put(directory, new DirectoryContent(directory));
+				}
+				actual.get(directory).getFiles().addAll(content.getFiles());
+				actual.get(directory).getSubDirectories().addAll(content.getSubDirectories());
+			}
+			Assert.assertEquals(expected.keySet(), actual.keySet());
+			for (String directory : expected.keySet()) {
+				Assert.assertEquals(expected.get(directory).getSubDirectories(),
+						actual.get(directory).getSubDirectories());
+				Assert.assertEquals(expected.get(directory).getFiles(),
+						actual.get(directory).getFiles());
+			}
+		}
+	}
+
+	private List<DirectoryContent> receiveAll(QueueChannel channel) {
+		List<DirectoryContent> contents = new ArrayList<>();
+		Message<?> message;
+		while ((message = channel.receive(0)) != null) {
+			contents.add((DirectoryContent) message.getPayload());
+		}
+		return contents;
+	}
+
+	private Map<String, DirectoryContent> toMap(List<DirectoryContent> contents) {
+		Map<String, DirectoryContent> map = new HashMap<>();
+		for (DirectoryContent content : contents) {
+			Assert.assertNull(map.put(content.getDirectory(), content));
+		}
+		return map;
+	}
+
+}
@@ -0,0 +1,161 @@
+package com.github.hakko.musiccabinet.io;
+
+import static com.github.hakko.musiccabinet.domain.model.library.WebserviceInvocation.Calltype.ALBUM_GET_INFO;
+import static com.github.hakko.musiccabinet.domain.model.library.WebserviceInvocation.Calltype.ARTIST_GET_INFO;
+import static com.github.hakko.musiccabinet.domain.model.library.WebserviceInvocation.Calltype.ARTIST_GET_SIMILAR;
+import static com.github.hakko.musiccabinet.domain.model.library.WebserviceInvocation.Calltype.GET_SCROBBLED_TRACKS;
+import static com.github.hakko.musiccabinet.domain.model.library.WebserviceInvocation.Calltype.TAG_GET_TOP_ARTISTS;
+import static com.github.hakko.musiccabinet.domain.model.library.WebserviceInvocation.Calltype.USER_GET_RECOMMENDED_ARTISTS;
+import static com.github.hakko.musiccabinet.ws.lastfm.AbstractWSClient.PARAM_ALBUM;
+import static com.github.hakko.musiccabinet.ws.lastfm.AbstractWSClient.PARAM_API_KEY;
+import static com.github.hakko.musiccabinet.ws.lastfm.AbstractWSClient.PARAM_API_SIG;
+import static com.github.hakko.musiccabinet.ws.lastfm.AbstractWSClient.PARAM_ARTIST;
+import static com.github.hakko.musiccabinet.ws.lastfm.AbstractWSClient.PARAM_METHOD;
+import static com.github.hakko.musiccabinet.ws.lastfm.AbstractWSClient.PARAM_PAGE;
+import static com.github.hakko.musiccabinet.ws.lastfm.AbstractWSClient.PARAM_SK;
+import static com.github.hakko.musiccabinet.ws.lastfm.AbstractWSClient.PARAM_TAG;
+import static com.github.hakko.musiccabinet.ws.lastfm.AbstractWSClient.PARAM_USER;
+import static java.util.Arrays.asList;
+
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.apache.http.NameValuePair;
+import org.apache.http.message.BasicNameValuePair;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.hakko.musiccabinet.domain.model.library.LastFmUser;
+import com.github.hakko.musiccabinet.domain.model.library.WebserviceInvocation;
+import com.github.hakko.musiccabinet.domain.model.music.Album;
+import com.github.hakko.musiccabinet.domain.model.music.Artist;
+import com.github.hakko.musiccabinet.domain.model.music.Tag;
+
+public class ResponseArchiveTest {
+
+	private java.io.File file;
+
+	private static final WebserviceInvocation CHER_INFO =
+			new WebserviceInvocation(ARTIST_GET_INFO, new Artist("Cher"));
+	private static final WebserviceInvocation CHER_SIMILAR =
+			new WebserviceInvocation(ARTIST_GET_SIMILAR, new Artist("Cher"));
+	private static final List<NameValuePair> CHER = asList(param(PARAM_ARTIST, "Cher"));
+	private static final String RESPONSE = "<lfm status=\"ok\"><artist><name>Cher</name>"
+			+ "<bio><summary>Cher, née Cherilyn Sarkisian</summary></bio></artist></lfm>";
+
+	@Before
+	public void createFile() throws Exception {
+		file = Files.createTempFile("responses", null).toFile();
+	}
+
+	@After
+	public void deleteFile() {
+		file.delete();
+	}
+
+	@Test
+	public void returnsStoredResponse() {
+		ResponseArchive archive = new ResponseArchive(file);
+		archive.put(CHER_INFO, CHER, RESPONSE);
+
+		Assert.assertEquals(RESPONSE, archive.get(CHER_INFO, CHER));
+		Assert.assertNull(archive.get(CHER_SIMILAR, CHER));
+		Assert.assertEquals(1, archive.getHits());
+		Assert.assertEquals(1, archive.getMisses());
+		archive.close();
+	}
+
+	@Test
+	public void newerResponseReplacesOlder() {
+		ResponseArchive archive = new ResponseArchive(file);
+		archive.put(CHER_INFO, CHER, "old");
+		archive.put(CHER_INFO, CHER, RESPONSE);
+
+		Assert.assertEquals(RESPONSE, archive.get(CHER_INFO, CHER));
+		Assert.assertEquals(1, archive.getResponses());
+		Assert.assertEquals(1, archive.getStaleResponses());
+		archive.close();
+	}
+
+	@Test
+	public void keepsResponsesBetweenSessions() {
+		ResponseArchive archive = new ResponseArchive(file);
+		archive.put(CHER_INFO, CHER, RESPONSE);
+		archive.put(CHER_SIMILAR, CHER, RESPONSE + RESPONSE);
+		archive.close();
+
+		archive = new ResponseArchive(file);
+		Assert.assertEquals(2, archive.getResponses());
+		Assert.assertEquals(RESPONSE, archive.get(CHER_INFO, CHER));
+		Assert.assertEquals(RESPONSE + RESPONSE, archive.get(CHER_SIMILAR, CHER));
+		archive.close();
+	}
+
+	@Test
+	public void discardsIncompleteRecord() throws Exception {
+		ResponseArchive archive = new ResponseArchive(file);
+		archive.put(CHER_INFO, CHER, RESPONSE);
+		archive.put(CHER_SIMILAR, CHER, RESPONSE);
+		archive.close();
+
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.setLength(raf.length() - 5);
+		}
+
+		archive = new ResponseArchive(file);
+		Assert.assertEquals(RESPONSE, archive.get(CHER_INFO, CHER));
+		Assert.assertNull(archive.get(CHER_SIMILAR, CHER));
+		archive.put(CHER_SIMILAR, CHER, RESPONSE);
+		Assert.assertEquals(RESPONSE, archive.get(CHER_SIMILAR, CHER));
+		archive.close();
+	}
+
+	@Test
+	public void keyIsMadeFromParametersOnly() {
+		List<NameValuePair> disco = asList(param(PARAM_TAG, "disco"));
+		Assert.assertEquals(ResponseArchive.getKey(new WebserviceInvocation(
+				TAG_GET_TOP_ARTISTS, new Tag("disco", (short) 10)), disco),
+				ResponseArchive.getKey(new WebserviceInvocation(
+				TAG_GET_TOP_ARTISTS, new Tag("disco", (short) 95)), disco));
+		Assert.assertEquals("ALBUM_GET_INFO|method=album.getinfo|artist=Cher|album=Believe",
+				ResponseArchive.getKey(new WebserviceInvocation(
+				ALBUM_GET_INFO, new Album("Cher", "Believe")), asList(
+				param(PARAM_API_KEY, "key"), param(PARAM_METHOD, "album.getinfo"),
+				param(PARAM_ARTIST, "Cher"), param(PARAM_ALBUM, "Believe"))));
+	}
+
+	@Test
+	public void keyIncludesParametersMissingFromInvocation() {
+		WebserviceInvocation libraryPage = new WebserviceInvocation(GET_SCROBBLED_TRACKS, (short) 1);
+		Assert.assertFalse(ResponseArchive.getKey(libraryPage,
+				asList(param(PARAM_USER, "arnold"), param(PARAM_PAGE, "1"))).equals(
+				ResponseArchive.getKey(libraryPage,
+				asList(param(PARAM_USER, "rj"), param(PARAM_PAGE, "1")))));
+	}
+
+	@Test
+	public void keyOfAuthenticatedCallHasUserInsteadOfSessionKey() {
+		WebserviceInvocation recommended = new WebserviceInvocation(
+				USER_GET_RECOMMENDED_ARTISTS, new LastFmUser("arnold", "sessionkey"));
+		Assert.assertEquals("USER_GET_RECOMMENDED_ARTISTS|lastfmuser=arnold",
+				ResponseArchive.getKey(recommended, asList(
+				param(PARAM_SK, "sessionkey"), param(PARAM_API_SIG, "signature"))));
+	}
+
+	@Test
+	public void replayIsOffByDefault() {
+		ResponseArchive archive = new ResponseArchive(file);
+		Assert.assertFalse(archive.isReplay());
+		archive.setReplay(true);
+		Assert.assertTrue(archive.isReplay());
+	}
+
+	private static NameValuePair param(String name, String value) {
+		return new BasicNameValuePair(name, value);
+	}
+
+}
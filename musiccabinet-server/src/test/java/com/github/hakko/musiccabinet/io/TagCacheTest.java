@@ -0,0 +1,132 @@
+package com.github.hakko.musiccabinet.io;
+
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.hakko.musiccabinet.domain.model.library.MetaData;
+import com.github.hakko.musiccabinet.domain.model.library.MetaData.Mediatype;
+
+public class TagCacheTest {
+
+	private java.io.File file;
+
+	private static final String PATH = "/music/Artist/Album/01 Track.flac";
+	private static final int SIZE = 31337;
+	private static final long MODIFIED = 1330000000000L;
+
+	@Before
+	public void createFile() throws Exception {
+		file = Files.createTempFile("tagcache", null).toFile();
+	}
+
+	@After
+	public void deleteFile() {
+		file.delete();
+	}
+
+	@Test
+	public void returnsStoredMetaData() {
+		TagCache cache = new TagCache(file);
+		cache.put(PATH, SIZE, MODIFIED, getMetaData());
+
+		assertEquals(getMetaData(), cache.get(PATH, SIZE, MODIFIED));
+		Assert.assertNull(cache.get("/music/other.flac", SIZE, MODIFIED));
+		cache.close();
+	}
+
+	@Test
+	public void ignoresEntryForChangedFile() {
+		TagCache cache = new TagCache(file);
+		cache.put(PATH, SIZE, MODIFIED, getMetaData());
+
+		Assert.assertNull(cache.get(PATH, SIZE + 1, MODIFIED));
+		Assert.assertNull(cache.get(PATH, SIZE, MODIFIED + 1));
+
+		MetaData changed = getMetaData();
+		changed.setTitle("Changed title");
+		cache.put(PATH, SIZE + 1, MODIFIED, changed);
+		assertEquals(changed, cache.get(PATH, SIZE + 1, MODIFIED));
+		Assert.assertEquals(1, cache.size());
+		cache.close();
+	}
+
+	@Test
+	public void keepsEntriesBetweenSessions() {
+		TagCache cache = new TagCache(file);
+		for (int i = 0; i < 5000; i++) {
+			cache.put(PATH + i, SIZE, MODIFIED, getMetaData());
+		}
+		cache.close();
+
+		cache = new TagCache(file);
+		Assert.assertEquals(5000, cache.size());
+		assertEquals(getMetaData(), cache.get(PATH + 4711, SIZE, MODIFIED));
+		cache.close();
+	}
+
+	@Test
+	public void discardsIncompleteEntry() throws Exception {
+		TagCache cache = new TagCache(file);
+		cache.put(PATH + 1, SIZE, MODIFIED, getMetaData());
+		cache.put(PATH + 2, SIZE, MODIFIED, getMetaData());
+		cache.close();
+
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.setLength(raf.length() - 10);
+		}
+
+		cache = new TagCache(file);
+		Assert.assertEquals(1, cache.size());
+		assertEquals(getMetaData(), cache.get(PATH + 1, SIZE, MODIFIED));
+		Assert.assertNull(cache.get(PATH + 2, SIZE, MODIFIED));
+
+		cache.put(PATH + 2, SIZE, MODIFIED, getMetaData());
+		assertEquals(getMetaData(), cache.get(PATH + 2, SIZE, MODIFIED));
+		cache.close();
+	}
+
+	private MetaData getMetaData() {
+		MetaData md = new MetaData();
+		md.setMediaType(Mediatype.FLAC);
+		md.setBitrate((short) 1024);
+		md.setVbr(true);
+		md.setDuration((short) 245);
+		md.setArtist("Artist");
+		md.setAlbumArtist("Album Artist");
+		md.setAlbum("Album");
+		md.setTitle("T\u00eftle");
+		md.setYear("1998");
+		md.setGenre("Rock");
+		md.setTrackNr((short) 1);
+		md.setTrackNrs((short) 12);
+		md.setCoverArtEmbedded(true);
+		return md;
+	}
+
+	private void assertEquals(MetaData expected, MetaData actual) {
+		Assert.assertNotNull(actual);
+		Assert.assertEquals(expected.getMediaType(), actual.getMediaType());
+		Assert.assertEquals(expected.getBitrate(), actual.getBitrate());
+		Assert.assertEquals(expected.isVbr(), actual.isVbr());
+		Assert.assertEquals(expected.getDuration(), actual.getDuration());
+		Assert.assertEquals(expected.getArtist(), actual.getArtist());
+		Assert.assertEquals(expected.getArtistSort(), actual.getArtistSort());
+		Assert.assertEquals(expected.getAlbumArtist(), actual.getAlbumArtist());
+		Assert.assertEquals(expected.getAlbum(), actual.getAlbum());
+		Assert.assertEquals(expected.getTitle(), actual.getTitle());
+		Assert.assertEquals(expected.getYear(), actual.getYear());
+		Assert.assertEquals(expected.getGenre(), actual.getGenre());
+		Assert.assertEquals(expected.getLyrics(), actual.getLyrics());
+		Assert.assertEquals(expected.getDiscNr(), actual.getDiscNr());
+		Assert.assertEquals(expected.getTrackNr(), actual.getTrackNr());
+		Assert.assertEquals(expected.getTrackNrs(), actual.getTrackNrs());
+		Assert.assertEquals(expected.isCoverArtEmbedded(), actual.isCoverArtEmbedded());
+	}
+
+}
@@ -0,0 +1,71 @@
+package com.github.hakko.musiccabinet.io;
+
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.Assert;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.hakko.musiccabinet.io.VolumeConcurrency.Volume;
+
+public class VolumeConcurrencyTest {
+
+	private java.io.File directory;
+	private String root1, root2;
+
+	@Before
+	public void createDirectories() throws Exception {
+		directory = Files.createTempDirectory("volumes").toFile();
+		root1 = new java.io.File(directory, "root1").getPath();
+		root2 = new java.io.File(directory, "root2").getPath();
+		new java.io.File(root1).mkdir();
+		new java.io.File(root2).mkdir();
+	}
+
+	@After
+	public void deleteDirectories() throws Exception {
+		FileUtils.deleteDirectory(directory);
+	}
+
+	@Test
+	public void rootsOnSameFileStoreShareVolume() {
+		VolumeConcurrency volumes = new VolumeConcurrency();
+		volumes.setRoots(Arrays.asList(root1, root2));
+
+		Volume volume = volumes.findVolume(root1);
+		Assert.assertNotNull(volume);
+		Assert.assertSame(volume, volumes.findVolume(root2));
+		Assert.assertSame(volume, volumes.findVolume(root1 + java.io.File.separator + "album"));
+		Assert.assertEquals(1, volumes.getVolumes().size());
+		Assert.assertEquals(volume.getLimit(), volumes.getTotalLimit());
+	}
+
+	@Test
+	public void usesConfiguredLimitForPathPrefix() {
+		Map<String, Integer> limits = new HashMap<>();
+		limits.put(root2, 3);
+		VolumeConcurrency volumes = new VolumeConcurrency();
+		volumes.setLimits(limits);
+		volumes.setRoots(Arrays.asList(root1, root2));
+
+		Assert.assertEquals(3, volumes.findVolume(root2).getLimit());
+		Assert.assertNotSame(volumes.findVolume(root1), volumes.findVolume(root2));
+		Assert.assertEquals(2, volumes.getVolumes().size());
+	}
+
+	@Test
+	public void ignoresPathsOutsideRoots() {
+		VolumeConcurrency volumes = new VolumeConcurrency();
+		volumes.setRoots(Arrays.asList(root1));
+
+		Assert.assertNull(volumes.findVolume(root2));
+		Assert.assertNull(volumes.findVolume(root1 + "0"));
+	}
+
+}
@@ -1,5 +1,7 @@
 package com.github.hakko.musiccabinet.parser.itunes;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import junit.framework.Assert;
@@ -37,5 +39,44 @@ public class ItunesMusicLibraryParserTest {
 	
 		Assert.assertEquals(10, counter.intValue());
 	}
+
+	@Test
+	public void trackFieldsCorrectlyParsed() throws ApplicationException {
+		
+		final List<ItunesTrack> tracks = new ArrayList<>();
+		
+		ItunesMusicLibraryParserCallback callback = new 
+		ItunesMusicLibraryParserCallback() {
+			
+			@Override
+			public void endOfTracks() {
+			}
+			
+			@Override
+			public void addTrack(ItunesTrack track) {
+				tracks.add(track);
+			}
+		};
+		new ItunesMusicLibraryParserImpl(
+				new ResourceUtil(ITUNES_INDEX_FILE).getInputStream(), callback);
+
+		ItunesTrack track = tracks.get(0);
+		Assert.assertEquals("5718", track.internalId);
+		Assert.assertEquals("The Brothel", track.track);
+		Assert.assertEquals("The Brothel", track.album);
+		Assert.assertEquals(track.artist, track.albumArtist);
+		Assert.assertEquals(10227485, track.size);
+		Assert.assertEquals(375745, track.totalTime);
+		Assert.assertEquals(1, track.trackNumber);
+		Assert.assertEquals(10, track.trackCount);
+		Assert.assertEquals(0, track.discNumber);
+		Assert.assertEquals(2010, track.year);
+		Assert.assertEquals(215, track.bitRate);
+		Assert.assertEquals(25, track.playCount);
+		Assert.assertEquals(1, track.artworkCount);
+		Assert.assertEquals(1330042768000L, track.dateModified);
+		Assert.assertTrue(track.location.startsWith("file://localhost/Users/hakko/"));
+		Assert.assertTrue(track.location.endsWith("/01%20The%20Brothel.mp3"));
+	}
 	
 }
\ No newline at end of file
@@ -30,7 +30,9 @@ public class SearchIndexUpdateExecutorServiceTest {
 		for (int i = 0; i < 5; i++) {
 			updateServices.add(new TestUpdateService());
 		}
+		long ms = -System.currentTimeMillis();
 		executorService.updateSearchIndex(updateServices);
+		ms += System.currentTimeMillis();
 		
 		int totalOperations = 0, finishedOperations = 0;
 		
@@ -41,9 +43,9 @@ public class SearchIndexUpdateExecutorServiceTest {
 		
 		Assert.assertEquals(5+4+3+2+1, totalOperations);
 		Assert.assertEquals(totalOperations, finishedOperations);
-	
-//		TODO : validate actual blocking. testing was made harder when permits are handed out per minute		
-//		Assert.assertTrue(ms / 1000 >= 3); // 5+4+3+2+1 operations = 15, 5/sec -> 3 sec
+
+		// 15 operations, 5 at once (burst), then 5/sec -> 2 sec
+		Assert.assertTrue("Updates only took " + ms + " ms", ms >= 1900);
 	}
 	
 	private class TestUpdateService extends SearchIndexUpdateService {
@@ -0,0 +1,129 @@
+package com.github.hakko.musiccabinet.service.lastfm;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import com.github.hakko.musiccabinet.exception.ApplicationException;
+import com.github.hakko.musiccabinet.ws.lastfm.WSResponse;
+
+public class SearchIndexUpdatePipelineTest {
+
+	private static final String OK_RESPONSE = "<lfm status=\"ok\"></lfm>";
+
+	@Test
+	public void allItemsAreCalledParsedAndWrittenInBatches() throws ApplicationException {
+		TestUpdateService updateService = new TestUpdateService();
+		final Set<Integer> written = Collections.synchronizedSet(new TreeSet<Integer>());
+		final List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<Integer>());
+
+		updateService.setTotalOperations(100);
+		new SearchIndexUpdatePipeline<Integer, Integer>(updateService) {
+			@Override
+			protected WSResponse call(Integer item) throws ApplicationException {
+				if (item % 10 == 0) {
+					return new WSResponse(); // not allowed
+				}
+				if (item % 10 == 1) {
+					throw new ApplicationException("Call failed");
+				}
+				return new WSResponse(OK_RESPONSE);
+			}
+
+			@Override
+			protected Integer parse(Integer item, WSResponse wsResponse) {
+				return item % 10 == 2 ? null : item;
+			}
+
+			@Override
+			protected void write(List<Integer> batch) {
+				batchSizes.add(batch.size());
+				written.addAll(batch);
+			}
+		}.setCallThreads(3).setParseThreads(2).setBatchSize(8).run(items(100));
+
+		Assert.assertEquals(70, written.size());
+		for (int item = 0; item < 100; item++) {
+			Assert.assertEquals(item % 10 > 2, written.contains(item));
+		}
+		for (int batchSize : batchSizes) {
+			Assert.assertTrue(batchSize <= 8);
+		}
+		Assert.assertEquals(100, updateService.getProgress().getFinishedOperations());
+	}
+
+	@Test
+	public void failedWriteStopsCallsAndIsThrown() {
+		TestUpdateService updateService = new TestUpdateService();
+		final CountDownLatch writeFailed = new CountDownLatch(1);
+		final AtomicInteger calls = new AtomicInteger();
+		try {
+			new SearchIndexUpdatePipeline<Integer, Integer>(updateService) {
+				@Override
+				protected WSResponse call(Integer item) throws ApplicationException {
+					calls.incrementAndGet();
+					if (item >= 2) {
+						awaitFailure();
+					}
+					return new WSResponse(OK_RESPONSE);
+				}
+
+				@Override
+				protected Integer parse(Integer item, WSResponse wsResponse) {
+					return item;
+				}
+
+				@Override
+				protected void write(List<Integer> batch) {
+					writeFailed.countDown();
+					throw new IllegalStateException("Database is gone");
+				}
+
+				private void awaitFailure() {
+					try {
+						writeFailed.await();
+						Thread.sleep(50);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+			}.setBatchSize(2).run(items(20));
+			Assert.fail();
+		} catch (IllegalStateException e) {
+			Assert.assertEquals("Database is gone", e.getMessage());
+		} catch (ApplicationException e) {
+			Assert.fail();
+		}
+		Assert.assertTrue(calls.get() < 20);
+	}
+
+	private List<Integer> items(int count) {
+		List<Integer> items = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			items.add(i);
+		}
+		return items;
+	}
+
+	private static class TestUpdateService extends SearchIndexUpdateService {
+
+		@Override
+		public String getUpdateDescription() {
+			return "test items";
+		}
+
+		@Override
+		protected void updateSearchIndex() {
+		}
+
+	}
+
+}
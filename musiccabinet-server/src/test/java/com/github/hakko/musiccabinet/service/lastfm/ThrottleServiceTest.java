@@ -0,0 +1,89 @@
+package com.github.hakko.musiccabinet.service.lastfm;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+public class ThrottleServiceTest {
+
+	@Test
+	public void allowsBurstThenPacesCalls() {
+		TestThrottleService throttleService = new TestThrottleService();
+		throttleService.setBurst(5);
+
+		for (int i = 0; i < 5; i++) {
+			throttleService.awaitAllowance();
+		}
+		Assert.assertEquals(0, throttleService.now);
+
+		throttleService.awaitAllowance();
+		long interval = throttleService.now;
+		Assert.assertTrue(interval > SECONDS.toNanos(1) / 5);
+		Assert.assertTrue(interval < SECONDS.toNanos(1) / 4);
+
+		throttleService.awaitAllowance();
+		Assert.assertEquals(2 * interval, throttleService.now);
+		Assert.assertEquals(7, throttleService.getCalls());
+		Assert.assertEquals(2 * interval / 1000000, throttleService.getTotalWaitMillis());
+	}
+
+	@Test
+	public void neverExceedsAverageOverAveragingPeriod() {
+		TestThrottleService throttleService = new TestThrottleService();
+		throttleService.setBurst(50);
+
+		List<Long> calls = new ArrayList<>();
+		for (int i = 0; i < 5000; i++) {
+			throttleService.awaitAllowance();
+			calls.add(throttleService.now);
+		}
+
+		long window = SECONDS.toNanos(300);
+		for (int from = 0, to = 0; from < calls.size(); from++) {
+			while (to < calls.size() && calls.get(to) < calls.get(from) + window) {
+				to++;
+			}
+			Assert.assertTrue(to - from <= 5 * 300);
+		}
+		Assert.assertTrue(calls.get(calls.size() - 1) < SECONDS.toNanos(1030));
+	}
+
+	@Test
+	public void savesUpPermitsWhileIdleUpToBurst() {
+		TestThrottleService throttleService = new TestThrottleService();
+		throttleService.setBurst(3);
+		throttleService.awaitAllowance();
+
+		throttleService.now += SECONDS.toNanos(60);
+		long idle = throttleService.now;
+		for (int i = 0; i < 3; i++) {
+			throttleService.awaitAllowance();
+		}
+		Assert.assertEquals(idle, throttleService.now);
+
+		throttleService.awaitAllowance();
+		Assert.assertTrue(throttleService.now > idle);
+	}
+
+	private class TestThrottleService extends ThrottleService {
+
+		private long now = 0;
+
+		@Override
+		protected long nanoTime() {
+			return now;
+		}
+
+		@Override
+		protected void sleep(long nanos) {
+			now += nanos;
+		}
+
+	}
+
+}
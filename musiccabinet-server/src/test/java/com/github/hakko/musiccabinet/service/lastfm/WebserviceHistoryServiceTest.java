@@ -0,0 +1,187 @@
+package com.github.hakko.musiccabinet.service.lastfm;
+
+import static com.github.hakko.musiccabinet.domain.model.library.WebserviceInvocation.Calltype.ALBUM_GET_INFO;
+import static com.github.hakko.musiccabinet.domain.model.library.WebserviceInvocation.Calltype.ARTIST_GET_TOP_TRACKS;
+import static com.github.hakko.musiccabinet.domain.model.library.WebserviceInvocation.Calltype.TRACK_GET_SIMILAR;
+import static java.util.Arrays.asList;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.Assert;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.github.hakko.musiccabinet.dao.WebserviceHistoryDao;
+import com.github.hakko.musiccabinet.domain.model.library.WebserviceInvocation;
+import com.github.hakko.musiccabinet.domain.model.music.Album;
+import com.github.hakko.musiccabinet.domain.model.music.Artist;
+import com.github.hakko.musiccabinet.domain.model.music.Track;
+
+public class WebserviceHistoryServiceTest {
+
+	private WebserviceHistoryDao historyDao;
+	private WebserviceHistoryService historyService;
+
+	private static final String CHER = "Cher", MADONNA = "Madonna";
+
+	private WebserviceInvocation cher = new WebserviceInvocation(
+			ARTIST_GET_TOP_TRACKS, new Artist(CHER));
+	private WebserviceInvocation madonna = new WebserviceInvocation(
+			ARTIST_GET_TOP_TRACKS, new Artist(MADONNA));
+
+	@Before
+	public void setUp() {
+		historyDao = mock(WebserviceHistoryDao.class);
+		when(historyDao.getArtistNamesWithNoInvocations(ARTIST_GET_TOP_TRACKS))
+			.thenReturn(asList(CHER));
+		when(historyDao.getArtistNamesWithOldestInvocations(ARTIST_GET_TOP_TRACKS))
+			.thenReturn(asList(MADONNA));
+		when(historyDao.getArtistNamesWithRecentInvocations(ARTIST_GET_TOP_TRACKS))
+			.thenReturn(asList(MADONNA));
+
+		historyService = new WebserviceHistoryService();
+		historyService.setWebserviceHistoryDao(historyDao);
+	}
+
+	@Test
+	public void scheduledArtistsAreCheckedWithoutDatabase() {
+		Set<String> artistNames = historyService.getArtistNamesScheduledForUpdate(ARTIST_GET_TOP_TRACKS);
+		Assert.assertEquals(2, artistNames.size());
+
+		Assert.assertTrue(historyService.isWebserviceInvocationAllowed(cher));
+		Assert.assertFalse(historyService.isWebserviceInvocationAllowed(madonna));
+
+		verify(historyDao, never()).isWebserviceInvocationAllowed(
+				Mockito.any(WebserviceInvocation.class));
+	}
+
+	@Test
+	public void scheduledAlbumsAreCheckedWithoutDatabase() {
+		Album believe = new Album(CHER, "Believe"), heartOfStone = new Album(CHER, "Heart Of Stone");
+		WebserviceInvocation believeInfo = new WebserviceInvocation(ALBUM_GET_INFO, believe);
+		WebserviceInvocation heartOfStoneInfo = new WebserviceInvocation(ALBUM_GET_INFO, heartOfStone);
+		when(historyDao.getAlbumsWithRecentInvocations(ALBUM_GET_INFO)).thenReturn(asList(believe));
+
+		historyService.startAlbumUpdate(ALBUM_GET_INFO, asList(believe, heartOfStone));
+		Assert.assertFalse(historyService.isWebserviceInvocationAllowed(believeInfo));
+		Assert.assertTrue(historyService.isWebserviceInvocationAllowed(heartOfStoneInfo));
+
+		historyService.logWebserviceInvocation(heartOfStoneInfo);
+		Assert.assertFalse(historyService.isWebserviceInvocationAllowed(heartOfStoneInfo));
+		verify(historyDao, never()).isWebserviceInvocationAllowed(
+				Mockito.any(WebserviceInvocation.class));
+		verify(historyDao, never()).logWebserviceInvocation(heartOfStoneInfo);
+
+		historyService.endUpdate(ALBUM_GET_INFO, true);
+		verify(historyDao).logWebserviceInvocations(asList(heartOfStoneInfo));
+	}
+
+	@Test
+	public void invocationsAreLoggedWhenUpdateEnds() {
+		historyService.getArtistNamesScheduledForUpdate(ARTIST_GET_TOP_TRACKS);
+		historyService.logWebserviceInvocation(cher);
+
+		Assert.assertFalse(historyService.isWebserviceInvocationAllowed(cher));
+		verify(historyDao, never()).logWebserviceInvocation(cher);
+		verify(historyDao, never()).logWebserviceInvocations(
+				anyListOf(WebserviceInvocation.class));
+
+		historyService.endUpdate(ARTIST_GET_TOP_TRACKS, true);
+		verify(historyDao).logWebserviceInvocations(asList(cher));
+
+		// decisions are dropped when update ends
+		historyService.isWebserviceInvocationAllowed(cher);
+		verify(historyDao).isWebserviceInvocationAllowed(cher);
+	}
+
+	@Test
+	public void invocationsAreDroppedWhenResultsWerentWritten() {
+		historyService.getArtistNamesScheduledForUpdate(ARTIST_GET_TOP_TRACKS);
+		historyService.logWebserviceInvocation(cher);
+
+		historyService.endUpdate(ARTIST_GET_TOP_TRACKS, false);
+		verify(historyDao, never()).logWebserviceInvocations(
+				anyListOf(WebserviceInvocation.class));
+		verify(historyDao, never()).logWebserviceInvocation(cher);
+	}
+
+	@Test
+	public void invocationsAreLoggedWhenBatchIsFull() {
+		historyService.setLogBatchSize(2);
+		historyService.getArtistNamesScheduledForUpdate(ARTIST_GET_TOP_TRACKS);
+		historyService.logWebserviceInvocation(cher);
+		historyService.logWebserviceInvocation(madonna);
+
+		verify(historyDao).logWebserviceInvocations(asList(cher, madonna));
+
+		historyService.endUpdate(ARTIST_GET_TOP_TRACKS, true);
+		verify(historyDao).logWebserviceInvocations(anyListOf(WebserviceInvocation.class));
+	}
+
+	@Test
+	public void batchIsWrittenWithoutBlockingOtherThreads() throws Exception {
+		final CountDownLatch writing = new CountDownLatch(1), written = new CountDownLatch(1);
+		doAnswer(new Answer<Void>() {
+			@Override
+			public Void answer(InvocationOnMock invocation) throws Throwable {
+				writing.countDown();
+				written.await(10, TimeUnit.SECONDS);
+				return null;
+			}
+		}).when(historyDao).logWebserviceInvocations(anyListOf(WebserviceInvocation.class));
+
+		historyService.setLogBatchSize(1);
+		historyService.getArtistNamesScheduledForUpdate(ARTIST_GET_TOP_TRACKS);
+		Thread writer = new Thread() {
+			@Override
+			public void run() {
+				historyService.logWebserviceInvocation(cher);
+			}
+		};
+		writer.start();
+		Assert.assertTrue(writing.await(10, TimeUnit.SECONDS));
+
+		// answered from memory while batch is being written
+		Assert.assertFalse(historyService.isWebserviceInvocationAllowed(madonna));
+		Assert.assertFalse(historyService.isWebserviceInvocationAllowed(cher));
+
+		written.countDown();
+		writer.join();
+		verify(historyDao).logWebserviceInvocations(asList(cher));
+	}
+
+	@Test
+	public void pendingInvocationsAreLoggedBeforeDatabaseIsChecked() {
+		WebserviceInvocation similarTrack = new WebserviceInvocation(
+				TRACK_GET_SIMILAR, new Track(CHER, "Believe"));
+
+		historyService.getArtistNamesScheduledForUpdate(ARTIST_GET_TOP_TRACKS);
+		historyService.logWebserviceInvocation(cher);
+		historyService.isWebserviceInvocationAllowed(similarTrack);
+
+		verify(historyDao).logWebserviceInvocations(asList(cher));
+		verify(historyDao).isWebserviceInvocationAllowed(similarTrack);
+	}
+
+	@Test
+	public void invocationsOutsideOfUpdateAreLoggedDirectly() {
+		historyService.logWebserviceInvocation(cher);
+
+		verify(historyDao).logWebserviceInvocation(cher);
+		verify(historyDao, never()).logWebserviceInvocations(
+				anyListOf(WebserviceInvocation.class));
+	}
+
+}
@@ -0,0 +1,159 @@
+package com.github.hakko.musiccabinet.service.library;
+
+import static java.util.Arrays.asList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import junit.framework.Assert;
+
+import org.apache.commons.io.FileUtils;
+import org.joda.time.format.ISODateTimeFormat;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.hakko.musiccabinet.dao.TrackPlayCountDao;
+import com.github.hakko.musiccabinet.domain.model.library.MetaData;
+import com.github.hakko.musiccabinet.domain.model.library.MetaData.Mediatype;
+import com.github.hakko.musiccabinet.domain.model.library.TrackPlayCount;
+import com.github.hakko.musiccabinet.io.TagCache;
+
+public class ItunesImportServiceTest {
+
+	private static final long MODIFIED = 1330042768000L;
+
+	private java.io.File directory;
+	private TagCache tagCache;
+	private ItunesImportService importService;
+
+	@Before
+	public void createService() throws Exception {
+		directory = Files.createTempDirectory("itunes").toFile();
+		tagCache = new TagCache(new java.io.File(directory, "tagcache"));
+		importService = new ItunesImportService();
+		importService.setTagCache(tagCache);
+	}
+
+	@After
+	public void deleteDirectory() throws Exception {
+		tagCache.close();
+		FileUtils.deleteDirectory(directory);
+	}
+
+	@Test
+	public void cachesMetaDataOfUnchangedFiles() throws Exception {
+		java.io.File unchanged = createFile("01 Unchanged.mp3", 100, MODIFIED);
+		java.io.File changed = createFile("02 Changed.mp3", 100, MODIFIED + 60000);
+
+		String library = plist(track(1, unchanged, 100), track(2, changed, 100));
+		int imported = importService.importMetaData(
+				new ByteArrayInputStream(library.getBytes(StandardCharsets.UTF_8)));
+
+		Assert.assertEquals(1, imported);
+		Assert.assertNull(tagCache.get(changed.getPath(), 100, changed.lastModified()));
+
+		MetaData metaData = tagCache.get(unchanged.getPath(), 100, unchanged.lastModified());
+		Assert.assertNotNull(metaData);
+		Assert.assertEquals(Mediatype.MP3, metaData.getMediaType());
+		Assert.assertEquals("Artist", metaData.getArtist());
+		Assert.assertEquals("Album Artist", metaData.getAlbumArtist());
+		Assert.assertEquals("Album", metaData.getAlbum());
+		Assert.assertEquals("Title 1", metaData.getTitle());
+		Assert.assertEquals("Pop", metaData.getGenre());
+		Assert.assertEquals(Short.valueOf((short) 2010), metaData.getYear());
+		Assert.assertEquals(Short.valueOf((short) 1), metaData.getTrackNr());
+		Assert.assertEquals(Short.valueOf((short) 10), metaData.getTrackNrs());
+		Assert.assertEquals(Short.valueOf((short) 1), metaData.getDiscNr());
+		Assert.assertEquals(215, metaData.getBitrate());
+		Assert.assertEquals(375, metaData.getDuration());
+		Assert.assertTrue(metaData.isCoverArtEmbedded());
+	}
+
+	@Test
+	public void skipsFilesOfDifferentSize() throws Exception {
+		java.io.File file = createFile("01 Resized.mp3", 100, MODIFIED);
+
+		String library = plist(track(1, file, 200));
+		int imported = importService.importMetaData(
+				new ByteArrayInputStream(library.getBytes(StandardCharsets.UTF_8)));
+
+		Assert.assertEquals(0, imported);
+		Assert.assertNull(tagCache.get(file.getPath(), 100, file.lastModified()));
+	}
+
+	@Test
+	public void addsUpPlayCountsOfDuplicateTracks() throws Exception {
+		TrackPlayCountDao trackPlayCountDao = mock(TrackPlayCountDao.class);
+		importService.setTrackPlayCountDao(trackPlayCountDao);
+
+		String library = plist(played(1, "Artist", "Title", 3),
+				played(2, "ARTIST", "title", 4), played(3, "Artist", "Other title", 1));
+		importService.importMetaData(
+				new ByteArrayInputStream(library.getBytes(StandardCharsets.UTF_8)));
+
+		verify(trackPlayCountDao).createTrackPlayCounts(asList(
+				new TrackPlayCount("Artist", "Title", 7),
+				new TrackPlayCount("Artist", "Other title", 1)));
+	}
+
+	@Test
+	public void resolvesItunesLocations() {
+		Assert.assertEquals("/Users/hakko/Music/01 The Brothel.mp3", importService.toPath(
+				"file://localhost/Users/hakko/Music/01%20The%20Brothel.mp3").toString());
+		Assert.assertNull(importService.toPath("http://example.com/stream.mp3"));
+		Assert.assertNull(importService.toPath(null));
+	}
+
+	private java.io.File createFile(String filename, int size, long modified) throws Exception {
+		java.io.File file = new java.io.File(directory, filename);
+		FileUtils.writeByteArrayToFile(file, new byte[size]);
+		Assert.assertTrue(file.setLastModified(modified));
+		return file;
+	}
+
+	private String track(int id, java.io.File file, int size) {
+		return "<key>" + id + "</key><dict>"
+				+ "<key>Track ID</key><integer>" + id + "</integer>"
+				+ "<key>Name</key><string>Title " + id + "</string>"
+				+ "<key>Artist</key><string>Artist</string>"
+				+ "<key>Album Artist</key><string>Album Artist</string>"
+				+ "<key>Album</key><string>Album</string>"
+				+ "<key>Genre</key><string>Pop</string>"
+				+ "<key>Size</key><integer>" + size + "</integer>"
+				+ "<key>Total Time</key><integer>375745</integer>"
+				+ "<key>Disc Number</key><integer>1</integer>"
+				+ "<key>Track Number</key><integer>" + id + "</integer>"
+				+ "<key>Track Count</key><integer>10</integer>"
+				+ "<key>Year</key><integer>2010</integer>"
+				+ "<key>Date Modified</key><date>"
+				+ ISODateTimeFormat.dateTimeNoMillis().withZoneUTC().print(MODIFIED) + "</date>"
+				+ "<key>Bit Rate</key><integer>215</integer>"
+				+ "<key>Artwork Count</key><integer>1</integer>"
+				+ "<key>Location</key><string>" + file.toURI().toString() + "</string>"
+				+ "</dict>";
+	}
+
+	private String played(int id, String artist, String title, int playCount) {
+		return "<key>" + id + "</key><dict>"
+				+ "<key>Track ID</key><integer>" + id + "</integer>"
+				+ "<key>Name</key><string>" + title + "</string>"
+				+ "<key>Artist</key><string>" + artist + "</string>"
+				+ "<key>Play Count</key><integer>" + playCount + "</integer>"
+				+ "</dict>";
+	}
+
+	private String plist(String... tracks) {
+		StringBuilder sb = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+				+ "<plist version=\"1.0\"><dict><key>Major Version</key><integer>1</integer>"
+				+ "<key>Tracks</key><dict>");
+		for (String track : tracks) {
+			sb.append(track);
+		}
+		return sb.append("</dict></dict></plist>").toString();
+	}
+
+}
@@ -6,17 +6,22 @@ import static com.github.hakko.musiccabinet.service.library.LibraryUtil.set;
 import static com.github.hakko.musiccabinet.util.UnittestLibraryUtil.getFile;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
 
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.integration.core.PollableChannel;
+import org.springframework.integration.message.GenericMessage;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 
 import com.github.hakko.musiccabinet.dao.jdbc.JdbcLibraryAdditionDao;
 import com.github.hakko.musiccabinet.dao.jdbc.JdbcLibraryPresenceDao;
+import com.github.hakko.musiccabinet.domain.model.aggr.DirectoryContent;
 import com.github.hakko.musiccabinet.domain.model.library.File;
 
 @RunWith(SpringJUnit4ClassRunner.class)
@@ -63,5 +68,46 @@ public class LibraryDeletionServiceTest {
 		assertEquals(set(file1b), presenceDao.getFiles(dir1));
 		assertFalse(presenceDao.exists(dir2));
 	}
-	
-}
\ No newline at end of file
+
+	@Test
+	public void deletesSubTreeButNotSiblingWithSamePrefix() {
+		String dir10 = "/dir10";
+		File file10a = getFile(dir10, "file10a");
+		additionDao.clearImport();
+		additionDao.addSubdirectories(null, set(dir10));
+		additionDao.addFiles(dir10, set(file10a));
+		additionDao.updateLibrary();
+
+		deletionService.delete(set(dir1));
+
+		assertFalse(presenceDao.exists(dir1));
+		assertFalse(presenceDao.exists(dir2));
+		assertTrue(presenceDao.exists(dir10));
+		assertEquals(set(file10a), presenceDao.getFiles(dir10));
+	}
+
+	@Test
+	public void movesFilesKeepingTheirIdentity() {
+		String dir3 = "/dir3";
+		String fileId = "select id from library.file where filename = 'file2a'";
+		int id = presenceDao.getJdbcTemplate().queryForInt(fileId);
+
+		DirectoryContent move = new DirectoryContent(dir3);
+		move.setMovedFiles(set(file2a));
+
+		PollableChannel deletionChannel = deletionService.libraryDeletionChannel;
+		deletionChannel.send(msg(dir1, set(dir2), new HashSet<File>()));
+		deletionChannel.send(new GenericMessage<DirectoryContent>(move));
+		deletionChannel.send(FINISHED_MESSAGE);
+
+		deletionService.receive();
+		deletionService.updateLibrary();
+
+		assertFalse(presenceDao.exists(dir2));
+		assertTrue(presenceDao.exists(dir3));
+		assertEquals(set(new File(dir3, "file2a", file2a.getModified(), file2a.getSize())),
+				presenceDao.getFiles(dir3));
+		assertEquals(id, presenceDao.getJdbcTemplate().queryForInt(fileId));
+	}
+
+}
@@ -0,0 +1,69 @@
+package com.github.hakko.musiccabinet.service.library;
+
+import static com.github.hakko.musiccabinet.service.library.LibraryUtil.FINISHED_MESSAGE;
+import static com.github.hakko.musiccabinet.service.library.LibraryUtil.msg;
+import static com.github.hakko.musiccabinet.service.library.LibraryUtil.set;
+import static com.github.hakko.musiccabinet.util.UnittestLibraryUtil.getFile;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+import org.springframework.integration.Message;
+import org.springframework.integration.channel.QueueChannel;
+
+import com.github.hakko.musiccabinet.domain.model.aggr.DirectoryContent;
+import com.github.hakko.musiccabinet.domain.model.library.File;
+
+public class LibraryMetadataServiceTest {
+
+	private static final int DIRECTORIES = 50;
+	private static final int FILES_PER_DIRECTORY = 3;
+
+	@Test
+	public void readsAllFilesAndForwardsEachDirectoryBeforeFinishedMessage() {
+		QueueChannel metadataChannel = new QueueChannel();
+		QueueChannel additionChannel = new QueueChannel();
+		AudioTagService audioTagService = mock(AudioTagService.class);
+
+		LibraryMetadataService metadataService = new LibraryMetadataService();
+		metadataService.setLibraryMetadataChannel(metadataChannel);
+		metadataService.setLibraryAdditionChannel(additionChannel);
+		metadataService.setAudioTagService(audioTagService);
+		metadataService.setReaderThreads(4);
+
+		Set<String> directories = new HashSet<>();
+		for (int i = 0; i < DIRECTORIES; i++) {
+			String dir = "/dir" + i;
+			directories.add(dir);
+			metadataChannel.send(msg(dir, new HashSet<String>(), set(
+					getFile(dir, "a"), getFile(dir, "b"), getFile(dir, "c"))));
+		}
+		metadataChannel.send(FINISHED_MESSAGE);
+
+		metadataService.receive();
+
+		Set<String> forwarded = new HashSet<>();
+		for (int i = 0; i < DIRECTORIES; i++) {
+			Message<?> message = additionChannel.receive(0);
+			assertNotNull(message);
+			DirectoryContent content = (DirectoryContent) message.getPayload();
+			assertEquals(FILES_PER_DIRECTORY, content.getFiles().size());
+			forwarded.add(content.getDirectory());
+		}
+		assertEquals(FINISHED_MESSAGE, additionChannel.receive(0));
+		assertEquals(directories, forwarded);
+
+		verify(audioTagService, times(DIRECTORIES * FILES_PER_DIRECTORY))
+			.updateMetadata(any(File.class));
+		assertEquals(DIRECTORIES * FILES_PER_DIRECTORY,
+				metadataService.getUpdateProgress().getFinishedOperations());
+	}
+
+}
@@ -4,29 +4,34 @@ import static com.github.hakko.musiccabinet.service.library.LibraryUtil.FINISHED
 import static com.github.hakko.musiccabinet.service.library.LibraryUtil.set;
 import static com.github.hakko.musiccabinet.util.UnittestLibraryUtil.getFile;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.util.HashSet;
 import java.util.Set;
 
+import org.joda.time.DateTime;
+import org.junit.Before;
 import org.junit.Test;
-import org.junit.runner.RunWith;
-import org.springframework.beans.factory.annotation.Autowired;
+import org.mockito.Matchers;
 import org.springframework.integration.Message;
+import org.springframework.integration.channel.QueueChannel;
 import org.springframework.integration.core.PollableChannel;
-import org.springframework.test.context.ContextConfiguration;
-import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.integration.message.GenericMessage;
 
 import com.github.hakko.musiccabinet.dao.LibraryPresenceDao;
 import com.github.hakko.musiccabinet.domain.model.aggr.DirectoryContent;
+import com.github.hakko.musiccabinet.domain.model.aggr.LibrarySnapshot;
 import com.github.hakko.musiccabinet.domain.model.library.File;
 
-@RunWith(SpringJUnit4ClassRunner.class)
-@ContextConfiguration(locations={"classpath:applicationContext.xml"})
 public class LibraryPresenceServiceTest {
 
-	@Autowired
 	private LibraryPresenceService presenceService;
 	
 	private String dir1 = "/d1";
@@ -38,6 +43,17 @@ public class LibraryPresenceServiceTest {
 
 	private File file2b = getFile(dir1, "f2b"); // changed version of file2
 	
+	/*
+	 * Built by hand, as each test sets its own (mocked) DAO.
+	 */
+	@Before
+	public void setUp() {
+		presenceService = new LibraryPresenceService();
+		presenceService.setLibraryPresenceChannel(new QueueChannel());
+		presenceService.setLibraryMetadataChannel(new QueueChannel());
+		presenceService.setLibraryDeletionChannel(new QueueChannel());
+	}
+
 	@Test
 	public void delegatesHandlingOfAddedAndDeletedResources() {
 		LibraryPresenceDao presenceDao = mock(LibraryPresenceDao.class);
@@ -65,6 +81,167 @@ public class LibraryPresenceServiceTest {
 
 		assertEquals(set(file2b), addedFiles);
 		assertEquals(set(file2, file3), deletedFiles);
+
+		assertEquals(1, presenceService.getPipelineStage().getMessagesIn());
+		assertEquals(2, presenceService.getPipelineStage().getMessagesOut());
 	}
 	
-}
\ No newline at end of file
+	@Test
+	public void skipsAdditionsToDirectoriesImportedByResumedScan() {
+		LibraryPresenceDao presenceDao = mock(LibraryPresenceDao.class);
+		when(presenceDao.getFiles(dir1)).thenReturn(set(file1, file3));
+		when(presenceDao.getSubdirectories(dir1)).thenReturn(new HashSet<String>());
+		presenceService.setLibraryPresenceDao(presenceDao);
+
+		PollableChannel presenceChannel = presenceService.libraryPresenceChannel;
+		presenceChannel.send(LibraryUtil.msg(dir1, new HashSet<String>(), set(file1, file2)));
+		presenceChannel.send(FINISHED_MESSAGE);
+
+		presenceService.setCheckpoint(set(dir1));
+		presenceService.receive();
+
+		assertEquals(FINISHED_MESSAGE, presenceService.libraryMetadataChannel.receive());
+
+		Message<?> deletionMessage = presenceService.libraryDeletionChannel.receive();
+		assertEquals(set(file3), ((DirectoryContent) deletionMessage.getPayload()).getFiles());
+		assertEquals(FINISHED_MESSAGE, presenceService.libraryDeletionChannel.receive());
+	}
+
+	@Test
+	public void comparesAgainstLibrarySnapshotWhenAvailable() {
+		LibrarySnapshot snapshot = new LibrarySnapshot();
+		snapshot.addDirectory(1, null, dir1);
+		snapshot.addDirectory(2, 1, dir2);
+		for (File file : set(file1, file2, file3)) {
+			snapshot.addFile(1, file.getFilename(), file.getModified().getMillis(), file.getSize());
+		}
+		LibraryPresenceDao presenceDao = mock(LibraryPresenceDao.class);
+		when(presenceDao.getLibrarySnapshot()).thenReturn(snapshot);
+		presenceService.setLibraryPresenceDao(presenceDao);
+
+		File file4 = getFile(dir2, "f4");
+
+		PollableChannel presenceChannel = presenceService.libraryPresenceChannel;
+		presenceChannel.send(LibraryUtil.msg(dir1, set(dir2), set(file1, file2, file3)));
+		presenceChannel.send(LibraryUtil.msg(dir2, new HashSet<String>(), set(file4)));
+		presenceChannel.send(FINISHED_MESSAGE);
+		
+		presenceService.loadSnapshot();
+		presenceService.receive();
+
+		Message<?> additionMessage = presenceService.libraryMetadataChannel.receive();
+		assertEquals(set(file4), ((DirectoryContent) additionMessage.getPayload()).getFiles());
+		assertEquals(FINISHED_MESSAGE, presenceService.libraryMetadataChannel.receive());
+		assertEquals(FINISHED_MESSAGE, presenceService.libraryDeletionChannel.receive());
+		
+		verify(presenceDao, never()).getFiles(Matchers.anyString());
+		verify(presenceDao, never()).getSubdirectories(Matchers.anyString());
+	}
+	
+	@Test
+	public void passesOnChangedDirectoryModificationTime() {
+		DateTime modified = new DateTime(2012, 6, 1, 0, 0);
+		LibrarySnapshot snapshot = new LibrarySnapshot();
+		snapshot.addDirectory(1, null, dir1, modified.getMillis());
+		snapshot.addDirectory(2, 1, dir2, modified.getMillis());
+		LibraryPresenceDao presenceDao = mock(LibraryPresenceDao.class);
+		when(presenceDao.getLibrarySnapshot()).thenReturn(snapshot);
+		presenceService.setLibraryPresenceDao(presenceDao);
+
+		PollableChannel presenceChannel = presenceService.libraryPresenceChannel;
+		presenceChannel.send(LibraryUtil.msg(dir1, set(dir2), new HashSet<File>(), modified));
+		presenceChannel.send(LibraryUtil.msg(dir2, new HashSet<String>(), 
+				new HashSet<File>(), modified.plusMinutes(1)));
+		presenceChannel.send(FINISHED_MESSAGE);
+		
+		presenceService.loadSnapshot();
+		presenceService.receive();
+
+		DirectoryContent content = (DirectoryContent) 
+				presenceService.libraryMetadataChannel.receive().getPayload();
+		assertEquals(dir2, content.getDirectory());
+		assertEquals(modified.plusMinutes(1), content.getModified());
+		assertTrue(content.getSubDirectories().isEmpty());
+		assertTrue(content.getFiles().isEmpty());
+		assertEquals(FINISHED_MESSAGE, presenceService.libraryMetadataChannel.receive());
+		assertEquals(FINISHED_MESSAGE, presenceService.libraryDeletionChannel.receive());
+	}
+
+	@Test
+	public void passesOnMovedFilesInsteadOfAddingThem() {
+		String dir3 = "/d3";
+		File file4 = getFile(dir3, "f4");
+		LibrarySnapshot snapshot = new LibrarySnapshot();
+		snapshot.addDirectory(1, null, dir1);
+		for (File file : set(file1, file2)) {
+			snapshot.addFile(1, file.getFilename(), file.getModified().getMillis(), file.getSize());
+		}
+		LibraryPresenceDao presenceDao = mock(LibraryPresenceDao.class);
+		when(presenceDao.getLibrarySnapshot()).thenReturn(snapshot);
+		presenceService.setLibraryPresenceDao(presenceDao);
+
+		File movedFile1 = getFile(dir3, file1.getFilename());
+		movedFile1.setModified(file1.getModified());
+		movedFile1.setSize(file1.getSize());
+
+		PollableChannel presenceChannel = presenceService.libraryPresenceChannel;
+		presenceChannel.send(LibraryUtil.msg(dir1, new HashSet<String>(), set(file2)));
+		presenceChannel.send(LibraryUtil.msg(dir3, new HashSet<String>(), set(movedFile1, file4)));
+		presenceChannel.send(FINISHED_MESSAGE);
+
+		presenceService.loadSnapshot();
+		presenceService.receive();
+
+		DirectoryContent addition = (DirectoryContent)
+				presenceService.libraryMetadataChannel.receive().getPayload();
+		assertEquals(set(file4), addition.getFiles());
+		assertEquals(FINISHED_MESSAGE, presenceService.libraryMetadataChannel.receive());
+
+		DirectoryContent deletion = (DirectoryContent)
+				presenceService.libraryDeletionChannel.receive().getPayload();
+		assertEquals(set(file1), deletion.getFiles());
+		DirectoryContent move = (DirectoryContent)
+				presenceService.libraryDeletionChannel.receive().getPayload();
+		assertEquals(dir3, move.getDirectory());
+		assertEquals(set(file1), move.getMovedFiles());
+		assertTrue(move.getFiles().isEmpty());
+		assertEquals(FINISHED_MESSAGE, presenceService.libraryDeletionChannel.receive());
+	}
+
+	@Test
+	public void comparesChunksOfLargeDirectory() {
+		LibraryPresenceDao presenceDao = mock(LibraryPresenceDao.class);
+		when(presenceDao.getFiles(dir1)).thenReturn(set(file1, file2, file3));
+		when(presenceDao.getSubdirectories(dir1)).thenReturn(new HashSet<String>());
+		presenceService.setLibraryPresenceDao(presenceDao);
+
+		File file4 = getFile(dir1, "f4");
+		DirectoryContent content = new DirectoryContent(dir1, new HashSet<String>(), set(file1, file4));
+		DirectoryContent chunk = content.takeChunk();
+		content.getFiles().add(file2);
+
+		PollableChannel presenceChannel = presenceService.libraryPresenceChannel;
+		presenceChannel.send(new GenericMessage<DirectoryContent>(chunk));
+		presenceChannel.send(new GenericMessage<DirectoryContent>(content));
+		presenceChannel.send(FINISHED_MESSAGE);
+
+		presenceService.receive();
+
+		DirectoryContent addition = (DirectoryContent)
+				presenceService.libraryMetadataChannel.receive().getPayload();
+		assertEquals(set(file4), addition.getFiles());
+		assertFalse(addition.isLastChunk());
+		addition = (DirectoryContent) presenceService.libraryMetadataChannel.receive().getPayload();
+		assertTrue(addition.getFiles().isEmpty());
+		assertTrue(addition.isLastChunk());
+		assertEquals(FINISHED_MESSAGE, presenceService.libraryMetadataChannel.receive());
+
+		DirectoryContent deletion = (DirectoryContent)
+				presenceService.libraryDeletionChannel.receive().getPayload();
+		assertEquals(set(file3), deletion.getFiles());
+		assertEquals(FINISHED_MESSAGE, presenceService.libraryDeletionChannel.receive());
+
+		verify(presenceDao, times(1)).getFiles(dir1);
+	}
+
+}
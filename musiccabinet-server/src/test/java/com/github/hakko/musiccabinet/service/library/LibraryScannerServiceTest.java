@@ -6,6 +6,7 @@ import static java.lang.Thread.currentThread;
 import static junit.framework.Assert.assertEquals;
 
 import java.io.File;
+import java.util.HashSet;
 import java.util.List;
 
 import junit.framework.Assert;
@@ -17,8 +18,10 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 
+import com.github.hakko.musiccabinet.dao.jdbc.JdbcLibraryAdditionDao;
 import com.github.hakko.musiccabinet.dao.jdbc.JdbcLibraryBrowserDao;
 import com.github.hakko.musiccabinet.dao.jdbc.JdbcLibraryPresenceDao;
+import com.github.hakko.musiccabinet.domain.model.aggr.DirectoryContent;
 import com.github.hakko.musiccabinet.exception.ApplicationException;
 import com.github.hakko.musiccabinet.service.library.LibraryScannerService;
 
@@ -35,6 +38,9 @@ public class LibraryScannerServiceTest {
 	@Autowired
 	private JdbcLibraryBrowserDao browserDao;
 
+	@Autowired
+	private JdbcLibraryAdditionDao additionDao;
+
 	@Before
 	public void clearLibrary() throws ApplicationException {
 		presenceDao.getJdbcTemplate().execute("truncate library.directory cascade");
@@ -73,6 +79,37 @@ public class LibraryScannerServiceTest {
 		assertEquals(missingmetadata + separatorChar + "track.mp3", files.get(1));
 	}
 	
+	@Test
+	public void directoryUpdatesWaitForInterruptedScanToResume() throws Exception {
+		String library = new File(currentThread().getContextClassLoader()
+				.getResource("library").toURI()).getAbsolutePath();
+		String media1 = library + separatorChar + "media1";
+		String artist = media1 + separatorChar + "The Beatles";
+		String album = artist + separatorChar + "1962-1966";
+		String cd1 = album + separatorChar + "cd1";
+		String cd2 = album + separatorChar + "cd2";
+
+		// scan of media1 interrupted, once an (empty) cd1 was imported
+		additionDao.clearImport();
+		additionDao.setScanRootPaths(set(media1));
+		additionDao.setFlushSize(1);
+		try {
+			additionDao.addDirectoryContent(new DirectoryContent(cd1));
+		} finally {
+			additionDao.setFlushSize(5000);
+		}
+
+		Assert.assertFalse(scannerService.updateDirectories(set(media1), set(artist)));
+		assertEquals(set(media1), additionDao.getScanRootPaths());
+		assertEquals(set(cd1), additionDao.getCheckpoint());
+		Assert.assertTrue(presenceDao.getSubdirectories(media1).isEmpty());
+
+		scannerService.add(set(media1));
+		assertEquals(set(cd1, cd2), presenceDao.getSubdirectories(album));
+		Assert.assertTrue(additionDao.getScanRootPaths().isEmpty());
+		Assert.assertTrue(scannerService.updateDirectories(set(cd2), new HashSet<String>()));
+	}
+
 	@Test
 	public void identifiesRootPaths() {
 		String previousFileSeparator = scannerService.fileSeparator;
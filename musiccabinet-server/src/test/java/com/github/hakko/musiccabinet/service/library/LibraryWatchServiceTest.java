@@ -0,0 +1,108 @@
+package com.github.hakko.musiccabinet.service.library;
+
+import static com.github.hakko.musiccabinet.service.library.LibraryUtil.set;
+import static org.mockito.Matchers.anySetOf;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.hakko.musiccabinet.dao.LibraryPresenceDao;
+
+public class LibraryWatchServiceTest {
+
+	private LibraryWatchService watchService = new LibraryWatchService();
+	private LibraryScannerService scannerService = mock(LibraryScannerService.class);
+	private LibraryPresenceDao presenceDao = mock(LibraryPresenceDao.class);
+	private Path root, otherRoot;
+
+	@Before
+	public void startWatching() throws Exception {
+		root = Files.createTempDirectory("library");
+		otherRoot = Files.createTempDirectory("library");
+		when(scannerService.updateDirectories(anySetOf(String.class),
+				anySetOf(String.class))).thenReturn(true);
+		watchService.setLibraryScannerService(scannerService);
+		watchService.setLibraryPresenceDao(presenceDao);
+		watchService.setDebounceTime(100);
+		watchService.setSummaryDelay(100);
+		watchService.start(set(root.toString()));
+		Assert.assertTrue(watchService.isWatching());
+	}
+
+	@After
+	public void stopWatching() throws Exception {
+		watchService.stop();
+		Assert.assertFalse(watchService.isWatching());
+		FileUtils.deleteDirectory(root.toFile());
+		FileUtils.deleteDirectory(otherRoot.toFile());
+	}
+
+	@Test
+	public void scansDirectoryOfNewFile() throws Exception {
+		Files.createFile(root.resolve("track.mp3"));
+
+		verify(scannerService, timeout(10000)).updateDirectories(
+				set(root.toString()), new HashSet<String>());
+	}
+
+	@Test
+	public void scansNewDirectoryInFull() throws Exception {
+		Path album = Files.createDirectory(root.resolve("album"));
+
+		verify(scannerService, timeout(10000)).updateDirectories(
+				set(root.toString()), set(album.toString()));
+	}
+
+	@Test
+	public void updatesSummaryAfterScans() throws Exception {
+		Files.createFile(root.resolve("track.mp3"));
+
+		verify(scannerService, timeout(10000)).updateSummary();
+	}
+
+	@Test
+	public void watchesAddedRoots() throws Exception {
+		setRootDirectories(root, otherRoot);
+		Thread.sleep(1000);
+		Files.createFile(otherRoot.resolve("track.mp3"));
+
+		verify(scannerService, timeout(10000)).updateDirectories(
+				set(otherRoot.toString()), new HashSet<String>());
+	}
+
+	@Test
+	public void ignoresDeletedRoots() throws Exception {
+		setRootDirectories();
+		Thread.sleep(1000);
+		Files.createFile(root.resolve("track.mp3"));
+		Thread.sleep(1000);
+
+		verify(scannerService, never()).updateDirectories(
+				anySetOf(String.class), anySetOf(String.class));
+	}
+
+	private void setRootDirectories(Path... roots) {
+		List<String> rootDirectories = new ArrayList<>();
+		for (Path path : roots) {
+			rootDirectories.add(path.toString());
+		}
+		when(presenceDao.getRootDirectories()).thenReturn(rootDirectories);
+		watchService.refreshRoots();
+	}
+
+}
\ No newline at end of file
@@ -0,0 +1,47 @@
+package com.github.hakko.musiccabinet.service.library;
+
+import static com.github.hakko.musiccabinet.service.library.LibraryUtil.FINISHED_MESSAGE;
+import static com.github.hakko.musiccabinet.service.library.LibraryUtil.msg;
+
+import java.util.HashSet;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.springframework.integration.channel.QueueChannel;
+import org.springframework.integration.core.PollableChannel;
+
+import com.github.hakko.musiccabinet.domain.model.library.File;
+
+public class PipelineStageTest {
+
+	@Test
+	public void countsMessagesButNotFinishedMessage() {
+		PipelineStage producer = new PipelineStage("producer");
+		PipelineStage consumer = new PipelineStage("consumer");
+		QueueChannel channel = new QueueChannel(10);
+
+		PollableChannel output = producer.outputTo(channel);
+		for (int i = 0; i < 3; i++) {
+			output.send(msg("/dir" + i, new HashSet<String>(), new HashSet<File>()));
+		}
+		producer.send(channel, FINISHED_MESSAGE);
+
+		Assert.assertEquals(3, producer.getMessagesOut());
+		Assert.assertEquals(0, producer.getMessagesIn());
+
+		consumer.receive(channel);
+		Assert.assertEquals(1, consumer.getMessagesIn());
+		Assert.assertEquals(3, consumer.getQueueSize());
+
+		while (!FINISHED_MESSAGE.equals(consumer.receive(channel))) {
+		}
+		Assert.assertEquals(3, consumer.getMessagesIn());
+		Assert.assertEquals(0, consumer.getQueueSize());
+
+		consumer.reset();
+		Assert.assertEquals(0, consumer.getMessagesIn());
+		Assert.assertEquals(0.0, consumer.getItemsPerSecond());
+	}
+
+}
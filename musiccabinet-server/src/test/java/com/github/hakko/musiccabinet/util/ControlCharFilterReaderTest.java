@@ -0,0 +1,39 @@
+package com.github.hakko.musiccabinet.util;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import junit.framework.Assert;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+public class ControlCharFilterReaderTest {
+
+	private static final String DIRTY = "<lfm status=\"ok\">\u0001Cher\u0007\tis\r\n\u0085back</lfm>";
+	private static final String CLEAN = "<lfm status=\"ok\"> Cher \tis\r\n back</lfm>";
+
+	@Test
+	public void controlCharsAreReplacedWhileRead() throws IOException {
+		String read = IOUtils.toString(new ControlCharFilterReader(new StringReader(DIRTY)));
+
+		Assert.assertEquals(CLEAN, read);
+		Assert.assertEquals(XMLUtil.removeISOControlChars(DIRTY), read);
+	}
+
+	@Test
+	public void singleCharsAreReplaced() throws IOException {
+		ControlCharFilterReader reader = new ControlCharFilterReader(new StringReader("\u0001a"));
+
+		Assert.assertEquals(' ', reader.read());
+		Assert.assertEquals('a', reader.read());
+		Assert.assertEquals(-1, reader.read());
+		reader.close();
+	}
+
+	@Test
+	public void cleanTextIsNotCopied() {
+		Assert.assertSame(CLEAN, XMLUtil.removeISOControlChars(CLEAN));
+	}
+
+}
@@ -0,0 +1,48 @@
+package com.github.hakko.musiccabinet.ws;
+
+import junit.framework.Assert;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.HttpClient;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.protocol.BasicHttpContext;
+import org.junit.Test;
+
+public class HttpTransportTest {
+
+	@Test
+	public void clientIsCreatedOnceAndShared() {
+		HttpTransport transport = new HttpTransport();
+		transport.setMaxConnections(7);
+
+		HttpClient httpClient = transport.getHttpClient();
+		Assert.assertSame(httpClient, transport.getHttpClient());
+		Assert.assertEquals(7, transport.getMaxConnections());
+		Assert.assertEquals(0, transport.getLeasedConnections());
+		Assert.assertEquals(0, transport.getAvailableConnections());
+
+		transport.close();
+		Assert.assertNotSame(httpClient, transport.getHttpClient());
+		transport.close();
+	}
+
+	@Test
+	public void keepAliveIsCappedByConfiguration() {
+		HttpTransport transport = new HttpTransport();
+		transport.setKeepAliveSeconds(30);
+
+		HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+		Assert.assertEquals(30000, transport.keepAliveStrategy.getKeepAliveDuration(
+				response, new BasicHttpContext()));
+
+		response.setHeader("Keep-Alive", "timeout=5");
+		Assert.assertEquals(5000, transport.keepAliveStrategy.getKeepAliveDuration(
+				response, new BasicHttpContext()));
+
+		response.setHeader("Keep-Alive", "timeout=300");
+		Assert.assertEquals(30000, transport.keepAliveStrategy.getKeepAliveDuration(
+				response, new BasicHttpContext()));
+	}
+
+}
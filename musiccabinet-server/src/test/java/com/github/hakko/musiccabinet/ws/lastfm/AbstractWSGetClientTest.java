@@ -1,6 +1,7 @@
 package com.github.hakko.musiccabinet.ws.lastfm;
 
 import static com.github.hakko.musiccabinet.configuration.CharSet.UTF8;
+import static com.github.hakko.musiccabinet.domain.model.library.WebserviceInvocation.Calltype.TRACK_GET_SIMILAR;
 import static com.github.hakko.musiccabinet.service.LastFmService.API_KEY;
 import static com.github.hakko.musiccabinet.ws.lastfm.AbstractWSGetClient.HOST;
 import static com.github.hakko.musiccabinet.ws.lastfm.AbstractWSGetClient.HTTP;
@@ -9,12 +10,16 @@ import static com.github.hakko.musiccabinet.ws.lastfm.AbstractWSGetClient.PARAM_
 import static com.github.hakko.musiccabinet.ws.lastfm.AbstractWSGetClient.PARAM_TRACK;
 import static com.github.hakko.musiccabinet.ws.lastfm.AbstractWSGetClient.PATH;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.net.URI;
 import java.net.URLEncoder;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -32,7 +37,9 @@ import org.junit.Test;
 import org.mockito.Mockito;
 
 import com.github.hakko.musiccabinet.domain.model.library.WebserviceInvocation;
+import com.github.hakko.musiccabinet.domain.model.music.Track;
 import com.github.hakko.musiccabinet.exception.ApplicationException;
+import com.github.hakko.musiccabinet.io.ResponseArchive;
 import com.github.hakko.musiccabinet.service.lastfm.ThrottleService;
 import com.github.hakko.musiccabinet.service.lastfm.WebserviceHistoryService;
 import com.github.hakko.musiccabinet.util.ResourceUtil;
@@ -113,6 +120,51 @@ public class AbstractWSGetClientTest {
 		Assert.assertFalse(wsResponse.wasCallAllowed());
 	}
 	
+	@Test
+	@SuppressWarnings("unchecked")
+	public void replayReturnsArchivedResponseWithoutCallingLastFm() throws IOException, ApplicationException {
+		java.io.File file = Files.createTempFile("responses", null).toFile();
+		ResponseArchive archive = new ResponseArchive(file);
+		TestWSGetClient testWSClient = getTestWSClient(true, SIMILAR_TRACKS_RESOURCE);
+		testWSClient.setResponseArchive(archive);
+		HttpClient httpClient = testWSClient.getHttpClient();
+		try {
+			testWSClient.testCall();
+
+			archive.setReplay(true);
+			WSResponse wsResponse = testWSClient.testCall();
+
+			Assert.assertTrue(wsResponse.wasCallSuccessful());
+			Assert.assertEquals(new ResourceUtil(SIMILAR_TRACKS_RESOURCE).getContent(),
+					wsResponse.getResponseBody());
+			verify(httpClient, times(1)).execute(Mockito.any(HttpUriRequest.class),
+					Mockito.any(ResponseHandler.class));
+		} finally {
+			archive.close();
+			file.delete();
+		}
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void replayTreatsMissingResponseAsNotAllowed() throws IOException, ApplicationException {
+		java.io.File file = Files.createTempFile("responses", null).toFile();
+		ResponseArchive archive = new ResponseArchive(file);
+		archive.setReplay(true);
+		TestWSGetClient testWSClient = getTestWSClient(true, SIMILAR_TRACKS_RESOURCE);
+		testWSClient.setResponseArchive(archive);
+		try {
+			WSResponse wsResponse = testWSClient.testCall();
+
+			Assert.assertFalse(wsResponse.wasCallAllowed());
+			verify(testWSClient.getHttpClient(), never()).execute(Mockito.any(HttpUriRequest.class),
+					Mockito.any(ResponseHandler.class));
+		} finally {
+			archive.close();
+			file.delete();
+		}
+	}
+
 	public void validatePackagingOfClientProtocalException() throws ApplicationException, IOException {
 		ClientProtocolException cpe = new ClientProtocolException("Abstract HTTP protocol error");
 		TestWSGetClient testWSClient = getTestWSClient(cpe);
@@ -203,7 +255,8 @@ public class AbstractWSGetClientTest {
 		when(historyService.isWebserviceInvocationAllowed(
 				Mockito.any(WebserviceInvocation.class))).thenReturn(allowCalls);
 		
-		WebserviceInvocation invocation = mock(WebserviceInvocation.class);
+		WebserviceInvocation invocation = new WebserviceInvocation(
+				TRACK_GET_SIMILAR, new Track("Cher", "Believe"));
 		
 		List<NameValuePair> params = new ArrayList<>();
 		
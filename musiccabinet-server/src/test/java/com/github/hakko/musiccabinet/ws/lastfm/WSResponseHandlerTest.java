@@ -0,0 +1,50 @@
+package com.github.hakko.musiccabinet.ws.lastfm;
+
+import java.io.IOException;
+
+import junit.framework.Assert;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.HttpResponseException;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.junit.Test;
+
+public class WSResponseHandlerTest {
+
+	private WSResponseHandler handler = new WSResponseHandler();
+
+	@Test
+	public void bodyIsDecodedAndCleaned() throws IOException {
+		HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+		response.setEntity(new ByteArrayEntity("<lfm>Björk\u0002</lfm>".getBytes("UTF-8")));
+
+		Assert.assertEquals("<lfm>Björk </lfm>", handler.handleResponse(response));
+	}
+
+	@Test
+	public void charsetOfContentTypeIsUsed() throws IOException {
+		HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+		ByteArrayEntity entity = new ByteArrayEntity("<lfm>Björk</lfm>".getBytes("ISO-8859-1"));
+		entity.setContentType("text/xml; charset=ISO-8859-1");
+		response.setEntity(entity);
+
+		Assert.assertEquals("<lfm>Björk</lfm>", handler.handleResponse(response));
+	}
+
+	@Test
+	public void errorStatusIsThrown() throws IOException {
+		HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 503, "Unavailable");
+		response.setEntity(new StringEntity("Service temporarily unavailable"));
+		try {
+			handler.handleResponse(response);
+			Assert.fail();
+		} catch (HttpResponseException e) {
+			Assert.assertEquals(503, e.getStatusCode());
+			Assert.assertEquals("Unavailable", e.getMessage());
+		}
+	}
+
+}